@@ -0,0 +1,73 @@
+package com.colin.java.market.matching;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * ArrayOrderBook 挂单/撮合
+ * 卖盘预先挂 depth 个连续价位（每档一笔 LOT），每次操作后恢复原来的形状，稳态下的数字可以直接对比
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ArrayOrderBookBenchmark {
+    private static final long BASE = 10_000;
+    private static final long LOT = 10;
+
+    @State(Scope.Thread)
+    public static class Book {
+        @Param({"10", "100", "500"})
+        int depth;
+
+        ArrayOrderBook asks;
+        long nextId;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            asks = new ArrayOrderBook(1024, 8192, true);
+            for (int i = 0; i < depth; i++) {
+                asks.add(BASE + i, LOT);
+            }
+        }
+    }
+
+    // 一次吃掉的档位数，只对 matchSweep 有意义
+    @State(Scope.Thread)
+    public static class Sweep {
+        @Param({"1", "5", "20"})
+        int sweep;
+    }
+
+    // 扫掉最优的若干档，再按原价位补回（补回的是新的最优价，只需 head 前移）
+    @Benchmark
+    public long matchSweep(Book book, Sweep sweep) {
+        int levels = Math.min(sweep.sweep, book.depth);
+        ArrayOrderBook asks = book.asks;
+        long traded = asks.match(BASE + levels - 1, levels * LOT);
+        for (int i = levels - 1; i >= 0; i--) {
+            asks.add(BASE + i, LOT);
+        }
+        return traded;
+    }
+
+    // 在深度中间的价位排队一笔再撤掉：插入排序定位 + 节点池 + 索引
+    @Benchmark
+    public boolean addCancelMid(Book book) {
+        long id = ++book.nextId;
+        book.asks.add(id, BASE + book.depth / 2, LOT);
+        return book.asks.cancel(id);
+    }
+
+    // 新价位插入到最深处再撤掉：数组移动最多的情况
+    @Benchmark
+    public boolean addCancelNewLevelAtBack(Book book) {
+        long id = ++book.nextId;
+        book.asks.add(id, BASE + book.depth, LOT);
+        boolean cancelled = book.asks.cancel(id);
+        book.asks.compact();
+        return cancelled;
+    }
+}
@@ -0,0 +1,72 @@
+package com.colin.java.market.matching;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MatchingSystem.handleOrder 端到端：预风控 -> 路由 -> 撮合 -> 成交结算
+ * 订单按 卖 5 / 买 3 / 买 2 循环，全部成交，订单簿不增长。
+ * running = false 时在调用线程上同步撮合；running = true 时只计网关侧（风控 + 入队，含背压），撮合在专属线程上进行。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class MatchingSystemBenchmark {
+    private static final int ORDERS = 3 * 1024;
+
+    @Param({"ARRAY", "OFF_HEAP_ARRAY", "TICK_LADDER"})
+    BookType bookType;
+
+    // 对象入口 handleOrder(SimpleOrder) 或零分配入口 handleOrder(OrderFlyweight)
+    @Param({"false", "true"})
+    boolean flyweight;
+
+    @Param({"false", "true"})
+    boolean running;
+
+    private MatchingSystem system;
+    private SimpleOrder[] orders;
+    private ByteBuffer encoded;
+    private final OrderFlyweight view = new OrderFlyweight();
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        system = new MatchingSystem(1, 1 << 14, accounts);
+        system.listProduct(1001L, bookType);
+        orders = new SimpleOrder[ORDERS];
+        encoded = ByteBuffer.allocateDirect(ORDERS * OrderFlyweight.LENGTH);
+        for (int i = 0; i < ORDERS; i++) {
+            boolean sell = i % 3 == 0;
+            long qty = sell ? 5 : 4 - i % 3;
+            orders[i] = new SimpleOrder(0, 1001L, 100, qty, !sell);
+            view.wrap(encoded, i * OrderFlyweight.LENGTH).set(0, 0, 1001L, 100, qty, !sell, orders[i].timestamp);
+        }
+        if (running) {
+            system.start(WaitStrategy.YIELD);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        system.close();
+    }
+
+    @Benchmark
+    public void handleOrder() {
+        int i = cursor;
+        cursor = i + 1 == ORDERS ? 0 : i + 1;
+        if (flyweight) {
+            system.handleOrder(view.wrap(encoded, i * OrderFlyweight.LENGTH));
+        } else {
+            system.handleOrder(orders[i]);
+        }
+    }
+}
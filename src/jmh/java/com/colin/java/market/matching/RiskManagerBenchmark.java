@@ -0,0 +1,59 @@
+package com.colin.java.market.matching;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * RiskManager.validate 随规则数的变化，逐条遍历与编译模式对比
+ * 规则是各不相同的 lambda 类型，逐条遍历时调用点是 megamorphic 的
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class RiskManagerBenchmark {
+
+    @Param({"2", "10", "40"})
+    int rules;
+
+    @Param({"false", "true"})
+    boolean compiled;
+
+    private RiskManager riskManager;
+    private SimpleOrder[] orders;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        riskManager = new RiskManager();
+        List<RiskRule> list = new ArrayList<>();
+        for (int i = 0; i < rules; i++) {
+            final long limit = 1_000_000 + i;
+            switch (i % 4) {
+                case 0 -> list.add(RiskRule.named("qty-" + i, order -> order.quantity < limit));
+                case 1 -> list.add(RiskRule.named("price-" + i, order -> order.price < limit));
+                case 2 -> list.add(RiskRule.named("notional-" + i, order -> order.price * order.quantity < limit * 1_000));
+                default -> list.add(RiskRule.named("product-" + i, order -> order.productId != limit));
+            }
+        }
+        riskManager.reloadRules(list);
+        if (compiled) {
+            riskManager.compile();
+        }
+        // 卖单不占用购买力，只测规则链
+        orders = new SimpleOrder[1024];
+        for (int i = 0; i < orders.length; i++) {
+            orders[i] = new SimpleOrder(i, 1001L, 100 + i % 50, 1 + i % 100, false);
+        }
+    }
+
+    @Benchmark
+    public boolean validate() {
+        return riskManager.validate(orders[cursor++ & (orders.length - 1)]);
+    }
+}
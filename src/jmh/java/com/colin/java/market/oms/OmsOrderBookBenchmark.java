@@ -0,0 +1,63 @@
+package com.colin.java.market.oms;
+
+import com.colin.java.market.oms.order.Order;
+import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.OrderType;
+import com.colin.java.market.oms.order.PriceScale;
+import com.colin.java.market.oms.order.Side;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * market.oms.OrderBook 各撮合策略处理一笔买单的耗时
+ * 策略会改变订单簿，每次调用前重建 depth 档卖盘（Level.Invocation，只适用于微秒级的操作）。
+ * 策略里的控制台输出重定向到空流，只测撮合本身。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class OmsOrderBookBenchmark {
+
+    @Param({"EFF", "MLI", "PFG", "PRM", "AMC", "OLO"})
+    OrderType orderType;
+
+    @Param({"10", "100", "10000"})
+    int depth;
+
+    private OrderBook book;
+    private Order incoming;
+    private PrintStream stdout;
+
+    @Setup(Level.Trial)
+    public void muteConsole() {
+        stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+    }
+
+    @TearDown(Level.Trial)
+    public void restoreConsole() {
+        System.setOut(stdout);
+    }
+
+    @Setup(Level.Invocation)
+    public void buildBook() {
+        book = new OrderBook();
+        for (int i = 0; i < depth; i++) {
+            book.sellOrders.add(Order.ofTicks(Side.SELL, 10_000 + i, 10, OrderType.PFG, PriceScale.CENTS));
+        }
+        // 吃掉一半深度
+        incoming = Order.ofTicks(Side.BUY, 10_000 + depth, depth * 5L, orderType, PriceScale.CENTS);
+    }
+
+    @Benchmark
+    public OrderBook processOrder() {
+        book.processOrder(incoming);
+        return book;
+    }
+}
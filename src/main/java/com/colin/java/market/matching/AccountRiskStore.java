@@ -0,0 +1,149 @@
+package com.colin.java.market.matching;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 按账户划分的风控状态（替代原先全局共享的 AccountContext 静态字段）
+ * accountId 直接作为下标（0 ~ capacity-1），所有字段放在一个 AtomicLongArray 中，
+ * 每个账户占 8 个 long = 一条 64 字节缓存行，不同账户之间没有伪共享；
+ * 网关线程预占购买力、撮合线程释放/结算，全部是单个账户上的 CAS / getAndAdd，没有全局锁。
+ *
+ * 资金流转（只有买单占用购买力）：
+ * 受理买单时按 限价 x 数量 预占（available -> reserved）；
+ * 成交时按限价释放对应的预占，实际只花 成交价 x 数量，价差退回 available；
+ * 撤单、改小、剩余数量被拒时按限价退回 available；卖单成交所得计入 available。
+ * 每笔成交后更新日内净额（买为正、卖为负）。
+ */
+public class AccountRiskStore {
+    private static final int STRIDE = 8;
+    private static final int AVAILABLE = 0; // 可用购买力
+    private static final int RESERVED = 1; // 挂单占用的购买力
+    private static final int DAILY_NET = 2; // 日内已成交净额（数量）
+    private static final int DAILY_NET_LIMIT = 3;
+    private static final int OPEN = 4; // 1 = 已开户
+
+    private final AtomicLongArray slots;
+    private final int capacity;
+
+    public AccountRiskStore(int capacity) {
+        if (capacity <= 0 || capacity > Integer.MAX_VALUE / STRIDE) {
+            throw new IllegalArgumentException("capacity 超出范围: " + capacity);
+        }
+        this.capacity = capacity;
+        this.slots = new AtomicLongArray(capacity * STRIDE);
+    }
+
+    // 开户（或重置账户），需在该账户下单之前调用
+    public void openAccount(long accountId, long balance, long dailyNetLimit) {
+        int base = base(accountId);
+        if (base < 0) {
+            throw new IllegalArgumentException("accountId 超出范围: " + accountId);
+        }
+        slots.set(base + AVAILABLE, balance);
+        slots.set(base + RESERVED, 0);
+        slots.set(base + DAILY_NET, 0);
+        slots.set(base + DAILY_NET_LIMIT, dailyNetLimit);
+        slots.set(base + OPEN, 1);
+    }
+
+    public boolean isOpen(long accountId) {
+        int base = base(accountId);
+        return base >= 0 && slots.get(base + OPEN) == 1;
+    }
+
+    /**
+     * 网关线程调用：预占 amount 购买力，余额不足、账户不存在或 amount 不为正返回 false
+     */
+    public boolean reserve(long accountId, long amount) {
+        int base = base(accountId);
+        if (amount <= 0 || base < 0 || slots.get(base + OPEN) != 1) {
+            return false;
+        }
+        long available;
+        do {
+            available = slots.get(base + AVAILABLE);
+            if (available < amount) {
+                return false;
+            }
+        } while (!slots.compareAndSet(base + AVAILABLE, available, available - amount));
+        slots.getAndAdd(base + RESERVED, amount);
+        return true;
+    }
+
+    // 无条件预占（可以透支），用于撮合线程上必须生效的指令，如改大数量
+    public void forceReserve(long accountId, long amount) {
+        int base = base(accountId);
+        if (base >= 0) {
+            slots.getAndAdd(base + AVAILABLE, -amount);
+            slots.getAndAdd(base + RESERVED, amount);
+        }
+    }
+
+    // 退回预占：撤单、改小、剩余数量被拒
+    public void release(long accountId, long amount) {
+        int base = base(accountId);
+        if (base >= 0) {
+            slots.getAndAdd(base + RESERVED, -amount);
+            slots.getAndAdd(base + AVAILABLE, amount);
+        }
+    }
+
+    // 买方成交：按限价释放预占，价差退回，日内净额增加
+    public void settleBuy(long accountId, long limitPrice, long price, long quantity) {
+        int base = base(accountId);
+        if (base >= 0) {
+            slots.getAndAdd(base + RESERVED, -limitPrice * quantity);
+            if (limitPrice != price) {
+                slots.getAndAdd(base + AVAILABLE, (limitPrice - price) * quantity);
+            }
+            slots.getAndAdd(base + DAILY_NET, quantity);
+        }
+    }
+
+    // 卖方成交：所得计入购买力，日内净额减少
+    public void settleSell(long accountId, long price, long quantity) {
+        int base = base(accountId);
+        if (base >= 0) {
+            slots.getAndAdd(base + AVAILABLE, price * quantity);
+            slots.getAndAdd(base + DAILY_NET, -quantity);
+        }
+    }
+
+    // 日内净额检查：假设订单全部成交后净额仍在限额内
+    public boolean checkDailyNet(SimpleOrder order) {
+        int base = base(order.accountId);
+        if (base < 0) {
+            return false;
+        }
+        long net = slots.get(base + DAILY_NET) + (order.isBuy ? order.quantity : -order.quantity);
+        return Math.abs(net) <= slots.get(base + DAILY_NET_LIMIT);
+    }
+
+    // 日切：清零全部账户的日内净额
+    public void resetDailyNet() {
+        for (int i = 0; i < capacity; i++) {
+            slots.set(i * STRIDE + DAILY_NET, 0);
+        }
+    }
+
+    public long available(long accountId) {
+        return slots.get(base(accountId) + AVAILABLE);
+    }
+
+    public long reserved(long accountId) {
+        return slots.get(base(accountId) + RESERVED);
+    }
+
+    public long dailyNet(long accountId) {
+        return slots.get(base(accountId) + DAILY_NET);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    // 超出范围返回 -1
+    private int base(long accountId) {
+        return accountId >= 0 && accountId < capacity ? (int) accountId * STRIDE : -1;
+    }
+}
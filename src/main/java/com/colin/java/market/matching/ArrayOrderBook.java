@@ -1,83 +1,349 @@
 package com.colin.java.market.matching;
 
+import static com.colin.java.market.matching.OrderNodePool.NIL;
+
 /**
  * 极简的高性能 OrderBook
  * 采用 Array + Cursor 方式，内存连续，CPU Cache 友好。
+ * 每个价格档位挂一条 FIFO 订单队列（侵入式节点池），同价位严格按时间优先成交。
+ * 有效档位位于 [head, end) 区间：最优档吃空后 head 前移即可 O(1) 出队；
+ * 中间被撤空的档位标记为死档位，由 compact() 在空闲时或数组写满时统一清理。
  */
-public class ArrayOrderBook {
+public class ArrayOrderBook implements MatchingBook {
     // 预分配数组，避免扩容抖动。假设深度不超过1000。
     // 真实场景会使用 RingBuffer 或更复杂的数组管理。
+    // 按价格排序的档位：prices 与 levels 一一对应，插入时一起移动
     private final long[] prices;
-    private final long[] quantities;
-    private int size;
+    private final int[] levels; // 该位置对应的档位编号
+    private int head; // 最优档位置
+    private int end; // 最后一个档位之后的位置
+    private int deadLevels; // [head, end) 中已撤空、等待压缩的档位数（head 处的档位始终有效）
     private final boolean isAskBook; // true为卖盘（价格低优先），false为买盘（价格高优先）
 
+    // 以档位编号为下标的数据，档位在数组中移动时编号不变，节点可以稳定地指向所属档位
+    private final long[] quantities; // 档位聚合数量
+    private final int[] heads; // 档位队列头（最早的订单）
+    private final int[] tails; // 档位队列尾
+    private final int[] freeLevels; // 空闲档位编号栈
+    private int freeLevelCount;
+
+    private final OrderNodePool nodes;
+    // orderId -> 节点，撤单/改量 O(1) 定位
+    private final OrderIdIndex index;
+    private FillListener fillListener = FillListener.NO_OP;
+
     public ArrayOrderBook(int capacity, boolean isAskBook) {
+        this(capacity, capacity * 4, isAskBook);
+    }
+
+    public ArrayOrderBook(int capacity, int orderCapacity, boolean isAskBook) {
         this.prices = new long[capacity];
+        this.levels = new int[capacity];
         this.quantities = new long[capacity];
-        this.size = 0;
+        this.heads = new int[capacity];
+        this.tails = new int[capacity];
+        this.freeLevels = new int[capacity];
+        this.nodes = new OrderNodePool(orderCapacity);
+        this.index = new OrderIdIndex(orderCapacity);
         this.isAskBook = isAskBook;
+        resetLevels();
     }
 
+    // 匿名挂单（不关心 Maker 身份的场景，如压测）
     public void add(long price, long quantity) {
+        add(0L, price, quantity);
+    }
+
+    @Override
+    public void add(long orderId, long price, long quantity) {
+        // 先确认节点池有空位再动档位数组，池满时订单簿保持原状
+        if (nodes.isFull()) {
+            throw new IllegalStateException("订单节点池已满, capacity=" + nodes.getCapacity());
+        }
+        if (head == end) {
+            // 空簿时把游标放回中间，两侧都留出插入空间
+            head = end = prices.length >>> 1;
+        }
         // 极简插入排序，保持数组有序
-        // 生产环境通常使用二分查找确定位置，然后 System.arraycopy 移动数据
-        int i = size - 1;
+        // 从队尾向前找到第一个不劣于新价格的位置
+        int i = end - 1;
         if (isAskBook) {
             // 卖盘：价格升序排列 (低价在前)
-            while (i >= 0 && prices[i] > price) {
-                prices[i + 1] = prices[i];
-                quantities[i + 1] = quantities[i];
+            while (i >= head && prices[i] > price) {
                 i--;
             }
         } else {
             // 买盘：价格降序排列 (高价在前)
-            while (i >= 0 && prices[i] < price) {
-                prices[i + 1] = prices[i];
-                quantities[i + 1] = quantities[i];
+            while (i >= head && prices[i] < price) {
                 i--;
             }
         }
-        prices[i + 1] = price;
-        quantities[i + 1] = quantity;
-        size++;
+
+        int level;
+        if (i >= head && prices[i] == price) {
+            // 同价位已存在，直接排到队尾
+            level = levels[i];
+            if (heads[level] == NIL) {
+                deadLevels--; // 死档位复活
+            }
+        } else {
+            int insertAt = i + 1;
+            // 向移动元素较少的一侧挪出空位，新的最优价只需 head 前移
+            if (head > 0 && (end == prices.length || insertAt - head < end - insertAt)) {
+                System.arraycopy(prices, head, prices, head - 1, insertAt - head);
+                System.arraycopy(levels, head, levels, head - 1, insertAt - head);
+                head--;
+                insertAt--;
+            } else {
+                if (end == prices.length) {
+                    if (deadLevels == 0) {
+                        throw new IllegalStateException("价格档位已满, capacity=" + prices.length);
+                    }
+                    compact();
+                    add(orderId, price, quantity);
+                    return;
+                }
+                System.arraycopy(prices, insertAt, prices, insertAt + 1, end - insertAt);
+                System.arraycopy(levels, insertAt, levels, insertAt + 1, end - insertAt);
+                end++;
+            }
+            level = freeLevels[--freeLevelCount];
+            prices[insertAt] = price;
+            levels[insertAt] = level;
+        }
+
+        int node = nodes.acquire(orderId, quantity, level);
+        nodes.append(heads, tails, level, node);
+        quantities[level] += quantity;
+        if (orderId != 0) {
+            index.put(orderId, node);
+        }
     }
 
     // 撮合逻辑 - 优化版
+    @Override
     public long match(long incomingPrice, long incomingQty) {
         long tradedQty = 0;
+        long[] nodeQty = nodes.quantities;
+        int[] nodeNext = nodes.next;
 
-        // 直接使用索引遍历，避免额外的cursor变量
-        int i = 0;
-        while (i < size && incomingQty > 0) {
+        // 从最优档开始遍历，吃空的档位直接出队
+        int i = head;
+        while (i < end && incomingQty > 0) {
             long bestPrice = prices[i];
 
             // 检查价格是否匹配
             boolean priceMatch = isAskBook ? (incomingPrice >= bestPrice) : (incomingPrice <= bestPrice);
             if (!priceMatch) break;
 
-            long available = quantities[i];
-            long matchSize = Math.min(incomingQty, available);
+            int level = levels[i];
+            int node = heads[level];
+            if (node == NIL) {
+                deadLevels--; // 扫过中间的死档位，随后和吃空的档位一起回收
+            }
+            // 按 FIFO 顺序从队首逐个吃掉档位内的挂单
+            while (node != NIL && incomingQty > 0) {
+                long matchSize = Math.min(incomingQty, nodeQty[node]);
 
-            incomingQty -= matchSize;
-            quantities[i] -= matchSize;
-            tradedQty += matchSize;
+                incomingQty -= matchSize;
+                nodeQty[node] -= matchSize;
+                quantities[level] -= matchSize;
+                tradedQty += matchSize;
+                // 未注册监听时跳过回调，省掉每笔成交一次接口调用
+                if (fillListener != FillListener.NO_OP) {
+                    fillListener.onFill(nodes.orderIds[node], bestPrice, matchSize, nodeQty[node]);
+                }
 
-            // 如果当前档位吃完了，直接跳过（延迟压缩）
-            if (quantities[i] == 0) {
-                i++; // 只是标记跳过，不立即压缩数组
+                if (nodeQty[node] != 0) {
+                    break; // 部分成交，该订单继续排在队首
+                }
+                // 全部成交的一定是队首，直接出队并归还节点
+                long makerId = nodes.orderIds[node];
+                if (makerId != 0) {
+                    index.remove(makerId);
+                }
+                int nextNode = nodeNext[node];
+                nodes.release(node);
+                node = nextNode;
+            }
+            // 统一修正队首指针，避免逐个节点调用 unlink
+            heads[level] = node;
+            if (node != NIL) {
+                nodes.prev[node] = NIL;
+                break; // 档位还有剩余，说明来单已经吃完
+            }
+            // 档位吃空：归还档位编号，head 前移即出队
+            tails[level] = NIL;
+            freeLevels[freeLevelCount++] = level;
+            i++;
+        }
+        head = i;
+        if (deadLevels != 0) {
+            popDeadLevels();
+        }
+        return tradedQty;
+    }
+
+    // 最优档之后紧跟的死档位一起出队，保证 head 处始终是有效档位
+    private void popDeadLevels() {
+        while (head < end && heads[levels[head]] == NIL) {
+            freeLevels[freeLevelCount++] = levels[head];
+            deadLevels--;
+            head++;
+        }
+    }
+
+    /**
+     * 压缩：清除死档位并把有效档位移回数组中间
+     * 不在撮合关键路径上执行：由分片线程空闲时调用，或在数组写满时由 add 触发，成本按挂单摊还
+     */
+    @Override
+    public void compact() {
+        // 没有死档位且右侧还有空间（或数组确实已满）时无事可做
+        if (deadLevels == 0 && (end < prices.length || head == 0)) {
+            return;
+        }
+        int w = head;
+        for (int r = head; r < end; r++) {
+            int level = levels[r];
+            if (heads[level] == NIL) {
+                freeLevels[freeLevelCount++] = level;
             } else {
-                i++; // 继续下一个价格
+                prices[w] = prices[r];
+                levels[w] = level;
+                w++;
             }
         }
+        int live = w - head;
+        int start = (prices.length - live) >>> 1;
+        System.arraycopy(prices, head, prices, start, live);
+        System.arraycopy(levels, head, levels, start, live);
+        head = start;
+        end = start + live;
+        deadLevels = 0;
+    }
+
+    /**
+     * 撤单：通过索引 O(1) 定位节点，从档位队列摘除并归还节点池
+     * 最优档被撤空时直接出队，中间档位被撤空则标记为死档位，延迟压缩
+     * @return 订单不存在（已成交或已撤销）时返回 false
+     */
+    @Override
+    public boolean cancel(long orderId) {
+        int node = index.remove(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int level = nodes.levels[node];
+        quantities[level] -= nodes.quantities[node];
+        nodes.unlink(heads, tails, node);
+        nodes.release(node);
+        if (heads[level] == NIL) {
+            deadLevels++;
+            popDeadLevels();
+        }
+        return true;
+    }
 
-        // 注意：我们移除了实时压缩数组的代码，因为这是性能瓶颈
-        // 在高性能交易系统中，通常会在非关键路径上定期压缩数组，或使用环形缓冲区实现
+    /**
+     * 改量：newQty 为改量后的剩余数量
+     * 减量保留原有时间优先级；增量视为新订单，重新排到档位队尾；newQty <= 0 等同撤单
+     */
+    @Override
+    public boolean amend(long orderId, long newQty) {
+        if (newQty <= 0) {
+            return cancel(orderId);
+        }
+        int node = index.get(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int level = nodes.levels[node];
+        long oldQty = nodes.quantities[node];
+        quantities[level] += newQty - oldQty;
+        nodes.quantities[node] = newQty;
+        if (newQty > oldQty && tails[level] != node) {
+            nodes.unlink(heads, tails, node);
+            nodes.append(heads, tails, level, node);
+        }
+        return true;
+    }
 
-        return tradedQty;
+    // 挂单剩余数量，不存在返回 0
+    @Override
+    public long orderQuantity(long orderId) {
+        int node = index.get(orderId);
+        return node == OrderIdIndex.MISSING ? 0 : nodes.quantities[node];
     }
 
+    @Override
     public void clear() {
-        size = 0;
+        head = end = 0;
+        deadLevels = 0;
+        nodes.clear();
+        index.clear();
+        resetLevels();
+    }
+
+    private void resetLevels() {
+        int capacity = prices.length;
+        for (int level = 0; level < capacity; level++) {
+            quantities[level] = 0;
+            heads[level] = NIL;
+            tails[level] = NIL;
+            // 倒序入栈，使编号小的档位先被使用
+            freeLevels[level] = capacity - 1 - level;
+        }
+        freeLevelCount = capacity;
+    }
+
+    @Override
+    public int depth(long[] outPrices, long[] outQuantities, int maxLevels) {
+        int n = 0;
+        for (int i = head; i < end && n < maxLevels; i++) {
+            int level = levels[i];
+            if (heads[level] != NIL) { // 跳过死档位
+                outPrices[n] = prices[i];
+                outQuantities[n] = quantities[level];
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void forEachOrder(OrderVisitor visitor) {
+        for (int i = head; i < end; i++) {
+            long price = prices[i];
+            for (int node = heads[levels[i]]; node != NIL; node = nodes.next[node]) {
+                visitor.visit(nodes.orderIds[node], price, nodes.quantities[node]);
+            }
+        }
+    }
+
+    @Override
+    public void setFillListener(FillListener fillListener) {
+        this.fillListener = fillListener == null ? FillListener.NO_OP : fillListener;
+    }
+
+    // 档位数（包含尚未压缩的死档位）
+    public int size() {
+        return end - head;
+    }
+
+    // 等待压缩的死档位数
+    public int deadLevels() {
+        return deadLevels;
+    }
+
+    // 挂单数
+    @Override
+    public int orderCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public boolean isAskBook() {
+        return isAskBook;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,82 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+/**
+ * 批量下单的结果缓冲区（由调用方持有并反复使用，每个网关线程一个）
+ * outcomes[i] 对应批次中第 i 个订单的受理结果；按分片分组用的临时数组也放在这里，
+ * 这样 submitBatch 本身不持有状态，多个网关线程可以并发调用，批次大小稳定后不再分配内存。
+ */
+public class BatchResult {
+    public static final byte ACCEPTED = 0;
+    public static final byte REJECTED_RISK = 1;
+    public static final byte UNKNOWN_PRODUCT = 2;
+    public static final byte REJECTED_CLOSED = 3; // 分片已下架或系统正在关闭
+
+    public byte[] outcomes;
+    public int size;
+    public int accepted;
+
+    // 风控结果
+    boolean[] passed;
+    // 分组：每组一个分片，组内订单下标按原顺序串成链表（groupHead/groupTail + next），发布前展开到 indices
+    MatchingSystem.EngineShard[] groupShards;
+    int[] groupHead;
+    int[] groupTail;
+    int groupCount;
+    int[] next;
+    int[] indices;
+
+    public BatchResult(int capacity) {
+        allocate(Math.max(1, capacity));
+    }
+
+    private void allocate(int capacity) {
+        outcomes = new byte[capacity];
+        passed = new boolean[capacity];
+        next = new int[capacity];
+        indices = new int[capacity];
+        groupShards = new MatchingSystem.EngineShard[Math.min(capacity, 16)];
+        groupHead = new int[groupShards.length];
+        groupTail = new int[groupShards.length];
+    }
+
+    // 为 count 个订单准备缓冲区，容量不足时扩容
+    void reset(int count) {
+        if (outcomes.length < count) {
+            allocate(count);
+        }
+        size = count;
+        accepted = 0;
+        // 只清掉上一批留下的分片引用
+        Arrays.fill(groupShards, 0, groupCount, null);
+        groupCount = 0;
+    }
+
+    // 订单 i 加入 shard 所在的组；批次里的产品通常很少，线性查找即可，连续同产品时第一次比较就命中
+    void addToGroup(MatchingSystem.EngineShard shard, int i) {
+        int g = groupCount - 1;
+        while (g >= 0 && groupShards[g] != shard) {
+            g--;
+        }
+        next[i] = -1;
+        if (g < 0) {
+            if (groupCount == groupShards.length) {
+                int capacity = groupCount * 2;
+                groupShards = Arrays.copyOf(groupShards, capacity);
+                groupHead = Arrays.copyOf(groupHead, capacity);
+                groupTail = Arrays.copyOf(groupTail, capacity);
+            }
+            g = groupCount++;
+            groupShards[g] = shard;
+            groupHead[g] = i;
+        } else {
+            next[groupTail[g]] = i;
+        }
+        groupTail[g] = i;
+    }
+
+    public byte outcome(int i) {
+        return outcomes[i];
+    }
+}
@@ -0,0 +1,100 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+/**
+ * 分片订单簿的时点快照（买卖盘全部挂单 + 对应的日志序号）
+ * 挂单按撮合优先顺序平铺为 (orderId, price, quantity, accountId) 四元组，买盘在前、卖盘在后；
+ * 恢复时按同样的顺序 add 回空簿，价格优先和同价位的时间优先都与快照时一致，
+ * 同时重建分片的在簿订单账户索引（与只重放日志的恢复结果一致，恢复后的挂单照常结算/退回预占）。
+ * accountId 为 NO_ACCOUNT 表示该挂单不跟踪账户（匿名挂单或分片未开启账户风控）。
+ * 由 SnapshotStore 复用，撮合线程 capture 后交给后台线程写盘。
+ */
+public class BookSnapshot implements OrderVisitor {
+    // 每条挂单占用的 long 个数
+    public static final int FIELDS = 4;
+    public static final long NO_ACCOUNT = -1;
+
+    public long productId;
+    // 快照包含日志中序号 <= sequence 的全部指令的效果
+    public long sequence;
+    public int buyCount;
+    public int sellCount;
+    public long[] orders;
+    private int size; // capture 过程中已写入的 long 个数
+    private OrderAccountIndex capturing; // capture 过程中查账户用，可以为 null
+
+    public BookSnapshot(int initialOrders) {
+        this.orders = new long[Math.max(1, initialOrders) * FIELDS];
+    }
+
+    public void capture(long productId, long sequence, MatchingBook buyBook, MatchingBook sellBook) {
+        capture(productId, sequence, buyBook, sellBook, null);
+    }
+
+    /**
+     * 撮合线程调用：把两边的挂单拷贝到 orders，只是数组写入和索引查找，不做任何 IO
+     * @param riskOrders 分片的在簿订单账户索引，未开启账户风控时为 null
+     */
+    public void capture(long productId, long sequence, MatchingBook buyBook, MatchingBook sellBook,
+                        OrderAccountIndex riskOrders) {
+        int needed = (buyBook.orderCount() + sellBook.orderCount()) * FIELDS;
+        if (orders.length < needed) {
+            orders = new long[Math.max(needed, orders.length * 2)];
+        }
+        this.productId = productId;
+        this.sequence = sequence;
+        size = 0;
+        capturing = riskOrders;
+        buyBook.forEachOrder(this);
+        buyCount = size / FIELDS;
+        sellBook.forEachOrder(this);
+        sellCount = size / FIELDS - buyCount;
+        capturing = null;
+    }
+
+    @Override
+    public void visit(long orderId, long price, long quantity) {
+        long account = NO_ACCOUNT;
+        if (capturing != null && orderId != 0) {
+            int slot = capturing.find(orderId);
+            if (slot != OrderIdIndex.MISSING) {
+                account = capturing.accountAt(slot);
+            }
+        }
+        orders[size] = orderId;
+        orders[size + 1] = price;
+        orders[size + 2] = quantity;
+        orders[size + 3] = account;
+        size += FIELDS;
+    }
+
+    public void restore(MatchingBook buyBook, MatchingBook sellBook) {
+        restore(buyBook, sellBook, null);
+    }
+
+    /**
+     * 把快照中的挂单放回空簿，并把带账户的挂单放回账户索引（调用方负责先 clear 订单簿和索引）
+     * @param riskOrders 分片的在簿订单账户索引，未开启账户风控时为 null
+     */
+    public void restore(MatchingBook buyBook, MatchingBook sellBook, OrderAccountIndex riskOrders) {
+        int p = 0;
+        for (int i = 0; i < buyCount + sellCount; i++, p += FIELDS) {
+            (i < buyCount ? buyBook : sellBook).add(orders[p], orders[p + 1], orders[p + 2]);
+            if (riskOrders != null && orders[p] != 0 && orders[p + 3] != NO_ACCOUNT) {
+                riskOrders.put(orders[p], orders[p + 3], orders[p + 1]);
+            }
+        }
+    }
+
+    public int orderCount() {
+        return buyCount + sellCount;
+    }
+
+    // 按优先顺序逐条比较，用于测试
+    public boolean sameOrders(BookSnapshot other) {
+        int n = orderCount() * FIELDS;
+        return buyCount == other.buyCount && sellCount == other.sellCount
+                && Arrays.equals(orders, 0, n, other.orders, 0, n);
+    }
+}
@@ -0,0 +1,29 @@
+package com.colin.java.market.matching;
+
+// 订单簿实现类型，按产品选择
+public enum BookType {
+    // 有序数组：价格档位少且集中的产品
+    ARRAY {
+        @Override
+        public MatchingBook newBook(boolean isAskBook) {
+            return new ArrayOrderBook(1024, isAskBook);
+        }
+    },
+    // 价格阶梯：档位多、深度大的产品，挂单 O(1)
+    TICK_LADDER {
+        @Override
+        public MatchingBook newBook(boolean isAskBook) {
+            return new TickLadderOrderBook(4096, 4096, isAskBook);
+        }
+    },
+    // 堆外有序数组：与 ARRAY 相同的撮合行为，档位与挂单不占堆，适合产品数很多的场景
+    // MatchingSystem 按类型创建的订单簿在产品下架或系统关闭时 close()；映射文件需要自己构造 OffHeapArrayOrderBook
+    OFF_HEAP_ARRAY {
+        @Override
+        public MatchingBook newBook(boolean isAskBook) {
+            return new OffHeapArrayOrderBook(1024, 4096, isAskBook);
+        }
+    };
+
+    public abstract MatchingBook newBook(boolean isAskBook);
+}
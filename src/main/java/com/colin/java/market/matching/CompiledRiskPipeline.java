@@ -0,0 +1,200 @@
+package com.colin.java.market.matching;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 编译后的风控流水线
+ * 逐条遍历 List<RiskRule> 时，rule.check 这个调用点会看到所有规则的 lambda 类型，规则一多就变成 megamorphic，
+ * JIT 只能走虚调用、无法内联。这里把规则逐条绑定为常量接收者的 MethodHandle，用 guardWithTest 串成一个整体：
+ * 每条规则在链上都有独立的调用点且接收者是常量，热点后 JIT 按实例定制（customize）并内联整条链。
+ * 规则都是无副作用的检查，结果与执行顺序无关，因此编译时可以按实测的"代价 / 拒绝率"排序，
+ * 又便宜又容易拒单的规则放在前面，使平均检查次数最少。
+ *
+ * 指标：
+ * 只统计总次数和每条规则的拒单数（拒单是少数，LongAdder 分散竞争），每条规则的执行次数由 Fail-fast 顺序推出；
+ * 延迟按 1/SAMPLE_RATE 抽样，抽中的订单改走逐条计时的慢路径，平时路径上没有 nanoTime。
+ */
+public final class CompiledRiskPipeline {
+    private static final int SAMPLE_RATE = 1024; // 2 的幂
+    private static final MethodHandle CHECK;
+
+    static {
+        try {
+            CHECK = MethodHandles.lookup().findVirtual(RiskRule.class, "check",
+                    MethodType.methodType(boolean.class, SimpleOrder.class));
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final RiskRule[] rules; // 已解包、按执行顺序排列
+    private final String[] names;
+    // (SimpleOrder)int：返回第一条拒绝的规则下标，全部通过返回 -1
+    private final MethodHandle fused;
+
+    private final LongAdder evaluated = new LongAdder();
+    private final LongAdder[] rejects;
+    private final LongAdder[] sampledNanos;
+    private final LongAdder[] samples;
+
+    private CompiledRiskPipeline(RiskRule[] rules, String[] names) {
+        this.rules = rules;
+        this.names = names;
+        this.rejects = adders(rules.length);
+        this.sampledNanos = adders(rules.length);
+        this.samples = adders(rules.length);
+        MethodHandle chain = MethodHandles.dropArguments(
+                MethodHandles.constant(int.class, -1), 0, SimpleOrder.class);
+        for (int i = rules.length - 1; i >= 0; i--) {
+            MethodHandle test = CHECK.bindTo(rules[i]);
+            MethodHandle reject = MethodHandles.dropArguments(
+                    MethodHandles.constant(int.class, i), 0, SimpleOrder.class);
+            chain = MethodHandles.guardWithTest(test, chain, reject);
+        }
+        this.fused = chain;
+    }
+
+    /**
+     * 按给定顺序编译
+     */
+    public static CompiledRiskPipeline compile(List<RiskRule> rules) {
+        RiskRule[] unwrapped = new RiskRule[rules.size()];
+        String[] names = new String[rules.size()];
+        for (int i = 0; i < unwrapped.length; i++) {
+            RiskRule rule = rules.get(i);
+            if (rule instanceof RiskRule.Named named) {
+                unwrapped[i] = named.rule;
+                names[i] = named.name;
+            } else {
+                unwrapped[i] = rule;
+                names[i] = "rule-" + i;
+            }
+        }
+        return new CompiledRiskPipeline(unwrapped, names);
+    }
+
+    /**
+     * 按本流水线的实测指标重新排序后编译：代价 / 拒绝率 越小越靠前
+     * 没有样本的规则代价按 1ns 计，从未执行过的规则保持原有相对顺序排在最后
+     */
+    public CompiledRiskPipeline reorder() {
+        RuleStats[] stats = stats();
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < rules.length; i++) {
+            order.add(i);
+        }
+        order.sort(Comparator.comparingDouble(i -> rank(stats[i])));
+        RiskRule[] sortedRules = new RiskRule[rules.length];
+        String[] sortedNames = new String[rules.length];
+        for (int k = 0; k < rules.length; k++) {
+            sortedRules[k] = rules[order.get(k)];
+            sortedNames[k] = names[order.get(k)];
+        }
+        return new CompiledRiskPipeline(sortedRules, sortedNames);
+    }
+
+    private static double rank(RuleStats s) {
+        if (s.invocations == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        double cost = s.samples == 0 ? 1.0 : Math.max(1.0, s.avgNanos);
+        // 拒绝率为 0 的规则无法提前结束检查，只按代价排在能拒单的规则之后
+        double rejectRate = (double) s.rejects / s.invocations;
+        return rejectRate == 0 ? 1e12 + cost : cost / rejectRate;
+    }
+
+    // 全部规则通过返回 true
+    public boolean check(SimpleOrder order) {
+        evaluated.increment();
+        int failed;
+        if ((ThreadLocalRandom.current().nextInt() & (SAMPLE_RATE - 1)) == 0) {
+            failed = checkSampled(order);
+        } else {
+            try {
+                failed = (int) fused.invokeExact(order);
+            } catch (RuntimeException | Error e) {
+                throw e;
+            } catch (Throwable e) {
+                throw new IllegalStateException(e);
+            }
+        }
+        if (failed >= 0) {
+            rejects[failed].increment();
+            return false;
+        }
+        return true;
+    }
+
+    // 抽样慢路径：逐条计时
+    private int checkSampled(SimpleOrder order) {
+        for (int i = 0; i < rules.length; i++) {
+            long start = System.nanoTime();
+            boolean passed = rules[i].check(order);
+            sampledNanos[i].add(System.nanoTime() - start);
+            samples[i].increment();
+            if (!passed) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    // 按执行顺序输出每条规则的指标
+    public RuleStats[] stats() {
+        RuleStats[] out = new RuleStats[rules.length];
+        long reaching = evaluated.sum();
+        for (int i = 0; i < rules.length; i++) {
+            long rejected = rejects[i].sum();
+            long sampleCount = samples[i].sum();
+            out[i] = new RuleStats(names[i], reaching, rejected, sampleCount,
+                    sampleCount == 0 ? 0 : (double) sampledNanos[i].sum() / sampleCount);
+            reaching -= rejected;
+        }
+        return out;
+    }
+
+    public int size() {
+        return rules.length;
+    }
+
+    public String[] ruleNames() {
+        return names.clone();
+    }
+
+    private static LongAdder[] adders(int n) {
+        LongAdder[] adders = new LongAdder[n];
+        for (int i = 0; i < n; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    // 单条规则的指标快照
+    public static final class RuleStats {
+        public final String name;
+        public final long invocations;
+        public final long rejects;
+        public final long samples;
+        public final double avgNanos; // 抽样平均耗时
+
+        RuleStats(String name, long invocations, long rejects, long samples, double avgNanos) {
+            this.name = name;
+            this.invocations = invocations;
+            this.rejects = rejects;
+            this.samples = samples;
+            this.avgNanos = avgNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%s invocations=%d rejects=%d avg=%.1fns", name, invocations, rejects, avgNanos);
+        }
+    }
+}
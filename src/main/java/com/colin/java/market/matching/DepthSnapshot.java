@@ -0,0 +1,64 @@
+package com.colin.java.market.matching;
+
+/**
+ * 前 N 档聚合深度（Flyweight），由 MarketDataPublisher 复用，价格按优先顺序排列
+ * 下游也可以用它按增量重建深度（apply），这时容量取 2 × depth：一批增量里新增的档位可能先于被挤出的档位出现。
+ */
+public class DepthSnapshot {
+    public long productId;
+    public long sequence;
+    public final long[] bidPrices;
+    public final long[] bidQuantities;
+    public int bidCount;
+    public final long[] askPrices;
+    public final long[] askQuantities;
+    public int askCount;
+
+    public DepthSnapshot(int depth) {
+        this.bidPrices = new long[depth];
+        this.bidQuantities = new long[depth];
+        this.askPrices = new long[depth];
+        this.askQuantities = new long[depth];
+    }
+
+    /**
+     * 应用一条增量（MarketDataPublisher.LEVEL_*），并把 sequence 推进到该增量
+     * @return false 表示增量与当前深度不一致（删除/修改不存在的档位，或新增已存在的档位、超出容量），需要重新取快照
+     */
+    public boolean apply(long sequence, boolean isBid, byte action, long price, long quantity) {
+        long[] prices = isBid ? bidPrices : askPrices;
+        long[] quantities = isBid ? bidQuantities : askQuantities;
+        int count = isBid ? bidCount : askCount;
+        // 档数很少，顺序查找插入位置
+        int i = 0;
+        while (i < count && (isBid ? prices[i] > price : prices[i] < price)) {
+            i++;
+        }
+        boolean found = i < count && prices[i] == price;
+        if (action == MarketDataPublisher.LEVEL_ADD) {
+            if (found || count == prices.length) {
+                return false;
+            }
+            System.arraycopy(prices, i, prices, i + 1, count - i);
+            System.arraycopy(quantities, i, quantities, i + 1, count - i);
+            prices[i] = price;
+            quantities[i] = quantity;
+            count++;
+        } else if (!found) {
+            return false;
+        } else if (action == MarketDataPublisher.LEVEL_REMOVE) {
+            System.arraycopy(prices, i + 1, prices, i, count - i - 1);
+            System.arraycopy(quantities, i + 1, quantities, i, count - i - 1);
+            count--;
+        } else {
+            quantities[i] = quantity;
+        }
+        if (isBid) {
+            bidCount = count;
+        } else {
+            askCount = count;
+        }
+        this.sequence = sequence;
+        return true;
+    }
+}
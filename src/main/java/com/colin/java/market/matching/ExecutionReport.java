@@ -0,0 +1,31 @@
+package com.colin.java.market.matching;
+
+/**
+ * 执行回报（Flyweight）
+ * 实例只存在于 ExecutionReportRing 的槽位中，撮合线程原地改写字段，消费者读取后即可复用，不产生对象。
+ */
+public class ExecutionReport {
+    // 回报类型
+    public static final byte ACK = 0; // 指令已受理：新单受理 / 撤单成功 / 改量成功
+    public static final byte TRADE = 1; // 成交
+    public static final byte REJECT = 2; // 拒绝
+
+    // 拒绝原因
+    public static final byte REASON_NONE = 0;
+    public static final byte REASON_UNKNOWN_ORDER = 1; // 撤单/改量找不到订单（已成交或已撤）
+    public static final byte REASON_BOOK_FULL = 2; // 剩余数量无法挂单（档位或节点已满）
+    public static final byte REASON_DUPLICATE_ORDER = 3; // 订单号与在簿订单重复，整单拒绝
+
+    public byte type;
+    public byte command; // 对应的指令类型，见 SimpleOrder.NEW / CANCEL / AMEND
+    public byte rejectReason;
+    public long productId;
+    public long orderId; // 本次指令的订单（成交时为 Taker）
+    public long makerOrderId; // 成交对手方，非成交回报为 0
+    public boolean isBuy;
+    public long price; // 成交回报为成交价，其余为订单价格
+    public long quantity; // 成交回报为成交数量，ACK 为受理数量，REJECT 为被拒数量
+    public long leavesQty; // Taker 剩余未成交数量
+    public long makerLeavesQty; // Maker 成交后剩余数量
+    public long timestamp; // 订单进入系统的时间，可用于计算端到端延迟
+}
@@ -0,0 +1,6 @@
+package com.colin.java.market.matching;
+
+// 执行回报消费回调，report 是 Ring 中的槽位，回调返回后会被复用，需要保留的字段请自行拷贝
+public interface ExecutionReportHandler {
+    void onReport(ExecutionReport report, long sequence, boolean endOfBatch);
+}
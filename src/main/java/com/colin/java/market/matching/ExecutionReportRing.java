@@ -0,0 +1,86 @@
+package com.colin.java.market.matching;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 执行回报 RingBuffer，单生产者（分片撮合线程）/ 单消费者
+ * 槽位是预分配的 ExecutionReport，撮合线程 claim() 拿到槽位原地填写，publish() 后对消费者可见。
+ * 只有一个生产者，不需要 CAS，也不需要逐槽位的发布序号，只靠两个序号的 release/acquire 保证可见性。
+ */
+public class ExecutionReportRing {
+    private final ExecutionReport[] slots;
+    private final int mask;
+    private final int capacity;
+
+    // 生产者已发布的最大序号
+    private final AtomicLong producerSequence = new AtomicLong(-1);
+    // 消费者已处理完的最大序号
+    private final AtomicLong consumerSequence = new AtomicLong(-1);
+
+    // 仅生产者线程访问
+    private long claimed = -1;
+    private long cachedConsumer = -1; // 缓存消费者进度，环未满时不读 volatile
+
+    public ExecutionReportRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity 必须是 2 的幂: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new ExecutionReport[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new ExecutionReport();
+        }
+    }
+
+    /**
+     * 生产者调用：取下一个可写槽位，调用方填写字段后必须调用 publish()
+     * 环满时自旋等待消费者（背压），回报不丢
+     */
+    public ExecutionReport claim() {
+        long seq = ++claimed;
+        long wrapPoint = seq - capacity;
+        if (wrapPoint > cachedConsumer) {
+            long consumer;
+            while (wrapPoint > (consumer = consumerSequence.get())) {
+                Thread.onSpinWait();
+            }
+            cachedConsumer = consumer;
+        }
+        return slots[(int) seq & mask];
+    }
+
+    // 生产者调用：发布已 claim 的所有槽位。未发布的槽位消费者看不到，连续 claim 不能超过容量
+    public void publish() {
+        producerSequence.lazySet(claimed);
+    }
+
+    /**
+     * 消费者调用（仅限单线程）：批量读取已发布的回报
+     * @return 本次处理的条数，0 表示当前无数据
+     */
+    public int poll(ExecutionReportHandler handler, int maxBatch) {
+        long current = consumerSequence.get();
+        long available = Math.min(producerSequence.get(), current + maxBatch);
+        if (available <= current) {
+            return 0;
+        }
+        for (long seq = current + 1; seq <= available; seq++) {
+            handler.onReport(slots[(int) seq & mask], seq, seq == available);
+        }
+        consumerSequence.lazySet(available);
+        return (int) (available - current);
+    }
+
+    public boolean isEmpty() {
+        return consumerSequence.get() == producerSequence.get();
+    }
+
+    public long getProducerSequence() {
+        return producerSequence.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
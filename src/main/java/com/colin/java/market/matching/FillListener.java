@@ -0,0 +1,10 @@
+package com.colin.java.market.matching;
+
+// 成交回调：每成交一个挂单（Maker）触发一次
+// 参数全部是基本类型，回报链路不产生对象
+public interface FillListener {
+    // makerRemaining 为该挂单成交后的剩余数量，0 表示已全部成交出队
+    void onFill(long makerOrderId, long price, long quantity, long makerRemaining);
+
+    FillListener NO_OP = (makerOrderId, price, quantity, makerRemaining) -> { };
+}
@@ -0,0 +1,152 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 对数分桶的延迟直方图（纳秒）
+ * 每个 2 的幂区间再等分为 SUB_BUCKETS 个子桶，相对误差不超过 1/SUB_BUCKETS（约 1.6%），
+ * 桶下标只需一次 numberOfLeadingZeros 和移位，不分配对象，可以常驻生产环境。
+ * 每个记录线程各有一份计数（首次记录时登记，约 18KB），只有该线程写，记录是一次普通读写，
+ * 多个线程同时记录也不会争用同一缓存行；snapshot 把各线程的计数合并。
+ * 清零不改写记录线程的计数，而是记下已取走的部分，之后只统计增量，每一次记录恰好落在某一个统计区间内。
+ * 超过 2^MAX_EXPONENT 纳秒（约 18 分钟）的值计入最后一个桶。
+ */
+public final class LatencyHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int MAX_EXPONENT = 40;
+    // [0, 2 * SUB_BUCKETS) 按 1ns 线性计数，之后每个 2 的幂区间 SUB_BUCKETS 个桶
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + SUB_BUCKETS;
+
+    private final List<Recorder> recorders = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<Recorder> local = ThreadLocal.withInitial(this::register);
+
+    // 单个记录线程的计数：counts 只有该线程写；taken 为已被 snapshot 取走的计数，只在 snapshot 内读写
+    private static final class Recorder {
+        final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        final long[] taken = new long[BUCKETS];
+    }
+
+    private Recorder register() {
+        Recorder recorder = new Recorder();
+        recorders.add(recorder);
+        return recorder;
+    }
+
+    public void record(long nanos) {
+        AtomicLongArray counts = local.get().counts;
+        int bucket = bucket(nanos);
+        // 单写者：有序写即可，不需要原子自增
+        counts.lazySet(bucket, counts.get(bucket) + 1);
+    }
+
+    static int bucket(long value) {
+        if (value < 2 * SUB_BUCKETS) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent > MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int shift = exponent - SUB_BUCKET_BITS;
+        return (shift << SUB_BUCKET_BITS) + (int) (value >>> shift);
+    }
+
+    // 桶内的最大值，分位数按它报告（偏保守）
+    static long highestValue(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long sub = (bucket & (SUB_BUCKETS - 1)) + SUB_BUCKETS;
+        return ((sub + 1) << shift) - 1;
+    }
+
+    /**
+     * 把当前计数拷贝到 into（调用方可复用），reset 为 true 时同时清零，用于按区间统计
+     */
+    public synchronized Snapshot snapshot(Snapshot into, boolean reset) {
+        Arrays.fill(into.counts, 0);
+        for (Recorder recorder : recorders) {
+            for (int i = 0; i < BUCKETS; i++) {
+                long c = recorder.counts.get(i);
+                into.counts[i] += c - recorder.taken[i];
+                if (reset) {
+                    recorder.taken[i] = c;
+                }
+            }
+        }
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            total += into.counts[i];
+        }
+        into.total = total;
+        return into;
+    }
+
+    public Snapshot snapshot(boolean reset) {
+        return snapshot(new Snapshot(), reset);
+    }
+
+    // 某一时刻的计数副本，分位数查询在副本上进行，不影响记录
+    public static final class Snapshot {
+        final long[] counts = new long[BUCKETS];
+        long total;
+
+        public long count() {
+            return total;
+        }
+
+        /**
+         * @param percentile 0 ~ 100，例如 99.99
+         * @return 不少于该比例的样本落在其下的最小桶上界；无样本时返回 0
+         */
+        public long valueAtPercentile(double percentile) {
+            if (total == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * total));
+            long seen = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return highestValue(i);
+                }
+            }
+            return highestValue(BUCKETS - 1);
+        }
+
+        public long max() {
+            for (int i = BUCKETS - 1; i >= 0; i--) {
+                if (counts[i] != 0) {
+                    return highestValue(i);
+                }
+            }
+            return 0;
+        }
+
+        // 按桶上界估算的平均值
+        public double mean() {
+            if (total == 0) {
+                return 0;
+            }
+            double sum = 0;
+            for (int i = 0; i < BUCKETS; i++) {
+                if (counts[i] != 0) {
+                    sum += (double) counts[i] * highestValue(i);
+                }
+            }
+            return sum / total;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d mean=%.0f p50=%d p90=%d p99=%d p99.9=%d p99.99=%d max=%d (ns)",
+                    total, mean(), valueAtPercentile(50), valueAtPercentile(90), valueAtPercentile(99),
+                    valueAtPercentile(99.9), valueAtPercentile(99.99), max());
+        }
+    }
+}
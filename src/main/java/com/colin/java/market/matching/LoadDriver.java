@@ -0,0 +1,186 @@
+package com.colin.java.market.matching;
+
+/**
+ * 固定速率压测驱动
+ * 按目标速率为每条指令排定"计划发送时间"（开始时间 + i / rate），到点才发送；
+ * 响应时间从计划发送时间算起，而不是实际发送时间——系统卡顿时后面的指令虽然晚发了，
+ * 等待的时间同样计入，避免协调遗漏（Coordinated Omission）把尾延迟藏起来。
+ * 同时记录从实际发送时间算起的"未修正"延迟，两者差距越大说明驱动端被系统拖慢得越多。
+ *
+ * 发送前把 order.timestamp 设为计划发送时间，开启 PipelineLatency 时撮合线程上的 queue 阶段
+ * 就是修正后的"计划发送 -> 开始撮合"延迟（撤单经 cancelOrder 入队时重新取时间戳，这一段不含修正）；
+ * 驱动端自己测的是 handleOrder 返回（入队完成）为止的延迟。
+ * 单线程驱动，需要更高速率时用多个驱动各自负责一部分产品。
+ */
+public class LoadDriver {
+    private final MatchingSystem system;
+    private final OrderFlowGenerator generator;
+    private final SimpleOrder order = new SimpleOrder();
+
+    public LoadDriver(MatchingSystem system, OrderFlowGenerator generator) {
+        this.system = system;
+        this.generator = generator;
+    }
+
+    // 一次固定速率运行的结果
+    public static class Result {
+        public final long targetRate;
+        public final long sent;
+        public final long durationNanos;
+        public final LatencyHistogram.Snapshot corrected;
+        public final LatencyHistogram.Snapshot uncorrected;
+        // 撮合线程上的排队延迟（计划发送 -> 开始撮合），未开启 PipelineLatency 时为 null
+        public final LatencyHistogram.Snapshot queue;
+
+        Result(long targetRate, long sent, long durationNanos, LatencyHistogram.Snapshot corrected,
+               LatencyHistogram.Snapshot uncorrected, LatencyHistogram.Snapshot queue) {
+            this.targetRate = targetRate;
+            this.sent = sent;
+            this.durationNanos = durationNanos;
+            this.corrected = corrected;
+            this.uncorrected = uncorrected;
+            this.queue = queue;
+        }
+
+        public double achievedRate() {
+            return durationNanos == 0 ? 0 : sent * 1e9 / durationNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("target=%d/s achieved=%.0f/s sent=%d%n  corrected   %s%n  uncorrected %s%s",
+                    targetRate, achievedRate(), sent, corrected, uncorrected,
+                    queue == null ? "" : String.format("%n  queue       %s", queue));
+        }
+    }
+
+    /**
+     * 以 ratePerSecond 持续发送 durationMillis，运行中撮合线程时等待已发送的指令全部处理完再返回
+     */
+    public Result run(long ratePerSecond, long durationMillis) {
+        if (ratePerSecond <= 0 || durationMillis <= 0) {
+            throw new IllegalArgumentException("rate/duration 必须为正数");
+        }
+        LatencyHistogram corrected = new LatencyHistogram();
+        LatencyHistogram uncorrected = new LatencyHistogram();
+        PipelineLatency latency = system.getLatency();
+        if (latency != null) {
+            latency.histogram(PipelineLatency.QUEUE).snapshot(true);
+        }
+        long count = ratePerSecond * durationMillis / 1_000;
+        double interval = 1e9 / ratePerSecond;
+        long start = System.nanoTime();
+        for (long i = 0; i < count; i++) {
+            long intended = start + (long) (i * interval);
+            long now = System.nanoTime();
+            while (now < intended) {
+                Thread.onSpinWait();
+                now = System.nanoTime();
+            }
+            generator.next(order);
+            order.timestamp = intended;
+            if (order.command == SimpleOrder.CANCEL) {
+                system.cancelOrder(order.productId, order.orderId);
+            } else {
+                system.handleOrder(order);
+            }
+            long done = System.nanoTime();
+            corrected.record(done - intended);
+            uncorrected.record(done - now);
+        }
+        long elapsed = System.nanoTime() - start;
+        awaitDrained();
+        return new Result(ratePerSecond, count, elapsed, corrected.snapshot(false), uncorrected.snapshot(false),
+                latency == null ? null : latency.snapshot(PipelineLatency.QUEUE, true));
+    }
+
+    private void awaitDrained() {
+        if (!system.isRunning()) {
+            return;
+        }
+        for (long productId : generator.getConfig().productIds) {
+            MatchingSystem.EngineShard shard = system.getShard(productId);
+            OrderRingBuffer ring = shard == null ? null : shard.getRingBuffer();
+            while (ring != null && !ring.isEmpty()) {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * 寻找可持续速率：从 startRate 开始逐步翻倍，直到实际速率跟不上目标（低于 95%）或修正后的 p99 超过 p99LimitNanos，
+     * 再在最后一个达标速率与第一个不达标速率之间二分 bisectSteps 次
+     * @return 达标的最高速率对应的结果；startRate 就不达标时返回该次结果
+     */
+    public Result findSustainableRate(long startRate, long maxRate, long stepMillis, long p99LimitNanos, int bisectSteps) {
+        Result best = null;
+        long good = 0;
+        long bad = 0;
+        for (long rate = startRate; rate <= maxRate; rate *= 2) {
+            Result r = run(rate, stepMillis);
+            if (!sustainable(r, p99LimitNanos)) {
+                bad = rate;
+                if (best == null) {
+                    return r;
+                }
+                break;
+            }
+            best = r;
+            good = rate;
+        }
+        for (int i = 0; i < bisectSteps && bad > 0 && bad - good > 1; i++) {
+            long rate = (good + bad) >>> 1;
+            Result r = run(rate, stepMillis);
+            if (sustainable(r, p99LimitNanos)) {
+                best = r;
+                good = rate;
+            } else {
+                bad = rate;
+            }
+        }
+        return best;
+    }
+
+    private static boolean sustainable(Result r, long p99LimitNanos) {
+        return r.achievedRate() >= r.targetRate * 0.95 && r.corrected.valueAtPercentile(99) <= p99LimitNanos
+                && (r.queue == null || r.queue.valueAtPercentile(99) <= p99LimitNanos);
+    }
+
+    /**
+     * 命令行：LoadDriver <每秒指令数> <秒数> [撮合线程数] [产品数]
+     * 账户额度不设限，只测撮合链路；开启分阶段延迟统计并在结束时输出
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("usage: LoadDriver <ratePerSecond> <seconds> [threads] [products]");
+            return;
+        }
+        long rate = Long.parseLong(args[0]);
+        long seconds = Long.parseLong(args[1]);
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        int products = args.length > 3 ? Integer.parseInt(args[3]) : 1;
+
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.productIds = new long[products];
+        for (int i = 0; i < products; i++) {
+            config.productIds[i] = 1001L + i;
+        }
+        AccountRiskStore accounts = new AccountRiskStore(config.accounts);
+        for (int i = 0; i < config.accounts; i++) {
+            accounts.openAccount(i, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        }
+        try (MatchingSystem system = new MatchingSystem(threads, 1 << 14, accounts)) {
+            for (long productId : config.productIds) {
+                system.listProduct(productId, BookType.ARRAY);
+            }
+            PipelineLatency latency = system.enableLatencyTracking();
+            system.start(WaitStrategy.BUSY_SPIN);
+            LoadDriver driver = new LoadDriver(system, new OrderFlowGenerator(config));
+            // 预热 JIT，结果丢弃
+            driver.run(rate, Math.min(2_000, seconds * 1_000));
+            latency.report(true);
+            System.out.println(driver.run(rate, seconds * 1_000));
+            System.out.println(latency.report(true));
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package com.colin.java.market.matching;
+
+// 行情回调：参数为基本类型或复用的快照对象，回调返回后快照内容会被覆盖
+public interface MarketDataListener {
+
+    // 档位变化，sequence 在分片内连续递增
+    void onDelta(long productId, long sequence, boolean isBid, byte action, long price, long quantity);
+
+    // 全量快照，snapshot.sequence 为快照包含的最后一条增量序号，之后只需应用 sequence 更大的增量
+    void onSnapshot(DepthSnapshot snapshot);
+
+    // 逐笔成交（Taker 方向），不占用增量序号，发生在本批增量之前
+    default void onTrade(long productId, long price, long quantity, boolean isBuy) {
+    }
+
+    // 一批增量（及可能的快照）已全部输出，攒批发送的下游可在此把数据发出
+    default void onBatchEnd(long productId) {
+    }
+}
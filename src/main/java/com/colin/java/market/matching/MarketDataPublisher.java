@@ -0,0 +1,107 @@
+package com.colin.java.market.matching;
+
+/**
+ * L2 行情发布（每个分片一个，运行在撮合线程上）
+ * 每批订单处理完后从买卖盘取前 N 档，与上次发布的深度逐档对比，只输出变化的档位（增量）；
+ * 每隔 snapshotInterval 次更新输出一次全量快照，下游新加入或丢包后可以据此重建，不需要回放全部增量。
+ * 逐笔成交在撮合过程中直接转发给 listener。
+ * 两份深度数组交替使用，运行期不分配对象。
+ */
+public class MarketDataPublisher {
+    // 增量类型
+    public static final byte LEVEL_ADD = 0;
+    public static final byte LEVEL_CHANGE = 1;
+    public static final byte LEVEL_REMOVE = 2;
+
+    private final long productId;
+    private final int depth;
+    private final int snapshotInterval;
+    private final MarketDataListener listener;
+
+    private DepthSnapshot published; // 已发布的深度
+    private DepthSnapshot scratch; // 本次计算用
+    private long sequence;
+    private int updatesSinceSnapshot;
+
+    public MarketDataPublisher(long productId, int depth, int snapshotInterval, MarketDataListener listener) {
+        if (depth <= 0 || snapshotInterval <= 0) {
+            throw new IllegalArgumentException("depth/snapshotInterval 必须大于 0");
+        }
+        this.productId = productId;
+        this.depth = depth;
+        this.snapshotInterval = snapshotInterval;
+        this.listener = listener;
+        this.published = new DepthSnapshot(depth);
+        this.scratch = new DepthSnapshot(depth);
+        published.productId = productId;
+        scratch.productId = productId;
+    }
+
+    // 撮合线程在一批订单处理完后调用
+    public void update(MatchingBook buyBook, MatchingBook sellBook) {
+        DepthSnapshot current = scratch;
+        current.bidCount = buyBook.depth(current.bidPrices, current.bidQuantities, depth);
+        current.askCount = sellBook.depth(current.askPrices, current.askQuantities, depth);
+
+        diff(true, published.bidPrices, published.bidQuantities, published.bidCount,
+                current.bidPrices, current.bidQuantities, current.bidCount);
+        diff(false, published.askPrices, published.askQuantities, published.askCount,
+                current.askPrices, current.askQuantities, current.askCount);
+
+        current.sequence = sequence;
+        scratch = published;
+        published = current;
+
+        if (++updatesSinceSnapshot >= snapshotInterval) {
+            publishSnapshot();
+        }
+        listener.onBatchEnd(productId);
+    }
+
+    // 撮合线程在成交回调中调用
+    public void trade(long price, long quantity, boolean isBuy) {
+        listener.onTrade(productId, price, quantity, isBuy);
+    }
+
+    // 立即输出一次全量快照（如下游请求重建）
+    public void publishSnapshot() {
+        updatesSinceSnapshot = 0;
+        listener.onSnapshot(published);
+    }
+
+    // 两边都按价格优先顺序排列，归并比较：同价比数量，只在一边出现的价格即新增或删除
+    private void diff(boolean isBid, long[] oldPrices, long[] oldQty, int oldCount,
+                      long[] newPrices, long[] newQty, int newCount) {
+        int i = 0;
+        int j = 0;
+        while (i < oldCount || j < newCount) {
+            if (j == newCount) {
+                listener.onDelta(productId, ++sequence, isBid, LEVEL_REMOVE, oldPrices[i], 0);
+                i++;
+            } else if (i == oldCount) {
+                listener.onDelta(productId, ++sequence, isBid, LEVEL_ADD, newPrices[j], newQty[j]);
+                j++;
+            } else if (oldPrices[i] == newPrices[j]) {
+                if (oldQty[i] != newQty[j]) {
+                    listener.onDelta(productId, ++sequence, isBid, LEVEL_CHANGE, newPrices[j], newQty[j]);
+                }
+                i++;
+                j++;
+            } else if (isBid ? newPrices[j] > oldPrices[i] : newPrices[j] < oldPrices[i]) {
+                listener.onDelta(productId, ++sequence, isBid, LEVEL_ADD, newPrices[j], newQty[j]);
+                j++;
+            } else {
+                listener.onDelta(productId, ++sequence, isBid, LEVEL_REMOVE, oldPrices[i], 0);
+                i++;
+            }
+        }
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+}
@@ -0,0 +1,40 @@
+package com.colin.java.market.matching;
+
+/**
+ * 单边订单簿（买盘或卖盘）的撮合接口
+ * EngineShard 只依赖该接口，不同的实现可以按产品选择（见 BookType）。
+ */
+public interface MatchingBook {
+
+    // 挂单，orderId = 0 表示匿名挂单（不可撤改）
+    void add(long orderId, long price, long quantity);
+
+    // 用对手方的价格/数量吃单，返回成交数量；每笔成交通过 FillListener 回报
+    long match(long incomingPrice, long incomingQty);
+
+    boolean cancel(long orderId);
+
+    // newQty 为改量后的剩余数量，<= 0 等同撤单
+    boolean amend(long orderId, long newQty);
+
+    // 挂单剩余数量，不存在返回 0
+    long orderQuantity(long orderId);
+
+    void clear();
+
+    // 整理内部结构（如清理空档位），由撮合线程在空闲时调用，不改变撮合结果
+    default void compact() {
+    }
+
+    void setFillListener(FillListener fillListener);
+
+    // 按价格优先顺序输出前 maxLevels 个非空档位的价格与聚合数量，返回实际档位数
+    int depth(long[] prices, long[] quantities, int maxLevels);
+
+    // 按撮合优先顺序遍历全部挂单，依次 add 回空簿即可得到撮合行为相同的订单簿（用于快照）
+    void forEachOrder(OrderVisitor visitor);
+
+    int orderCount();
+
+    boolean isAskBook();
+}
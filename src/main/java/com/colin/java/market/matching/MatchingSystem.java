@@ -1,56 +1,1103 @@
 package com.colin.java.market.matching;
 
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
-public class MatchingSystem {
-    // 模拟水平分片：Map <ProductID, Engine>
-    // 实际部署中，通常是一个 ProductID 对应一个独立的线程（Thread Affinity）
-    private final Map<Long, EngineShard> shards = new ConcurrentHashMap<>();
-    private final RiskManager riskManager = new RiskManager();
+public class MatchingSystem implements AutoCloseable {
+    // 水平分片：每个产品一个 EngineShard，产品可以在运行期上架/下架
+    // 路由表按 productId 查稠密下标，网关线程读表无锁、不装箱（见 ProductTable）
+    private volatile ProductTable products = ProductTable.EMPTY;
+    private final RiskManager riskManager;
+    // 每个分片在簿订单账户索引的初始容量，写满后自动扩容
+    private static final int RISK_ORDER_CAPACITY = 256;
+
+    // 分片由固定数量的撮合线程轮询，每个线程名下若干产品；线程数通常取可独占的核心数
+    private final int threadCount;
+    private final int ringSize; // 每个分片入口队列的容量，产品数上千时需要相应调小
+    private MatchingThread[] threads;
+    private volatile boolean running;
+    // close() 开始后置位，先于 running 清零：此后的新指令一律拒绝，不会退回到同步调用路径
+    private volatile boolean closing;
+    // 分阶段延迟统计，未开启时为 null，下单路径上只多一次判空
+    private volatile PipelineLatency latency;
+    private ScheduledExecutorService rebalancer;
+    // 再平衡阈值：最忙线程与最闲线程的负载差低于最忙负载的该比例时不迁移，避免来回抖动
+    private static final double REBALANCE_TOLERANCE = 0.25;
 
     public MatchingSystem() {
-        // 初始化 ID 为 1001 的产品分片
-        shards.put(1001L, new EngineShard());
+        this(1, EngineShard.DEFAULT_RING_SIZE);
+        // 默认上架 ID 为 1001 的产品
+        listProduct(1001L, BookType.ARRAY);
+    }
+
+    public MatchingSystem(int threadCount, int ringSize) {
+        this(threadCount, ringSize, new RiskManager());
+    }
+
+    public MatchingSystem(int threadCount, int ringSize, AccountRiskStore accounts) {
+        this(threadCount, ringSize, new RiskManager(accounts));
+    }
+
+    private MatchingSystem(int threadCount, int ringSize, RiskManager riskManager) {
+        if (threadCount <= 0) {
+            throw new IllegalArgumentException("threadCount 必须大于 0");
+        }
+        this.threadCount = threadCount;
+        this.ringSize = ringSize;
+        this.riskManager = riskManager;
     }
 
     // 单个分片引擎，包含买卖盘
-    public static class EngineShard {
-        ArrayOrderBook buyBook = new ArrayOrderBook(1024, false); // 买盘：高价优先
-        ArrayOrderBook sellBook = new ArrayOrderBook(1024, true); // 卖盘：低价优先
+    public static class EngineShard implements OrderHandler, FillListener {
+        public static final int DEFAULT_RING_SIZE = 1 << 16;
+        // 单次最多连续处理的订单数，避免一次 drain 过久导致 consumerSequence 迟迟不前进
+        private static final int MAX_BATCH = 256;
+
+        final long productId;
+        final MatchingBook buyBook; // 买盘：高价优先
+        final MatchingBook sellBook; // 卖盘：低价优先
+        private final boolean ownsBooks; // 订单簿由 BookType 创建，随下架/系统关闭一起释放
+
+        // 网关线程 -> 撮合线程 的入口队列，多生产者 / 单消费者
+        // 挂到撮合线程时一次性预分配，同步调用模式下不占用内存
+        private final int ringSize;
+        private OrderRingBuffer ringBuffer;
+        private volatile boolean running;
+        // 已处理的订单数，仅撮合线程写
+        private volatile long processedCount;
+
+        // 执行回报出口，未开启时为 null，撮合路径上只多一次判空
+        private ExecutionReportRing executionReports;
+        // 当前正在撮合的 Taker，成交回调里用来填写回报、结算账户
+        private SimpleOrder taker;
+        private long takerLeaves;
+        // 账户风控，未开启时为 null：在簿订单的账户索引 + 共享的账户状态
+        private OrderAccountIndex riskOrders;
+        private AccountRiskStore accounts;
+        // 重放日志时只维护账户索引，不重复结算（账户状态不在日志中）
+        private boolean replaying;
+        // L2 行情，未开启时为 null
+        private MarketDataPublisher marketData;
+        // 输入日志，未开启时为 null
+        private OrderJournal journal;
+        // 主备复制出口，未开启时为 null
+        private ShardReplicator.Stream replication;
+        // 备机模式下暂存的执行回报出口，接管时恢复
+        private ExecutionReportRing standbyReports;
+        private boolean standby;
+        // 订单簿快照，未开启时为 null；每追加 snapshotInterval 条日志在批次末尾触发一次
+        private SnapshotStore snapshots;
+        private long snapshotInterval;
+        private long lastSnapshotSequence;
+
+        // 由撮合线程（MatchingThread）驱动时的归属，见 MatchingSystem 的上下架与再平衡
+        volatile MatchingThread owner;
+        volatile MatchingThread transferTo; // 非 null 表示等待原线程交出
+        volatile boolean delisted;
+        private long loadMark; // 上次再平衡时的 processedCount，仅再平衡线程读写
+        private long recentLoad; // 最近一个再平衡周期处理的指令数
+        // 分阶段延迟统计（排队与撮合两段），未开启时为 null
+        volatile PipelineLatency latency;
+        // 同步调用模式下 OrderFlyweight 的解码目标（该模式本身只支持单线程调用）
+        final SimpleOrder scratch = new SimpleOrder();
+
+        public EngineShard(long productId) {
+            this(productId, BookType.ARRAY, DEFAULT_RING_SIZE);
+        }
+
+        public EngineShard(long productId, int ringSize) {
+            this(productId, BookType.ARRAY, ringSize);
+        }
+
+        public EngineShard(long productId, BookType bookType) {
+            this(productId, bookType, DEFAULT_RING_SIZE);
+        }
+
+        public EngineShard(long productId, BookType bookType, int ringSize) {
+            this(productId, bookType.newBook(false), bookType.newBook(true), ringSize, true);
+        }
+
+        // 使用调用方构造好的订单簿（如映射到文件的 OffHeapArrayOrderBook），订单簿的生命周期由调用方管理
+        public EngineShard(long productId, MatchingBook buyBook, MatchingBook sellBook, int ringSize) {
+            this(productId, buyBook, sellBook, ringSize, false);
+        }
+
+        private EngineShard(long productId, MatchingBook buyBook, MatchingBook sellBook, int ringSize, boolean ownsBooks) {
+            if (buyBook.isAskBook() || !sellBook.isAskBook()) {
+                throw new IllegalArgumentException("买卖盘方向不符: " + productId);
+            }
+            this.productId = productId;
+            this.ringSize = ringSize;
+            this.buyBook = buyBook;
+            this.sellBook = sellBook;
+            this.ownsBooks = ownsBooks;
+        }
 
         public void process(SimpleOrder order) {
-            if (order.isBuy) {
-                // 买单进来，去匹配卖盘
-                long traded = sellBook.match(order.price, order.quantity);
-                long remain = order.quantity - traded;
-                if (remain > 0) {
-                    buyBook.add(order.price, remain);
+            // 备机：补上主机网关上的预占（输入流里的新单都已通过风控），见 setStandby
+            if (standby && !replaying && accounts != null && order.isBuy && order.orderId != 0) {
+                accounts.forceReserve(order.accountId, order.price * order.quantity);
+            }
+            // 订单号与在簿订单重复：整单拒绝，不撮合；否则订单簿和账户索引里的旧订单被覆盖，再也撤不掉
+            if (order.orderId != 0
+                    && (buyBook.orderQuantity(order.orderId) != 0 || sellBook.orderQuantity(order.orderId) != 0)) {
+                rejectDuplicate(order);
+                return;
+            }
+            taker = order;
+            takerLeaves = order.quantity;
+            if (executionReports != null) {
+                report(ExecutionReport.ACK, SimpleOrder.NEW, ExecutionReport.REASON_NONE,
+                        order.orderId, order.isBuy, order.price, order.quantity, order.quantity, order.timestamp);
+            }
+            // 买单去匹配卖盘，卖单去匹配买盘
+            MatchingBook opposite = order.isBuy ? sellBook : buyBook;
+            long traded = opposite.match(order.price, order.quantity);
+            long remain = order.quantity - traded;
+            if (remain > 0) {
+                try {
+                    (order.isBuy ? buyBook : sellBook).add(order.orderId, order.price, remain);
+                    // 匿名挂单不可撤改，也不跟踪账户
+                    if (riskOrders != null && order.orderId != 0) {
+                        riskOrders.put(order.orderId, order.accountId, order.price);
+                    }
+                } catch (IllegalStateException e) {
+                    // 挂单失败时已成交部分有效，剩余数量拒绝并退回预占；未开启回报时保持原有行为抛出
+                    if (accounts != null && order.isBuy && order.orderId != 0 && !replaying) {
+                        accounts.release(order.accountId, order.price * remain);
+                    }
+                    if (executionReports == null) {
+                        throw e;
+                    }
+                    report(ExecutionReport.REJECT, SimpleOrder.NEW, ExecutionReport.REASON_BOOK_FULL,
+                            order.orderId, order.isBuy, order.price, remain, 0, order.timestamp);
                 }
+            }
+            processedCount++;
+        }
+
+        private void rejectDuplicate(SimpleOrder order) {
+            if (accounts != null && order.isBuy && !replaying) {
+                accounts.release(order.accountId, order.price * order.quantity);
+            }
+            if (executionReports != null) {
+                report(ExecutionReport.REJECT, SimpleOrder.NEW, ExecutionReport.REASON_DUPLICATE_ORDER,
+                        order.orderId, order.isBuy, order.price, order.quantity, 0, order.timestamp);
+            }
+            processedCount++;
+        }
+
+        // 成交回调：由 match 在撮合线程内同步调用，只在开启回报、账户风控或行情时注册
+        @Override
+        public void onFill(long makerOrderId, long price, long quantity, long makerRemaining) {
+            takerLeaves -= quantity;
+            if (riskOrders != null) {
+                settle(makerOrderId, price, quantity, makerRemaining);
+            }
+            if (executionReports != null) {
+                reportTrade(makerOrderId, price, quantity, makerRemaining);
+            }
+            if (marketData != null && !replaying && !standby) {
+                marketData.trade(price, quantity, taker.isBuy);
+            }
+        }
+
+        // 成交结算：Taker 与 Maker 各自按方向结算购买力和日内净额，Maker 全部成交后移出账户索引
+        // 匿名订单在网关没有预占、挂单后也不在账户索引中，成交时不结算（两侧一致，预占不会泄漏）
+        private void settle(long makerOrderId, long price, long quantity, long makerRemaining) {
+            SimpleOrder order = taker;
+            int slot = riskOrders.find(makerOrderId);
+            if (!replaying) {
+                if (order.orderId != 0) {
+                    if (order.isBuy) {
+                        accounts.settleBuy(order.accountId, order.price, price, quantity);
+                    } else {
+                        accounts.settleSell(order.accountId, price, quantity);
+                    }
+                }
+                if (slot != OrderIdIndex.MISSING) {
+                    long makerAccount = riskOrders.accountAt(slot);
+                    // Maker 的成交价就是其限价
+                    if (order.isBuy) {
+                        accounts.settleSell(makerAccount, price, quantity);
+                    } else {
+                        accounts.settleBuy(makerAccount, price, price, quantity);
+                    }
+                }
+            }
+            if (slot != OrderIdIndex.MISSING && makerRemaining == 0) {
+                riskOrders.remove(makerOrderId);
+            }
+        }
+
+        private void reportTrade(long makerOrderId, long price, long quantity, long makerRemaining) {
+            SimpleOrder order = taker;
+            ExecutionReport report = executionReports.claim();
+            report.type = ExecutionReport.TRADE;
+            report.command = SimpleOrder.NEW;
+            report.rejectReason = ExecutionReport.REASON_NONE;
+            report.productId = productId;
+            report.orderId = order.orderId;
+            report.makerOrderId = makerOrderId;
+            report.isBuy = order.isBuy;
+            report.price = price;
+            report.quantity = quantity;
+            report.leavesQty = takerLeaves;
+            report.makerLeavesQty = makerRemaining;
+            report.timestamp = order.timestamp;
+            executionReports.publish();
+        }
+
+        // 撤单：买卖盘各自的索引都是 O(1) 查找，不需要事先知道方向
+        public boolean cancel(long orderId) {
+            boolean cancelled;
+            if (riskOrders == null) {
+                cancelled = buyBook.cancel(orderId) || sellBook.cancel(orderId);
+            } else {
+                // 买单撤销后按限价退回剩余数量的预占
+                long buyQty = buyBook.orderQuantity(orderId);
+                cancelled = buyBook.cancel(orderId) || sellBook.cancel(orderId);
+                if (cancelled) {
+                    adjustReserve(orderId, buyQty, 0);
+                }
+            }
+            processedCount++;
+            if (executionReports != null) {
+                reportCommand(SimpleOrder.CANCEL, orderId, 0, cancelled);
+            }
+            return cancelled;
+        }
+
+        // 改量：newQty 为改量后的剩余数量，<= 0 等同撤单
+        public boolean amend(long orderId, long newQty) {
+            boolean amended;
+            if (riskOrders == null) {
+                amended = buyBook.amend(orderId, newQty) || sellBook.amend(orderId, newQty);
             } else {
-                // 卖单进来，去匹配买盘
-                long traded = buyBook.match(order.price, order.quantity);
-                long remain = order.quantity - traded;
-                if (remain > 0) {
-                    sellBook.add(order.price, remain);
+                long buyQty = buyBook.orderQuantity(orderId);
+                amended = buyBook.amend(orderId, newQty) || sellBook.amend(orderId, newQty);
+                if (amended) {
+                    adjustReserve(orderId, buyQty, Math.max(0, newQty));
+                }
+            }
+            processedCount++;
+            if (executionReports != null) {
+                reportCommand(SimpleOrder.AMEND, orderId, newQty, amended);
+            }
+            return amended;
+        }
+
+        /**
+         * 撤单/改量生效后调整预占：买单数量从 oldBuyQty 变为 newQty（0 表示已离开订单簿）
+         * 改大数量在撮合线程上必须生效（日志重放要得到同样的订单簿），因此强制预占，可能透支，
+         * 透支的账户之后的新单会被网关风控拒绝
+         */
+        private void adjustReserve(long orderId, long oldBuyQty, long newQty) {
+            int slot = riskOrders.find(orderId);
+            if (slot == OrderIdIndex.MISSING) {
+                return;
+            }
+            if (oldBuyQty > 0 && !replaying) {
+                long account = riskOrders.accountAt(slot);
+                long amount = (newQty - oldBuyQty) * riskOrders.priceAt(slot);
+                if (amount > 0) {
+                    accounts.forceReserve(account, amount);
+                } else if (amount < 0) {
+                    accounts.release(account, -amount);
+                }
+            }
+            if (newQty == 0) {
+                riskOrders.remove(orderId);
+            }
+        }
+
+        // 撤单/改量只知道 orderId，方向和价格不回填
+        private void reportCommand(byte command, long orderId, long quantity, boolean accepted) {
+            if (accepted) {
+                report(ExecutionReport.ACK, command, ExecutionReport.REASON_NONE,
+                        orderId, false, 0, quantity, quantity, System.nanoTime());
+            } else {
+                report(ExecutionReport.REJECT, command, ExecutionReport.REASON_UNKNOWN_ORDER,
+                        orderId, false, 0, quantity, 0, System.nanoTime());
+            }
+        }
+
+        private void report(byte type, byte command, byte reason, long orderId, boolean isBuy,
+                            long price, long quantity, long leavesQty, long timestamp) {
+            ExecutionReport report = executionReports.claim();
+            report.type = type;
+            report.command = command;
+            report.rejectReason = reason;
+            report.productId = productId;
+            report.orderId = orderId;
+            report.makerOrderId = 0;
+            report.isBuy = isBuy;
+            report.price = price;
+            report.quantity = quantity;
+            report.leavesQty = leavesQty;
+            report.makerLeavesQty = 0;
+            report.timestamp = timestamp;
+            executionReports.publish();
+        }
+
+        /**
+         * 开启执行回报：之后每个指令都会产生 ACK / TRADE / REJECT 回报，由下游线程调用 poll 批量消费
+         * 需要在 start() 之前调用；下游消费过慢时撮合线程会在回报环上自旋等待
+         */
+        public synchronized ExecutionReportRing enableExecutionReports(int capacity) {
+            if (standby) {
+                // 备机上先建好回报环（如接管后对外服务的网关），接管时才启用
+                if (standbyReports == null) {
+                    standbyReports = new ExecutionReportRing(capacity);
+                }
+                return standbyReports;
+            }
+            if (executionReports == null) {
+                executionReports = new ExecutionReportRing(capacity);
+                updateFillListener();
+            }
+            return executionReports;
+        }
+
+        /**
+         * 开启账户风控结算：成交、撤单、改量、剩余拒绝时更新 accounts 中对应账户的预占与日内净额
+         * 预占本身由网关线程上的 RiskManager 完成；需要在 start() 之前调用
+         */
+        public synchronized void enableRisk(AccountRiskStore accounts, int orderCapacity) {
+            if (riskOrders == null) {
+                this.riskOrders = new OrderAccountIndex(orderCapacity);
+                this.accounts = accounts;
+                updateFillListener();
+            }
+        }
+
+        // 只有需要成交回调时才注册，否则订单簿使用空回调
+        private void updateFillListener() {
+            FillListener listener = executionReports != null || riskOrders != null || marketData != null ? this : null;
+            buyBook.setFillListener(listener);
+            sellBook.setFillListener(listener);
+        }
+
+        public ExecutionReportRing getExecutionReports() {
+            return executionReports;
+        }
+
+        // 按指令类型分发，入口队列中的新单/撤单/改量严格按到达顺序执行
+        // 开启日志时先写日志再执行（Write-Ahead），重放同样的序列即可得到同样的订单簿
+        public void apply(SimpleOrder order) {
+            if (order.command == SimpleOrder.REJECTED) {
+                return;
+            }
+            if (journal != null) {
+                journal.append(order);
+            }
+            if (replication != null) {
+                replication.append(order);
+            }
+            execute(order);
+        }
+
+        private void execute(SimpleOrder order) {
+            switch (order.command) {
+                case SimpleOrder.CANCEL:
+                    cancel(order.orderId);
+                    break;
+                case SimpleOrder.AMEND:
+                    amend(order.orderId, order.quantity);
+                    break;
+                default:
+                    process(order);
+            }
+        }
+
+        @Override
+        public void onOrder(SimpleOrder order, long sequence, boolean endOfBatch) {
+            PipelineLatency stats = latency;
+            if (stats == null || order.command == SimpleOrder.REJECTED) {
+                apply(order);
+            } else {
+                long start = System.nanoTime();
+                stats.record(PipelineLatency.QUEUE, start - order.timestamp);
+                apply(order);
+                stats.record(PipelineLatency.MATCH, System.nanoTime() - start);
+            }
+            if (endOfBatch) {
+                endBatch();
+            }
+        }
+
+        // 一批指令处理完毕：行情按批次合并发布，突发流量下不会逐单计算深度
+        public void endBatch() {
+            if (journal != null) {
+                journal.endBatch();
+                if (snapshots != null && journal.getSequence() - lastSnapshotSequence >= snapshotInterval
+                        && snapshots.takeSnapshot(journal.getSequence(), buyBook, sellBook, riskOrders)) {
+                    lastSnapshotSequence = journal.getSequence();
+                }
+            }
+            if (marketData != null) {
+                marketData.update(buyBook, sellBook);
+            }
+        }
+
+        /**
+         * 开启 L2 行情：每批指令后发布前 depth 档的增量，每 snapshotInterval 批发布一次全量快照
+         * listener 在撮合线程上回调，需要在 start() 之前调用
+         */
+        public synchronized MarketDataPublisher enableMarketData(int depth, int snapshotInterval,
+                                                                 MarketDataListener listener) {
+            if (marketData == null) {
+                marketData = new MarketDataPublisher(productId, depth, snapshotInterval, listener);
+                updateFillListener();
+            }
+            return marketData;
+        }
+
+        public MarketDataPublisher getMarketData() {
+            return marketData;
+        }
+
+        /**
+         * 开启输入日志：先重放日志中已有的全部指令恢复订单簿，再把之后的指令追加到同一日志
+         * 需要在 start() 之前、接收新指令之前调用
+         * @return 重放的指令条数
+         */
+        public synchronized long enableJournal(OrderJournal journal) {
+            long replayed = recover(journal, 0);
+            this.journal = journal;
+            return replayed;
+        }
+
+        /**
+         * 开启输入日志并定期快照：先加载最新的快照，只重放日志中快照之后的部分，
+         * 之后每追加 snapshotInterval 条指令在批次末尾拍一次快照（后台写盘）
+         * 需要在 start() 之前、接收新指令之前调用
+         * @return 重放的指令条数（不含快照中已包含的部分）
+         */
+        public synchronized long enableJournal(OrderJournal journal, SnapshotStore snapshots, long snapshotInterval) {
+            if (snapshotInterval <= 0) {
+                throw new IllegalArgumentException("snapshotInterval 必须大于 0");
+            }
+            long afterSequence = 0;
+            BookSnapshot snapshot = snapshots.loadLatest();
+            if (snapshot != null) {
+                if (snapshot.sequence > journal.getSequence()) {
+                    throw new IllegalStateException("快照序号 " + snapshot.sequence
+                            + " 超出日志末尾 " + journal.getSequence() + ": " + productId);
+                }
+                buyBook.clear();
+                sellBook.clear();
+                if (riskOrders != null) {
+                    riskOrders.clear();
+                }
+                // 账户索引随订单簿一起恢复，与只重放日志的恢复路径一致
+                snapshot.restore(buyBook, sellBook, riskOrders);
+                afterSequence = snapshot.sequence;
+            }
+            long replayed = recover(journal, afterSequence);
+            this.journal = journal;
+            this.snapshots = snapshots;
+            this.snapshotInterval = snapshotInterval;
+            this.lastSnapshotSequence = afterSequence;
+            return replayed;
+        }
+
+        /**
+         * 重放模式：按顺序执行日志中序号大于 afterSequence 的指令，不写日志、不发执行回报
+         * （这些回报在崩溃前已经发出过），也不重复结算账户，只重建在簿订单的账户索引；
+         * 重放结束后发布一次行情
+         */
+        public synchronized long recover(OrderJournal source, long afterSequence) {
+            if (running) {
+                throw new IllegalStateException("分片运行中不能重放日志: " + productId);
+            }
+            ExecutionReportRing reports = executionReports;
+            executionReports = null;
+            replaying = true;
+            updateFillListener();
+            try {
+                return source.replay(afterSequence, (order, sequence, endOfBatch) -> execute(order));
+            } finally {
+                executionReports = reports;
+                replaying = false;
+                updateFillListener();
+                if (marketData != null) {
+                    marketData.update(buyBook, sellBook);
+                }
+            }
+        }
+
+        /**
+         * 开启主备复制：之后 apply 的每条指令按序号写入复制环，由 ShardReplicator 的发送线程发往备机
+         * 需要在 start() 之前调用
+         */
+        synchronized void enableReplication(ShardReplicator.Stream stream) {
+            if (running) {
+                throw new IllegalStateException("分片运行中不能开启复制: " + productId);
+            }
+            this.replication = stream;
+        }
+
+        /**
+         * 备机模式：由复制线程按主机的顺序调用 apply / endBatch，不发执行回报、不发成交行情，订单簿照常维护；
+         * 退出备机模式（接管）后恢复执行回报。
+         * 主机网关上的预占不在输入流里，备机执行新买单时按同样的规则补上预占，之后照常结算，
+         * 账户状态（需与主机开同样的账户）与主机一致，接管后继承订单的成交、撤单继续结算
+         */
+        public synchronized void setStandby(boolean standby) {
+            if (running) {
+                throw new IllegalStateException("分片运行中不能切换备机模式: " + productId);
+            }
+            if (this.standby == standby) {
+                return;
+            }
+            if (standby) {
+                standbyReports = executionReports;
+                executionReports = null;
+            } else {
+                executionReports = standbyReports;
+                standbyReports = null;
+            }
+            this.standby = standby;
+            updateFillListener();
+        }
+
+        public boolean isStandby() {
+            return standby;
+        }
+
+        public OrderJournal getJournal() {
+            return journal;
+        }
+
+        public SnapshotStore getSnapshots() {
+            return snapshots;
+        }
+
+        // 网关线程调用：只负责入队，真正的撮合在所属撮合线程上完成；入口队列已关闭（下架或系统关闭）时返回 false
+        public boolean publish(SimpleOrder order) {
+            return ringBuffer.publish(order) >= 0;
+        }
+
+        /**
+         * 由撮合线程驱动：分配入口队列并标记为运行中，之后由 MatchingThread 调用 poll
+         */
+        synchronized void attach() {
+            if (ringBuffer == null) {
+                ringBuffer = new OrderRingBuffer(ringSize);
+            }
+            running = true;
+        }
+
+        // 撮合线程调用：处理一批已入队的指令，返回条数
+        int poll() {
+            return ringBuffer.drain(this, MAX_BATCH);
+        }
+
+        void compactBooks() {
+            buyBook.compact();
+            sellBook.compact();
+        }
+
+        // 停止前关闭入口队列（之后的发布立即失败），把关闭前已抢占的指令处理完，日志刷盘
+        void finish() {
+            long last = ringBuffer.close();
+            // 已抢占的生产者可能还没发布，等它发布后再处理
+            while (ringBuffer.getConsumerSequence() < last) {
+                if (ringBuffer.drain(this, MAX_BATCH) == 0) {
+                    Thread.onSpinWait();
+                }
+            }
+            if (journal != null) {
+                journal.force();
+            }
+            running = false;
+        }
+
+        // 释放自己创建的订单簿（堆外订单簿需要 close），调用方提供的订单簿不动；须在不再处理指令之后调用
+        void closeBooks() {
+            if (ownsBooks) {
+                closeBook(buyBook);
+                closeBook(sellBook);
+            }
+        }
+
+        private static void closeBook(MatchingBook book) {
+            if (book instanceof AutoCloseable closeable) {
+                try {
+                    closeable.close();
+                } catch (Exception e) {
+                    throw new IllegalStateException("关闭订单簿失败", e);
                 }
             }
         }
+
+        public boolean isRunning() {
+            return running;
+        }
+
+        public long getProcessedCount() {
+            return processedCount;
+        }
+
+        public OrderRingBuffer getRingBuffer() {
+            return ringBuffer;
+        }
+
+        // 最近一个再平衡周期处理的指令数
+        public long getRecentLoad() {
+            return recentLoad;
+        }
+
+        // 当前所属的撮合线程编号，未由撮合线程驱动时为 -1
+        public int getThreadId() {
+            MatchingThread thread = owner;
+            return thread == null ? -1 : thread.id;
+        }
     }
 
     public void handleOrder(SimpleOrder order) {
+        PipelineLatency stats = latency;
+        long start = stats == null ? 0 : System.nanoTime();
         // 1. 预风控
-        if (!riskManager.validate(order)) {
+        boolean passed = riskManager.validate(order);
+        if (stats != null) {
+            long now = System.nanoTime();
+            stats.record(PipelineLatency.RISK, now - start);
+            start = now;
+        }
+        if (!passed) {
             // throw new RuntimeException("Risk Check Failed");
             return;
         }
 
         // 2. 路由到指定分片 (无锁，分片间无共享)
-        EngineShard shard = shards.get(order.productId);
+        EngineShard shard = products.get(order.productId);
         if (shard != null) {
-            // 在真实系统中，这里会将订单放入 RingBuffer (Disruptor)，由消费者线程处理
-            // 这里为了测试核心算法速度，直接调用
-            shard.process(order);
+            if (running) {
+                // 放入分片的 RingBuffer，由其所属撮合线程处理，多个网关线程并发写入也不会竞争 OrderBook
+                if (!shard.publish(order)) {
+                    // 分片已下架或系统正在关闭：退回预占，按拒单处理
+                    riskManager.release(order);
+                }
+            } else if (closing) {
+                riskManager.release(order);
+            } else {
+                // 未启动撮合线程时直接调用，便于单线程测试核心算法速度
+                if (stats != null) {
+                    long now = System.nanoTime();
+                    stats.record(PipelineLatency.ROUTE, now - start);
+                    start = now;
+                }
+                shard.apply(order);
+                shard.endBatch();
+                if (stats != null) {
+                    stats.record(PipelineLatency.MATCH, System.nanoTime() - start);
+                }
+                return;
+            }
+        } else {
+            riskManager.release(order);
+        }
+        if (stats != null) {
+            stats.record(PipelineLatency.ROUTE, System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * 零分配下单：网关把报文 wrap 成 OrderFlyweight 后直接提交
+     * 撮合线程运行时先抢占目标分片 RingBuffer 的槽位，把报文解码进槽位，在槽位上就地做预风控后发布，
+     * 风控未通过的槽位标记为 REJECTED 由撮合线程跳过；从解码到成交全程只有这一次字段拷贝（原先也要拷进槽位），
+     * 没有任何对象分配。风控在抢占与发布之间进行，期间同一分片的后续序号要等它发布，规则应保持轻量。
+     * 撤单/改量指令同样支持，不经过风控。
+     * @return 是否受理（未知产品、未知指令或风控未通过返回 false）
+     */
+    public boolean handleOrder(OrderFlyweight order) {
+        byte command = order.command();
+        if (command != SimpleOrder.NEW && command != SimpleOrder.CANCEL && command != SimpleOrder.AMEND) {
+            return false;
+        }
+        EngineShard shard = products.get(order.productId());
+        if (shard == null) {
+            return false;
+        }
+        PipelineLatency stats = latency;
+        if (running) {
+            long start = stats == null ? 0 : System.nanoTime();
+            OrderRingBuffer ring = shard.ringBuffer;
+            long seq = ring.claim();
+            if (seq < 0) {
+                // 入口队列已关闭（下架或系统关闭），此时尚未预占
+                return false;
+            }
+            SimpleOrder slot = ring.slot(seq);
+            long riskNanos = 0;
+            boolean accepted = false;
+            try {
+                order.copyTo(slot);
+                if (command == SimpleOrder.NEW) {
+                    long riskStart = stats == null ? 0 : System.nanoTime();
+                    accepted = riskManager.validate(slot);
+                    if (stats != null) {
+                        riskNanos = System.nanoTime() - riskStart;
+                        stats.record(PipelineLatency.RISK, riskNanos);
+                    }
+                } else {
+                    accepted = true;
+                }
+            } finally {
+                // 规则抛异常时槽位同样要发布（标记为 REJECTED），否则该分片的消费者和之后的生产者会永远等在这个序号上
+                // 预占在全部规则通过后才进行，抛异常时没有需要退回的预占
+                if (!accepted) {
+                    slot.command = SimpleOrder.REJECTED;
+                }
+                ring.commit(seq);
+            }
+            if (stats != null) {
+                // 风控在抢占与发布之间进行，路由阶段扣除风控耗时
+                stats.record(PipelineLatency.ROUTE, System.nanoTime() - start - riskNanos);
+            }
+            return accepted;
+        }
+        if (closing) {
+            return false;
+        }
+        SimpleOrder scratch = shard.scratch;
+        order.copyTo(scratch);
+        long start = stats == null ? 0 : System.nanoTime();
+        if (command == SimpleOrder.NEW) {
+            boolean passed = riskManager.validate(scratch);
+            if (stats != null) {
+                long now = System.nanoTime();
+                stats.record(PipelineLatency.RISK, now - start);
+                start = now;
+            }
+            if (!passed) {
+                return false;
+            }
+        }
+        shard.apply(scratch);
+        shard.endBatch();
+        if (stats != null) {
+            stats.record(PipelineLatency.MATCH, System.nanoTime() - start);
+        }
+        return true;
+    }
+
+    /**
+     * 批量下单：网关一次读到的多个订单一起提交
+     * 整批先做一遍风控，再按分片分组（组内保持原顺序），每个分片的子批次一次性发布到其 RingBuffer；
+     * 路由表只读取一次。每个订单的受理结果写入调用方复用的 result。
+     * 不同分片之间没有顺序关系，同一分片内的订单严格按数组顺序撮合。
+     */
+    public BatchResult submitBatch(SimpleOrder[] orders, int count, BatchResult result) {
+        result.reset(count);
+        riskManager.validate(orders, count, result.passed);
+        ProductTable table = products;
+        EngineShard last = null;
+        for (int i = 0; i < count; i++) {
+            if (!result.passed[i]) {
+                result.outcomes[i] = BatchResult.REJECTED_RISK;
+                continue;
+            }
+            long productId = orders[i].productId;
+            EngineShard shard = last != null && last.productId == productId ? last : table.get(productId);
+            if (shard == null) {
+                riskManager.release(orders[i]);
+                result.outcomes[i] = BatchResult.UNKNOWN_PRODUCT;
+                continue;
+            }
+            last = shard;
+            result.outcomes[i] = BatchResult.ACCEPTED;
+            result.accepted++;
+            result.addToGroup(shard, i);
+        }
+
+        boolean async = running;
+        boolean closed = !async && closing;
+        int[] indices = result.indices;
+        for (int g = 0; g < result.groupCount; g++) {
+            EngineShard shard = result.groupShards[g];
+            int n = 0;
+            for (int i = result.groupHead[g]; i >= 0; i = result.next[i]) {
+                indices[n++] = i;
+            }
+            if (closed) {
+                rejectClosed(orders, indices, 0, n, result);
+            } else if (async) {
+                // 子批次超过队列容量时分段发布
+                int capacity = shard.ringBuffer.getCapacity();
+                for (int from = 0; from < n; from += capacity) {
+                    int chunk = Math.min(capacity, n - from);
+                    if (shard.ringBuffer.publishBatch(orders, indices, from, chunk) < 0) {
+                        // 分片已下架或系统正在关闭，该段整体未发布
+                        rejectClosed(orders, indices, from, chunk, result);
+                    }
+                }
+            } else {
+                for (int k = 0; k < n; k++) {
+                    shard.apply(orders[indices[k]]);
+                }
+                shard.endBatch();
+            }
+        }
+        return result;
+    }
+
+    // 入口队列已关闭的订单：退回预占，改为拒绝
+    private void rejectClosed(SimpleOrder[] orders, int[] indices, int from, int count, BatchResult result) {
+        for (int k = from; k < from + count; k++) {
+            int i = indices[k];
+            riskManager.release(orders[i]);
+            result.outcomes[i] = BatchResult.REJECTED_CLOSED;
+            result.accepted--;
+        }
+    }
+
+    // 撤单/改量只作用于已挂单，不经过预风控，直接路由到分片
+    public void cancelOrder(long productId, long orderId) {
+        EngineShard shard = products.get(productId);
+        if (shard != null) {
+            if (running) {
+                shard.ringBuffer.publishCancel(productId, orderId);
+            } else if (!closing) {
+                shard.cancel(orderId);
+                shard.endBatch();
+            }
+        }
+    }
+
+    public void amendOrder(long productId, long orderId, long newQty) {
+        EngineShard shard = products.get(productId);
+        if (shard != null) {
+            if (running) {
+                shard.ringBuffer.publishAmend(productId, orderId, newQty);
+            } else if (!closing) {
+                shard.amend(orderId, newQty);
+                shard.endBatch();
+            }
+        }
+    }
+
+    // 启动撮合线程，已上架的产品按轮转分配
+    public synchronized void start(WaitStrategy waitStrategy) {
+        if (running) {
+            return;
+        }
+        threads = new MatchingThread[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threads[i] = new MatchingThread(i, waitStrategy);
+        }
+        int next = 0;
+        for (EngineShard shard : products.shards()) {
+            if (shard != null) {
+                shard.attach();
+                threads[next++ % threadCount].adopt(shard);
+            }
+        }
+        for (MatchingThread thread : threads) {
+            thread.start();
+        }
+        running = true;
+    }
+
+    /**
+     * 上架产品（运行期也可调用），已上架时返回现有分片
+     * 运行中上架的产品分配给名下分片最少的撮合线程，负载均衡交给 rebalance
+     */
+    public synchronized EngineShard listProduct(long productId, BookType bookType) {
+        if (productId == 0) {
+            throw new IllegalArgumentException("productId 0 保留为空槽标记");
+        }
+        EngineShard existing = products.get(productId);
+        if (existing != null) {
+            return existing;
+        }
+        return list(new EngineShard(productId, bookType, ringSize));
+    }
+
+    /**
+     * 用调用方提供的订单簿上架（如热启动时映射回文件的堆外订单簿），产品已上架时抛出异常
+     * 订单簿在下架、系统关闭之后由调用方释放
+     */
+    public synchronized EngineShard listProduct(long productId, MatchingBook buyBook, MatchingBook sellBook) {
+        if (productId == 0) {
+            throw new IllegalArgumentException("productId 0 保留为空槽标记");
+        }
+        if (products.get(productId) != null) {
+            throw new IllegalStateException("产品已上架: " + productId);
+        }
+        return list(new EngineShard(productId, buyBook, sellBook, ringSize));
+    }
+
+    private EngineShard list(EngineShard shard) {
+        shard.enableRisk(riskManager.getAccounts(), RISK_ORDER_CAPACITY);
+        shard.latency = latency;
+        if (running) {
+            shard.attach();
+            MatchingThread target = threads[0];
+            for (MatchingThread thread : threads) {
+                if (thread.assignedCount() < target.assignedCount()) {
+                    target = thread;
+                }
+            }
+            target.adopt(shard);
+        }
+        // 分片就绪后再发布到路由表，网关线程看到的分片一定可以入队
+        products = products.with(shard);
+        return shard;
+    }
+
+    /**
+     * 下架产品：先从路由表移除，新指令不再路由到该分片；所属撮合线程处理完已入队的指令后释放它
+     * 所属撮合线程收尾时关闭该分片的入口队列：下架前已查到分片、在此之后才发布的指令立即失败，
+     * 新单退回预占并拒绝（handleOrder 返回 false / BatchResult.REJECTED_CLOSED），不会卡在满队列上
+     * @return 被下架的分片（调用方可据此关闭日志等资源），未上架返回 null
+     */
+    public synchronized EngineShard delistProduct(long productId) {
+        EngineShard shard = products.get(productId);
+        if (shard == null) {
+            return null;
+        }
+        products = products.without(productId);
+        if (running) {
+            // 所属撮合线程关闭入口队列、处理完已入队的指令后释放订单簿
+            shard.delisted = true;
+        } else {
+            shard.closeBooks();
+        }
+        return shard;
+    }
+
+    /**
+     * 按实测负载再平衡：统计每个分片自上次调用以来处理的指令数，汇总到所属撮合线程，
+     * 最忙线程与最闲线程差距超过阈值时，把最忙线程上一个负载合适的产品迁到最闲线程
+     * 每次最多迁移一个产品，由 startRebalancer 定期调用，也可以手动调用
+     * @return 被迁移的产品 ID，无需迁移时返回 0
+     */
+    public synchronized long rebalance() {
+        if (!running) {
+            return 0;
+        }
+        long[] threadLoad = new long[threadCount];
+        EngineShard[] shards = products.shards();
+        for (EngineShard shard : shards) {
+            if (shard == null) {
+                continue;
+            }
+            long processed = shard.getProcessedCount();
+            shard.recentLoad = processed - shard.loadMark;
+            shard.loadMark = processed;
+            MatchingThread owner = shard.owner;
+            if (owner != null) {
+                threadLoad[owner.id] += shard.recentLoad;
+            }
+        }
+        int hot = 0;
+        int cold = 0;
+        for (int i = 1; i < threadCount; i++) {
+            if (threadLoad[i] > threadLoad[hot]) {
+                hot = i;
+            }
+            if (threadLoad[i] < threadLoad[cold]) {
+                cold = i;
+            }
+        }
+        long gap = threadLoad[hot] - threadLoad[cold];
+        if (gap <= threadLoad[hot] * REBALANCE_TOLERANCE) {
+            return 0;
+        }
+        // 迁移负载小于差距的最大产品，迁移后最忙线程一定变轻，且不会让目标线程变成新的最忙线程
+        EngineShard candidate = null;
+        for (EngineShard shard : shards) {
+            if (shard != null && shard.owner == threads[hot] && shard.transferTo == null
+                    && shard.recentLoad > 0 && shard.recentLoad < gap
+                    && (candidate == null || shard.recentLoad > candidate.recentLoad)) {
+                candidate = shard;
+            }
+        }
+        if (candidate == null) {
+            return 0;
+        }
+        candidate.transferTo = threads[cold];
+        return candidate.productId;
+    }
+
+    // 定期再平衡，需在 start() 之后调用
+    public synchronized void startRebalancer(long periodMillis) {
+        if (rebalancer != null) {
+            return;
+        }
+        rebalancer = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "matching-rebalancer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        rebalancer.scheduleAtFixedRate(this::rebalance, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 开启分阶段延迟统计（见 PipelineLatency），可在运行中开启；已开启时返回现有实例
+     * 之后上架的产品同样记录。批量下单 submitBatch 只记录撮合线程上的排队与撮合两段。
+     */
+    public synchronized PipelineLatency enableLatencyTracking() {
+        if (latency == null) {
+            PipelineLatency stats = new PipelineLatency();
+            for (EngineShard shard : products.shards()) {
+                if (shard != null) {
+                    shard.latency = stats;
+                }
+            }
+            latency = stats;
+        }
+        return latency;
+    }
+
+    public PipelineLatency getLatency() {
+        return latency;
+    }
+
+    public RiskManager getRiskManager() {
+        return riskManager;
+    }
+
+    public EngineShard getShard(long productId) {
+        return products.get(productId);
+    }
+
+    public int productCount() {
+        return products.size();
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (rebalancer != null) {
+            rebalancer.shutdownNow();
+            rebalancer = null;
+        }
+        if (latency != null) {
+            latency.close();
+        }
+        closing = true;
+        if (running) {
+            for (MatchingThread thread : threads) {
+                thread.stop();
+            }
+            // 全部线程停止后再收尾，迁移途中的分片也能被处理完；收尾时关闭各分片入口队列，之后的发布立即失败
+            for (MatchingThread thread : threads) {
+                thread.finishAll();
+            }
+            running = false;
+        }
+        for (EngineShard shard : products.shards()) {
+            if (shard != null) {
+                shard.closeBooks();
+            }
         }
     }
-}
\ No newline at end of file
+}
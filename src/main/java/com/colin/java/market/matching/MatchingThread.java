@@ -0,0 +1,126 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 撮合线程：轮询自己名下所有分片的入口队列
+ * 每个分片仍然有独立的 RingBuffer，同一时刻只属于一个撮合线程，撮合保持单线程写；
+ * 分片在线程之间迁移（再平衡）时，由原线程在两次轮询之间主动交出，目标线程从收件箱领取，
+ * 入口队列中尚未处理的指令随分片一起转移，顺序不变。
+ * 名下分片数组只由本线程读写，不需要同步。
+ */
+public class MatchingThread {
+    final int id;
+    private final WaitStrategy waitStrategy;
+    private final Thread thread;
+    private volatile boolean running;
+
+    // 其他线程交给本线程的分片（上架或迁入）
+    private final ConcurrentLinkedQueue<MatchingSystem.EngineShard> inbox = new ConcurrentLinkedQueue<>();
+    private MatchingSystem.EngineShard[] owned = new MatchingSystem.EngineShard[16];
+    private int ownedCount;
+    // 名下分片数（含收件箱中待领取的），供上架时挑选最空闲的线程
+    private final AtomicInteger assigned = new AtomicInteger();
+
+    MatchingThread(int id, WaitStrategy waitStrategy) {
+        this.id = id;
+        this.waitStrategy = waitStrategy;
+        // JDK 没有提供绑核 API，线程按编号命名，部署时可通过 taskset / isolcpus 绑定到独立核心
+        this.thread = new Thread(this::runLoop, "matching-thread-" + id);
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        running = true;
+        thread.start();
+    }
+
+    void stop() {
+        running = false;
+        try {
+            thread.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 所有撮合线程都停止后由关闭线程调用：处理完名下分片（含停止前刚迁入收件箱的）已入队的全部指令
+     * 不能在各自线程退出前做，否则别的线程在最后一轮迁过来的分片会被漏掉
+     */
+    void finishAll() {
+        takeInbox();
+        for (int i = 0; i < ownedCount; i++) {
+            owned[i].finish();
+            if (owned[i].delisted) {
+                owned[i].closeBooks();
+            }
+        }
+        ownedCount = 0;
+    }
+
+    // 任意线程调用：把分片交给本线程
+    void adopt(MatchingSystem.EngineShard shard) {
+        shard.owner = this;
+        assigned.incrementAndGet();
+        inbox.offer(shard);
+    }
+
+    int assignedCount() {
+        return assigned.get();
+    }
+
+    private void runLoop() {
+        while (running) {
+            if (poll() == 0) {
+                // 空闲时整理订单簿，压缩不占用撮合关键路径
+                for (int i = 0; i < ownedCount; i++) {
+                    owned[i].compactBooks();
+                }
+                waitStrategy.idle();
+            }
+        }
+    }
+
+    private int poll() {
+        takeInbox();
+        int work = 0;
+        for (int i = 0; i < ownedCount; i++) {
+            MatchingSystem.EngineShard shard = owned[i];
+            MatchingThread target = shard.transferTo;
+            if (target != null) {
+                // 在两次 drain 之间交出分片，之后本线程不再访问它
+                shard.transferTo = null;
+                removeAt(i--);
+                assigned.decrementAndGet();
+                target.adopt(shard);
+            } else if (shard.delisted) {
+                shard.finish();
+                shard.closeBooks();
+                removeAt(i--);
+                assigned.decrementAndGet();
+            } else {
+                work += shard.poll();
+            }
+        }
+        return work;
+    }
+
+    private void takeInbox() {
+        MatchingSystem.EngineShard shard;
+        while ((shard = inbox.poll()) != null) {
+            if (ownedCount == owned.length) {
+                owned = Arrays.copyOf(owned, ownedCount * 2);
+            }
+            owned[ownedCount++] = shard;
+        }
+    }
+
+    // 与末尾交换后删除，轮询顺序无关紧要
+    private void removeAt(int i) {
+        owned[i] = owned[--ownedCount];
+        owned[ownedCount] = null;
+    }
+}
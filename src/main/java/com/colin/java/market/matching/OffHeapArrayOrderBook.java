@@ -0,0 +1,650 @@
+package com.colin.java.market.matching;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import static com.colin.java.market.matching.OrderNodePool.NIL;
+
+/**
+ * 堆外版 ArrayOrderBook：档位数组、订单节点池、orderId 索引全部放在一块堆外内存里，堆上只剩这个对象本身
+ * 算法与 ArrayOrderBook 逐行对应（有序档位数组 + 每档 FIFO 节点队列 + 死档位延迟压缩），撮合结果完全相同；
+ * 产品很多时各自按峰值深度预分配的数组不再进入老年代，GC 不用扫描。
+ *
+ * close() 之后不能再访问；直接内存与文件映射由 ByteBuffer 自带的 Cleaner 在缓冲区被 GC 回收时释放。
+ * JDK 21 上没有不借助内部 API 就能立即释放的手段（java.lang.foreign.Arena 到 22 才正式发布），
+ * 堆外内存总量受 -XX:MaxDirectMemorySize 约束，超出时 allocateDirect 会先触发 GC 回收已关闭的订单簿。
+ * map() 把订单簿映射到文件：正常 close() 时写回游标并标记为干净，下次 map 同一文件直接接着用（热启动），
+ * 不需要重放日志；未正常关闭（进程崩溃）的文件标记为脏，map 时拒绝，应从日志/快照恢复。
+ * 热启动只恢复订单簿，账户风控的在簿订单索引不在其中（与快照恢复相同）。
+ * <pre>
+ * 头部 64 字节：MAGIC、容量参数、买卖方向、游标与计数、CLEAN 标记
+ * 之后依次：prices / levelQty / nodeIds / nodeQty / indexKeys (long)，
+ *          levels / heads / tails / freeLevels / next / prev / nodeLevels / indexValues (int)
+ * </pre>
+ */
+public class OffHeapArrayOrderBook implements MatchingBook, AutoCloseable {
+    private static final long MAGIC = 0x4B4F4F4248464F31L; // "1OFHBOOK"
+    private static final int HEADER = 64;
+    private static final int H_MAGIC = 0;
+    private static final int H_CAPACITY = 8;
+    private static final int H_ORDER_CAPACITY = 12;
+    private static final int H_ASK = 16;
+    private static final int H_HEAD = 20;
+    private static final int H_END = 24;
+    private static final int H_DEAD_LEVELS = 28;
+    private static final int H_FREE_LEVEL_COUNT = 32;
+    private static final int H_FREE_HEAD = 36;
+    private static final int H_USED = 40;
+    private static final int H_INDEX_SIZE = 44;
+    private static final int H_CLEAN = 48;
+
+    private final boolean isAskBook;
+    private final int capacity;
+    private final int orderCapacity;
+    private final int indexMask;
+    // 各数组在内存块中的起始偏移
+    private final int prices, levelQty, nodeIds, nodeQty, indexKeys;
+    private final int levels, heads, tails, freeLevels, next, prev, nodeLevels, indexValues;
+
+    private ByteBuffer buf; // close() 后为 null
+    private final FileChannel channel; // 映射文件时非 null
+
+    // 游标与计数放在堆上，close() 时写回头部
+    private int head;
+    private int end;
+    private int deadLevels;
+    private int freeLevelCount;
+    private int freeHead;
+    private int used;
+    private int indexSize;
+    private FillListener fillListener = FillListener.NO_OP;
+
+    // 直接内存
+    public OffHeapArrayOrderBook(int capacity, int orderCapacity, boolean isAskBook) {
+        this(capacity, orderCapacity, isAskBook, null, null);
+    }
+
+    private OffHeapArrayOrderBook(int capacity, int orderCapacity, boolean isAskBook,
+                                  FileChannel channel, MappedByteBuffer mapped) {
+        if (capacity <= 0 || orderCapacity <= 0) {
+            throw new IllegalArgumentException("capacity 必须大于 0");
+        }
+        this.isAskBook = isAskBook;
+        this.capacity = capacity;
+        this.orderCapacity = orderCapacity;
+        int indexCapacity = indexCapacity(orderCapacity);
+        this.indexMask = indexCapacity - 1;
+        long p = HEADER;
+        this.prices = (int) p;
+        p += 8L * capacity;
+        this.levelQty = (int) p;
+        p += 8L * capacity;
+        this.nodeIds = (int) p;
+        p += 8L * orderCapacity;
+        this.nodeQty = (int) p;
+        p += 8L * orderCapacity;
+        this.indexKeys = (int) p;
+        p += 8L * indexCapacity;
+        this.levels = (int) p;
+        p += 4L * capacity;
+        this.heads = (int) p;
+        p += 4L * capacity;
+        this.tails = (int) p;
+        p += 4L * capacity;
+        this.freeLevels = (int) p;
+        p += 4L * capacity;
+        this.next = (int) p;
+        p += 4L * orderCapacity;
+        this.prev = (int) p;
+        p += 4L * orderCapacity;
+        this.nodeLevels = (int) p;
+        p += 4L * orderCapacity;
+        this.indexValues = (int) p;
+        p += 4L * indexCapacity;
+        if (p != bytes(capacity, orderCapacity)) {
+            throw new AssertionError("layout mismatch");
+        }
+        this.channel = channel;
+        if (mapped != null) {
+            this.buf = mapped.order(ByteOrder.nativeOrder());
+        } else {
+            this.buf = ByteBuffer.allocateDirect((int) p).order(ByteOrder.nativeOrder());
+            clear();
+        }
+    }
+
+    // 与 OrderIdIndex 相同：2 倍以上的 2 的幂，负载因子不超过 0.5
+    private static int indexCapacity(int orderCapacity) {
+        return Integer.highestOneBit(Math.max(2, orderCapacity) * 2 - 1) << 1;
+    }
+
+    // 需要的内存字节数
+    public static long bytes(int capacity, int orderCapacity) {
+        int indexCapacity = indexCapacity(orderCapacity);
+        long n = HEADER + 12L * capacity * 2 + 4L * capacity * 2 + 16L * orderCapacity + 12L * orderCapacity
+                + 12L * indexCapacity;
+        if (n > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("订单簿超过 2GB: capacity=" + capacity + ", orderCapacity=" + orderCapacity);
+        }
+        return n;
+    }
+
+    /**
+     * 映射到文件：文件不存在（或为空）时新建空簿；存在且上次正常关闭时原样恢复（热启动）
+     * @throws IllegalStateException 文件未正常关闭，或参数与文件中的不一致
+     */
+    public static OffHeapArrayOrderBook map(Path file, int capacity, int orderCapacity, boolean isAskBook) {
+        long size = bytes(capacity, orderCapacity);
+        FileChannel channel = null;
+        try {
+            boolean fresh = !Files.exists(file) || Files.size(file) == 0;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            if (!fresh && channel.size() != size) {
+                throw new IllegalStateException("订单簿文件大小不符: " + file);
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            mapped.order(ByteOrder.nativeOrder());
+            if (!fresh) {
+                if (mapped.getLong(H_MAGIC) != MAGIC || mapped.getInt(H_CAPACITY) != capacity
+                        || mapped.getInt(H_ORDER_CAPACITY) != orderCapacity
+                        || (mapped.getInt(H_ASK) != 0) != isAskBook) {
+                    throw new IllegalStateException("订单簿文件与参数不符: " + file);
+                }
+                if (mapped.getInt(H_CLEAN) != 1) {
+                    throw new IllegalStateException("订单簿文件未正常关闭: " + file);
+                }
+            }
+            OffHeapArrayOrderBook book = new OffHeapArrayOrderBook(capacity, orderCapacity, isAskBook, channel, mapped);
+            if (fresh) {
+                book.clear();
+            } else {
+                book.loadHeader();
+            }
+            // 使用期间标记为脏，崩溃后的文件不会被当作一致的订单簿
+            book.storeHeader();
+            book.buf.putInt(H_CLEAN, 0);
+            mapped.force();
+            return book;
+        } catch (IOException e) {
+            closeQuietly(channel);
+            throw new UncheckedIOException(e);
+        } catch (RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+    }
+
+    private static void closeQuietly(FileChannel channel) {
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void loadHeader() {
+        head = buf.getInt(H_HEAD);
+        end = buf.getInt(H_END);
+        deadLevels = buf.getInt(H_DEAD_LEVELS);
+        freeLevelCount = buf.getInt(H_FREE_LEVEL_COUNT);
+        freeHead = buf.getInt(H_FREE_HEAD);
+        used = buf.getInt(H_USED);
+        indexSize = buf.getInt(H_INDEX_SIZE);
+    }
+
+    private void storeHeader() {
+        buf.putLong(H_MAGIC, MAGIC);
+        buf.putInt(H_CAPACITY, capacity);
+        buf.putInt(H_ORDER_CAPACITY, orderCapacity);
+        buf.putInt(H_ASK, isAskBook ? 1 : 0);
+        buf.putInt(H_HEAD, head);
+        buf.putInt(H_END, end);
+        buf.putInt(H_DEAD_LEVELS, deadLevels);
+        buf.putInt(H_FREE_LEVEL_COUNT, freeLevelCount);
+        buf.putInt(H_FREE_HEAD, freeHead);
+        buf.putInt(H_USED, used);
+        buf.putInt(H_INDEX_SIZE, indexSize);
+    }
+
+    // 按下标读写各数组
+    private long getLong(int base, int i) {
+        return buf.getLong(base + (i << 3));
+    }
+
+    private void putLong(int base, int i, long v) {
+        buf.putLong(base + (i << 3), v);
+    }
+
+    private int getInt(int base, int i) {
+        return buf.getInt(base + (i << 2));
+    }
+
+    private void putInt(int base, int i, int v) {
+        buf.putInt(base + (i << 2), v);
+    }
+
+    // prices / levels 一起平移 count 个元素（区间可重叠）
+    private void moveLevels(int from, int to, int count) {
+        if (to < from) {
+            for (int k = 0; k < count; k++) {
+                putLong(prices, to + k, getLong(prices, from + k));
+                putInt(levels, to + k, getInt(levels, from + k));
+            }
+        } else {
+            for (int k = count - 1; k >= 0; k--) {
+                putLong(prices, to + k, getLong(prices, from + k));
+                putInt(levels, to + k, getInt(levels, from + k));
+            }
+        }
+    }
+
+    @Override
+    public void add(long orderId, long price, long quantity) {
+        // 先确认节点池有空位再动档位数组，池满时订单簿保持原状
+        if (freeHead == NIL) {
+            throw new IllegalStateException("订单节点池已满, capacity=" + orderCapacity);
+        }
+        if (head == end) {
+            head = end = capacity >>> 1;
+        }
+        int i = end - 1;
+        if (isAskBook) {
+            while (i >= head && getLong(prices, i) > price) {
+                i--;
+            }
+        } else {
+            while (i >= head && getLong(prices, i) < price) {
+                i--;
+            }
+        }
+
+        int level;
+        if (i >= head && getLong(prices, i) == price) {
+            level = getInt(levels, i);
+            if (getInt(heads, level) == NIL) {
+                deadLevels--;
+            }
+        } else {
+            int insertAt = i + 1;
+            if (head > 0 && (end == capacity || insertAt - head < end - insertAt)) {
+                moveLevels(head, head - 1, insertAt - head);
+                head--;
+                insertAt--;
+            } else {
+                if (end == capacity) {
+                    if (deadLevels == 0) {
+                        throw new IllegalStateException("价格档位已满, capacity=" + capacity);
+                    }
+                    compact();
+                    add(orderId, price, quantity);
+                    return;
+                }
+                moveLevels(insertAt, insertAt + 1, end - insertAt);
+                end++;
+            }
+            level = getInt(freeLevels, --freeLevelCount);
+            putLong(prices, insertAt, price);
+            putInt(levels, insertAt, level);
+        }
+
+        int node = acquire(orderId, quantity, level);
+        append(level, node);
+        putLong(levelQty, level, getLong(levelQty, level) + quantity);
+        if (orderId != 0) {
+            indexPut(orderId, node);
+        }
+    }
+
+    @Override
+    public long match(long incomingPrice, long incomingQty) {
+        long tradedQty = 0;
+        int i = head;
+        while (i < end && incomingQty > 0) {
+            long bestPrice = getLong(prices, i);
+            boolean priceMatch = isAskBook ? (incomingPrice >= bestPrice) : (incomingPrice <= bestPrice);
+            if (!priceMatch) break;
+
+            int level = getInt(levels, i);
+            int node = getInt(heads, level);
+            if (node == NIL) {
+                deadLevels--; // 扫过中间的死档位，随后和吃空的档位一起回收
+            }
+            while (node != NIL && incomingQty > 0) {
+                long resting = getLong(nodeQty, node);
+                long matchSize = Math.min(incomingQty, resting);
+                incomingQty -= matchSize;
+                resting -= matchSize;
+                putLong(nodeQty, node, resting);
+                putLong(levelQty, level, getLong(levelQty, level) - matchSize);
+                tradedQty += matchSize;
+                long makerId = getLong(nodeIds, node);
+                fillListener.onFill(makerId, bestPrice, matchSize, resting);
+                if (resting != 0) {
+                    break;
+                }
+                // 队首全部成交：出队并归还节点
+                if (makerId != 0) {
+                    indexRemove(makerId);
+                }
+                int nextNode = getInt(next, node);
+                putInt(next, node, freeHead);
+                freeHead = node;
+                used--;
+                node = nextNode;
+            }
+            putInt(heads, level, node);
+            if (node != NIL) {
+                putInt(prev, node, NIL);
+                break;
+            }
+            putInt(tails, level, NIL);
+            putInt(freeLevels, freeLevelCount++, level);
+            i++;
+        }
+        head = i;
+        if (deadLevels != 0) {
+            popDeadLevels();
+        }
+        return tradedQty;
+    }
+
+    private void popDeadLevels() {
+        while (head < end && getInt(heads, getInt(levels, head)) == NIL) {
+            putInt(freeLevels, freeLevelCount++, getInt(levels, head));
+            deadLevels--;
+            head++;
+        }
+    }
+
+    @Override
+    public void compact() {
+        if (deadLevels == 0 && (end < capacity || head == 0)) {
+            return;
+        }
+        int w = head;
+        for (int r = head; r < end; r++) {
+            int level = getInt(levels, r);
+            if (getInt(heads, level) == NIL) {
+                putInt(freeLevels, freeLevelCount++, level);
+            } else {
+                putLong(prices, w, getLong(prices, r));
+                putInt(levels, w, level);
+                w++;
+            }
+        }
+        int live = w - head;
+        int start = (capacity - live) >>> 1;
+        moveLevels(head, start, live);
+        head = start;
+        end = start + live;
+        deadLevels = 0;
+    }
+
+    @Override
+    public boolean cancel(long orderId) {
+        int node = indexRemove(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int level = getInt(nodeLevels, node);
+        putLong(levelQty, level, getLong(levelQty, level) - getLong(nodeQty, node));
+        unlink(node);
+        release(node);
+        if (getInt(heads, level) == NIL) {
+            deadLevels++;
+            popDeadLevels();
+        }
+        return true;
+    }
+
+    @Override
+    public boolean amend(long orderId, long newQty) {
+        if (newQty <= 0) {
+            return cancel(orderId);
+        }
+        int node = indexGet(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int level = getInt(nodeLevels, node);
+        long oldQty = getLong(nodeQty, node);
+        putLong(levelQty, level, getLong(levelQty, level) + newQty - oldQty);
+        putLong(nodeQty, node, newQty);
+        if (newQty > oldQty && getInt(tails, level) != node) {
+            unlink(node);
+            append(level, node);
+        }
+        return true;
+    }
+
+    @Override
+    public long orderQuantity(long orderId) {
+        int node = indexGet(orderId);
+        return node == OrderIdIndex.MISSING ? 0 : getLong(nodeQty, node);
+    }
+
+    @Override
+    public void clear() {
+        head = end = 0;
+        deadLevels = 0;
+        for (int level = 0; level < capacity; level++) {
+            putLong(levelQty, level, 0);
+            putInt(heads, level, NIL);
+            putInt(tails, level, NIL);
+            putInt(freeLevels, level, capacity - 1 - level);
+        }
+        freeLevelCount = capacity;
+        for (int n = 0; n < orderCapacity; n++) {
+            putInt(next, n, n + 1 < orderCapacity ? n + 1 : NIL);
+        }
+        freeHead = 0;
+        used = 0;
+        for (int k = 0; k <= indexMask; k++) {
+            putLong(indexKeys, k, 0L);
+        }
+        indexSize = 0;
+    }
+
+    @Override
+    public int depth(long[] outPrices, long[] outQuantities, int maxLevels) {
+        int n = 0;
+        for (int i = head; i < end && n < maxLevels; i++) {
+            int level = getInt(levels, i);
+            if (getInt(heads, level) != NIL) {
+                outPrices[n] = getLong(prices, i);
+                outQuantities[n] = getLong(levelQty, level);
+                n++;
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void forEachOrder(OrderVisitor visitor) {
+        for (int i = head; i < end; i++) {
+            long price = getLong(prices, i);
+            for (int node = getInt(heads, getInt(levels, i)); node != NIL; node = getInt(next, node)) {
+                visitor.visit(getLong(nodeIds, node), price, getLong(nodeQty, node));
+            }
+        }
+    }
+
+    // ---- 节点池（同 OrderNodePool） ----
+
+    private int acquire(long orderId, long quantity, int level) {
+        int node = freeHead;
+        if (node == NIL) {
+            throw new IllegalStateException("订单节点池已满, capacity=" + orderCapacity);
+        }
+        freeHead = getInt(next, node);
+        putLong(nodeIds, node, orderId);
+        putLong(nodeQty, node, quantity);
+        putInt(nodeLevels, node, level);
+        putInt(next, node, NIL);
+        putInt(prev, node, NIL);
+        used++;
+        return node;
+    }
+
+    private void release(int node) {
+        putInt(next, node, freeHead);
+        freeHead = node;
+        used--;
+    }
+
+    private void append(int level, int node) {
+        int tail = getInt(tails, level);
+        putInt(prev, node, tail);
+        putInt(next, node, NIL);
+        if (tail == NIL) {
+            putInt(heads, level, node);
+        } else {
+            putInt(next, tail, node);
+        }
+        putInt(tails, level, node);
+    }
+
+    private void unlink(int node) {
+        int level = getInt(nodeLevels, node);
+        int p = getInt(prev, node);
+        int n = getInt(next, node);
+        if (p == NIL) {
+            putInt(heads, level, n);
+        } else {
+            putInt(next, p, n);
+        }
+        if (n == NIL) {
+            putInt(tails, level, p);
+        } else {
+            putInt(prev, n, p);
+        }
+        putInt(prev, node, NIL);
+        putInt(next, node, NIL);
+    }
+
+    // ---- orderId 索引（同 OrderIdIndex：线性探测 + 向后移位删除） ----
+
+    private int slot(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & indexMask;
+    }
+
+    private void indexPut(long key, int value) {
+        int i = slot(key);
+        long k;
+        while ((k = getLong(indexKeys, i)) != 0L) {
+            if (k == key) {
+                putInt(indexValues, i, value);
+                return;
+            }
+            i = (i + 1) & indexMask;
+        }
+        if (indexSize >= (indexMask + 1) >>> 1) {
+            throw new IllegalStateException("订单索引已满, size=" + indexSize);
+        }
+        putLong(indexKeys, i, key);
+        putInt(indexValues, i, value);
+        indexSize++;
+    }
+
+    private int indexGet(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = getLong(indexKeys, i)) != 0L) {
+            if (k == key) {
+                return getInt(indexValues, i);
+            }
+            i = (i + 1) & indexMask;
+        }
+        return OrderIdIndex.MISSING;
+    }
+
+    private int indexRemove(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = getLong(indexKeys, i)) != 0L) {
+            if (k == key) {
+                int value = getInt(indexValues, i);
+                int hole = i;
+                while (true) {
+                    i = (i + 1) & indexMask;
+                    long moved = getLong(indexKeys, i);
+                    if (moved == 0L) {
+                        break;
+                    }
+                    int home = slot(moved);
+                    boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+                    if (movable) {
+                        putLong(indexKeys, hole, moved);
+                        putInt(indexValues, hole, getInt(indexValues, i));
+                        hole = i;
+                    }
+                }
+                putLong(indexKeys, hole, 0L);
+                indexSize--;
+                return value;
+            }
+            i = (i + 1) & indexMask;
+        }
+        return OrderIdIndex.MISSING;
+    }
+
+    @Override
+    public void setFillListener(FillListener fillListener) {
+        this.fillListener = fillListener == null ? FillListener.NO_OP : fillListener;
+    }
+
+    public int size() {
+        return end - head;
+    }
+
+    public int deadLevels() {
+        return deadLevels;
+    }
+
+    @Override
+    public int orderCount() {
+        return used;
+    }
+
+    @Override
+    public boolean isAskBook() {
+        return isAskBook;
+    }
+
+    public boolean isMapped() {
+        return channel != null;
+    }
+
+    public boolean isClosed() {
+        return buf == null;
+    }
+
+    /**
+     * 关闭：映射文件时先写回游标、标记为干净并刷盘，之后可以用 map 热启动
+     * 必须在撮合线程停止后调用，之后任何访问都会抛出 NullPointerException；内存在缓冲区被 GC 回收时释放
+     */
+    @Override
+    public void close() {
+        ByteBuffer b = buf;
+        if (b == null) {
+            return;
+        }
+        if (channel != null) {
+            storeHeader();
+            b.putInt(H_CLEAN, 1);
+            ((MappedByteBuffer) b).force();
+        }
+        buf = null;
+        closeQuietly(channel);
+    }
+}
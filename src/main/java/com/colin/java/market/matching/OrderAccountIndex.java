@@ -0,0 +1,103 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+/**
+ * 在簿订单 -> (资金账户, 限价) 的索引，由分片在撮合线程上维护（单线程，无同步）
+ * 订单簿本身只记录 orderId，成交/撤单回调时据此找到要结算或退回预占的账户。
+ * orderId -> 槽位用 OrderIdIndex，槽位数据放在并行的基本类型数组里，槽位用空闲栈复用。
+ * 产品上千时大部分分片挂单很少，初始容量取小值，写满时按 2 倍扩容（摊还 O(1)）。
+ */
+public class OrderAccountIndex {
+    private OrderIdIndex index;
+    private long[] orderIds; // 0 表示空闲槽位
+    private long[] accounts;
+    private long[] prices;
+    private int[] freeSlots;
+    private int freeCount;
+
+    public OrderAccountIndex(int initialCapacity) {
+        allocate(Math.max(16, initialCapacity));
+    }
+
+    private void allocate(int capacity) {
+        index = new OrderIdIndex(capacity);
+        orderIds = new long[capacity];
+        accounts = new long[capacity];
+        prices = new long[capacity];
+        freeSlots = new int[capacity];
+        resetFreeSlots();
+    }
+
+    // orderId 不能为 0（匿名挂单不跟踪）
+    public void put(long orderId, long accountId, long price) {
+        if (freeCount == 0) {
+            grow();
+        }
+        int slot = freeSlots[--freeCount];
+        orderIds[slot] = orderId;
+        accounts[slot] = accountId;
+        prices[slot] = price;
+        index.put(orderId, slot);
+    }
+
+    // 槽位，不存在返回 OrderIdIndex.MISSING
+    public int find(long orderId) {
+        return index.get(orderId);
+    }
+
+    public long accountAt(int slot) {
+        return accounts[slot];
+    }
+
+    public long priceAt(int slot) {
+        return prices[slot];
+    }
+
+    public void remove(long orderId) {
+        int slot = index.remove(orderId);
+        if (slot != OrderIdIndex.MISSING) {
+            orderIds[slot] = 0;
+            freeSlots[freeCount++] = slot;
+        }
+    }
+
+    public void clear() {
+        index.clear();
+        Arrays.fill(orderIds, 0);
+        resetFreeSlots();
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public int capacity() {
+        return orderIds.length;
+    }
+
+    // 槽位已满（全部在用），扩容后原槽位号不变，只需重建哈希表
+    private void grow() {
+        int capacity = orderIds.length * 2;
+        int used = orderIds.length;
+        orderIds = Arrays.copyOf(orderIds, capacity);
+        accounts = Arrays.copyOf(accounts, capacity);
+        prices = Arrays.copyOf(prices, capacity);
+        freeSlots = new int[capacity];
+        freeCount = 0;
+        for (int slot = capacity - 1; slot >= used; slot--) {
+            freeSlots[freeCount++] = slot;
+        }
+        index = new OrderIdIndex(capacity);
+        for (int slot = 0; slot < used; slot++) {
+            index.put(orderIds[slot], slot);
+        }
+    }
+
+    private void resetFreeSlots() {
+        for (int i = 0; i < freeSlots.length; i++) {
+            freeSlots[i] = freeSlots.length - 1 - i;
+        }
+        freeCount = freeSlots.length;
+    }
+}
@@ -0,0 +1,184 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+/**
+ * 可配置的订单流生成器（压测用）
+ * 每个产品维护一个随机游走的中间价，按比例生成限价单、市价单和撤单：
+ * <ul>
+ *   <li>限价单围绕中间价挂出，距中间价的档数服从几何分布，小部分越过中间价直接成交；</li>
+ *   <li>市价单用穿过中间价 marketSweepTicks 档的限价单表示（SimpleOrder 没有市价类型，且买单要按价格预占购买力）；</li>
+ *   <li>撤单从该产品尚未撤过的限价单里随机挑选，可能已经成交（与真实流量一样会撤单失败）；
+ *       每个产品最多跟踪 cancelWindow 笔，跟踪满时下一条指令强制为撤单，订单簿里的挂单数因此有上限，长时间压测不会写满订单簿；</li>
+ *   <li>数量服从对数正态分布，按 lotSize 取整；</li>
+ *   <li>产品按 Zipf 分布倾斜，下标越小越热。</li>
+ * </ul>
+ * next 填写调用方复用的 SimpleOrder，生成过程不分配对象；同一个 seed 生成的序列完全相同。
+ * 单线程使用。
+ */
+public class OrderFlowGenerator {
+
+    // 配置：public 字段直接赋值，构造生成器之后修改不生效
+    public static class Config {
+        public long[] productIds = {1001L};
+        public double productSkew = 1.0; // Zipf 指数，0 表示均匀
+        public int accounts = 1; // 账户号 0 ~ accounts-1 均匀分布
+
+        public double limitRatio = 0.6;
+        public double marketRatio = 0.1;
+        public double cancelRatio = 0.3; // 跟踪的挂单达到 cancelWindow 后实际撤单比例会高于此值
+
+        public long initialPrice = 10_000;
+        public long tickSize = 1;
+        public double driftTicks = 0; // 每笔订单中间价的平均漂移（档）
+        public double volatilityTicks = 0.5; // 每笔订单中间价随机游走的标准差（档）
+        public double meanDistanceTicks = 3; // 限价单距中间价的平均档数
+        public double aggressiveRatio = 0.05; // 限价单中越过中间价的比例
+        public int marketSweepTicks = 20;
+
+        public long lotSize = 1;
+        public double medianLots = 10; // 数量中位数（手）
+        public double quantitySigma = 1.0; // 对数正态的 sigma，越大尾部越重
+        public long maxLots = 10_000;
+
+        public int cancelWindow = 1024; // 每个产品最多跟踪的未撤挂单数
+        public long seed = 42;
+    }
+
+    private final Config config;
+    private final SplittableRandom random;
+    private final double[] productCdf;
+    private final double[] mids;
+    private final long[][] liveOrders; // 每个产品已挂出、尚未撤单的订单号（无序）
+    private final int[] liveCount;
+    private final double limitCut;
+    private final double marketCut;
+    private long nextOrderId;
+
+    public OrderFlowGenerator(Config config) {
+        if (config.cancelWindow <= 0) {
+            throw new IllegalArgumentException("cancelWindow 必须为正数: " + config.cancelWindow);
+        }
+        double total = config.limitRatio + config.marketRatio + config.cancelRatio;
+        if (total <= 0 || config.limitRatio < 0 || config.marketRatio < 0 || config.cancelRatio < 0) {
+            throw new IllegalArgumentException("订单比例无效");
+        }
+        this.config = config;
+        this.random = new SplittableRandom(config.seed);
+        this.limitCut = config.limitRatio / total;
+        this.marketCut = (config.limitRatio + config.marketRatio) / total;
+
+        int n = config.productIds.length;
+        productCdf = new double[n];
+        double sum = 0;
+        for (int i = 0; i < n; i++) {
+            sum += 1.0 / Math.pow(i + 1, config.productSkew);
+            productCdf[i] = sum;
+        }
+        for (int i = 0; i < n; i++) {
+            productCdf[i] /= sum;
+        }
+        mids = new double[n];
+        Arrays.fill(mids, config.initialPrice);
+        liveOrders = new long[n][config.cancelWindow];
+        liveCount = new int[n];
+        nextOrderId = 1;
+    }
+
+    /**
+     * 生成下一条指令写入 order：新单（command = NEW）或撤单（command = CANCEL）
+     * 产品还没有挂过单时撤单改为生成限价单
+     */
+    public void next(SimpleOrder order) {
+        int p = pickProduct();
+        walk(p);
+        double kind = random.nextDouble();
+        if ((kind >= marketCut && liveCount[p] > 0) || liveCount[p] == config.cancelWindow) {
+            // 随机取一笔，末尾的补到空位
+            long[] live = liveOrders[p];
+            int i = random.nextInt(liveCount[p]);
+            order.orderId = live[i];
+            live[i] = live[--liveCount[p]];
+            order.accountId = 0;
+            order.productId = config.productIds[p];
+            order.price = 0;
+            order.quantity = 0;
+            order.isBuy = false;
+            order.command = SimpleOrder.CANCEL;
+            return;
+        }
+        boolean market = kind >= limitCut && kind < marketCut;
+        boolean buy = random.nextBoolean();
+        long mid = Math.round(mids[p] / config.tickSize) * config.tickSize;
+        long ticks;
+        if (market) {
+            ticks = -config.marketSweepTicks;
+        } else {
+            // 几何分布的档数，aggressiveRatio 的订单取反越过中间价
+            ticks = (long) (-Math.log(1 - random.nextDouble()) * config.meanDistanceTicks);
+            if (random.nextDouble() < config.aggressiveRatio) {
+                ticks = -ticks - 1;
+            }
+        }
+        // ticks 为正表示远离对手方（被动），买单在中间价下方、卖单在上方
+        long price = buy ? mid - ticks * config.tickSize : mid + ticks * config.tickSize;
+        order.orderId = nextOrderId++;
+        order.accountId = config.accounts <= 1 ? 0 : random.nextInt(config.accounts);
+        order.productId = config.productIds[p];
+        order.price = Math.max(config.tickSize, price);
+        order.quantity = quantity();
+        order.isBuy = buy;
+        order.command = SimpleOrder.NEW;
+        if (!market) {
+            liveOrders[p][liveCount[p]++] = order.orderId;
+        }
+    }
+
+    private int pickProduct() {
+        double[] cdf = productCdf;
+        if (cdf.length == 1) {
+            return 0;
+        }
+        double u = random.nextDouble();
+        int lo = 0;
+        int hi = cdf.length - 1;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (cdf[mid] < u) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // 中间价随机游走：每笔订单移动 drift + N(0, volatility) 档，不低于 1 档
+    private void walk(int p) {
+        double step = config.driftTicks + gaussian() * config.volatilityTicks;
+        mids[p] = Math.max(config.tickSize, mids[p] + step * config.tickSize);
+    }
+
+    private long quantity() {
+        double lots = config.medianLots * Math.exp(gaussian() * config.quantitySigma);
+        long n = Math.max(1, Math.min(config.maxLots, Math.round(lots)));
+        return n * config.lotSize;
+    }
+
+    // Box-Muller，只取一个值，避免 Random.nextGaussian 的同步
+    private double gaussian() {
+        double u = 1 - random.nextDouble();
+        double v = random.nextDouble();
+        return Math.sqrt(-2 * Math.log(u)) * Math.cos(2 * Math.PI * v);
+    }
+
+    // 当前中间价（未取整）
+    public double mid(int productIndex) {
+        return mids[productIndex];
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+}
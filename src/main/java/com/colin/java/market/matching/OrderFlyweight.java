@@ -0,0 +1,148 @@
+package com.colin.java.market.matching;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * 定长二进制订单的享元视图
+ * 网关把收到的报文直接 wrap 成订单，不解析成对象；同一个实例可以反复 wrap 到不同位置（直接内存或堆内均可）。
+ * 字段通过 VarHandle 按小端读写，与缓冲区自身的 order 设置无关。
+ *
+ * 记录格式（小端，64 字节）：
+ * <pre>
+ * 0  orderId    8
+ * 8  accountId  8
+ * 16 productId  8
+ * 24 price      8
+ * 32 quantity   8
+ * 40 timestamp  8  网关收到报文的时间（System.nanoTime），0 表示由网关接入时补填
+ * 48 command    1
+ * 49 isBuy      1
+ * 50 保留       6
+ * 56 sequence   8  会话内的消息序号（OrderGateway 用于去重与缺口检测，撮合不使用）
+ * </pre>
+ */
+public final class OrderFlyweight {
+    public static final int LENGTH = 64;
+    static final int OFF_ORDER_ID = 0;
+    static final int OFF_ACCOUNT_ID = 8;
+    static final int OFF_PRODUCT_ID = 16;
+    static final int OFF_PRICE = 24;
+    static final int OFF_QUANTITY = 32;
+    static final int OFF_TIMESTAMP = 40;
+    static final int OFF_COMMAND = 48;
+    static final int OFF_IS_BUY = 49;
+    static final int OFF_SEQUENCE = 56;
+
+    private static final VarHandle LONG =
+            MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private ByteBuffer buffer;
+    private int offset;
+
+    // 指向 buffer 中 offset 开始的一条记录，返回自身便于链式调用
+    public OrderFlyweight wrap(ByteBuffer buffer, int offset) {
+        if (offset < 0 || offset + LENGTH > buffer.capacity()) {
+            throw new IndexOutOfBoundsException("offset " + offset + " capacity " + buffer.capacity());
+        }
+        this.buffer = buffer;
+        this.offset = offset;
+        return this;
+    }
+
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public int offset() {
+        return offset;
+    }
+
+    public long orderId() {
+        return (long) LONG.get(buffer, offset + OFF_ORDER_ID);
+    }
+
+    public long accountId() {
+        return (long) LONG.get(buffer, offset + OFF_ACCOUNT_ID);
+    }
+
+    public long productId() {
+        return (long) LONG.get(buffer, offset + OFF_PRODUCT_ID);
+    }
+
+    public long price() {
+        return (long) LONG.get(buffer, offset + OFF_PRICE);
+    }
+
+    public long quantity() {
+        return (long) LONG.get(buffer, offset + OFF_QUANTITY);
+    }
+
+    public long timestamp() {
+        return (long) LONG.get(buffer, offset + OFF_TIMESTAMP);
+    }
+
+    public byte command() {
+        return buffer.get(offset + OFF_COMMAND);
+    }
+
+    public boolean isBuy() {
+        return buffer.get(offset + OFF_IS_BUY) != 0;
+    }
+
+    public long sequence() {
+        return (long) LONG.get(buffer, offset + OFF_SEQUENCE);
+    }
+
+    // 编码一条新订单（测试/压测客户端用），timestamp 为 0 时由网关接入时补填
+    public OrderFlyweight set(long orderId, long accountId, long productId, long price, long quantity,
+                              boolean isBuy, long timestamp) {
+        LONG.set(buffer, offset + OFF_ORDER_ID, orderId);
+        LONG.set(buffer, offset + OFF_ACCOUNT_ID, accountId);
+        LONG.set(buffer, offset + OFF_PRODUCT_ID, productId);
+        LONG.set(buffer, offset + OFF_PRICE, price);
+        LONG.set(buffer, offset + OFF_QUANTITY, quantity);
+        LONG.set(buffer, offset + OFF_TIMESTAMP, timestamp);
+        buffer.put(offset + OFF_COMMAND, SimpleOrder.NEW);
+        buffer.put(offset + OFF_IS_BUY, isBuy ? (byte) 1 : (byte) 0);
+        return this;
+    }
+
+    public OrderFlyweight command(byte command) {
+        buffer.put(offset + OFF_COMMAND, command);
+        return this;
+    }
+
+    // 网关就地改写：把客户端订单号映射为系统内订单号、强制使用会话绑定的账户
+    public OrderFlyweight orderId(long orderId) {
+        LONG.set(buffer, offset + OFF_ORDER_ID, orderId);
+        return this;
+    }
+
+    public OrderFlyweight accountId(long accountId) {
+        LONG.set(buffer, offset + OFF_ACCOUNT_ID, accountId);
+        return this;
+    }
+
+    public OrderFlyweight sequence(long sequence) {
+        LONG.set(buffer, offset + OFF_SEQUENCE, sequence);
+        return this;
+    }
+
+    /**
+     * 解码到预分配的 SimpleOrder（通常是 RingBuffer 的槽位），不产生对象
+     */
+    public void copyTo(SimpleOrder order) {
+        order.orderId = orderId();
+        order.accountId = accountId();
+        order.productId = productId();
+        order.price = price();
+        order.quantity = quantity();
+        order.isBuy = isBuy();
+        long ts = timestamp();
+        order.timestamp = ts != 0 ? ts : System.nanoTime();
+        order.command = command();
+    }
+}
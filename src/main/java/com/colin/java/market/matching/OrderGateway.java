@@ -0,0 +1,437 @@
+package com.colin.java.market.matching;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * 基于 Netty 的定长二进制报单网关
+ *
+ * 上行（客户端 -> 网关）：每条 64 字节，格式即 OrderFlyweight，command 为 NEW / CANCEL / AMEND / LOGON，
+ * 偏移 56 为会话内消息序号（从 1 开始连续递增）。连接后第一条必须是 LOGON：orderId 填会话号（1 ~ MAX_SESSIONS），
+ * accountId 填会话绑定的账户，序号不校验；之后的指令 accountId 一律以会话账户为准。
+ * 序号小于期望值的视为重发直接丢弃；大于期望值（有缺口）回 REJECT(REASON_SEQUENCE_GAP) 并断开，
+ * 断线重连后用同一会话号 LOGON，LOGON_ACK 的 quantity 告诉客户端下一个期望序号。
+ *
+ * 下行（网关 -> 客户端）：每条 64 字节，小端：
+ * <pre>
+ * 0  type       1  ExecutionReport.ACK / TRADE / REJECT，或 LOGON_ACK
+ * 1  command    1
+ * 2  reason     1  ExecutionReport.REASON_* 或本类的 REASON_*
+ * 3  isBuy      1
+ * 4  保留       4
+ * 8  sequence   8  会话内下行序号（从 1 开始）
+ * 16 orderId    8  客户端订单号
+ * 24 productId  8
+ * 32 price      8
+ * 40 quantity   8
+ * 48 leavesQty  8  本方剩余数量（成交回报中 Maker 一方为 Maker 的剩余）
+ * 56 timestamp  8
+ * </pre>
+ *
+ * 零拷贝解码：ByteToMessageDecoder 把半包累积在池化 ByteBuf 中，decode 时直接用 internalNioBuffer 取得底层视图，
+ * OrderFlyweight 按偏移逐条 wrap 后交给 MatchingSystem.handleOrder(OrderFlyweight)，整个上行链路不创建任何对象。
+ * 客户端订单号只需在会话内唯一：网关把会话号放在订单号高 24 位（CLIENT_ID_BITS 以上），
+ * 回报线程据此直接找到会话，不需要订单号到会话的映射表。
+ *
+ * 多个 IO 线程并发把指令写入各分片的多生产者 RingBuffer；回报由一个独立线程轮询各分片的 ExecutionReportRing，
+ * 按会话攒批后一次 writeAndFlush。会话已断开时回报直接丢弃（不做下行重放），但仍占用下行序号：
+ * 重新登录后的下一条回报跳过这些序号，客户端从序号缺口得知丢了多少条，可以另行查询订单状态。
+ * 下行序号在连接的 IO 线程上由出站的 SequenceStamper 逐条填写，无论报文由哪个线程写出，线上顺序与序号一致。
+ * 要求撮合系统已 start()，并且在 start() 之前构造网关（网关负责为各分片开启执行回报）。
+ */
+public class OrderGateway implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OrderGateway.class);
+
+    public static final int FRAME_LENGTH = OrderFlyweight.LENGTH;
+    public static final byte LOGON = 8;
+    public static final byte LOGON_ACK = 3;
+
+    // 网关层拒绝原因，接在 ExecutionReport.REASON_* 之后
+    public static final byte REASON_RISK = 4; // 风控拒绝
+    public static final byte REASON_UNKNOWN_PRODUCT = 5;
+    public static final byte REASON_SEQUENCE_GAP = 6; // quantity 为期望的序号，随后断开
+    public static final byte REASON_NOT_LOGGED_IN = 7;
+    public static final byte REASON_INVALID = 8; // 订单号越界、未知指令、重复登录等
+
+    // 下行报文偏移
+    public static final int OUT_TYPE = 0;
+    public static final int OUT_COMMAND = 1;
+    public static final int OUT_REASON = 2;
+    public static final int OUT_IS_BUY = 3;
+    public static final int OUT_SEQUENCE = 8;
+    public static final int OUT_ORDER_ID = 16;
+    public static final int OUT_PRODUCT_ID = 24;
+    public static final int OUT_PRICE = 32;
+    public static final int OUT_QUANTITY = 40;
+    public static final int OUT_LEAVES_QTY = 48;
+    public static final int OUT_TIMESTAMP = 56;
+    // 保留字段在网关内部携带断开期间丢弃的回报数，SequenceStamper 据此跳号并清零，不会发到线上
+    private static final int OUT_SKIPPED = 4;
+
+    public static final int CLIENT_ID_BITS = 40;
+    public static final long CLIENT_ID_MASK = (1L << CLIENT_ID_BITS) - 1;
+    public static final int MAX_SESSIONS = 1 << 16;
+
+    private final MatchingSystem system;
+    private final long[] productIds;
+    private final ExecutionReportRing[] reportRings;
+    private final Session[] sessions = new Session[MAX_SESSIONS + 1];
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private Channel serverChannel;
+    private Thread reportThread;
+    private volatile boolean running;
+
+    /**
+     * @param productIds 经网关交易的产品，需要已经 listProduct；回报环容量 reportCapacity 必须是 2 的幂
+     */
+    public OrderGateway(MatchingSystem system, long[] productIds, int reportCapacity) {
+        if (system.isRunning()) {
+            throw new IllegalStateException("网关需要在撮合系统 start() 之前创建，以便开启执行回报");
+        }
+        this.system = system;
+        this.productIds = productIds.clone();
+        this.reportRings = new ExecutionReportRing[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            MatchingSystem.EngineShard shard = system.getShard(productIds[i]);
+            if (shard == null) {
+                throw new IllegalArgumentException("产品未上市: " + productIds[i]);
+            }
+            reportRings[i] = shard.enableExecutionReports(reportCapacity);
+        }
+    }
+
+    // 会话状态：expectedSeq / outSeq 只在当前连接的 IO 线程上读写（重连时经 sessions 上的锁交接）；channel 由回报线程读取
+    static final class Session {
+        final int id;
+        final long accountId;
+        long expectedSeq = 1;
+        long outSeq;
+        volatile Channel channel;
+        // 仅回报线程使用：本轮攒下的待发报文
+        ByteBuf pending;
+        // 仅回报线程使用：会话断开期间丢弃、尚未计入下行序号的回报数
+        int skipped;
+
+        Session(int id, long accountId) {
+            this.id = id;
+            this.accountId = accountId;
+        }
+    }
+
+    // 出站：登录后为每条下行报文填写会话序号（先跳过报文携带的丢弃条数），登录前的拒绝序号为 0
+    private static final class SequenceStamper extends ChannelOutboundHandlerAdapter {
+        Session session;
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (session != null && msg instanceof ByteBuf buf) {
+                for (int i = buf.readerIndex(); i + FRAME_LENGTH <= buf.writerIndex(); i += FRAME_LENGTH) {
+                    int skipped = buf.getIntLE(i + OUT_SKIPPED);
+                    if (skipped != 0) {
+                        session.outSeq += skipped;
+                        buf.setIntLE(i + OUT_SKIPPED, 0);
+                    }
+                    buf.setLongLE(i + OUT_SEQUENCE, ++session.outSeq);
+                }
+            }
+            ctx.write(msg, promise);
+        }
+    }
+
+    /**
+     * 监听端口，port 为 0 时由系统分配，返回实际端口
+     */
+    public int start(int port) throws InterruptedException {
+        if (!system.isRunning()) {
+            throw new IllegalStateException("撮合系统未启动");
+        }
+        running = true;
+        reportThread = new Thread(this::pumpReports, "gateway-reports");
+        reportThread.setDaemon(true);
+        reportThread.start();
+
+        bossGroup = new NioEventLoopGroup(1);
+        workerGroup = new NioEventLoopGroup();
+        ServerBootstrap b = new ServerBootstrap();
+        b.group(bossGroup, workerGroup)
+                .channel(NioServerSocketChannel.class)
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        SequenceStamper stamper = new SequenceStamper();
+                        ch.pipeline().addLast(stamper, new SessionHandler(stamper));
+                    }
+                });
+        serverChannel = b.bind(port).sync().channel();
+        int bound = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+        logger.info("Order gateway started on port {}", bound);
+        return bound;
+    }
+
+    /**
+     * 每个连接一个实例：按 64 字节逐条处理累积缓冲区中的完整报文，不足一条的留待下次
+     */
+    private final class SessionHandler extends ByteToMessageDecoder {
+        private final OrderFlyweight order = new OrderFlyweight();
+        private final SequenceStamper stamper;
+        private Session session;
+        private boolean closing; // 已决定断开，剩余报文不再处理
+
+        SessionHandler(SequenceStamper stamper) {
+            this.stamper = stamper;
+            // 合并累积保证缓冲区始终是单段内存，internalNioBuffer 可用
+            setCumulator(MERGE_CUMULATOR);
+        }
+
+        @Override
+        protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) {
+            int frames = in.readableBytes() / FRAME_LENGTH;
+            if (frames == 0) {
+                return;
+            }
+            int length = frames * FRAME_LENGTH;
+            ByteBuffer nio = in.internalNioBuffer(in.readerIndex(), length);
+            int base = nio.position();
+            for (int i = 0; i < frames && !closing; i++) {
+                onFrame(ctx, order.wrap(nio, base + i * FRAME_LENGTH));
+            }
+            in.skipBytes(length);
+        }
+
+        @Override
+        public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+            super.channelReadComplete(ctx);
+            ctx.flush();
+        }
+
+        @Override
+        public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+            if (session != null) {
+                session.channel = null;
+            }
+            super.channelInactive(ctx);
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            logger.warn("Gateway session {} error: {}", session == null ? "-" : session.id, cause.toString());
+            ctx.close();
+        }
+
+        private void onFrame(ChannelHandlerContext ctx, OrderFlyweight order) {
+            byte command = order.command();
+            if (session == null) {
+                if (command == LOGON) {
+                    logon(ctx, order);
+                } else {
+                    reject(ctx, command, REASON_NOT_LOGGED_IN, order, true);
+                }
+                return;
+            }
+            long seq = order.sequence();
+            if (seq < session.expectedSeq) {
+                return; // 重发
+            }
+            if (seq > session.expectedSeq) {
+                reject(ctx, command, REASON_SEQUENCE_GAP, order, true);
+                return;
+            }
+            session.expectedSeq++;
+
+            long clientOrderId = order.orderId();
+            if (clientOrderId <= 0 || clientOrderId > CLIENT_ID_MASK || command == LOGON) {
+                reject(ctx, command, REASON_INVALID, order, false);
+                return;
+            }
+            order.orderId(((long) session.id << CLIENT_ID_BITS) | clientOrderId);
+            order.accountId(session.accountId);
+            if (!system.handleOrder(order)) {
+                byte reason = system.getShard(order.productId()) == null ? REASON_UNKNOWN_PRODUCT
+                        : command == SimpleOrder.NEW ? REASON_RISK : REASON_INVALID;
+                reject(ctx, command, reason, order, false);
+            }
+        }
+
+        private void logon(ChannelHandlerContext ctx, OrderFlyweight order) {
+            long id = order.orderId();
+            if (id <= 0 || id > MAX_SESSIONS) {
+                reject(ctx, LOGON, REASON_INVALID, order, true);
+                return;
+            }
+            Session s;
+            synchronized (sessions) {
+                s = sessions[(int) id];
+                if (s == null) {
+                    s = new Session((int) id, order.accountId());
+                    sessions[(int) id] = s;
+                } else if (s.channel != null || s.accountId != order.accountId()) {
+                    s = null; // 会话已在线，或账户与首次登录不一致
+                }
+                if (s != null) {
+                    s.channel = ctx.channel();
+                }
+            }
+            if (s == null) {
+                reject(ctx, LOGON, REASON_INVALID, order, true);
+                return;
+            }
+            session = s;
+            stamper.session = s;
+            ByteBuf buf = ctx.alloc().directBuffer(FRAME_LENGTH);
+            encode(buf, LOGON_ACK, LOGON, ExecutionReport.REASON_NONE, false, s.id, 0, 0, s.expectedSeq, 0,
+                    System.nanoTime());
+            ctx.write(buf);
+            logger.info("Gateway session {} logged on, account {}, next seq {}", s.id, s.accountId, s.expectedSeq);
+        }
+
+        // 网关自己产生的拒绝：平时随 channelReadComplete 统一 flush，需要断开时写完再关闭
+        private void reject(ChannelHandlerContext ctx, byte command, byte reason, OrderFlyweight order, boolean close) {
+            ByteBuf buf = ctx.alloc().directBuffer(FRAME_LENGTH);
+            long quantity = reason == REASON_SEQUENCE_GAP ? session.expectedSeq : order.quantity();
+            encode(buf, ExecutionReport.REJECT, command, reason, order.isBuy(), order.orderId() & CLIENT_ID_MASK,
+                    order.productId(), order.price(), quantity, 0, order.timestamp());
+            if (close) {
+                closing = true;
+                ctx.writeAndFlush(buf).addListener(ChannelFutureListener.CLOSE);
+            } else {
+                ctx.write(buf);
+            }
+        }
+    }
+
+    // 序号位置先填 0，由 SequenceStamper 在 IO 线程上填写
+    private static void encode(ByteBuf buf, byte type, byte command, byte reason, boolean isBuy, long orderId,
+                               long productId, long price, long quantity, long leavesQty, long timestamp) {
+        buf.writeByte(type);
+        buf.writeByte(command);
+        buf.writeByte(reason);
+        buf.writeByte(isBuy ? 1 : 0);
+        buf.writeIntLE(0);
+        buf.writeLongLE(0);
+        buf.writeLongLE(orderId);
+        buf.writeLongLE(productId);
+        buf.writeLongLE(price);
+        buf.writeLongLE(quantity);
+        buf.writeLongLE(leavesQty);
+        buf.writeLongLE(timestamp);
+    }
+
+    // ---------------- 回报线程 ----------------
+
+    private final Session[] touched = new Session[MAX_SESSIONS + 1];
+    private int touchedCount;
+    private final ExecutionReportHandler forwarder = this::forward;
+
+    private void pumpReports() {
+        int idle = 0;
+        while (running) {
+            int n = 0;
+            for (ExecutionReportRing ring : reportRings) {
+                n += ring.poll(forwarder, 256);
+            }
+            flushTouched();
+            if (n == 0) {
+                // 空闲时逐步退让，避免空转占满一个核
+                if (++idle > 100) {
+                    Thread.yield();
+                }
+            } else {
+                idle = 0;
+            }
+        }
+        flushTouched();
+    }
+
+    private void forward(ExecutionReport report, long sequence, boolean endOfBatch) {
+        append(report.orderId, report.type, report.command, report.rejectReason, report.isBuy, report.productId,
+                report.price, report.quantity, report.leavesQty, report.timestamp);
+        if (report.type == ExecutionReport.TRADE && report.makerOrderId != 0) {
+            // Maker 一方收到方向相反、剩余为 makerLeavesQty 的成交回报
+            append(report.makerOrderId, ExecutionReport.TRADE, SimpleOrder.NEW, ExecutionReport.REASON_NONE,
+                    !report.isBuy, report.productId, report.price, report.quantity, report.makerLeavesQty,
+                    report.timestamp);
+        }
+    }
+
+    private void append(long orderId, byte type, byte command, byte reason, boolean isBuy, long productId,
+                        long price, long quantity, long leavesQty, long timestamp) {
+        int id = (int) (orderId >>> CLIENT_ID_BITS);
+        Session s = id > 0 && id <= MAX_SESSIONS ? sessions[id] : null;
+        if (s == null) {
+            return; // 非网关来源的订单
+        }
+        if (s.channel == null) {
+            s.skipped++; // 会话已断开
+            return;
+        }
+        if (s.pending == null) {
+            s.pending = ByteBufAllocator.DEFAULT.directBuffer(FRAME_LENGTH * 16);
+            touched[touchedCount++] = s;
+        }
+        encode(s.pending, type, command, reason, isBuy, orderId & CLIENT_ID_MASK, productId, price, quantity,
+                leavesQty, timestamp);
+    }
+
+    private void flushTouched() {
+        for (int i = 0; i < touchedCount; i++) {
+            Session s = touched[i];
+            ByteBuf pending = s.pending;
+            s.pending = null;
+            touched[i] = null;
+            Channel channel = s.channel;
+            if (channel != null) {
+                if (s.skipped != 0) {
+                    pending.setIntLE(pending.readerIndex() + OUT_SKIPPED, s.skipped);
+                    s.skipped = 0;
+                }
+                channel.writeAndFlush(pending, channel.voidPromise());
+            } else {
+                s.skipped += pending.readableBytes() / FRAME_LENGTH;
+                pending.release();
+            }
+        }
+        touchedCount = 0;
+    }
+
+    public boolean isRunning() {
+        return running;
+    }
+
+    public long[] getProductIds() {
+        return productIds.clone();
+    }
+
+    @Override
+    public void close() {
+        if (serverChannel != null) {
+            serverChannel.close().syncUninterruptibly();
+        }
+        if (bossGroup != null) bossGroup.shutdownGracefully().syncUninterruptibly();
+        if (workerGroup != null) workerGroup.shutdownGracefully().syncUninterruptibly();
+        running = false;
+        if (reportThread != null) {
+            try {
+                reportThread.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
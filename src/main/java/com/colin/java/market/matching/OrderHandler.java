@@ -0,0 +1,7 @@
+package com.colin.java.market.matching;
+
+// RingBuffer 消费回调
+// endOfBatch 为 true 表示本批次最后一条，可用于批量刷盘/批量发布等收尾动作
+public interface OrderHandler {
+    void onOrder(SimpleOrder order, long sequence, boolean endOfBatch);
+}
@@ -0,0 +1,111 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+/**
+ * orderId -> 节点下标 的基本类型哈希表
+ * 开放寻址 + 线性探测，key/value 都是基本类型数组，查找/插入/删除均不装箱、不产生垃圾。
+ * 删除采用向后移位（backward shift）而不是墓碑标记，撤单风暴之后探测链不会越来越长。
+ * orderId = 0 保留为空槽标记（匿名挂单不进入索引）。
+ */
+public class OrderIdIndex {
+    public static final int MISSING = -1;
+    private static final long EMPTY = 0L;
+
+    private final long[] keys;
+    private final int[] values;
+    private final int mask;
+    private int size;
+
+    // expectedSize 为最多同时存在的订单数，表容量取其 2 倍以上的 2 的幂，负载因子不超过 0.5
+    public OrderIdIndex(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, expectedSize) * 2 - 1) << 1;
+        this.keys = new long[capacity];
+        this.values = new int[capacity];
+        this.mask = capacity - 1;
+    }
+
+    private int slot(long key) {
+        // Fibonacci hashing：连续递增的 orderId 也能均匀打散
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    public void put(long key, int value) {
+        int i = slot(key);
+        while (keys[i] != EMPTY) {
+            if (keys[i] == key) {
+                values[i] = value;
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        if (size >= (mask + 1) >>> 1) {
+            throw new IllegalStateException("订单索引已满, size=" + size);
+        }
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    public int get(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != EMPTY) {
+            if (k == key) {
+                return values[i];
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    // 删除并返回原值，不存在返回 MISSING
+    public int remove(long key) {
+        int i = slot(key);
+        long k;
+        while ((k = keys[i]) != EMPTY) {
+            if (k == key) {
+                int value = values[i];
+                shiftBack(i);
+                size--;
+                return value;
+            }
+            i = (i + 1) & mask;
+        }
+        return MISSING;
+    }
+
+    // 把后续探测链上的元素前移填补空洞，保证查找时遇到空槽即可停止
+    private void shiftBack(int hole) {
+        int i = hole;
+        while (true) {
+            i = (i + 1) & mask;
+            long k = keys[i];
+            if (k == EMPTY) {
+                break;
+            }
+            int home = slot(k);
+            // home 不在 (hole, i] 区间内（环形）时，该元素可以前移到 hole
+            boolean movable = hole <= i ? (home <= hole || home > i) : (home <= hole && home > i);
+            if (movable) {
+                keys[hole] = k;
+                values[hole] = values[i];
+                hole = i;
+            }
+        }
+        keys[hole] = EMPTY;
+    }
+
+    public void clear() {
+        if (size == 0) {
+            return;
+        }
+        Arrays.fill(keys, EMPTY);
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
@@ -0,0 +1,312 @@
+package com.colin.java.market.matching;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.stream.Stream;
+
+/**
+ * 分片输入日志（Write-Ahead Journal）
+ * 撮合线程在执行每条指令前把它追加到内存映射文件，进程崩溃后按顺序重放即可确定性地恢复订单簿。
+ * 文件按固定条数切分为段（segment），每条记录固定 64 字节，写入只是几次内存拷贝，不经过系统调用；
+ * 刷盘（force）按批次进行，两次刷盘之间只依赖操作系统页缓存（进程崩溃不丢，掉电可能丢最后一批）。
+ * 下一段由后台线程提前创建、映射并预先触页，切段时撮合线程只需切换引用。
+ *
+ * 记录格式（小端）：
+ * <pre>
+ * 0  sequence   8  从 1 开始连续递增，0 表示该位置尚未写入；最后写入，非 0 即代表整条记录完整
+ * 8  orderId    8
+ * 16 productId  8
+ * 24 price      8
+ * 32 quantity   8
+ * 40 timestamp  8
+ * 48 command    1
+ * 49 isBuy      1
+ * 50 保留       6
+ * 56 accountId  8
+ * </pre>
+ */
+public class OrderJournal implements AutoCloseable {
+    public static final int RECORD_SIZE = 64;
+    static final int OFF_SEQUENCE = 0;
+    static final int OFF_ORDER_ID = 8;
+    static final int OFF_PRODUCT_ID = 16;
+    static final int OFF_PRICE = 24;
+    static final int OFF_QUANTITY = 32;
+    static final int OFF_TIMESTAMP = 40;
+    static final int OFF_COMMAND = 48;
+    static final int OFF_IS_BUY = 49;
+    static final int OFF_ACCOUNT_ID = 56;
+    private static final int PAGE_SIZE = 4096;
+
+    private final Path directory;
+    private final long productId;
+    private final int segmentRecords;
+    private final int forceInterval; // 累计多少条未刷盘记录后在批次末尾 force，0 表示只在切段/关闭时 force
+
+    private Segment current;
+    private MappedByteBuffer buffer; // current.buffer 的快捷引用
+    private CompletableFuture<Segment> next; // 后台准备中的下一段
+    private int position; // 当前段内下一条记录的字节偏移
+    private long sequence; // 最后写入的序号
+    private int unforced;
+
+    private OrderJournal(Path directory, long productId, int segmentRecords, int forceInterval) {
+        this.directory = directory;
+        this.productId = productId;
+        this.segmentRecords = segmentRecords;
+        this.forceInterval = forceInterval;
+    }
+
+    /**
+     * 打开（或新建）分片日志，已有内容保留，后续从最后一条记录之后继续追加
+     */
+    public static OrderJournal open(Path directory, long productId, int segmentRecords, int forceInterval) {
+        if (segmentRecords <= 0 || segmentRecords > Integer.MAX_VALUE / RECORD_SIZE || forceInterval < 0) {
+            throw new IllegalArgumentException("segmentRecords 超出范围或 forceInterval 为负");
+        }
+        OrderJournal journal = new OrderJournal(directory, productId, segmentRecords, forceInterval);
+        try {
+            Files.createDirectories(directory);
+            List<Path> segments = journal.segments();
+            // 从最后一段往前找第一个有内容的段（后台预建的下一段可能还是空的）
+            int index = segments.isEmpty() ? 0 : journal.segmentIndexOf(segments.get(segments.size() - 1));
+            Segment segment = journal.map(index);
+            while (index > 0 && findEnd(segment.buffer, segmentRecords) == 0
+                    && Files.exists(directory.resolve(journal.segmentName(index - 1)))) {
+                segment.channel.close();
+                segment = journal.map(--index);
+            }
+            journal.install(segment);
+            journal.position = findEnd(segment.buffer, segmentRecords);
+            // 段内条数固定，序号可以由段号和段内位置直接算出
+            journal.sequence = (long) index * segmentRecords + journal.position / RECORD_SIZE;
+        } catch (IOException e) {
+            throw new UncheckedIOException("打开日志失败: " + directory, e);
+        }
+        return journal;
+    }
+
+    // 撮合线程调用：追加一条指令，返回其序号
+    public long append(SimpleOrder order) {
+        if (position == buffer.capacity()) {
+            roll();
+        }
+        long seq = sequence + 1;
+        int p = position;
+        encode(buffer, p, order, seq);
+        position = p + RECORD_SIZE;
+        sequence = seq;
+        unforced++;
+        return seq;
+    }
+
+    // 按记录格式写入 p 处（日志与主备复制共用），序号最后写入；b 需为小端
+    static void encode(ByteBuffer b, int p, SimpleOrder order, long seq) {
+        b.putLong(p + OFF_ORDER_ID, order.orderId);
+        b.putLong(p + OFF_PRODUCT_ID, order.productId);
+        b.putLong(p + OFF_PRICE, order.price);
+        b.putLong(p + OFF_QUANTITY, order.quantity);
+        b.putLong(p + OFF_TIMESTAMP, order.timestamp);
+        b.put(p + OFF_COMMAND, order.command);
+        b.put(p + OFF_IS_BUY, order.isBuy ? (byte) 1 : (byte) 0);
+        b.putLong(p + OFF_ACCOUNT_ID, order.accountId);
+        b.putLong(p + OFF_SEQUENCE, seq);
+    }
+
+    static void decode(ByteBuffer b, int p, SimpleOrder order) {
+        order.orderId = b.getLong(p + OFF_ORDER_ID);
+        order.productId = b.getLong(p + OFF_PRODUCT_ID);
+        order.price = b.getLong(p + OFF_PRICE);
+        order.quantity = b.getLong(p + OFF_QUANTITY);
+        order.timestamp = b.getLong(p + OFF_TIMESTAMP);
+        order.command = b.get(p + OFF_COMMAND);
+        order.isBuy = b.get(p + OFF_IS_BUY) != 0;
+        order.accountId = b.getLong(p + OFF_ACCOUNT_ID);
+    }
+
+    // 批次末尾调用：未刷盘条数达到阈值时 force
+    public void endBatch() {
+        if (forceInterval > 0 && unforced >= forceInterval) {
+            force();
+        }
+    }
+
+    public void force() {
+        if (unforced > 0) {
+            buffer.force();
+            unforced = 0;
+        }
+    }
+
+    /**
+     * 按顺序重放序号大于 afterSequence 的全部记录，order 为复用的同一个对象
+     * 可以在追加之前调用（启动恢复），不会移动写入位置
+     * @return 重放的条数
+     */
+    public long replay(long afterSequence, OrderHandler handler) {
+        SimpleOrder order = new SimpleOrder();
+        long count = 0;
+        try {
+            // 每段条数固定，可以直接跳过 afterSequence 之前的段
+            long firstSegment = afterSequence / segmentRecords;
+            for (Path segment : segments()) {
+                if (segmentIndexOf(segment) < firstSegment) {
+                    continue;
+                }
+                try (FileChannel ch = FileChannel.open(segment, StandardOpenOption.READ)) {
+                    MappedByteBuffer b = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+                    b.order(ByteOrder.LITTLE_ENDIAN);
+                    for (int p = 0; p + RECORD_SIZE <= b.capacity(); p += RECORD_SIZE) {
+                        long seq = b.getLong(p + OFF_SEQUENCE);
+                        if (seq == 0) {
+                            break;
+                        }
+                        if (seq <= afterSequence) {
+                            continue;
+                        }
+                        decode(b, p, order);
+                        handler.onOrder(order, seq, seq == sequence);
+                        count++;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("重放日志失败: " + directory, e);
+        }
+        return count;
+    }
+
+    // 最后写入的序号
+    public long getSequence() {
+        return sequence;
+    }
+
+    public long getProductId() {
+        return productId;
+    }
+
+    @Override
+    public void close() {
+        if (current == null) {
+            return;
+        }
+        force();
+        try {
+            current.channel.close();
+            next.join().channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("关闭日志失败: " + directory, e);
+        }
+        current = null;
+        buffer = null;
+    }
+
+    // 当前段写满：刷盘后切换到后台准备好的下一段
+    private void roll() {
+        force();
+        try {
+            current.channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException("日志切段失败: " + directory, e);
+        }
+        install(next.join());
+        position = 0;
+    }
+
+    private void install(Segment segment) {
+        current = segment;
+        buffer = segment.buffer;
+        int nextIndex = segment.index + 1;
+        next = CompletableFuture.supplyAsync(() -> {
+            try {
+                return map(nextIndex);
+            } catch (IOException e) {
+                throw new UncheckedIOException("预建日志段失败: " + directory, e);
+            }
+        }, PREALLOCATOR);
+    }
+
+    private Segment map(int index) throws IOException {
+        Path file = directory.resolve(segmentName(index));
+        FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        MappedByteBuffer b = channel.map(FileChannel.MapMode.READ_WRITE, 0, (long) segmentRecords * RECORD_SIZE);
+        b.order(ByteOrder.LITTLE_ENDIAN);
+        pretouch(b, findEnd(b, segmentRecords));
+        return new Segment(index, channel, b);
+    }
+
+    // 预先触发整段的缺页：否则每 64 条记录（一页）就有一次缺页中断，平均开销会翻几倍
+    // 从写入位置开始，只写尚未写过的页，写 0 不改变"未写入"的语义
+    private static void pretouch(MappedByteBuffer b, int start) {
+        for (int p = (start + PAGE_SIZE - 1) & -PAGE_SIZE; p < b.capacity(); p += PAGE_SIZE) {
+            b.putLong(p, 0L);
+        }
+    }
+
+    // 序号非 0 的记录总在段首连续排列，二分查找第一个空位
+    private static int findEnd(MappedByteBuffer b, int segmentRecords) {
+        int lo = 0;
+        int hi = segmentRecords;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b.getLong(mid * RECORD_SIZE + OFF_SEQUENCE) != 0) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo * RECORD_SIZE;
+    }
+
+    // 后台预建日志段的线程，守护线程，不阻止进程退出
+    private static final Executor PREALLOCATOR = task -> {
+        Thread thread = new Thread(task, "journal-preallocator");
+        thread.setDaemon(true);
+        thread.start();
+    };
+
+    private static final class Segment {
+        final int index;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+
+        Segment(int index, FileChannel channel, MappedByteBuffer buffer) {
+            this.index = index;
+            this.channel = channel;
+            this.buffer = buffer;
+        }
+    }
+
+    private String segmentName(int index) {
+        return String.format("shard-%d-%08d.journal", productId, index);
+    }
+
+    private int segmentIndexOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(name.lastIndexOf('-') + 1, name.length() - ".journal".length()));
+    }
+
+    private List<Path> segments() throws IOException {
+        String prefix = "shard-" + productId + "-";
+        List<Path> result = new ArrayList<>();
+        try (Stream<Path> files = Files.list(directory)) {
+            files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(".journal");
+            }).sorted().forEach(result::add);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,118 @@
+package com.colin.java.market.matching;
+
+/**
+ * 侵入式订单节点池
+ * 所有节点字段拆成并行的基本类型数组（Structure of Arrays），节点用 int 下标表示，
+ * 预分配 + 空闲链表复用，挂单/撤单/成交全程不产生对象，也没有指针追逐带来的 Cache Miss。
+ * 每个价格档位的 FIFO 队列由档位持有的 head/tail 下标 + 节点上的 prev/next 双向链接组成。
+ */
+public class OrderNodePool {
+    public static final int NIL = -1;
+
+    final long[] orderIds;
+    final long[] quantities;
+    final int[] next;
+    final int[] prev;
+    // 节点所属的档位编号，由具体的 OrderBook 解释
+    final int[] levels;
+
+    private final int capacity;
+    private int freeHead;
+    private int used;
+
+    public OrderNodePool(int capacity) {
+        this.capacity = capacity;
+        this.orderIds = new long[capacity];
+        this.quantities = new long[capacity];
+        this.next = new int[capacity];
+        this.prev = new int[capacity];
+        this.levels = new int[capacity];
+        clear();
+    }
+
+    // 从空闲链表取出一个节点
+    public int acquire(long orderId, long quantity, int level) {
+        int node = freeHead;
+        if (node == NIL) {
+            throw new IllegalStateException("订单节点池已满, capacity=" + capacity);
+        }
+        freeHead = next[node];
+        orderIds[node] = orderId;
+        quantities[node] = quantity;
+        levels[node] = level;
+        next[node] = NIL;
+        prev[node] = NIL;
+        used++;
+        return node;
+    }
+
+    // 归还节点（调用前需先从档位队列中摘除）
+    public void release(int node) {
+        next[node] = freeHead;
+        freeHead = node;
+        used--;
+    }
+
+    // 追加到档位队列尾部：同价位按到达顺序排队（时间优先）
+    public void append(int[] heads, int[] tails, int level, int node) {
+        int tail = tails[level];
+        prev[node] = tail;
+        next[node] = NIL;
+        if (tail == NIL) {
+            heads[level] = node;
+        } else {
+            next[tail] = node;
+        }
+        tails[level] = node;
+    }
+
+    // 从档位队列中摘除，O(1)
+    public void unlink(int[] heads, int[] tails, int node) {
+        int level = levels[node];
+        int p = prev[node];
+        int n = next[node];
+        if (p == NIL) {
+            heads[level] = n;
+        } else {
+            next[p] = n;
+        }
+        if (n == NIL) {
+            tails[level] = p;
+        } else {
+            prev[n] = p;
+        }
+        prev[node] = NIL;
+        next[node] = NIL;
+    }
+
+    public void clear() {
+        for (int i = 0; i < capacity - 1; i++) {
+            next[i] = i + 1;
+        }
+        if (capacity > 0) {
+            next[capacity - 1] = NIL;
+        }
+        freeHead = capacity > 0 ? 0 : NIL;
+        used = 0;
+    }
+
+    public long orderId(int node) {
+        return orderIds[node];
+    }
+
+    public long quantity(int node) {
+        return quantities[node];
+    }
+
+    public boolean isFull() {
+        return freeHead == NIL;
+    }
+
+    public int size() {
+        return used;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
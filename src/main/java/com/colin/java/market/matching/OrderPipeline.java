@@ -0,0 +1,242 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 分阶段流水线下单：解码、预风控、撮合、发布各占一个（组）线程，阶段之间用有界队列串联
+ * <pre>
+ * 接入线程（单线程）  解码 / 拷贝指令，按产品分到风控线程的 SPSC 队列（OrderSpscQueue）
+ * 风控线程 x N        validate 新单，通过的指令写入分片 RingBuffer
+ * 撮合线程            MatchingSystem 原有的 MatchingThread，每个分片仍然单线程写
+ * 发布                执行回报 / 行情由撮合线程写入各自的 SPSC 出口，由网关、行情发送线程消费
+ * </pre>
+ * 同一产品固定由一个风控线程处理，新单与撤单/改量走同一条队列，所以同一产品的指令顺序与提交顺序一致；
+ * 不同产品之间没有顺序保证（与直接调用 handleOrder 相同）。
+ * 对比 handleOrder 在调用线程上依次做风控、路由：接入线程只做拷贝，风控开销分摊到 N 个线程上与撮合重叠。
+ * 吞吐取决于最慢的阶段：风控很轻时瓶颈仍在接入线程或撮合线程，增加风控线程不会再提升。
+ * 账户购买力是跨产品共享的，不同风控线程之间的预占先后与提交顺序可能不同，额度紧张时的拒单结果会与串行不同。
+ */
+public class OrderPipeline implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(OrderPipeline.class);
+    private static final int MAX_BATCH = 256;
+
+    private final MatchingSystem system;
+    private final RiskManager riskManager;
+    private final RiskWorker[] workers;
+    private volatile boolean running;
+
+    /**
+     * @param riskThreads 风控线程数
+     * @param queueCapacity 每个风控线程入口队列的容量（2 的幂）
+     */
+    public OrderPipeline(MatchingSystem system, int riskThreads, int queueCapacity) {
+        if (riskThreads <= 0) {
+            throw new IllegalArgumentException("riskThreads 必须大于 0");
+        }
+        this.system = system;
+        this.riskManager = system.getRiskManager();
+        this.workers = new RiskWorker[riskThreads];
+        for (int i = 0; i < riskThreads; i++) {
+            workers[i] = new RiskWorker(i, new OrderSpscQueue(queueCapacity));
+        }
+    }
+
+    // 风控阶段：消费一条 SPSC 队列，把通过的指令写入目标分片
+    private final class RiskWorker implements OrderHandler, Runnable {
+        final int id;
+        final OrderSpscQueue queue;
+        WaitStrategy waitStrategy;
+        Thread thread;
+        // 仅本线程写
+        volatile long accepted;
+        volatile long rejected;
+        volatile long unknownProduct;
+
+        RiskWorker(int id, OrderSpscQueue queue) {
+            this.id = id;
+            this.queue = queue;
+        }
+
+        @Override
+        public void run() {
+            while (running) {
+                if (queue.poll(this, MAX_BATCH) == 0) {
+                    waitStrategy.idle();
+                }
+            }
+            // 停止前处理完已提交的指令
+            while (queue.poll(this, MAX_BATCH) > 0) {
+            }
+        }
+
+        @Override
+        public void onOrder(SimpleOrder order, long sequence, boolean endOfBatch) {
+            boolean isNew = order.command == SimpleOrder.NEW;
+            boolean reserved = false;
+            try {
+                if (isNew) {
+                    PipelineLatency stats = system.getLatency();
+                    long start = stats == null ? 0 : System.nanoTime();
+                    boolean passed = riskManager.validate(order);
+                    if (stats != null) {
+                        stats.record(PipelineLatency.RISK, System.nanoTime() - start);
+                    }
+                    if (!passed) {
+                        rejected++;
+                        return;
+                    }
+                    reserved = true;
+                }
+                MatchingSystem.EngineShard shard = system.getShard(order.productId);
+                if (shard == null) {
+                    // 提交之后产品被下架
+                    if (isNew) {
+                        riskManager.release(order);
+                    }
+                    unknownProduct++;
+                    return;
+                }
+                if (!shard.publish(order)) {
+                    // 入口队列已关闭（下架或撮合系统关闭）
+                    if (isNew) {
+                        riskManager.release(order);
+                    }
+                    unknownProduct++;
+                    return;
+                }
+                accepted++;
+            } catch (RuntimeException e) {
+                // 单条指令出错不能让风控线程退出（之后的指令会永远留在队列里）：退回预占，按拒单计数
+                if (reserved) {
+                    riskManager.release(order);
+                }
+                rejected++;
+                logger.error("风控线程处理指令失败: orderId=" + order.orderId, e);
+            }
+        }
+    }
+
+    /**
+     * 启动风控线程，撮合系统需要已经 start()
+     */
+    public synchronized void start(WaitStrategy waitStrategy) {
+        if (running) {
+            return;
+        }
+        if (!system.isRunning()) {
+            throw new IllegalStateException("流水线需要撮合系统先 start()");
+        }
+        running = true;
+        for (RiskWorker worker : workers) {
+            worker.waitStrategy = waitStrategy;
+            worker.thread = new Thread(worker, "pipeline-risk-" + worker.id);
+            worker.thread.setDaemon(true);
+            worker.thread.start();
+        }
+        logger.info("Order pipeline started with {} risk threads", workers.length);
+    }
+
+    // 同一产品总是落在同一个风控线程上
+    private OrderSpscQueue queueOf(long productId) {
+        return workers[(int) Math.floorMod(productId, (long) workers.length)].queue;
+    }
+
+    /**
+     * 接入线程调用（同一时间只能有一个线程提交）：拷贝指令进入风控队列，队列满时自旋等待
+     * 新单、撤单、改量都可以提交，撤单/改量不经过风控但与新单保持顺序
+     * @return 产品未上架时返回 false
+     */
+    public boolean submit(SimpleOrder order) {
+        if (system.getShard(order.productId) == null) {
+            return false;
+        }
+        OrderSpscQueue queue = queueOf(order.productId);
+        SimpleOrder slot = queue.claim();
+        slot.orderId = order.orderId;
+        slot.accountId = order.accountId;
+        slot.productId = order.productId;
+        slot.price = order.price;
+        slot.quantity = order.quantity;
+        slot.isBuy = order.isBuy;
+        slot.timestamp = order.timestamp != 0 ? order.timestamp : System.nanoTime();
+        slot.command = order.command;
+        queue.publish();
+        return true;
+    }
+
+    /**
+     * 零分配接入：把报文直接解码进风控队列的槽位（接入线程调用，同一时间只能有一个线程提交）
+     * @return 未知指令或产品未上架时返回 false
+     */
+    public boolean submit(OrderFlyweight order) {
+        byte command = order.command();
+        if (command != SimpleOrder.NEW && command != SimpleOrder.CANCEL && command != SimpleOrder.AMEND) {
+            return false;
+        }
+        long productId = order.productId();
+        if (system.getShard(productId) == null) {
+            return false;
+        }
+        OrderSpscQueue queue = queueOf(productId);
+        order.copyTo(queue.claim());
+        queue.publish();
+        return true;
+    }
+
+    // 所有风控队列都已取空（已进入分片 RingBuffer 或被拒）
+    public boolean isDrained() {
+        for (RiskWorker worker : workers) {
+            if (!worker.queue.isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public long getAccepted() {
+        long n = 0;
+        for (RiskWorker worker : workers) {
+            n += worker.accepted;
+        }
+        return n;
+    }
+
+    public long getRejected() {
+        long n = 0;
+        for (RiskWorker worker : workers) {
+            n += worker.rejected;
+        }
+        return n;
+    }
+
+    public long getUnknownProduct() {
+        long n = 0;
+        for (RiskWorker worker : workers) {
+            n += worker.unknownProduct;
+        }
+        return n;
+    }
+
+    public int getRiskThreads() {
+        return workers.length;
+    }
+
+    /**
+     * 停止风控线程，已提交的指令处理完后返回；需要在撮合系统 close() 之前调用
+     */
+    @Override
+    public synchronized void close() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        for (RiskWorker worker : workers) {
+            try {
+                worker.thread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.colin.java.market.matching;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 多生产者 / 单消费者 RingBuffer (Disruptor 风格)
+ * 槽位在构造时一次性预分配，生产者只拷贝字段，运行期不产生任何对象。
+ * 生产者通过 CAS 抢占序号，消费者按序号连续批量读取，撮合始终保持单线程写。
+ */
+public class OrderRingBuffer {
+    private final SimpleOrder[] slots;
+    // 每个槽位已发布的序号，消费者据此判断该槽位是否可读（避免读到写了一半的数据）
+    private final AtomicLongArray published;
+    private final int mask;
+    private final int capacity;
+
+    // 生产者已抢占的最大序号
+    private final AtomicLong claimSequence = new AtomicLong(-1);
+    // 消费者已处理完的最大序号，生产者据此防止覆盖未消费的槽位
+    private final AtomicLong consumerSequence = new AtomicLong(-1);
+
+    // 关闭时把 claimSequence 整体抬高 CLOSED，之后抢到的序号都不小于它，生产者据此快速失败
+    private static final long CLOSED = 1L << 62;
+    // 关闭前已抢占的最大序号，消费者处理到这里为止
+    private volatile long closedAt = Long.MAX_VALUE;
+
+    public OrderRingBuffer(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity 必须是 2 的幂: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new SimpleOrder[capacity];
+        this.published = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new SimpleOrder();
+            published.set(i, -1);
+        }
+    }
+
+    // 生产者调用（可多线程并发）：抢占序号 -> 拷贝字段 -> 发布；队列已关闭时返回 -1
+    public long publish(SimpleOrder order) {
+        long seq = claim();
+        if (seq < 0) {
+            return -1;
+        }
+        SimpleOrder slot = slots[(int) seq & mask];
+        slot.orderId = order.orderId;
+        slot.accountId = order.accountId;
+        slot.productId = order.productId;
+        slot.price = order.price;
+        slot.quantity = order.quantity;
+        slot.isBuy = order.isBuy;
+        slot.timestamp = order.timestamp;
+        slot.command = order.command;
+        commit(seq);
+        return seq;
+    }
+
+    /**
+     * 批量发布：一次 CAS 抢占 count 个连续序号，按 indices 顺序拷贝 orders[indices[from..from+count)]
+     * count 不能超过容量；队列已关闭时整批不发布，返回 -1
+     */
+    public long publishBatch(SimpleOrder[] orders, int[] indices, int from, int count) {
+        long last = claimSequence.addAndGet(count);
+        if (last >= CLOSED) {
+            return -1;
+        }
+        long first = last - count + 1;
+        long wrapPoint = last - capacity;
+        while (wrapPoint > consumerSequence.get()) {
+            Thread.onSpinWait();
+        }
+        for (int k = 0; k < count; k++) {
+            SimpleOrder order = orders[indices[from + k]];
+            long seq = first + k;
+            SimpleOrder slot = slots[(int) seq & mask];
+            slot.orderId = order.orderId;
+            slot.accountId = order.accountId;
+            slot.productId = order.productId;
+            slot.price = order.price;
+            slot.quantity = order.quantity;
+            slot.isBuy = order.isBuy;
+            slot.timestamp = order.timestamp;
+            slot.command = order.command;
+            commit(seq);
+        }
+        return last;
+    }
+
+    // 撤单/改量指令直接写入槽位，调用方无需构造 SimpleOrder
+    public long publishCancel(long productId, long orderId) {
+        return publishCommand(SimpleOrder.CANCEL, productId, orderId, 0);
+    }
+
+    public long publishAmend(long productId, long orderId, long newQty) {
+        return publishCommand(SimpleOrder.AMEND, productId, orderId, newQty);
+    }
+
+    private long publishCommand(byte command, long productId, long orderId, long quantity) {
+        long seq = claim();
+        if (seq < 0) {
+            return -1;
+        }
+        SimpleOrder slot = slots[(int) seq & mask];
+        slot.orderId = orderId;
+        slot.accountId = 0;
+        slot.productId = productId;
+        slot.price = 0;
+        slot.quantity = quantity;
+        slot.isBuy = false;
+        slot.timestamp = System.nanoTime();
+        slot.command = command;
+        commit(seq);
+        return seq;
+    }
+
+    /**
+     * 两段式发布：claim 抢占序号 -> slot 取槽位就地填写 -> commit 发布
+     * 用于网关把报文直接解码进槽位（见 MatchingSystem.handleOrder(OrderFlyweight)）；
+     * 抢占后必须尽快 commit，消费者会停在未发布的序号上；队列已关闭时返回 -1，无需 commit
+     */
+    public long claim() {
+        long seq = claimSequence.incrementAndGet();
+        if (seq >= CLOSED) {
+            return -1;
+        }
+        // 环满时自旋等待消费者腾出槽位（背压），不丢单
+        long wrapPoint = seq - capacity;
+        while (wrapPoint > consumerSequence.get()) {
+            Thread.onSpinWait();
+        }
+        return seq;
+    }
+
+    public SimpleOrder slot(long seq) {
+        return slots[(int) seq & mask];
+    }
+
+    public void commit(long seq) {
+        // release 语义：保证槽位的字段写入先于序号对消费者可见
+        published.lazySet((int) seq & mask, seq);
+    }
+
+    /**
+     * 消费者调用（仅限单线程）：批量读取已发布的连续序号
+     * @return 本次处理的条数，0 表示当前无数据
+     */
+    public int drain(OrderHandler handler, int maxBatch) {
+        long current = consumerSequence.get();
+        long available = current;
+        long limit = current + maxBatch;
+        // 先找出连续可读的最大序号，遇到未发布的空洞即停止，保证顺序
+        while (available < limit && published.get((int) (available + 1) & mask) == available + 1) {
+            available++;
+        }
+        if (available == current) {
+            return 0;
+        }
+
+        for (long seq = current + 1; seq <= available; seq++) {
+            handler.onOrder(slots[(int) seq & mask], seq, seq == available);
+        }
+        // 处理完毕后才释放槽位
+        consumerSequence.lazySet(available);
+        return (int) (available - current);
+    }
+
+    /**
+     * 关闭入口队列：之后的 claim / publish 立即返回 -1，不会在环满时无限自旋
+     * 关闭前已抢占的序号照常发布，消费者应处理到返回的序号为止
+     * @return 关闭前已抢占的最大序号
+     */
+    public long close() {
+        long last;
+        do {
+            last = claimSequence.get();
+            if (last >= CLOSED) {
+                return closedAt;
+            }
+        } while (!claimSequence.compareAndSet(last, last + CLOSED));
+        closedAt = last;
+        return last;
+    }
+
+    public boolean isClosed() {
+        return claimSequence.get() >= CLOSED;
+    }
+
+    // 是否所有已抢占的订单都被消费完毕
+    public boolean isEmpty() {
+        long claimed = claimSequence.get();
+        return consumerSequence.get() == (claimed >= CLOSED ? closedAt : claimed);
+    }
+
+    public long getConsumerSequence() {
+        return consumerSequence.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,82 @@
+package com.colin.java.market.matching;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单生产者 / 单消费者指令队列，用于串联流水线各阶段（见 OrderPipeline）
+ * 与 ExecutionReportRing 相同：槽位是预分配的 SimpleOrder，生产者 claim() 原地填写、publish() 发布，
+ * 只靠两个序号的 release/acquire 保证可见性，没有 CAS。
+ */
+public class OrderSpscQueue {
+    private final SimpleOrder[] slots;
+    private final int mask;
+    private final int capacity;
+
+    // 生产者已发布的最大序号
+    private final AtomicLong producerSequence = new AtomicLong(-1);
+    // 消费者已处理完的最大序号
+    private final AtomicLong consumerSequence = new AtomicLong(-1);
+
+    // 仅生产者线程访问
+    private long claimed = -1;
+    private long cachedConsumer = -1; // 缓存消费者进度，队列未满时不读 volatile
+
+    public OrderSpscQueue(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("capacity 必须是 2 的幂: " + capacity);
+        }
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.slots = new SimpleOrder[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = new SimpleOrder();
+        }
+    }
+
+    /**
+     * 生产者调用：取下一个可写槽位，调用方填写字段后调用 publish()
+     * 队列满时自旋等待消费者（背压），指令不丢
+     */
+    public SimpleOrder claim() {
+        long seq = ++claimed;
+        long wrapPoint = seq - capacity;
+        if (wrapPoint > cachedConsumer) {
+            long consumer;
+            while (wrapPoint > (consumer = consumerSequence.get())) {
+                Thread.onSpinWait();
+            }
+            cachedConsumer = consumer;
+        }
+        return slots[(int) seq & mask];
+    }
+
+    // 生产者调用：发布已 claim 的所有槽位，连续 claim 不能超过容量
+    public void publish() {
+        producerSequence.lazySet(claimed);
+    }
+
+    /**
+     * 消费者调用（仅限单线程）：批量读取已发布的指令
+     * @return 本次处理的条数，0 表示当前无数据
+     */
+    public int poll(OrderHandler handler, int maxBatch) {
+        long current = consumerSequence.get();
+        long available = Math.min(producerSequence.get(), current + maxBatch);
+        if (available <= current) {
+            return 0;
+        }
+        for (long seq = current + 1; seq <= available; seq++) {
+            handler.onOrder(slots[(int) seq & mask], seq, seq == available);
+        }
+        consumerSequence.lazySet(available);
+        return (int) (available - current);
+    }
+
+    public boolean isEmpty() {
+        return consumerSequence.get() == producerSequence.get();
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,7 @@
+package com.colin.java.market.matching;
+
+// 挂单遍历回调：按价格优先、同价时间优先的顺序逐个输出在簿订单
+// 参数全部是基本类型，遍历不产生对象
+public interface OrderVisitor {
+    void visit(long orderId, long price, long quantity);
+}
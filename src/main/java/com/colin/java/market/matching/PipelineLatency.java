@@ -0,0 +1,89 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * MatchingSystem 下单链路的分阶段延迟
+ * <pre>
+ * RISK   网关线程：预风控 validate
+ * ROUTE  网关线程：查路由表 + 写入分片 RingBuffer（含环满时的背压等待）
+ * QUEUE  订单时间戳（网关收单）到撮合线程开始处理，即排队等待的时间（同步调用模式下不记录）
+ * MATCH  撮合线程：写日志 + 撮合/撤单/改量
+ * </pre>
+ * 每个阶段一个 LatencyHistogram，通过 snapshot 拉取，或 startReporter 定期按区间输出到日志并清零。
+ */
+public final class PipelineLatency implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(PipelineLatency.class);
+
+    public static final int RISK = 0;
+    public static final int ROUTE = 1;
+    public static final int QUEUE = 2;
+    public static final int MATCH = 3;
+    private static final String[] STAGE_NAMES = {"risk", "route", "queue", "match"};
+
+    private final LatencyHistogram[] stages = new LatencyHistogram[STAGE_NAMES.length];
+    private ScheduledExecutorService reporter;
+
+    public PipelineLatency() {
+        for (int i = 0; i < stages.length; i++) {
+            stages[i] = new LatencyHistogram();
+        }
+    }
+
+    public void record(int stage, long nanos) {
+        stages[stage].record(nanos);
+    }
+
+    public LatencyHistogram histogram(int stage) {
+        return stages[stage];
+    }
+
+    public LatencyHistogram.Snapshot snapshot(int stage, boolean reset) {
+        return stages[stage].snapshot(reset);
+    }
+
+    public static String stageName(int stage) {
+        return STAGE_NAMES[stage];
+    }
+
+    // 所有阶段的当前统计，每个阶段一行
+    public String report(boolean reset) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < stages.length; i++) {
+            sb.append(String.format("%-6s ", STAGE_NAMES[i])).append(stages[i].snapshot(reset));
+            if (i < stages.length - 1) {
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 每 periodMillis 把本区间的统计写入日志并清零
+     */
+    public synchronized void startReporter(long periodMillis) {
+        if (reporter != null) {
+            return;
+        }
+        reporter = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "latency-reporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        reporter.scheduleAtFixedRate(() -> logger.info("pipeline latency ({} ms):\n{}", periodMillis, report(true)),
+                periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public synchronized void close() {
+        if (reporter != null) {
+            reporter.shutdownNow();
+            reporter = null;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+/**
+ * 产品路由表：productId -> 稠密下标 -> 分片
+ * 下标由基本类型哈希表（复用 OrderIdIndex）查出，分片放在按下标排列的数组里，路由全程不装箱。
+ * 表本身不可变：上架/下架时复制出新表再整体替换（Copy-On-Write），网关线程读表无锁；
+ * 上下架是低频操作，复制成本可以忽略。下架空出的下标由后续上架的产品复用，数组保持稠密。
+ */
+final class ProductTable {
+    private final OrderIdIndex index;
+    private final MatchingSystem.EngineShard[] shards;
+    private final int size;
+
+    static final ProductTable EMPTY = new ProductTable(new OrderIdIndex(16), new MatchingSystem.EngineShard[16], 0);
+
+    private ProductTable(OrderIdIndex index, MatchingSystem.EngineShard[] shards, int size) {
+        this.index = index;
+        this.shards = shards;
+        this.size = size;
+    }
+
+    // 网关线程调用：未上架返回 null
+    MatchingSystem.EngineShard get(long productId) {
+        int i = index.get(productId);
+        return i == OrderIdIndex.MISSING ? null : shards[i];
+    }
+
+    // 返回加入 shard 后的新表，优先复用下架留下的空位
+    ProductTable with(MatchingSystem.EngineShard shard) {
+        int slot = 0;
+        while (slot < shards.length && shards[slot] != null) {
+            slot++;
+        }
+        int capacity = slot < shards.length ? shards.length : shards.length * 2;
+        MatchingSystem.EngineShard[] copy = Arrays.copyOf(shards, capacity);
+        copy[slot] = shard;
+        return new ProductTable(rebuild(copy, capacity), copy, size + 1);
+    }
+
+    // 返回去掉 productId 后的新表
+    ProductTable without(long productId) {
+        int i = index.get(productId);
+        if (i == OrderIdIndex.MISSING) {
+            return this;
+        }
+        MatchingSystem.EngineShard[] copy = shards.clone();
+        copy[i] = null;
+        return new ProductTable(rebuild(copy, copy.length), copy, size - 1);
+    }
+
+    private static OrderIdIndex rebuild(MatchingSystem.EngineShard[] shards, int capacity) {
+        OrderIdIndex index = new OrderIdIndex(capacity);
+        for (int i = 0; i < shards.length; i++) {
+            if (shards[i] != null) {
+                index.put(shards[i].productId, i);
+            }
+        }
+        return index;
+    }
+
+    // 已上架的分片（遍历时跳过空位）
+    MatchingSystem.EngineShard[] shards() {
+        return shards;
+    }
+
+    int size() {
+        return size;
+    }
+}
@@ -2,41 +2,239 @@ package com.colin.java.market.matching;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class RiskManager {
-    private List<RiskRule> rules = new ArrayList<>();
+    // 默认账户的初始额度（沿用原 AccountContext 的模拟值）
+    public static final long DEFAULT_BALANCE = 1_000_000L;
+    public static final long DEFAULT_DAILY_NET_LIMIT = 100_000L;
 
+    private final AccountRiskStore accounts;
+    // 当前生效的规则集（见 RuleSet），整体替换；编译模式下带有编译好的流水线
+    private final AtomicReference<RuleSet> active;
+    // 版本号只增不减，回滚后重新发布也不会复用旧版本号
+    private final AtomicLong epoch = new AtomicLong(1);
+
+    // 只有默认账户 0 的模拟环境
     public RiskManager() {
-        // 初始化默认规则（生产环境可动态替换这些对象）
-        // 1. 账户检查
-        rules.add(order -> {
-            // 简单模拟：买单需要有足够余额
-            if (order.isBuy && (order.price * order.quantity > AccountContext.balance)) {
-                return false;
-            }
-            return true;
-        });
+        this(defaultAccounts());
+    }
+
+    public RiskManager(AccountRiskStore accounts) {
+        this.accounts = accounts;
+        // 初始化默认规则（生产环境通过 reloadRules 热更新）
+        // 规则只做无副作用的检查，购买力预占在全部规则通过后统一进行，规则失败时不需要回滚
+        List<RiskRule> rules = new ArrayList<>();
+        // 1. 品种检查 (简单模拟白名单)
+        rules.add(RiskRule.named("product", order -> order.productId > 0));
 
-        // 2. 品种检查 (简单模拟白名单)
-        rules.add(order -> order.productId > 0);
+        // 2. 单日净额检查
+        rules.add(RiskRule.named("dailyNet", accounts::checkDailyNet));
+        this.active = new AtomicReference<>(RuleSet.initial(rules));
+    }
 
-        // 3. 单日净额检查
-        rules.add(order -> Math.abs(AccountContext.currentDailyNet + order.quantity) <= AccountContext.dailyNetLimit);
+    private static AccountRiskStore defaultAccounts() {
+        AccountRiskStore store = new AccountRiskStore(1);
+        store.openAccount(0, DEFAULT_BALANCE, DEFAULT_DAILY_NET_LIMIT);
+        return store;
     }
 
     // 执行风控
+    // 规则集只读取一次：进行中的校验始终使用开始时的版本
     public boolean validate(SimpleOrder order) {
+        RuleSet set = active.get();
+        CompiledRiskPipeline pipeline = set.compiled;
+        if (pipeline != null) {
+            return pipeline.check(order) && reserve(order);
+        }
         // 遍历规则，Fail-fast
-        for (int i = 0; i < rules.size(); i++) {
-            if (!rules.get(i).check(order)) {
+        RiskRule[] rules = set.rules;
+        for (int i = 0; i < rules.length; i++) {
+            if (!rules[i].check(order)) {
                 return false;
             }
         }
-        return true;
+        // 账户检查：买单预占购买力
+        return reserve(order);
+    }
+
+    /**
+     * 批量风控：按规则遍历整批订单（规则在外层），整批使用同一版规则集，同一条规则连续执行；
+     * 已被前面规则拒绝的订单不再检查，最后按顺序逐单预占购买力，结果与逐单调用 validate 相同
+     * @return 通过的订单数
+     */
+    public int validate(SimpleOrder[] orders, int count, boolean[] passed) {
+        RuleSet set = active.get();
+        CompiledRiskPipeline pipeline = set.compiled;
+        if (pipeline != null) {
+            // 编译后整条规则链已内联，逐单执行即可
+            int accepted = 0;
+            for (int j = 0; j < count; j++) {
+                passed[j] = pipeline.check(orders[j]) && reserve(orders[j]);
+                if (passed[j]) {
+                    accepted++;
+                }
+            }
+            return accepted;
+        }
+        RiskRule[] rules = set.rules;
+        for (int j = 0; j < count; j++) {
+            passed[j] = true;
+        }
+        int remaining = count;
+        for (int i = 0; i < rules.length && remaining > 0; i++) {
+            RiskRule rule = rules[i];
+            for (int j = 0; j < count; j++) {
+                if (passed[j] && !rule.check(orders[j])) {
+                    passed[j] = false;
+                    remaining--;
+                }
+            }
+        }
+        for (int j = 0; j < count; j++) {
+            if (passed[j] && !reserve(orders[j])) {
+                passed[j] = false;
+                remaining--;
+            }
+        }
+        return remaining;
+    }
+
+    // 买单按 限价 x 数量 预占购买力；卖单不占用
+    // 价格、数量必须为正：负数量的买单会得到负的预占额，反而增加购买力；金额溢出 long 同样拒绝
+    private boolean reserve(SimpleOrder order) {
+        if (order.price <= 0 || order.quantity <= 0) {
+            return false;
+        }
+        // 匿名订单（orderId = 0，如压测）挂单后无法按 orderId 找回账户，不预占也不结算，见 EngineShard.settle
+        if (!order.isBuy || order.orderId == 0) {
+            return true;
+        }
+        long amount;
+        try {
+            amount = Math.multiplyExact(order.price, order.quantity);
+        } catch (ArithmeticException e) {
+            return false;
+        }
+        return accounts.reserve(order.accountId, amount);
+    }
+
+    // 风控已通过但订单未能送达撮合（如产品未上架）时退回预占
+    public void release(SimpleOrder order) {
+        if (order.isBuy && order.orderId != 0) {
+            accounts.release(order.accountId, order.price * order.quantity);
+        }
+    }
+
+    public AccountRiskStore getAccounts() {
+        return accounts;
+    }
+
+    /**
+     * 切换到编译模式：已编译过时按上一版的实测指标重新排序后编译，可以定期调用
+     * 重排后的流水线作为新版本发布，规则内容不变
+     */
+    public CompiledRiskPipeline compile() {
+        while (true) {
+            RuleSet current = active.get();
+            CompiledRiskPipeline pipeline = current.compiled == null
+                    ? CompiledRiskPipeline.compile(current.rules())
+                    : current.compiled.reorder();
+            if (active.compareAndSet(current, current.next(epoch.incrementAndGet(), current.rules, pipeline))) {
+                return pipeline;
+            }
+        }
+    }
+
+    // 编译模式下的按规则指标，未编译时返回 null
+    public CompiledRiskPipeline.RuleStats[] ruleStats() {
+        CompiledRiskPipeline pipeline = active.get().compiled;
+        return pipeline == null ? null : pipeline.stats();
+    }
+
+    /**
+     * 热更新规则，不暂停下单
+     * @return 新版本号
+     */
+    public long reloadRules(List<RiskRule> newRules) {
+        return reloadRules(newRules, List.of());
+    }
+
+    /**
+     * 热更新规则：先校验再激活
+     * 1. 规则列表非空且不含 null；
+     * 2. 每条规则对探测订单（默认买卖各一笔，加上 mustPass）试运行一次，抛异常的规则集不会生效；
+     * 3. mustPass 中的订单必须全部通过新规则（用已知正常的订单防止额度配错导致全部拒单）。
+     * 校验失败抛 IllegalArgumentException，当前版本不受影响。
+     * 编译模式下新规则在发布前编译好（新规则没有历史指标，按给定顺序），发布只是一次引用替换。
+     * @return 新版本号
+     */
+    public long reloadRules(List<RiskRule> newRules, List<SimpleOrder> mustPass) {
+        RiskRule[] rules = checkRules(newRules, mustPass);
+        while (true) {
+            RuleSet current = active.get();
+            CompiledRiskPipeline pipeline = current.compiled == null ? null : CompiledRiskPipeline.compile(newRules);
+            RuleSet next = current.next(epoch.incrementAndGet(), rules, pipeline);
+            if (active.compareAndSet(current, next)) {
+                return next.version;
+            }
+        }
+    }
+
+    private static RiskRule[] checkRules(List<RiskRule> newRules, List<SimpleOrder> mustPass) {
+        if (newRules == null || newRules.isEmpty()) {
+            throw new IllegalArgumentException("rule set is empty");
+        }
+        RiskRule[] rules = newRules.toArray(new RiskRule[0]);
+        List<SimpleOrder> probes = new ArrayList<>(mustPass);
+        probes.add(new SimpleOrder(0, 1001L, 100, 1, true));
+        probes.add(new SimpleOrder(0, 1001L, 100, 1, false));
+        for (int i = 0; i < rules.length; i++) {
+            if (rules[i] == null) {
+                throw new IllegalArgumentException("rule " + i + " is null");
+            }
+            for (SimpleOrder probe : probes) {
+                try {
+                    rules[i].check(probe);
+                } catch (RuntimeException e) {
+                    throw new IllegalArgumentException("rule " + rules[i] + " failed on probe order", e);
+                }
+            }
+        }
+        for (SimpleOrder order : mustPass) {
+            for (RiskRule rule : rules) {
+                if (!rule.check(order)) {
+                    throw new IllegalArgumentException("rule " + rule + " rejects order " + order.orderId);
+                }
+            }
+        }
+        return rules;
+    }
+
+    /**
+     * 回滚到上一版本（连同当时的编译流水线）
+     * @return 回滚后生效的版本号
+     * @throws IllegalStateException 没有可回滚的历史版本
+     */
+    public long rollback() {
+        while (true) {
+            RuleSet current = active.get();
+            RuleSet previous = current.previous;
+            if (previous == null) {
+                throw new IllegalStateException("no previous rule set");
+            }
+            if (active.compareAndSet(current, previous)) {
+                return previous.version;
+            }
+        }
+    }
+
+    public RuleSet getRuleSet() {
+        return active.get();
     }
 
-    // 模拟热更新规则
-    public void reloadRules(List<RiskRule> newRules) {
-        this.rules = newRules;
+    public long getRulesVersion() {
+        return active.get().version;
     }
-}
\ No newline at end of file
+}
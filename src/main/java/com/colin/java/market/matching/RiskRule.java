@@ -1,6 +1,33 @@
 package com.colin.java.market.matching;
 
 // 风控规则接口
+// 规则应无副作用（只读账户/订单状态），编译后的流水线会按实测代价调整执行顺序
 public interface RiskRule {
     boolean check(SimpleOrder order);
+
+    // 给规则命名，用于按规则统计的指标
+    static RiskRule named(String name, RiskRule rule) {
+        return new Named(name, rule);
+    }
+
+    // 带名字的规则；编译时直接绑定内部规则，不多一层调用
+    final class Named implements RiskRule {
+        final String name;
+        final RiskRule rule;
+
+        Named(String name, RiskRule rule) {
+            this.name = name;
+            this.rule = rule;
+        }
+
+        @Override
+        public boolean check(SimpleOrder order) {
+            return rule.check(order);
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
 }
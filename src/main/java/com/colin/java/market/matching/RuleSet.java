@@ -0,0 +1,66 @@
+package com.colin.java.market.matching;
+
+import java.util.List;
+
+/**
+ * 某一版本的风控规则集（不可变）
+ * RiskManager 通过 AtomicReference 整体发布：一次校验开始时只读取一次引用，之后始终使用这一版，
+ * 重载不会让进行中的校验看到新旧混合的规则，也不需要暂停下单。
+ * previous 指向被替换的上一版，用于回滚，最多保留 HISTORY 版。
+ */
+public final class RuleSet {
+    static final int HISTORY = 8;
+
+    public final long version;
+    final RiskRule[] rules;
+    // 编译模式下的流水线，未编译时为 null
+    final CompiledRiskPipeline compiled;
+    final RuleSet previous;
+
+    private RuleSet(long version, RiskRule[] rules, CompiledRiskPipeline compiled, RuleSet previous) {
+        this.version = version;
+        this.rules = rules;
+        this.compiled = compiled;
+        this.previous = previous;
+    }
+
+    static RuleSet initial(List<RiskRule> rules) {
+        return new RuleSet(1, rules.toArray(new RiskRule[0]), null, null);
+    }
+
+    // 以当前版本为上一版生成新版本，历史链超出 HISTORY 的部分被丢弃
+    RuleSet next(long version, RiskRule[] rules, CompiledRiskPipeline compiled) {
+        return new RuleSet(version, rules, compiled, truncate(this, HISTORY - 1));
+    }
+
+    private static RuleSet truncate(RuleSet set, int depth) {
+        if (set == null || depth == 0) {
+            return null;
+        }
+        if (set.depth() <= depth) {
+            return set;
+        }
+        return new RuleSet(set.version, set.rules, set.compiled, truncate(set.previous, depth - 1));
+    }
+
+    // 含自身在内的版本数
+    int depth() {
+        int n = 0;
+        for (RuleSet s = this; s != null; s = s.previous) {
+            n++;
+        }
+        return n;
+    }
+
+    public List<RiskRule> rules() {
+        return List.of(rules);
+    }
+
+    public boolean isCompiled() {
+        return compiled != null;
+    }
+
+    public RuleSet getPrevious() {
+        return previous;
+    }
+}
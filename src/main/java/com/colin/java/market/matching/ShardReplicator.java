@@ -0,0 +1,467 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 主备复制（主机侧）：把分片的输入指令流按序号复制到备机（StandbyReplica）
+ *
+ * 撮合线程在 apply 中把指令写入该分片的复制环（64 字节记录，格式同 OrderJournal，序号为分片内复制序号），
+ * 只是几次内存写；发送线程把已发布、未发送的记录直接从环写到 TCP 连接，不等确认（流水线）。
+ * 备机每处理完一批为每个产品回一条确认（ACK_LENGTH 字节：productId、已执行到的序号），确认之后的槽位才能复用，
+ * 所以未确认的记录始终留在环中：连接短暂中断后备机重连，从握手告知的位置续传。
+ * 备机跟不上时撮合线程在环满处自旋等待（背压）；没有备机在线时环写满则放弃该分片的复制（isLost），
+ * 不让单机运行被阻塞，此后备机只能从日志/快照重建。
+ * 有未确认的记录而确认超过 ackTimeoutMillis 没有推进（备机卡死、不读也不回确认）时，发送线程断开连接，
+ * 撮合线程随即按没有备机处理，不会无限自旋。
+ *
+ * 连接建立后备机先为每个产品发一条确认作为握手，主机从其后一条开始发送；空闲时每 heartbeatMillis
+ * 发一条心跳（序号为 0 的记录），备机据此判断主机是否存活。
+ * 账户风控状态不直接复制：风控预占在网关线程完成，不在输入流里，备机执行新买单时按同样的规则补上预占，
+ * 成交、撤单照常结算，账户状态与主机一致，接管后继续结算（见 EngineShard.setStandby）。
+ */
+public class ShardReplicator implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ShardReplicator.class);
+
+    public static final int RECORD_SIZE = OrderJournal.RECORD_SIZE;
+    public static final int ACK_LENGTH = 16;
+    private static final int MAX_WRITE_RECORDS = 1024; // 单次 write 最多发送的记录数，多个分片轮流发送
+    public static final long DEFAULT_ACK_TIMEOUT_MILLIS = 1_000;
+    private static final long ACK_POLL_NANOS = 20_000; // 确认线程非阻塞读取无数据时的休眠
+
+    private final Stream[] streams;
+    private final long heartbeatNanos;
+    private final long ackTimeoutNanos;
+    private ServerSocketChannel server;
+    private volatile SocketChannel link;
+    // 已握手、正在复制；撮合线程在环满时据此决定等待还是放弃
+    private volatile boolean streaming;
+    private Thread sender;
+    private volatile boolean running;
+    // 确认超时检测，仅发送线程：上次看到的确认总数及其推进的时间
+    private long ackedTotal;
+    private long ackProgressNanos;
+
+    public ShardReplicator(MatchingSystem system, long[] productIds, int ringRecords, long heartbeatMillis) {
+        this(system, productIds, ringRecords, heartbeatMillis, DEFAULT_ACK_TIMEOUT_MILLIS);
+    }
+
+    /**
+     * @param productIds 需要复制的产品，需要已经 listProduct
+     * @param ringRecords 每个分片复制环的记录数（2 的幂），决定备机最多可以落后多少条
+     * @param ackTimeoutMillis 有未确认记录时确认停止推进多久即断开备机
+     */
+    public ShardReplicator(MatchingSystem system, long[] productIds, int ringRecords, long heartbeatMillis,
+                           long ackTimeoutMillis) {
+        if (system.isRunning()) {
+            throw new IllegalStateException("复制需要在撮合系统 start() 之前开启");
+        }
+        if (ringRecords <= 0 || Integer.bitCount(ringRecords) != 1) {
+            throw new IllegalArgumentException("ringRecords 必须是 2 的幂: " + ringRecords);
+        }
+        this.heartbeatNanos = heartbeatMillis * 1_000_000L;
+        this.ackTimeoutNanos = ackTimeoutMillis * 1_000_000L;
+        this.streams = new Stream[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            MatchingSystem.EngineShard shard = system.getShard(productIds[i]);
+            if (shard == null) {
+                throw new IllegalArgumentException("产品未上市: " + productIds[i]);
+            }
+            streams[i] = new Stream(productIds[i], ringRecords);
+            shard.enableReplication(streams[i]);
+        }
+    }
+
+    /**
+     * 每个分片一个复制环：撮合线程写入（单生产者），发送线程读取，确认线程推进 acked 释放槽位
+     */
+    public final class Stream {
+        final long productId;
+        private final ByteBuffer ring;
+        private final ByteBuffer view; // 仅发送线程使用
+        private final int capacity;
+        private final int mask;
+        private final AtomicLong published = new AtomicLong();
+        private final AtomicLong acked = new AtomicLong();
+        private long sequence; // 仅撮合线程
+        private long cachedAcked; // 仅撮合线程，环未满时不读 volatile
+        private long sent; // 仅发送线程
+        private volatile long handshake = -1; // 本次连接握手时备机已执行到的序号，-1 表示尚未握手
+        private volatile boolean lost;
+
+        Stream(long productId, int capacity) {
+            this.productId = productId;
+            this.capacity = capacity;
+            this.mask = capacity - 1;
+            this.ring = ByteBuffer.allocateDirect(capacity * RECORD_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            this.view = ring.duplicate();
+        }
+
+        // 撮合线程调用（EngineShard.apply）
+        void append(SimpleOrder order) {
+            if (lost) {
+                return;
+            }
+            long seq = sequence + 1;
+            if (seq - cachedAcked > capacity) {
+                long a;
+                while (seq - (a = acked.get()) > capacity) {
+                    if (!streaming) {
+                        lost = true;
+                        logger.warn("Replication ring full without standby, replication of {} stopped", productId);
+                        return;
+                    }
+                    Thread.onSpinWait();
+                }
+                cachedAcked = a;
+            }
+            OrderJournal.encode(ring, (int) ((seq - 1) & mask) * RECORD_SIZE, order, seq);
+            sequence = seq;
+            published.lazySet(seq);
+        }
+
+        // 发送线程：把 sent 之后已发布的记录写出，返回写出的条数
+        private int send(SocketChannel ch) throws IOException {
+            long to = Math.min(published.get(), sent + MAX_WRITE_RECORDS);
+            if (to <= sent) {
+                return 0;
+            }
+            int from = (int) (sent & mask); // 序号 sent + 1 所在的槽位
+            int n = (int) (to - sent);
+            int first = Math.min(n, capacity - from);
+            write(ch, from, first);
+            if (first < n) {
+                write(ch, 0, n - first);
+            }
+            sent = to;
+            return n;
+        }
+
+        private void write(SocketChannel ch, int slot, int records) throws IOException {
+            view.limit((slot + records) * RECORD_SIZE).position(slot * RECORD_SIZE);
+            while (view.hasRemaining()) {
+                if (ch.write(view) == 0) {
+                    // 发送缓冲区已满：备机没有在读，等待期间同样检查确认超时
+                    checkAckTimeout(System.nanoTime(), true);
+                    Thread.onSpinWait();
+                }
+            }
+        }
+
+        public long getPublished() {
+            return published.get();
+        }
+
+        public long getAcked() {
+            return acked.get();
+        }
+
+        public boolean isLost() {
+            return lost;
+        }
+    }
+
+    /**
+     * 监听备机连接（同一时间只服务一个备机），port 为 0 时由系统分配，返回实际端口
+     */
+    public int bind(InetSocketAddress address) {
+        try {
+            server = ServerSocketChannel.open();
+            server.bind(address);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        running = true;
+        sender = new Thread(this::run, "replication-sender");
+        sender.setDaemon(true);
+        sender.start();
+        return ((InetSocketAddress) server.socket().getLocalSocketAddress()).getPort();
+    }
+
+    private void run() {
+        while (running) {
+            SocketChannel ch;
+            try {
+                ch = server.accept();
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication accept failed: {}", e.toString());
+                }
+                return;
+            }
+            try {
+                ch.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                serve(ch);
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Replication link to standby lost: {}", e.toString());
+                }
+            } finally {
+                streaming = false;
+                link = null;
+                try {
+                    ch.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    // 一次备机连接：握手后持续发送，直到连接断开或关闭
+    private void serve(SocketChannel ch) throws IOException {
+        for (Stream stream : streams) {
+            stream.handshake = -1;
+        }
+        link = ch;
+        // 非阻塞：备机不读时发送线程不会卡在 write 里，仍能判断确认超时
+        ch.configureBlocking(false);
+        Thread acks = new Thread(() -> readAcks(ch), "replication-acks");
+        acks.setDaemon(true);
+        acks.start();
+
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        for (Stream stream : streams) {
+            while (stream.handshake < 0) {
+                if (System.nanoTime() > deadline || !ch.isOpen()) {
+                    throw new IOException("standby handshake timed out");
+                }
+                LockSupport.parkNanos(100_000);
+            }
+            // 备机落后于已释放的槽位，或超前于主机，都无法续传
+            if (stream.lost || stream.handshake < stream.acked.get() || stream.handshake > stream.published.get()) {
+                throw new IOException("standby position " + stream.handshake + " of product " + stream.productId
+                        + " cannot be resumed (acked " + stream.acked.get() + ", published "
+                        + stream.published.get() + ")");
+            }
+            stream.acked.set(stream.handshake);
+            stream.sent = stream.handshake;
+        }
+        ackedTotal = -1;
+        ackProgressNanos = System.nanoTime();
+        streaming = true;
+        logger.info("Standby {} connected, streaming {} products", ch.getRemoteAddress(), streams.length);
+
+        ByteBuffer heartbeat = ByteBuffer.allocateDirect(RECORD_SIZE);
+        long lastWrite = System.nanoTime();
+        int idle = 0;
+        while (running) {
+            int n = 0;
+            for (Stream stream : streams) {
+                n += stream.send(ch);
+            }
+            long now = System.nanoTime();
+            if (n > 0) {
+                lastWrite = now;
+                idle = 0;
+                continue;
+            }
+            if (now - lastWrite > heartbeatNanos) {
+                heartbeat.clear();
+                while (heartbeat.hasRemaining()) {
+                    if (ch.write(heartbeat) == 0) {
+                        checkAckTimeout(System.nanoTime(), true);
+                        Thread.onSpinWait();
+                    }
+                }
+                lastWrite = now;
+            }
+            checkAckTimeout(now, false);
+            if (!ch.isOpen()) {
+                throw new IOException("link closed");
+            }
+            if (++idle > 100) {
+                LockSupport.parkNanos(20_000);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * 发送线程调用：有未确认的记录（或有数据写不出去）而确认总数超过 ackTimeoutNanos 没有推进时抛出 IOException，
+     * 由 run 断开连接、清除 streaming，撮合线程在环满处随之放弃复制
+     */
+    private void checkAckTimeout(long now, boolean blocked) throws IOException {
+        long total = 0;
+        boolean pending = blocked;
+        for (Stream stream : streams) {
+            long a = stream.acked.get();
+            total += a;
+            pending |= a < stream.sent;
+        }
+        if (!pending || total != ackedTotal) {
+            ackedTotal = total;
+            ackProgressNanos = now;
+        } else if (now - ackProgressNanos > ackTimeoutNanos) {
+            throw new IOException("standby did not ack within " + ackTimeoutNanos / 1_000_000 + " ms");
+        }
+    }
+
+    // 确认线程：第一条为握手，之后推进 acked；连接断开时关闭通道让发送线程退出
+    private void readAcks(SocketChannel ch) {
+        ByteBuffer buf = ByteBuffer.allocateDirect(ACK_LENGTH * 256).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            while (true) {
+                int n = ch.read(buf);
+                if (n < 0) {
+                    throw new IOException("standby closed the link");
+                }
+                if (n == 0) {
+                    LockSupport.parkNanos(ACK_POLL_NANOS);
+                    continue;
+                }
+                buf.flip();
+                while (buf.remaining() >= ACK_LENGTH) {
+                    int p = buf.position();
+                    onAck(buf.getLong(p), buf.getLong(p + 8));
+                    buf.position(p + ACK_LENGTH);
+                }
+                buf.compact();
+            }
+        } catch (IOException e) {
+            if (running && ch.isOpen()) {
+                logger.warn("Replication ack reader stopped: {}", e.toString());
+            }
+            try {
+                ch.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    private void onAck(long productId, long sequence) {
+        for (Stream stream : streams) {
+            if (stream.productId == productId) {
+                if (stream.handshake < 0) {
+                    stream.handshake = sequence;
+                } else if (sequence > stream.acked.get()) {
+                    stream.acked.lazySet(sequence);
+                }
+                return;
+            }
+        }
+    }
+
+    // 等待备机完成握手
+    public boolean awaitStandby(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        while (!streaming) {
+            if (System.nanoTime() > deadline) {
+                return false;
+            }
+            Thread.sleep(1);
+        }
+        return true;
+    }
+
+    // 等待已发布的记录全部被备机确认
+    public boolean awaitReplicated(long timeoutMillis) throws InterruptedException {
+        long deadline = System.nanoTime() + timeoutMillis * 1_000_000L;
+        for (Stream stream : streams) {
+            while (stream.acked.get() < stream.published.get()) {
+                if (System.nanoTime() > deadline) {
+                    return false;
+                }
+                Thread.sleep(1);
+            }
+        }
+        return true;
+    }
+
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    public Stream getStream(long productId) {
+        for (Stream stream : streams) {
+            if (stream.productId == productId) {
+                return stream;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        try {
+            if (server != null) {
+                server.close();
+            }
+            SocketChannel ch = link;
+            if (ch != null) {
+                ch.close();
+            }
+        } catch (IOException e) {
+            logger.warn("Replication close failed: {}", e.toString());
+        }
+        if (sender != null) {
+            try {
+                sender.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * 命令行：ShardReplicator <端口> <指令数>
+     * 演示主机：产品 1001、1002，等备机连上后发送生成的订单流，全部确认后输出 REPLICATED 并保持连接直到被杀掉，
+     * 供另一个 JVM 中的 StandbyReplica 演练接管
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            System.out.println("usage: ShardReplicator <port> <orders>");
+            return;
+        }
+        int port = Integer.parseInt(args[0]);
+        int orders = Integer.parseInt(args[1]);
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.productIds = new long[]{1001L, 1002L};
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        MatchingSystem system = new MatchingSystem(2, 1 << 14, accounts);
+        for (long productId : config.productIds) {
+            system.listProduct(productId, BookType.ARRAY);
+        }
+        ShardReplicator replicator = new ShardReplicator(system, config.productIds, 1 << 16, 20);
+        int bound = replicator.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        system.start(WaitStrategy.YIELD);
+        System.out.println("LISTENING " + bound);
+        if (!replicator.awaitStandby(30_000)) {
+            System.out.println("NO STANDBY");
+            System.exit(1);
+        }
+        OrderFlowGenerator generator = new OrderFlowGenerator(config);
+        SimpleOrder order = new SimpleOrder();
+        for (int i = 0; i < orders; i++) {
+            generator.next(order);
+            if (order.command == SimpleOrder.CANCEL) {
+                system.cancelOrder(order.productId, order.orderId);
+            } else {
+                system.handleOrder(order);
+            }
+        }
+        for (long productId : config.productIds) {
+            OrderRingBuffer ring = system.getShard(productId).getRingBuffer();
+            while (!ring.isEmpty()) {
+                Thread.sleep(1);
+            }
+        }
+        system.close(); // 撮合线程退出后复制环不再增长，确认追平即全部复制
+        System.out.println(replicator.awaitReplicated(30_000) ? "REPLICATED " + orders : "TIMEOUT");
+        Thread.sleep(Long.MAX_VALUE);
+    }
+}
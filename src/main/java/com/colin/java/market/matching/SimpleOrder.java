@@ -1,12 +1,25 @@
 package com.colin.java.market.matching;
 
 public class SimpleOrder {
+    // 指令类型：新订单 / 撤单 / 改量
+    public static final byte NEW = 0;
+    public static final byte CANCEL = 1;
+    public static final byte AMEND = 2; // quantity 表示改量后的剩余数量
+    // 已在 RingBuffer 中抢占槽位、但预风控未通过的新单：撮合线程直接跳过，不写日志
+    public static final byte REJECTED = 3;
+
     public long orderId;
+    public long accountId; // 资金账户，风控按账户预占/结算（见 AccountRiskStore），默认账户为 0
     public long productId;
     public long price;
     public long quantity;
     public boolean isBuy; // true = Buy, false = Sell
     public long timestamp;
+    public byte command = NEW;
+
+    // 预分配的槽位/解码目标，字段由 OrderFlyweight 等填写，不取时间戳
+    public SimpleOrder() {
+    }
 
     public SimpleOrder(long orderId, long productId, long price, long quantity, boolean isBuy) {
         this.orderId = orderId;
@@ -16,4 +29,4 @@ public class SimpleOrder {
         this.isBuy = isBuy;
         this.timestamp = System.nanoTime();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,227 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * 分片快照存储
+ * 撮合线程只负责把订单簿拷贝到预分配的 BookSnapshot（capture），编码、写盘、fsync 都在后台线程完成，
+ * 撮合线程不等待 IO。上一份快照还没写完时本次直接跳过，撮合线程永远不会因为快照而阻塞。
+ * 恢复时加载最新的一份完整快照，再从日志中重放快照序号之后的指令，恢复时间只取决于快照间隔。
+ *
+ * 文件格式（小端）：
+ * <pre>
+ * magic(4) version(4) productId(8) sequence(8) buyCount(4) sellCount(4)
+ * (orderId, price, quantity, accountId) * (buyCount + sellCount)
+ * crc32(8)  覆盖前面全部字节
+ * </pre>
+ * 版本 1 的文件没有 accountId，恢复后挂单无法结算，按不可用处理（退回完整重放日志）。
+ * 先写临时文件并 force，再原子重命名，崩溃时不会留下半份快照。
+ */
+public class SnapshotStore implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(SnapshotStore.class);
+    private static final int MAGIC = 0x534E4150; // "SNAP"
+    private static final int VERSION = 2;
+    private static final int RECORD_SIZE = BookSnapshot.FIELDS * 8;
+    private static final int HEADER_SIZE = 32;
+
+    private final Path directory;
+    private final long productId;
+    private final int retain; // 保留最近几份快照
+
+    private final BookSnapshot pending = new BookSnapshot(1024);
+    private volatile boolean writing;
+    private volatile long lastSequence = -1; // 最近一次写盘成功的快照序号
+    private final ExecutorService writer;
+
+    public SnapshotStore(Path directory, long productId, int retain) {
+        if (retain <= 0) {
+            throw new IllegalArgumentException("retain 必须大于 0");
+        }
+        this.directory = directory;
+        this.productId = productId;
+        this.retain = retain;
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("创建快照目录失败: " + directory, e);
+        }
+        this.writer = Executors.newSingleThreadExecutor(task -> {
+            Thread thread = new Thread(task, "snapshot-writer-" + productId);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * 撮合线程调用：拷贝当前订单簿并提交后台写盘
+     * @return 上一份快照仍在写盘时返回 false，本次跳过
+     */
+    public boolean takeSnapshot(long sequence, MatchingBook buyBook, MatchingBook sellBook) {
+        return takeSnapshot(sequence, buyBook, sellBook, null);
+    }
+
+    // riskOrders 为分片的在簿订单账户索引，挂单的账户随快照保存；未开启账户风控时为 null
+    public boolean takeSnapshot(long sequence, MatchingBook buyBook, MatchingBook sellBook,
+                                OrderAccountIndex riskOrders) {
+        if (writing) {
+            return false;
+        }
+        pending.capture(productId, sequence, buyBook, sellBook, riskOrders);
+        writing = true;
+        writer.execute(() -> {
+            try {
+                write(pending);
+                lastSequence = pending.sequence;
+                prune();
+            } catch (IOException e) {
+                // 写失败只丢这一份快照，恢复时会退回上一份（日志仍完整）
+                logger.error("写快照失败: " + directory, e);
+            } finally {
+                writing = false;
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 读取最新的一份完整快照，跳过校验失败的文件
+     * @return 没有可用快照时返回 null
+     */
+    public BookSnapshot loadLatest() {
+        try {
+            List<Path> files = snapshots();
+            for (int i = files.size() - 1; i >= 0; i--) {
+                BookSnapshot snapshot = read(files.get(i));
+                if (snapshot != null) {
+                    return snapshot;
+                }
+            }
+            return null;
+        } catch (IOException e) {
+            throw new UncheckedIOException("读取快照失败: " + directory, e);
+        }
+    }
+
+    // 最近一次写盘成功的快照序号，尚未写过返回 -1
+    public long getLastSequence() {
+        return lastSequence;
+    }
+
+    public boolean isWriting() {
+        return writing;
+    }
+
+    // 等待已提交的快照写完并停止后台线程
+    @Override
+    public void close() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void write(BookSnapshot snapshot) throws IOException {
+        int n = snapshot.orderCount();
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + n * RECORD_SIZE + 8).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putInt(MAGIC);
+        buffer.putInt(VERSION);
+        buffer.putLong(snapshot.productId);
+        buffer.putLong(snapshot.sequence);
+        buffer.putInt(snapshot.buyCount);
+        buffer.putInt(snapshot.sellCount);
+        long[] orders = snapshot.orders;
+        for (int i = 0; i < n * BookSnapshot.FIELDS; i++) {
+            buffer.putLong(orders[i]);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.position());
+        buffer.putLong(crc.getValue());
+        buffer.flip();
+
+        Path file = directory.resolve(fileName(snapshot.sequence));
+        Path tmp = directory.resolve(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    // 校验失败（截断、损坏、不是本产品）返回 null
+    private BookSnapshot read(Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file)).order(ByteOrder.LITTLE_ENDIAN);
+        if (buffer.capacity() < HEADER_SIZE + 8 || buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+            return null;
+        }
+        long product = buffer.getLong();
+        long sequence = buffer.getLong();
+        int buyCount = buffer.getInt();
+        int sellCount = buffer.getInt();
+        long n = (long) buyCount + sellCount;
+        if (product != productId || buyCount < 0 || sellCount < 0
+                || buffer.capacity() != HEADER_SIZE + n * RECORD_SIZE + 8) {
+            return null;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 0, buffer.capacity() - 8);
+        if (buffer.getLong(buffer.capacity() - 8) != crc.getValue()) {
+            return null;
+        }
+        BookSnapshot snapshot = new BookSnapshot((int) n);
+        snapshot.productId = product;
+        snapshot.sequence = sequence;
+        snapshot.buyCount = buyCount;
+        snapshot.sellCount = sellCount;
+        for (int i = 0; i < n * BookSnapshot.FIELDS; i++) {
+            snapshot.orders[i] = buffer.getLong();
+        }
+        return snapshot;
+    }
+
+    // 只保留最近 retain 份
+    private void prune() throws IOException {
+        List<Path> files = snapshots();
+        for (int i = 0; i < files.size() - retain; i++) {
+            Files.deleteIfExists(files.get(i));
+        }
+    }
+
+    // 序号定长补零，文件名顺序即序号顺序
+    private String fileName(long sequence) {
+        return String.format("snapshot-%d-%020d.snap", productId, sequence);
+    }
+
+    private List<Path> snapshots() throws IOException {
+        String prefix = "snapshot-" + productId + "-";
+        List<Path> result = new ArrayList<>();
+        try (var files = Files.list(directory)) {
+            files.filter(f -> {
+                String name = f.getFileName().toString();
+                return name.startsWith(prefix) && name.endsWith(".snap");
+            }).sorted().forEach(result::add);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,267 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 主备复制（备机侧）：接收 ShardReplicator 发来的输入指令流，按主机的顺序逐条执行，订单簿与主机保持一致
+ *
+ * 分片处于备机模式（setStandby），不发执行回报；复制线程充当撮合线程，每收到一段数据执行完后调用 endBatch，
+ * 并为本段涉及的每个产品回一条确认（批量确认）。连接后先为每个产品发送已执行到的序号作为握手，主机从其后续传。
+ * failoverTimeoutMillis 内收不到任何数据（主机空闲时也会发心跳）即认为主机失联；
+ * 传入 autoTakeover 时立即接管：退出备机模式并启动撮合线程，之后由本机的 handleOrder 接收新指令。
+ */
+public class StandbyReplica implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StandbyReplica.class);
+    private static final int RECORD_SIZE = ShardReplicator.RECORD_SIZE;
+    private static final int ACK_LENGTH = ShardReplicator.ACK_LENGTH;
+
+    private final MatchingSystem system;
+    private final long[] productIds;
+    private final MatchingSystem.EngineShard[] shards;
+    private final AtomicLongArray applied;
+    private final byte[] buffer = new byte[RECORD_SIZE * 1024];
+    private final ByteBuffer records = ByteBuffer.wrap(buffer).order(ByteOrder.LITTLE_ENDIAN);
+    private final byte[] ackBuffer;
+    private final ByteBuffer acks;
+    private final boolean[] touched;
+    private final SimpleOrder scratch = new SimpleOrder();
+
+    private Socket socket;
+    private Thread receiver;
+    private volatile boolean running;
+    private volatile boolean primaryLost;
+    private volatile boolean active;
+    private volatile long takeoverNanos;
+
+    /**
+     * @param productIds 与主机一致的产品，需要已经 listProduct；系统不能已启动
+     */
+    public StandbyReplica(MatchingSystem system, long[] productIds) {
+        if (system.isRunning()) {
+            throw new IllegalStateException("备机需要在撮合系统 start() 之前创建");
+        }
+        this.system = system;
+        this.productIds = productIds.clone();
+        this.shards = new MatchingSystem.EngineShard[productIds.length];
+        for (int i = 0; i < productIds.length; i++) {
+            shards[i] = system.getShard(productIds[i]);
+            if (shards[i] == null) {
+                throw new IllegalArgumentException("产品未上市: " + productIds[i]);
+            }
+            shards[i].setStandby(true);
+        }
+        this.applied = new AtomicLongArray(productIds.length);
+        this.ackBuffer = new byte[ACK_LENGTH * productIds.length];
+        this.acks = ByteBuffer.wrap(ackBuffer).order(ByteOrder.LITTLE_ENDIAN);
+        this.touched = new boolean[productIds.length];
+    }
+
+    /**
+     * 连接主机并开始复制
+     * @param autoTakeover 主机失联后自动接管使用的等待策略，为 null 时只标记失联，由调用方决定是否 takeover
+     */
+    public synchronized void connect(InetSocketAddress primary, long failoverTimeoutMillis,
+                                     WaitStrategy autoTakeover) throws IOException {
+        if (active || running) {
+            throw new IllegalStateException("备机已接管或正在复制");
+        }
+        Socket s = new Socket();
+        s.setTcpNoDelay(true);
+        s.connect(primary, (int) failoverTimeoutMillis);
+        s.setSoTimeout((int) failoverTimeoutMillis);
+        // 握手：每个产品已执行到的序号
+        for (int i = 0; i < productIds.length; i++) {
+            touched[i] = true;
+        }
+        sendAcks(s.getOutputStream());
+        socket = s;
+        primaryLost = false;
+        running = true;
+        receiver = new Thread(() -> run(s, autoTakeover), "replication-standby");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void run(Socket s, WaitStrategy autoTakeover) {
+        try {
+            InputStream in = s.getInputStream();
+            OutputStream out = s.getOutputStream();
+            int filled = 0;
+            while (running) {
+                int n = in.read(buffer, filled, buffer.length - filled);
+                if (n < 0) {
+                    throw new IOException("primary closed the link");
+                }
+                filled += n;
+                int whole = filled - filled % RECORD_SIZE;
+                for (int p = 0; p < whole; p += RECORD_SIZE) {
+                    apply(p);
+                }
+                if (whole > 0) {
+                    endBatch();
+                    sendAcks(out);
+                }
+                // 不完整的记录挪到开头等后续数据
+                System.arraycopy(buffer, whole, buffer, 0, filled - whole);
+                filled -= whole;
+            }
+        } catch (SocketTimeoutException e) {
+            onPrimaryLost("no data from primary within timeout", autoTakeover);
+        } catch (IOException e) {
+            onPrimaryLost(e.toString(), autoTakeover);
+        } catch (RuntimeException e) {
+            // 执行某条指令出错（如订单簿已满）时复制线程不能悄悄退出，否则备机停在半途且永远不会接管
+            logger.error("Replication apply failed", e);
+            onPrimaryLost(e.toString(), autoTakeover);
+        }
+    }
+
+    private void apply(int p) throws IOException {
+        long seq = records.getLong(p + OrderJournal.OFF_SEQUENCE);
+        if (seq == 0) {
+            return; // 心跳
+        }
+        long productId = records.getLong(p + OrderJournal.OFF_PRODUCT_ID);
+        int i = indexOf(productId);
+        if (i < 0) {
+            throw new IOException("unexpected product " + productId + " in replication stream");
+        }
+        long expected = applied.get(i) + 1;
+        if (seq != expected) {
+            throw new IOException("replication gap on product " + productId + ": expected " + expected + ", got " + seq);
+        }
+        OrderJournal.decode(records, p, scratch);
+        shards[i].apply(scratch);
+        applied.lazySet(i, seq);
+        touched[i] = true;
+    }
+
+    private void endBatch() {
+        for (int i = 0; i < shards.length; i++) {
+            if (touched[i]) {
+                shards[i].endBatch();
+            }
+        }
+    }
+
+    // 为 touched 标记的每个产品回一条确认
+    private void sendAcks(OutputStream out) throws IOException {
+        int n = 0;
+        for (int i = 0; i < productIds.length; i++) {
+            if (touched[i]) {
+                acks.putLong(n, productIds[i]);
+                acks.putLong(n + 8, applied.get(i));
+                n += ACK_LENGTH;
+                touched[i] = false;
+            }
+        }
+        if (n > 0) {
+            out.write(ackBuffer, 0, n);
+        }
+    }
+
+    private int indexOf(long productId) {
+        for (int i = 0; i < productIds.length; i++) {
+            if (productIds[i] == productId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void onPrimaryLost(String reason, WaitStrategy autoTakeover) {
+        if (!running) {
+            return; // 主动关闭或已接管
+        }
+        running = false;
+        primaryLost = true;
+        logger.warn("Primary lost: {}", reason);
+        closeSocket();
+        if (autoTakeover != null) {
+            takeover(autoTakeover);
+        }
+    }
+
+    /**
+     * 接管：停止复制，分片退出备机模式并启动撮合线程，返回后本机可以接收新指令
+     * 主机仍在运行时调用会出现双主，需要调用方保证主机已经下线
+     */
+    public synchronized void takeover(WaitStrategy waitStrategy) {
+        if (active) {
+            return;
+        }
+        long start = System.nanoTime();
+        running = false;
+        closeSocket();
+        Thread t = receiver;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        for (MatchingSystem.EngineShard shard : shards) {
+            shard.setStandby(false);
+        }
+        system.start(waitStrategy);
+        active = true;
+        takeoverNanos = System.nanoTime() - start;
+        logger.info("Standby took over {} products in {} us", shards.length, takeoverNanos / 1_000);
+    }
+
+    private void closeSocket() {
+        Socket s = socket;
+        if (s != null) {
+            try {
+                s.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+    // 已执行到的复制序号
+    public long getApplied(long productId) {
+        int i = indexOf(productId);
+        return i < 0 ? -1 : applied.get(i);
+    }
+
+    public boolean isPrimaryLost() {
+        return primaryLost;
+    }
+
+    // 已接管
+    public boolean isActive() {
+        return active;
+    }
+
+    // 接管耗时（纳秒），不含失联检测的超时
+    public long getTakeoverNanos() {
+        return takeoverNanos;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        closeSocket();
+        Thread t = receiver;
+        if (t != null && t != Thread.currentThread()) {
+            try {
+                t.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,363 @@
+package com.colin.java.market.matching;
+
+import java.util.Arrays;
+
+import static com.colin.java.market.matching.OrderNodePool.NIL;
+
+/**
+ * 价格阶梯 OrderBook
+ * 价格（以最小变动价位 tick 为单位的整数）直接映射到数组槽位：slot = price & mask，挂单 O(1)，无需插入排序。
+ * 阶梯是环形的：只要在簿价格的跨度小于阶梯长度，最优价随行情漂移时只需移动 best 指针，不搬动任何数据。
+ * 非空档位记录在位图中，最优档位吃空后按 64 位一组扫描位图定位下一档。
+ * 跨度超过阶梯长度时按 2 倍扩容，只搬迁非空档位，摊还成本为 O(1)。
+ * 阶梯长度有上限 maxTicks：离谱的价格会让跨度超过上限，add 抛 IllegalStateException 拒绝该挂单，
+ * 不会在撮合线程上分配巨大的数组。
+ */
+public class TickLadderOrderBook implements MatchingBook {
+    public static final int DEFAULT_MAX_TICKS = 1 << 20; // 约 16MB
+
+    private final boolean isAskBook; // true为卖盘（价格低优先），false为买盘（价格高优先）
+    private final int maxTicks; // 阶梯长度上限（2 的幂）
+
+    private int mask;
+    private long[] quantities; // 档位聚合数量，按槽位
+    private int[] heads;
+    private int[] tails;
+    private long[] bitmap; // 非空档位位图
+
+    private int levelCount; // 非空档位数
+    private long bestPrice; // 最优价（levelCount > 0 时有效）
+    private long farPrice; // 另一端价格的保守边界：卖盘为最高价的上界，买盘为最低价的下界
+
+    private final OrderNodePool nodes;
+    private final OrderIdIndex index;
+    private FillListener fillListener = FillListener.NO_OP;
+
+    public TickLadderOrderBook(int initialTicks, int orderCapacity, boolean isAskBook) {
+        this(initialTicks, DEFAULT_MAX_TICKS, orderCapacity, isAskBook);
+    }
+
+    /**
+     * @param maxTicks 阶梯长度上限，2 的幂且不小于 64；在簿价格跨度超过它的挂单被拒绝
+     */
+    public TickLadderOrderBook(int initialTicks, int maxTicks, int orderCapacity, boolean isAskBook) {
+        if (maxTicks < 64 || Integer.bitCount(maxTicks) != 1) {
+            throw new IllegalArgumentException("maxTicks 必须是不小于 64 的 2 的幂: " + maxTicks);
+        }
+        int ticks = Math.min(maxTicks, Math.max(64, Integer.highestOneBit(initialTicks - 1) << 1));
+        this.isAskBook = isAskBook;
+        this.maxTicks = maxTicks;
+        this.nodes = new OrderNodePool(orderCapacity);
+        this.index = new OrderIdIndex(orderCapacity);
+        this.mask = ticks - 1;
+        this.quantities = new long[ticks];
+        this.heads = emptySlots(ticks);
+        this.tails = emptySlots(ticks);
+        this.bitmap = new long[ticks >>> 6];
+    }
+
+    private static int[] emptySlots(int ticks) {
+        int[] slots = new int[ticks];
+        Arrays.fill(slots, NIL);
+        return slots;
+    }
+
+    private int slotOf(long price) {
+        return (int) price & mask;
+    }
+
+    @Override
+    public void add(long orderId, long price, long quantity) {
+        if (levelCount > 0) {
+            ensureSpan(price);
+        }
+        int slot = slotOf(price);
+        // 先取节点：池满时抛异常，最优价、位图和档位数都还没动
+        int node = nodes.acquire(orderId, quantity, slot);
+        if (levelCount == 0) {
+            bestPrice = price;
+            farPrice = price;
+        } else {
+            if (isAskBook ? price < bestPrice : price > bestPrice) {
+                bestPrice = price;
+            }
+            if (isAskBook ? price > farPrice : price < farPrice) {
+                farPrice = price;
+            }
+        }
+        if (heads[slot] == NIL) {
+            bitmap[slot >>> 6] |= 1L << slot;
+            levelCount++;
+        }
+        nodes.append(heads, tails, slot, node);
+        quantities[slot] += quantity;
+        if (orderId != 0) {
+            index.put(orderId, node);
+        }
+    }
+
+    // 保证加入 price 后在簿价格跨度仍小于阶梯长度，否则先收紧边界，仍不够再扩容
+    private void ensureSpan(long price) {
+        long low = isAskBook ? Math.min(bestPrice, price) : Math.min(farPrice, price);
+        long high = isAskBook ? Math.max(farPrice, price) : Math.max(bestPrice, price);
+        if (high - low <= mask) {
+            return;
+        }
+        farPrice = scanFarPrice();
+        low = isAskBook ? Math.min(bestPrice, price) : Math.min(farPrice, price);
+        high = isAskBook ? Math.max(farPrice, price) : Math.max(bestPrice, price);
+        if (high - low > mask) {
+            grow(high - low + 1);
+        }
+    }
+
+    @Override
+    public long match(long incomingPrice, long incomingQty) {
+        long tradedQty = 0;
+        long[] nodeQty = nodes.quantities;
+        int[] nodeNext = nodes.next;
+
+        while (incomingQty > 0 && levelCount > 0) {
+            long price = bestPrice;
+            boolean priceMatch = isAskBook ? (incomingPrice >= price) : (incomingPrice <= price);
+            if (!priceMatch) break;
+
+            int slot = slotOf(price);
+            int node = heads[slot];
+            // 按 FIFO 顺序从队首逐个吃掉档位内的挂单
+            while (node != NIL && incomingQty > 0) {
+                long matchSize = Math.min(incomingQty, nodeQty[node]);
+
+                incomingQty -= matchSize;
+                nodeQty[node] -= matchSize;
+                quantities[slot] -= matchSize;
+                tradedQty += matchSize;
+                fillListener.onFill(nodes.orderIds[node], price, matchSize, nodeQty[node]);
+
+                if (nodeQty[node] != 0) {
+                    break; // 部分成交，该订单继续排在队首
+                }
+                // 全部成交的一定是队首，直接出队并归还节点
+                long makerId = nodes.orderIds[node];
+                if (makerId != 0) {
+                    index.remove(makerId);
+                }
+                int nextNode = nodeNext[node];
+                nodes.release(node);
+                node = nextNode;
+            }
+            heads[slot] = node;
+            if (node == NIL) {
+                tails[slot] = NIL;
+                removeLevel(slot);
+            } else {
+                nodes.prev[node] = NIL;
+            }
+        }
+        return tradedQty;
+    }
+
+    // 档位被吃空或撤空：清除位图，若是最优档则定位下一档
+    private void removeLevel(int slot) {
+        bitmap[slot >>> 6] &= ~(1L << slot);
+        levelCount--;
+        if (levelCount > 0 && slot == slotOf(bestPrice)) {
+            int next = isAskBook ? nextSetSlot(slot) : prevSetSlot(slot);
+            bestPrice = priceOf(next);
+        }
+    }
+
+    // 槽位对应的价格：以最优价为原点计算环形偏移
+    private long priceOf(int slot) {
+        int bestSlot = slotOf(bestPrice);
+        return isAskBook ? bestPrice + ((slot - bestSlot) & mask) : bestPrice - ((bestSlot - slot) & mask);
+    }
+
+    // 实际最远档位的价格：卖盘从最优档往回（环形）找第一个非空档，即偏移最大的档位
+    private long scanFarPrice() {
+        int bestSlot = slotOf(bestPrice);
+        int far = isAskBook ? prevSetSlot((bestSlot - 1) & mask) : nextSetSlot((bestSlot + 1) & mask);
+        return priceOf(far);
+    }
+
+    // 从 from 开始（含）环形向后找第一个非空槽位
+    private int nextSetSlot(int from) {
+        int words = bitmap.length;
+        int w = from >>> 6;
+        long word = bitmap[w] & (-1L << from);
+        for (int n = 0; n <= words; n++) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            w = w + 1 == words ? 0 : w + 1;
+            word = bitmap[w];
+        }
+        return -1;
+    }
+
+    // 从 from 开始（含）环形向前找第一个非空槽位
+    private int prevSetSlot(int from) {
+        int words = bitmap.length;
+        int w = from >>> 6;
+        long word = bitmap[w] & (-1L >>> (63 - (from & 63)));
+        for (int n = 0; n <= words; n++) {
+            if (word != 0) {
+                return (w << 6) + 63 - Long.numberOfLeadingZeros(word);
+            }
+            w = w == 0 ? words - 1 : w - 1;
+            word = bitmap[w];
+        }
+        return -1;
+    }
+
+    // 扩容到能容纳 span 个价位的 2 的幂（不超过 maxTicks），只搬迁非空档位，并改写其订单节点的槽位
+    // 新数组全部分配成功后才改动字段，超出上限或分配失败时订单簿保持原状
+    private void grow(long span) {
+        if (span > maxTicks) {
+            throw new IllegalStateException("价格跨度 " + span + " 超过阶梯上限 " + maxTicks);
+        }
+        int ticks = (int) Math.min(maxTicks, Long.highestOneBit(span - 1) << 2);
+        int newMask = ticks - 1;
+        long[] newQuantities = new long[ticks];
+        int[] newHeads = emptySlots(ticks);
+        int[] newTails = emptySlots(ticks);
+        long[] newBitmap = new long[ticks >>> 6];
+
+        int bestSlot = slotOf(bestPrice);
+        for (int w = 0; w < bitmap.length; w++) {
+            long word = bitmap[w];
+            while (word != 0) {
+                int oldSlot = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                long price = isAskBook
+                        ? bestPrice + ((oldSlot - bestSlot) & mask)
+                        : bestPrice - ((bestSlot - oldSlot) & mask);
+                int slot = (int) price & newMask;
+                newQuantities[slot] = quantities[oldSlot];
+                newHeads[slot] = heads[oldSlot];
+                newTails[slot] = tails[oldSlot];
+                newBitmap[slot >>> 6] |= 1L << slot;
+                for (int node = newHeads[slot]; node != NIL; node = nodes.next[node]) {
+                    nodes.levels[node] = slot;
+                }
+            }
+        }
+        mask = newMask;
+        quantities = newQuantities;
+        heads = newHeads;
+        tails = newTails;
+        bitmap = newBitmap;
+    }
+
+    @Override
+    public boolean cancel(long orderId) {
+        int node = index.remove(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int slot = nodes.levels[node];
+        quantities[slot] -= nodes.quantities[node];
+        nodes.unlink(heads, tails, node);
+        nodes.release(node);
+        if (heads[slot] == NIL) {
+            removeLevel(slot);
+        }
+        return true;
+    }
+
+    @Override
+    public boolean amend(long orderId, long newQty) {
+        if (newQty <= 0) {
+            return cancel(orderId);
+        }
+        int node = index.get(orderId);
+        if (node == OrderIdIndex.MISSING) {
+            return false;
+        }
+        int slot = nodes.levels[node];
+        long oldQty = nodes.quantities[node];
+        quantities[slot] += newQty - oldQty;
+        nodes.quantities[node] = newQty;
+        // 增量失去时间优先，重新排到队尾
+        if (newQty > oldQty && tails[slot] != node) {
+            nodes.unlink(heads, tails, node);
+            nodes.append(heads, tails, slot, node);
+        }
+        return true;
+    }
+
+    @Override
+    public long orderQuantity(long orderId) {
+        int node = index.get(orderId);
+        return node == OrderIdIndex.MISSING ? 0 : nodes.quantities[node];
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(quantities, 0);
+        Arrays.fill(heads, NIL);
+        Arrays.fill(tails, NIL);
+        Arrays.fill(bitmap, 0);
+        levelCount = 0;
+        nodes.clear();
+        index.clear();
+    }
+
+    @Override
+    public int depth(long[] outPrices, long[] outQuantities, int maxLevels) {
+        int n = Math.min(levelCount, maxLevels);
+        int slot = slotOf(bestPrice);
+        for (int k = 0; k < n; k++) {
+            outPrices[k] = priceOf(slot);
+            outQuantities[k] = quantities[slot];
+            slot = isAskBook ? nextSetSlot((slot + 1) & mask) : prevSetSlot((slot - 1) & mask);
+        }
+        return n;
+    }
+
+    @Override
+    public void forEachOrder(OrderVisitor visitor) {
+        int slot = slotOf(bestPrice);
+        for (int k = 0; k < levelCount; k++) {
+            long price = priceOf(slot);
+            for (int node = heads[slot]; node != NIL; node = nodes.next[node]) {
+                visitor.visit(nodes.orderIds[node], price, nodes.quantities[node]);
+            }
+            slot = isAskBook ? nextSetSlot((slot + 1) & mask) : prevSetSlot((slot - 1) & mask);
+        }
+    }
+
+    @Override
+    public void setFillListener(FillListener fillListener) {
+        this.fillListener = fillListener == null ? FillListener.NO_OP : fillListener;
+    }
+
+    @Override
+    public int orderCount() {
+        return nodes.size();
+    }
+
+    @Override
+    public boolean isAskBook() {
+        return isAskBook;
+    }
+
+    // 非空档位数
+    public int levelCount() {
+        return levelCount;
+    }
+
+    // 最优价，空簿时无意义
+    public long bestPrice() {
+        return bestPrice;
+    }
+
+    public int maxTicks() {
+        return maxTicks;
+    }
+
+    // 当前阶梯长度（价位数）
+    public int ladderSize() {
+        return mask + 1;
+    }
+}
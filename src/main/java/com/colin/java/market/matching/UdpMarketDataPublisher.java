@@ -0,0 +1,512 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * UDP 行情发布：逐档增量 + 逐笔成交按序号打包，攒满一个 MTU 或一批指令结束时发出
+ *
+ * 撮合线程上的 MarketDataListener（每个分片一个 Stream）只把消息编码进预分配的包环（单生产者 / 单消费者），
+ * 不做系统调用；独立的发送线程从各分片的包环取包，逐个发给所有订阅者（单播扇出，订阅地址也可以是组播地址）。
+ * 包环满时撮合线程直接丢包但仍占用包序号，下游据此发现缺口，并请求一次快照（不会阻塞撮合）。
+ *
+ * 包格式（小端），包头 32 字节：
+ * <pre>
+ * 0  productId  8
+ * 8  packetSeq  8  分片内增量包序号，从 1 连续递增；快照/心跳包为其对应的最后一个增量包序号
+ * 16 baseSeq    8  增量包：包内第一条增量之前的增量序号；快照包：快照包含的最后一条增量序号；心跳包：已发送的最后一条增量序号
+ * 24 count      2  增量包内的消息条数
+ * 26 flags      1  INCREMENTAL / SNAPSHOT / HEARTBEAT
+ * </pre>
+ * 增量包消息，每条 32 字节：0 type（RECORD_DELTA / RECORD_TRADE），1 isBid（成交为 Taker 是否买方），2 action，
+ * 8 sequence（增量序号；成交为当时的增量序号），16 price，24 quantity。
+ * 快照包体：32 bidCount（int），36 askCount（int），40 起先买盘后卖盘，每档 price、quantity 各 8 字节。
+ *
+ * 恢复通道：订阅者向发布端地址发 16 字节控制报文（0 type，8 productId）：SUBSCRIBE / UNSUBSCRIBE / RECOVER。
+ * 发送线程按已发出的增量维护每个分片的深度副本，收到 RECOVER 立即用副本回复快照（与已发增量严格衔接），
+ * 不需要撮合线程参与；副本因丢包失效时先请求撮合线程在下一批指令后补发快照，再回复排队的请求。
+ * 订阅者长时间收不到增量时靠心跳包发现尾部丢包。
+ */
+public class UdpMarketDataPublisher implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UdpMarketDataPublisher.class);
+
+    public static final int DEFAULT_PACKET_SIZE = 1472; // 以太网 MTU 1500 - IP 头 20 - UDP 头 8
+
+    public static final int HEADER_LENGTH = 32;
+    public static final int OFF_PRODUCT_ID = 0;
+    public static final int OFF_PACKET_SEQ = 8;
+    public static final int OFF_BASE_SEQ = 16;
+    public static final int OFF_COUNT = 24;
+    public static final int OFF_FLAGS = 26;
+
+    public static final byte INCREMENTAL = 0;
+    public static final byte SNAPSHOT = 1;
+    public static final byte HEARTBEAT = 2;
+
+    public static final int RECORD_LENGTH = 32;
+    public static final byte RECORD_DELTA = 0;
+    public static final byte RECORD_TRADE = 1;
+    public static final int REC_TYPE = 0;
+    public static final int REC_SIDE = 1;
+    public static final int REC_ACTION = 2;
+    public static final int REC_SEQUENCE = 8;
+    public static final int REC_PRICE = 16;
+    public static final int REC_QUANTITY = 24;
+
+    public static final int SNAP_BID_COUNT = 32;
+    public static final int SNAP_ASK_COUNT = 36;
+    public static final int SNAP_LEVELS = 40;
+    public static final int LEVEL_LENGTH = 16;
+
+    public static final int CONTROL_LENGTH = 16;
+    public static final byte SUBSCRIBE = 1;
+    public static final byte UNSUBSCRIBE = 2;
+    public static final byte RECOVER = 3;
+
+    private final DatagramChannel channel;
+    private final int packetSize;
+    private final int ringPackets;
+    private final long heartbeatNanos;
+    private final List<Stream> streams = new ArrayList<>();
+    private volatile Stream[] streamArray = new Stream[0];
+    // 写时复制，发送线程遍历时不分配对象
+    private volatile SocketAddress[] subscribers = new SocketAddress[0];
+
+    // 仅发送线程使用
+    private final ByteBuffer control = ByteBuffer.allocateDirect(CONTROL_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer scratch;
+    private final AtomicLong packetsSent = new AtomicLong();
+
+    private Thread sender;
+    private volatile boolean running;
+
+    public UdpMarketDataPublisher(InetSocketAddress bindAddress) {
+        this(bindAddress, DEFAULT_PACKET_SIZE, 1024, 100);
+    }
+
+    /**
+     * @param ringPackets 每个分片的包环容量（2 的幂）
+     * @param heartbeatMillis 分片空闲超过该时间发一次心跳
+     */
+    public UdpMarketDataPublisher(InetSocketAddress bindAddress, int packetSize, int ringPackets, long heartbeatMillis) {
+        if (packetSize < HEADER_LENGTH + RECORD_LENGTH) {
+            throw new IllegalArgumentException("packetSize 太小: " + packetSize);
+        }
+        if (ringPackets <= 0 || Integer.bitCount(ringPackets) != 1) {
+            throw new IllegalArgumentException("ringPackets 必须是 2 的幂: " + ringPackets);
+        }
+        this.packetSize = packetSize;
+        this.ringPackets = ringPackets;
+        this.heartbeatNanos = heartbeatMillis * 1_000_000L;
+        this.scratch = ByteBuffer.allocateDirect(packetSize).order(ByteOrder.LITTLE_ENDIAN);
+        try {
+            this.channel = DatagramChannel.open();
+            channel.bind(bindAddress);
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * 为分片开启行情并接入 UDP 发布，需要在撮合系统 start() 之前调用
+     * depth 受包大小限制：一个快照包要放下双边 depth 档
+     */
+    public synchronized Stream attach(MatchingSystem.EngineShard shard, int depth, int snapshotInterval) {
+        if (SNAP_LEVELS + 2 * depth * LEVEL_LENGTH > packetSize) {
+            throw new IllegalArgumentException("depth " + depth + " 的快照超过包大小 " + packetSize);
+        }
+        Stream stream = new Stream(shard.productId, depth);
+        MarketDataPublisher source = shard.enableMarketData(depth, snapshotInterval, stream);
+        if (source.getDepth() != depth) {
+            throw new IllegalStateException("分片已开启其他行情: " + shard.productId);
+        }
+        stream.source = source;
+        streams.add(stream);
+        streamArray = streams.toArray(new Stream[0]);
+        return stream;
+    }
+
+    public synchronized void addSubscriber(SocketAddress address) {
+        if (Arrays.asList(subscribers).contains(address)) {
+            return;
+        }
+        SocketAddress[] next = Arrays.copyOf(subscribers, subscribers.length + 1);
+        next[subscribers.length] = address;
+        subscribers = next;
+    }
+
+    public synchronized void removeSubscriber(SocketAddress address) {
+        subscribers = Arrays.stream(subscribers).filter(a -> !a.equals(address)).toArray(SocketAddress[]::new);
+    }
+
+    public void start() {
+        running = true;
+        sender = new Thread(this::run, "md-udp-sender");
+        sender.setDaemon(true);
+        sender.start();
+    }
+
+    /**
+     * 每个分片一个：撮合线程上编码消息（生产者），发送线程取包发送并维护深度副本（消费者）
+     */
+    public final class Stream implements MarketDataListener {
+        final long productId;
+        private final ByteBuffer packets;
+        private final int[] lengths;
+        private final int mask;
+        private final AtomicLong published = new AtomicLong(-1);
+        private final AtomicLong consumed = new AtomicLong(-1);
+        private MarketDataPublisher source;
+        // 发送线程发现副本失效时置位，撮合线程在下一批结束时补发快照
+        private volatile boolean snapshotRequested;
+
+        // ---- 仅撮合线程 ----
+        private final ByteBuffer dropBuffer;
+        private ByteBuffer target;
+        private int base;
+        private int count;
+        private boolean open;
+        private boolean dropping;
+        private long packetSeq;
+        private long deltaSeq;
+        private volatile long dropped;
+
+        // ---- 仅发送线程 ----
+        private final DepthSnapshot replica;
+        private boolean replicaValid;
+        private long sentPacketSeq;
+        private long lastSendNanos;
+        private final List<SocketAddress> pendingRecover = new ArrayList<>();
+        private final ByteBuffer view;
+
+        Stream(long productId, int depth) {
+            this.productId = productId;
+            this.packets = ByteBuffer.allocateDirect(ringPackets * packetSize).order(ByteOrder.LITTLE_ENDIAN);
+            this.view = packets.duplicate();
+            this.lengths = new int[ringPackets];
+            this.mask = ringPackets - 1;
+            this.dropBuffer = ByteBuffer.allocateDirect(packetSize).order(ByteOrder.LITTLE_ENDIAN);
+            this.replica = new DepthSnapshot(2 * depth);
+            replica.productId = productId;
+            this.replicaValid = true; // 尚未发出任何增量，空深度就是准确的副本
+        }
+
+        @Override
+        public void onDelta(long productId, long sequence, boolean isBid, byte action, long price, long quantity) {
+            int off = nextRecord();
+            target.put(off + REC_TYPE, RECORD_DELTA);
+            target.put(off + REC_SIDE, isBid ? (byte) 1 : (byte) 0);
+            target.put(off + REC_ACTION, action);
+            target.putLong(off + REC_SEQUENCE, sequence);
+            target.putLong(off + REC_PRICE, price);
+            target.putLong(off + REC_QUANTITY, quantity);
+            deltaSeq = sequence;
+        }
+
+        @Override
+        public void onTrade(long productId, long price, long quantity, boolean isBuy) {
+            int off = nextRecord();
+            target.put(off + REC_TYPE, RECORD_TRADE);
+            target.put(off + REC_SIDE, isBuy ? (byte) 1 : (byte) 0);
+            target.put(off + REC_ACTION, (byte) 0);
+            target.putLong(off + REC_SEQUENCE, deltaSeq);
+            target.putLong(off + REC_PRICE, price);
+            target.putLong(off + REC_QUANTITY, quantity);
+        }
+
+        @Override
+        public void onSnapshot(DepthSnapshot snapshot) {
+            publish();
+            ByteBuffer buf = claim();
+            int b = base;
+            writeHeader(buf, b, productId, packetSeq, snapshot.sequence, SNAPSHOT);
+            int length = encodeLevels(buf, b, snapshot.bidPrices, snapshot.bidQuantities, snapshot.bidCount,
+                    snapshot.askPrices, snapshot.askQuantities, snapshot.askCount);
+            if (dropping) {
+                snapshotRequested = true;
+            } else {
+                lengths[(int) (published.get() + 1) & mask] = length;
+                published.lazySet(published.get() + 1);
+            }
+        }
+
+        @Override
+        public void onBatchEnd(long productId) {
+            publish();
+            if (snapshotRequested) {
+                snapshotRequested = false;
+                source.publishSnapshot();
+            }
+        }
+
+        // 当前包放不下时先发出，再开新包；返回本条消息的偏移
+        private int nextRecord() {
+            if (open && HEADER_LENGTH + (count + 1) * RECORD_LENGTH > packetSize) {
+                publish();
+            }
+            if (!open) {
+                target = claim();
+                writeHeader(target, base, productId, ++packetSeq, deltaSeq, INCREMENTAL);
+                count = 0;
+                open = true;
+            }
+            return base + HEADER_LENGTH + RECORD_LENGTH * count++;
+        }
+
+        // 取下一个空槽位，环满时写到丢弃缓冲区
+        private ByteBuffer claim() {
+            long seq = published.get() + 1;
+            dropping = seq - consumed.get() > ringPackets;
+            if (dropping) {
+                base = 0;
+                return dropBuffer;
+            }
+            base = ((int) seq & mask) * packetSize;
+            return packets;
+        }
+
+        private void publish() {
+            if (!open) {
+                return;
+            }
+            open = false;
+            target.putShort(base + OFF_COUNT, (short) count);
+            if (dropping) {
+                dropped++;
+                snapshotRequested = true;
+                return;
+            }
+            long seq = published.get() + 1;
+            lengths[(int) seq & mask] = HEADER_LENGTH + count * RECORD_LENGTH;
+            published.lazySet(seq);
+        }
+
+        // 发送线程：发出已发布的包，维护副本；返回是否有数据
+        boolean drain(SocketAddress[] to, long now) {
+            long current = consumed.get();
+            long available = published.get();
+            for (long seq = current + 1; seq <= available; seq++) {
+                int b = ((int) seq & mask) * packetSize;
+                byte flags = packets.get(b + OFF_FLAGS);
+                if (flags == SNAPSHOT) {
+                    loadReplica(packets, b);
+                    for (SocketAddress requester : pendingRecover) {
+                        send(view, b, lengths[(int) seq & mask], requester);
+                    }
+                    pendingRecover.clear();
+                } else {
+                    long packet = packets.getLong(b + OFF_PACKET_SEQ);
+                    if (packet != sentPacketSeq + 1) {
+                        replicaValid = false; // 撮合线程丢过包，等它补发的快照
+                    }
+                    sentPacketSeq = packet;
+                    if (replicaValid) {
+                        applyRecords(b, packets.getShort(b + OFF_COUNT));
+                    }
+                }
+                for (SocketAddress address : to) {
+                    send(view, b, lengths[(int) seq & mask], address);
+                }
+                lastSendNanos = now;
+            }
+            if (available > current) {
+                consumed.lazySet(available);
+                return true;
+            }
+            if (now - lastSendNanos > heartbeatNanos && to.length > 0) {
+                writeHeader(scratch, 0, productId, sentPacketSeq, replica.sequence, HEARTBEAT);
+                for (SocketAddress address : to) {
+                    send(scratch, 0, HEADER_LENGTH, address);
+                }
+                lastSendNanos = now;
+            }
+            return false;
+        }
+
+        private void loadReplica(ByteBuffer buf, int b) {
+            replica.sequence = buf.getLong(b + OFF_BASE_SEQ);
+            replica.bidCount = buf.getInt(b + SNAP_BID_COUNT);
+            replica.askCount = buf.getInt(b + SNAP_ASK_COUNT);
+            int off = b + SNAP_LEVELS;
+            for (int i = 0; i < replica.bidCount; i++, off += LEVEL_LENGTH) {
+                replica.bidPrices[i] = buf.getLong(off);
+                replica.bidQuantities[i] = buf.getLong(off + 8);
+            }
+            for (int i = 0; i < replica.askCount; i++, off += LEVEL_LENGTH) {
+                replica.askPrices[i] = buf.getLong(off);
+                replica.askQuantities[i] = buf.getLong(off + 8);
+            }
+            sentPacketSeq = buf.getLong(b + OFF_PACKET_SEQ);
+            replicaValid = true;
+        }
+
+        private void applyRecords(int b, int n) {
+            int off = b + HEADER_LENGTH;
+            for (int i = 0; i < n; i++, off += RECORD_LENGTH) {
+                if (packets.get(off + REC_TYPE) != RECORD_DELTA) {
+                    continue;
+                }
+                if (!replica.apply(packets.getLong(off + REC_SEQUENCE), packets.get(off + REC_SIDE) != 0,
+                        packets.get(off + REC_ACTION), packets.getLong(off + REC_PRICE),
+                        packets.getLong(off + REC_QUANTITY))) {
+                    replicaValid = false;
+                    snapshotRequested = true;
+                    return;
+                }
+            }
+        }
+
+        // 发送线程：副本有效时立即回复，否则排队等撮合线程补发快照
+        void recover(SocketAddress requester) {
+            if (!replicaValid) {
+                if (!pendingRecover.contains(requester)) {
+                    pendingRecover.add(requester);
+                }
+                snapshotRequested = true;
+                return;
+            }
+            writeHeader(scratch, 0, productId, sentPacketSeq, replica.sequence, SNAPSHOT);
+            int length = encodeLevels(scratch, 0, replica.bidPrices, replica.bidQuantities, replica.bidCount,
+                    replica.askPrices, replica.askQuantities, replica.askCount);
+            send(scratch, 0, length, requester);
+        }
+
+        public long getDropped() {
+            return dropped;
+        }
+    }
+
+    private static void writeHeader(ByteBuffer buf, int b, long productId, long packetSeq, long baseSeq, byte flags) {
+        buf.putLong(b + OFF_PRODUCT_ID, productId);
+        buf.putLong(b + OFF_PACKET_SEQ, packetSeq);
+        buf.putLong(b + OFF_BASE_SEQ, baseSeq);
+        buf.putShort(b + OFF_COUNT, (short) 0);
+        buf.put(b + OFF_FLAGS, flags);
+    }
+
+    private static int encodeLevels(ByteBuffer buf, int b, long[] bidPrices, long[] bidQty, int bidCount,
+                                    long[] askPrices, long[] askQty, int askCount) {
+        buf.putInt(b + SNAP_BID_COUNT, bidCount);
+        buf.putInt(b + SNAP_ASK_COUNT, askCount);
+        int off = b + SNAP_LEVELS;
+        for (int i = 0; i < bidCount; i++, off += LEVEL_LENGTH) {
+            buf.putLong(off, bidPrices[i]);
+            buf.putLong(off + 8, bidQty[i]);
+        }
+        for (int i = 0; i < askCount; i++, off += LEVEL_LENGTH) {
+            buf.putLong(off, askPrices[i]);
+            buf.putLong(off + 8, askQty[i]);
+        }
+        return off - b;
+    }
+
+    private void send(ByteBuffer buf, int offset, int length, SocketAddress address) {
+        // buf 是发送线程独占的视图，只改 position/limit
+        buf.limit(offset + length).position(offset);
+        try {
+            channel.send(buf, address);
+            packetsSent.incrementAndGet();
+        } catch (IOException e) {
+            logger.warn("Market data send to {} failed: {}", address, e.toString());
+        }
+        buf.clear();
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running) {
+            long now = System.nanoTime();
+            SocketAddress[] to = subscribers;
+            boolean busy = false;
+            for (Stream stream : streamArray) {
+                busy |= stream.drain(to, now);
+            }
+            busy |= pollControl();
+            if (busy) {
+                idle = 0;
+            } else if (++idle > 1_000) {
+                LockSupport.parkNanos(50_000);
+            } else if (idle > 100) {
+                Thread.yield();
+            }
+        }
+    }
+
+    private boolean pollControl() {
+        control.clear();
+        SocketAddress from;
+        try {
+            from = channel.receive(control);
+        } catch (IOException e) {
+            logger.warn("Market data control receive failed: {}", e.toString());
+            return false;
+        }
+        if (from == null) {
+            return false;
+        }
+        if (control.position() < CONTROL_LENGTH) {
+            return true;
+        }
+        byte type = control.get(0);
+        long productId = control.getLong(8);
+        if (type == SUBSCRIBE) {
+            addSubscriber(from);
+        } else if (type == UNSUBSCRIBE) {
+            removeSubscriber(from);
+        } else if (type == RECOVER) {
+            for (Stream stream : streamArray) {
+                if (stream.productId == productId) {
+                    stream.recover(from);
+                }
+            }
+        }
+        return true;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.length;
+    }
+
+    public long getPacketsSent() {
+        return packetsSent.get();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (sender != null) {
+            try {
+                sender.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Market data channel close failed: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.colin.java.market.matching;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.locks.LockSupport;
+
+import static com.colin.java.market.matching.UdpMarketDataPublisher.*;
+
+/**
+ * UDP 行情订阅端：按包序号检测缺口，快照 + 缓存增量恢复，重建每个产品的前 N 档
+ *
+ * 每个产品独立维护包序号与增量序号。收到第一个包、包序号出现缺口或心跳显示有漏包时进入恢复：
+ * 向发布端发 RECOVER，期间收到的增量先缓存；快照到达且 snapshot.sequence 不早于缺口位置时，
+ * 载入快照再应用缓存中序号更大的增量，回到同步状态。恢复请求超时未回复会重发。
+ * 同步状态下收到包序号更大的快照（发布端自己丢过包）直接用它重新同步。
+ * listener 在接收线程上回调：已应用的增量、成交、每次（重新）同步后的完整深度。
+ */
+public class UdpMarketDataSubscriber implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UdpMarketDataSubscriber.class);
+    private static final long RECOVER_RETRY_NANOS = 50_000_000L;
+    private static final int BUFFER_CAPACITY = 16_384;
+
+    private final InetSocketAddress publisher;
+    private final int depth;
+    private final MarketDataListener listener;
+    private final DatagramChannel channel;
+    private final ByteBuffer packet = ByteBuffer.allocateDirect(64 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    private final ByteBuffer control = ByteBuffer.allocateDirect(CONTROL_LENGTH).order(ByteOrder.LITTLE_ENDIAN);
+    private final Map<Long, Product> products = new HashMap<>();
+
+    private volatile long gaps;
+    private volatile long recoveries;
+    private Thread receiver;
+    private volatile boolean running;
+
+    // 单个产品的重建状态，只在接收线程上修改，读取方通过 synchronized 访问
+    private static final class Product {
+        final DepthSnapshot book;
+        long lastPacketSeq;
+        boolean synced;
+        long requiredSeq; // 恢复时快照至少要包含到的增量序号
+        long lastRequestNanos;
+        // 恢复期间缓存的增量
+        final long[] seqs = new long[BUFFER_CAPACITY];
+        final long[] prices = new long[BUFFER_CAPACITY];
+        final long[] quantities = new long[BUFFER_CAPACITY];
+        final byte[] actions = new byte[BUFFER_CAPACITY];
+        final boolean[] sides = new boolean[BUFFER_CAPACITY];
+        int buffered;
+
+        Product(long productId, int depth) {
+            this.book = new DepthSnapshot(2 * depth);
+            book.productId = productId;
+        }
+    }
+
+    /**
+     * @param depth 与发布端一致的档数
+     */
+    public UdpMarketDataSubscriber(InetSocketAddress publisher, int depth, MarketDataListener listener) {
+        this.publisher = publisher;
+        this.depth = depth;
+        this.listener = listener;
+        try {
+            this.channel = DatagramChannel.open();
+            channel.bind(new InetSocketAddress(publisher.getAddress(), 0));
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void start() {
+        sendControl(SUBSCRIBE, 0);
+        running = true;
+        receiver = new Thread(this::run, "md-udp-subscriber");
+        receiver.setDaemon(true);
+        receiver.start();
+    }
+
+    private void run() {
+        int idle = 0;
+        while (running) {
+            packet.clear();
+            try {
+                if (channel.receive(packet) != null) {
+                    idle = 0;
+                    synchronized (this) {
+                        onPacket(packet.position());
+                    }
+                    continue;
+                }
+            } catch (IOException e) {
+                if (running) {
+                    logger.warn("Market data receive failed: {}", e.toString());
+                }
+            }
+            synchronized (this) {
+                retryRecovery();
+            }
+            if (++idle > 100) {
+                LockSupport.parkNanos(50_000);
+            }
+        }
+    }
+
+    private void onPacket(int length) {
+        if (length < HEADER_LENGTH) {
+            return;
+        }
+        long productId = packet.getLong(OFF_PRODUCT_ID);
+        Product p = products.get(productId);
+        if (p == null) {
+            p = new Product(productId, depth);
+            products.put(productId, p);
+        }
+        long packetSeq = packet.getLong(OFF_PACKET_SEQ);
+        long baseSeq = packet.getLong(OFF_BASE_SEQ);
+        byte flags = packet.get(OFF_FLAGS);
+        if (flags == SNAPSHOT) {
+            onSnapshot(p, packetSeq, baseSeq);
+        } else if (flags == HEARTBEAT) {
+            if (packetSeq > p.lastPacketSeq) {
+                lost(p, baseSeq);
+            }
+        } else {
+            onIncremental(p, packetSeq, baseSeq, packet.getShort(OFF_COUNT));
+        }
+    }
+
+    private void onIncremental(Product p, long packetSeq, long baseSeq, int count) {
+        if (packetSeq <= p.lastPacketSeq) {
+            return; // 重复或已被快照覆盖
+        }
+        if (packetSeq != p.lastPacketSeq + 1) {
+            lost(p, baseSeq);
+        } else if (!p.synced && p.buffered == 0) {
+            // 首次接入：快照只需要衔接到本包之前
+            p.requiredSeq = Math.max(p.requiredSeq, baseSeq);
+            requestRecovery(p, false);
+        }
+        p.lastPacketSeq = packetSeq;
+        int off = HEADER_LENGTH;
+        for (int i = 0; i < count; i++, off += RECORD_LENGTH) {
+            boolean side = packet.get(off + REC_SIDE) != 0;
+            long seq = packet.getLong(off + REC_SEQUENCE);
+            long price = packet.getLong(off + REC_PRICE);
+            long quantity = packet.getLong(off + REC_QUANTITY);
+            if (packet.get(off + REC_TYPE) == RECORD_TRADE) {
+                if (listener != null) {
+                    listener.onTrade(p.book.productId, price, quantity, side);
+                }
+                continue;
+            }
+            byte action = packet.get(off + REC_ACTION);
+            if (p.synced) {
+                if (!p.book.apply(seq, side, action, price, quantity)) {
+                    lost(p, seq); // 深度已不一致，重新取快照
+                } else if (listener != null) {
+                    listener.onDelta(p.book.productId, seq, side, action, price, quantity);
+                }
+            } else {
+                buffer(p, seq, side, action, price, quantity);
+            }
+        }
+    }
+
+    // 发现漏包：后续增量缓存起来，快照至少要覆盖到 fromSeq
+    private void lost(Product p, long fromSeq) {
+        gaps++;
+        p.synced = false;
+        p.buffered = 0;
+        p.requiredSeq = Math.max(p.requiredSeq, fromSeq);
+        requestRecovery(p, true);
+    }
+
+    private void buffer(Product p, long seq, boolean side, byte action, long price, long quantity) {
+        if (p.buffered == BUFFER_CAPACITY) {
+            // 缓存写满：放弃已缓存的部分，快照需要更新到这里
+            p.buffered = 0;
+            p.requiredSeq = seq - 1;
+        }
+        int i = p.buffered++;
+        p.seqs[i] = seq;
+        p.sides[i] = side;
+        p.actions[i] = action;
+        p.prices[i] = price;
+        p.quantities[i] = quantity;
+    }
+
+    private void onSnapshot(Product p, long packetSeq, long snapshotSeq) {
+        if (p.synced) {
+            // 发布端丢过包：更新的快照直接用来重新同步
+            if (packetSeq <= p.lastPacketSeq || snapshotSeq < p.book.sequence) {
+                return;
+            }
+            gaps++;
+        } else if (snapshotSeq < p.requiredSeq) {
+            return; // 太旧，继续等
+        }
+        DepthSnapshot book = p.book;
+        book.bidCount = packet.getInt(SNAP_BID_COUNT);
+        book.askCount = packet.getInt(SNAP_ASK_COUNT);
+        int off = SNAP_LEVELS;
+        for (int i = 0; i < book.bidCount; i++, off += LEVEL_LENGTH) {
+            book.bidPrices[i] = packet.getLong(off);
+            book.bidQuantities[i] = packet.getLong(off + 8);
+        }
+        for (int i = 0; i < book.askCount; i++, off += LEVEL_LENGTH) {
+            book.askPrices[i] = packet.getLong(off);
+            book.askQuantities[i] = packet.getLong(off + 8);
+        }
+        book.sequence = snapshotSeq;
+        // 缓存中的增量与快照衔接：跳过快照已包含的，其余必须连续
+        for (int i = 0; i < p.buffered; i++) {
+            long seq = p.seqs[i];
+            if (seq <= book.sequence) {
+                continue;
+            }
+            if (seq != book.sequence + 1
+                    || !book.apply(seq, p.sides[i], p.actions[i], p.prices[i], p.quantities[i])) {
+                p.buffered = 0;
+                p.requiredSeq = seq;
+                requestRecovery(p, true);
+                return;
+            }
+        }
+        p.buffered = 0;
+        p.synced = true;
+        p.lastPacketSeq = Math.max(p.lastPacketSeq, packetSeq);
+        recoveries++;
+        if (listener != null) {
+            listener.onSnapshot(book);
+        }
+    }
+
+    private void requestRecovery(Product p, boolean force) {
+        long now = System.nanoTime();
+        if (force || now - p.lastRequestNanos > RECOVER_RETRY_NANOS) {
+            p.lastRequestNanos = now;
+            sendControl(RECOVER, p.book.productId);
+        }
+    }
+
+    private void retryRecovery() {
+        for (Product p : products.values()) {
+            if (!p.synced) {
+                requestRecovery(p, false);
+            }
+        }
+    }
+
+    private void sendControl(byte type, long productId) {
+        control.clear();
+        control.put(0, type);
+        control.putLong(8, productId);
+        try {
+            channel.send(control, publisher);
+        } catch (IOException e) {
+            logger.warn("Market data control send failed: {}", e.toString());
+        }
+    }
+
+    /**
+     * 拷贝当前重建的深度（最多 into 的容量档），未同步时返回 false
+     */
+    public synchronized boolean depth(long productId, DepthSnapshot into) {
+        Product p = products.get(productId);
+        if (p == null || !p.synced) {
+            return false;
+        }
+        DepthSnapshot book = p.book;
+        into.productId = productId;
+        into.sequence = book.sequence;
+        into.bidCount = Math.min(book.bidCount, into.bidPrices.length);
+        into.askCount = Math.min(book.askCount, into.askPrices.length);
+        System.arraycopy(book.bidPrices, 0, into.bidPrices, 0, into.bidCount);
+        System.arraycopy(book.bidQuantities, 0, into.bidQuantities, 0, into.bidCount);
+        System.arraycopy(book.askPrices, 0, into.askPrices, 0, into.askCount);
+        System.arraycopy(book.askQuantities, 0, into.askQuantities, 0, into.askCount);
+        return true;
+    }
+
+    // 已应用的最后一条增量序号，未同步时为 -1
+    public synchronized long getSequence(long productId) {
+        Product p = products.get(productId);
+        return p == null || !p.synced ? -1 : p.book.sequence;
+    }
+
+    public long getGaps() {
+        return gaps;
+    }
+
+    public long getRecoveries() {
+        return recoveries;
+    }
+
+    public InetSocketAddress getLocalAddress() {
+        try {
+            return (InetSocketAddress) channel.getLocalAddress();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (running) {
+            sendControl(UNSUBSCRIBE, 0);
+        }
+        running = false;
+        if (receiver != null) {
+            try {
+                receiver.join(1_000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            logger.warn("Market data channel close failed: {}", e.toString());
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.colin.java.market.matching;
+
+import java.util.concurrent.locks.LockSupport;
+
+// 消费者线程空转时的等待策略（可插拔）
+// 延迟与 CPU 占用的取舍：BUSY_SPIN 最低延迟但独占一个核，PARK 最省 CPU 但唤醒有微秒级抖动
+public interface WaitStrategy {
+    void idle();
+
+    // 忙等：提示 CPU 处于自旋，适合独占核心的撮合线程
+    WaitStrategy BUSY_SPIN = Thread::onSpinWait;
+
+    // 让出时间片：核心数不足时的折中方案
+    WaitStrategy YIELD = Thread::yield;
+
+    // 短暂挂起：空闲分片不占用 CPU
+    WaitStrategy PARK = () -> LockSupport.parkNanos(1_000L);
+}
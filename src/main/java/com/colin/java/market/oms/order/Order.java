@@ -9,21 +9,38 @@ public class Order {
 
     long id;
     public Side side;
-    public BigDecimal price; // 金额务必使用BigDecimal，避免double精度丢失
+    // 定点价格（最小变动单位个数，见 PriceScale），撮合时只做 long 比较；与 BigDecimal 只在边界上精确互转
+    public long price;
+    public final PriceScale priceScale;
     public long quantity;
     long timestamp;
     public OrderType orderType;
     public long minLot; // 最小手数，默认为1
     public int maxRetries; // 最大重试次数，用于OLO策略
 
+    // 挂在 PriceLevelQueue 中时所在的档位与同档位前后订单，不在簿中时为 null
+    PriceLevelQueue.PriceLevel level;
+    Order prev;
+    Order next;
+
     public Order(Side side, double price, long quantity) {
         this(side, price, quantity, OrderType.PFG); // 默认使用Partial-Fill-GTC策略
     }
 
+    // 价格按默认精度（两位小数）精确转换，不在最小变动单位上时抛 ArithmeticException
     public Order(Side side, double price, long quantity, OrderType orderType) {
+        this(side, PriceScale.CENTS.toTicks(price), quantity, orderType, PriceScale.CENTS);
+    }
+
+    public Order(Side side, BigDecimal price, long quantity, OrderType orderType, PriceScale priceScale) {
+        this(side, priceScale.toTicks(price), quantity, orderType, priceScale);
+    }
+
+    private Order(Side side, long price, long quantity, OrderType orderType, PriceScale priceScale) {
         this.id = ID_GENERATOR.incrementAndGet();
         this.side = side;
-        this.price = BigDecimal.valueOf(price);
+        this.price = price;
+        this.priceScale = priceScale;
         this.quantity = quantity;
         this.timestamp = System.nanoTime(); // 模拟纳秒级时间戳
         this.orderType = orderType;
@@ -31,9 +48,19 @@ public class Order {
         this.maxRetries = 3; // 默认最大重试次数为3
     }
 
+    // 直接用定点价格构造（如剩余数量重新挂单），不经过十进制转换
+    public static Order ofTicks(Side side, long price, long quantity, OrderType orderType, PriceScale priceScale) {
+        return new Order(side, price, quantity, orderType, priceScale);
+    }
+
+    // 十进制价格，用于展示与对外输出
+    public BigDecimal getPrice() {
+        return priceScale.toDecimal(price);
+    }
+
     @Override
     public String toString() {
-        return String.format("[%s] %s 价格:%.2f 数量:%d (ID:%d, 类型:%s)",
-                side, (side == Side.BUY ? "买入" : "卖出"), price, quantity, id, orderType.getFullName());
+        return String.format("[%s] %s 价格:%s 数量:%d (ID:%d, 类型:%s)",
+                side, (side == Side.BUY ? "买入" : "卖出"), getPrice(), quantity, id, orderType.getFullName());
     }
-}
\ No newline at end of file
+}
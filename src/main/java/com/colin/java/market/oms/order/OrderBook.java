@@ -2,37 +2,35 @@ package com.colin.java.market.oms.order;
 
 import com.colin.java.market.oms.strategy.*;
 
-import java.math.BigDecimal;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.PriorityQueue;
 
 public class OrderBook {
     // 买单队列：价格从高到低排序，价格相同则时间早的优先
-    public PriorityQueue<Order> buyOrders;
+    public PriceLevelQueue buyOrders;
 
     // 卖单队列：价格从低到高排序，价格相同则时间早的优先
-    public PriorityQueue<Order> sellOrders;
+    public PriceLevelQueue sellOrders;
     
     // 策略映射
     private final Map<OrderType, MatchingStrategy> strategyMap;
+
+    // 品种价格精度，订单簿内的价格都是该精度下的定点 long
+    public final PriceScale priceScale;
     
     /**
-     * 构造函数，初始化订单簿和策略映射
+     * 构造函数，初始化订单簿和策略映射（默认两位小数）
      */
 
     public OrderBook() {
-        // 初始化买单堆 (大顶堆 + 时间FIFO)
-        this.buyOrders = new PriorityQueue<>((o1, o2) -> {
-            int priceCompare = o2.price.compareTo(o1.price); // 降序
-            return priceCompare != 0 ? priceCompare : Long.compare(o1.timestamp, o2.timestamp);
-        });
-
-        // 初始化卖单堆 (小顶堆 + 时间FIFO)
-        this.sellOrders = new PriorityQueue<>((o1, o2) -> {
-            int priceCompare = o1.price.compareTo(o2.price); // 升序
-            return priceCompare != 0 ? priceCompare : Long.compare(o1.timestamp, o2.timestamp);
-        });
+        this(PriceScale.CENTS);
+    }
+
+    public OrderBook(PriceScale priceScale) {
+        this.priceScale = priceScale;
+        // 价格档位 + 档内FIFO：买盘价格降序，卖盘价格升序
+        this.buyOrders = new PriceLevelQueue(Side.BUY);
+        this.sellOrders = new PriceLevelQueue(Side.SELL);
         
         // 初始化策略映射
         this.strategyMap = new HashMap<>();
@@ -49,6 +47,10 @@ public class OrderBook {
      */
     public void processOrder(Order incomingOrder) {
         System.out.println(">>> 收到新订单: " + incomingOrder);
+        if (!priceScale.equals(incomingOrder.priceScale)) {
+            // 不同精度的定点价格不能直接比较
+            throw new IllegalArgumentException("订单价格精度 " + incomingOrder.priceScale + " 与订单簿 " + priceScale + " 不一致");
+        }
         
         // 根据订单类型获取对应的撮合策略
         MatchingStrategy strategy = strategyMap.get(incomingOrder.orderType);
@@ -73,7 +75,7 @@ public class OrderBook {
      * @param matchQueue     对手方队列（如果是买单，这里就是卖单队列）
      * @param restingQueue   己方队列（如果没有完全成交，剩余部分放入这里）
      */
-    private void match(Order incomingOrder, PriorityQueue<Order> matchQueue, PriorityQueue<Order> restingQueue) {
+    private void match(Order incomingOrder, PriceLevelQueue matchQueue, PriceLevelQueue restingQueue) {
 
         // 当对手方队列不为空，且新订单还有剩余数量时，尝试撮合
         while (!matchQueue.isEmpty() && incomingOrder.quantity > 0) {
@@ -90,8 +92,8 @@ public class OrderBook {
             long tradeQty = Math.min(incomingOrder.quantity, bestMatch.quantity);
 
             // 执行交易
-            System.out.printf("=== 成交! 价格: %.2f, 数量: %d (Maker: %d, Taker: %d)%n",
-                    bestMatch.price, tradeQty, bestMatch.id, incomingOrder.id);
+            System.out.printf("=== 成交! 价格: %s, 数量: %d (Maker: %d, Taker: %d)%n",
+                    bestMatch.getPrice(), tradeQty, bestMatch.id, incomingOrder.id);
 
             // 更新订单数量
             incomingOrder.quantity -= tradeQty;
@@ -111,13 +113,13 @@ public class OrderBook {
     }
 
     // 辅助方法：判断价格是否满足撮合条件
-    private boolean canMatch(Side incomingSide, BigDecimal incomingPrice, BigDecimal restingPrice) {
+    private boolean canMatch(Side incomingSide, long incomingPrice, long restingPrice) {
         if (incomingSide == Side.BUY) {
             // 买单价格 >= 卖单价格
-            return incomingPrice.compareTo(restingPrice) >= 0;
+            return incomingPrice >= restingPrice;
         } else {
             // 卖单价格 <= 买单价格
-            return incomingPrice.compareTo(restingPrice) <= 0;
+            return incomingPrice <= restingPrice;
         }
     }
 
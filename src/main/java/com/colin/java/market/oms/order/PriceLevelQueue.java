@@ -0,0 +1,241 @@
+package com.colin.java.market.oms.order;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.TreeMap;
+
+/**
+ * 单边订单簿：价格 -> 档位 的有序表，每个档位是一条 FIFO 双向链表（替代原先的 PriorityQueue）
+ * 队首是最优价位上最早的订单；按价格优先、同价时间优先（到达顺序）遍历。
+ * 订单自身带有所在档位与前后指针（侵入式），remove / contains 为 O(1)，查找档位 O(log L)（L 为档位数），
+ * 成交后移除订单不再需要 PriorityQueue.remove(Object) 的线性扫描。
+ * 同一订单同一时间只能在一个队列中；迭代期间只能通过迭代器自身的 remove() 删除元素。
+ */
+public class PriceLevelQueue extends AbstractQueue<Order> {
+
+    // 同一价格的订单，按到达顺序排队
+    public static final class PriceLevel {
+        final PriceLevelQueue owner;
+        final long price;
+        Order head;
+        Order tail;
+        int size;
+
+        PriceLevel(PriceLevelQueue owner, long price) {
+            this.owner = owner;
+            this.price = price;
+        }
+
+        public long price() {
+            return price;
+        }
+
+        // 档位上最早的订单
+        public Order first() {
+            return head;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // 档位剩余总量（订单数量可能被策略直接修改，按需遍历计算）
+        public long quantity() {
+            long total = 0;
+            for (Order o = head; o != null; o = o.next) {
+                total += o.quantity;
+            }
+            return total;
+        }
+
+        // 按时间顺序拷贝出档位上的订单，便于边遍历边移除
+        public List<Order> orders() {
+            List<Order> list = new ArrayList<>(size);
+            for (Order o = head; o != null; o = o.next) {
+                list.add(o);
+            }
+            return list;
+        }
+    }
+
+    private final Side side;
+    private final TreeMap<Long, PriceLevel> levels;
+    private int size;
+
+    /**
+     * @param side 买盘价格从高到低，卖盘价格从低到高
+     */
+    public PriceLevelQueue(Side side) {
+        this.side = side;
+        this.levels = new TreeMap<>(side == Side.BUY ? Comparator.<Long>reverseOrder() : Comparator.<Long>naturalOrder());
+    }
+
+    public Side side() {
+        return side;
+    }
+
+    // 挂到对应价格档位的队尾，O(log L)
+    @Override
+    public boolean offer(Order order) {
+        if (order.level != null) {
+            throw new IllegalStateException("订单已在订单簿中: " + order);
+        }
+        PriceLevel level = levels.get(order.price);
+        if (level == null) {
+            level = new PriceLevel(this, order.price);
+            levels.put(order.price, level);
+        }
+        order.level = level;
+        order.prev = level.tail;
+        order.next = null;
+        if (level.tail == null) {
+            level.head = order;
+        } else {
+            level.tail.next = order;
+        }
+        level.tail = order;
+        level.size++;
+        size++;
+        return true;
+    }
+
+    @Override
+    public Order peek() {
+        Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+        return best == null ? null : best.getValue().head;
+    }
+
+    @Override
+    public Order poll() {
+        Order order = peek();
+        if (order != null) {
+            unlink(order);
+        }
+        return order;
+    }
+
+    // O(1)：订单记录了所在档位
+    @Override
+    public boolean remove(Object o) {
+        if (!contains(o)) {
+            return false;
+        }
+        unlink((Order) o);
+        return true;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        return o instanceof Order && ((Order) o).level != null && ((Order) o).level.owner == this;
+    }
+
+    private void unlink(Order order) {
+        PriceLevel level = order.level;
+        if (order.prev == null) {
+            level.head = order.next;
+        } else {
+            order.prev.next = order.next;
+        }
+        if (order.next == null) {
+            level.tail = order.prev;
+        } else {
+            order.next.prev = order.prev;
+        }
+        order.prev = null;
+        order.next = null;
+        order.level = null;
+        level.size--;
+        size--;
+        if (level.size == 0) {
+            levels.remove(level.price);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        for (PriceLevel level : levels.values()) {
+            Order o = level.head;
+            while (o != null) {
+                Order next = o.next;
+                o.prev = null;
+                o.next = null;
+                o.level = null;
+                o = next;
+            }
+        }
+        levels.clear();
+        size = 0;
+    }
+
+    // 最优档位，空簿返回 null
+    public PriceLevel bestLevel() {
+        Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+        return best == null ? null : best.getValue();
+    }
+
+    // 指定价格的档位，O(log L)，不存在返回 null
+    public PriceLevel level(long price) {
+        return levels.get(price);
+    }
+
+    // 按优先顺序排在 price 之后的下一个档位（price 本身不必存在），没有则返回 null
+    public PriceLevel levelAfter(long price) {
+        Map.Entry<Long, PriceLevel> next = levels.higherEntry(price);
+        return next == null ? null : next.getValue();
+    }
+
+    public int levelCount() {
+        return levels.size();
+    }
+
+    /**
+     * 按价格优先、时间优先遍历；支持迭代器 remove()（O(1)），其它修改会使迭代器失效
+     */
+    @Override
+    public Iterator<Order> iterator() {
+        return new Iterator<Order>() {
+            private Order next = peek();
+            private Order last;
+
+            @Override
+            public boolean hasNext() {
+                return next != null;
+            }
+
+            @Override
+            public Order next() {
+                if (next == null) {
+                    throw new NoSuchElementException();
+                }
+                last = next;
+                // 先算出后继，当前订单被移除（档位可能随之删除）也不影响继续遍历
+                if (last.next != null) {
+                    next = last.next;
+                } else {
+                    PriceLevel following = levelAfter(last.price);
+                    next = following == null ? null : following.head;
+                }
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null || !contains(last)) {
+                    throw new IllegalStateException();
+                }
+                unlink(last);
+                last = null;
+            }
+        };
+    }
+}
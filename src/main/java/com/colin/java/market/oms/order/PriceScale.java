@@ -0,0 +1,52 @@
+package com.colin.java.market.oms.order;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * 品种的价格精度：订单簿内部用 long 表示的定点价格（最小变动单位 = 10^-decimals），比较只是整数比较
+ * 只在边界上与 BigDecimal / double 互转：转入时必须恰好落在最小变动单位上，否则抛 ArithmeticException，
+ * 不做任何舍入；转出时按精度还原，没有精度损失。
+ */
+public final class PriceScale {
+    // 默认两位小数（分）
+    public static final PriceScale CENTS = new PriceScale(2);
+
+    public final int decimals;
+
+    public PriceScale(int decimals) {
+        if (decimals < 0 || decimals > 18) {
+            throw new IllegalArgumentException("decimals 超出范围: " + decimals);
+        }
+        this.decimals = decimals;
+    }
+
+    // 精确转换：不在最小变动单位上或超出 long 范围时抛 ArithmeticException
+    public long toTicks(BigDecimal price) {
+        return price.movePointRight(decimals).setScale(0, RoundingMode.UNNECESSARY).longValueExact();
+    }
+
+    // double 按其十进制表示（BigDecimal.valueOf）转换，100.1 得到 10010 而不是二进制误差
+    public long toTicks(double price) {
+        return toTicks(BigDecimal.valueOf(price));
+    }
+
+    public BigDecimal toDecimal(long ticks) {
+        return BigDecimal.valueOf(ticks, decimals);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PriceScale && ((PriceScale) o).decimals == decimals;
+    }
+
+    @Override
+    public int hashCode() {
+        return decimals;
+    }
+
+    @Override
+    public String toString() {
+        return "PriceScale(" + decimals + ")";
+    }
+}
@@ -1,7 +1,5 @@
 package com.colin.java.market.oms.strategy;
 
-import java.math.BigDecimal;
-
 /**
  * 撮合策略抽象基类
  * 提供策略的基本功能
@@ -27,21 +25,21 @@ public abstract class AbstractMatchingStrategy implements MatchingStrategy {
     
     /**
      * 检查价格是否匹配
-     * @param buyPrice 买入价格
-     * @param sellPrice 卖出价格
+     * @param buyPrice 买入价格（定点，见 PriceScale）
+     * @param sellPrice 卖出价格（定点）
      * @return 是否匹配
      */
-    protected boolean isPriceMatch(BigDecimal buyPrice, BigDecimal sellPrice) {
-        return buyPrice.compareTo(sellPrice) >= 0;
+    protected boolean isPriceMatch(long buyPrice, long sellPrice) {
+        return buyPrice >= sellPrice;
     }
     
     /**
      * 检查价格是否严格匹配（用于EFF策略）
-     * @param buyPrice 买入价格
-     * @param sellPrice 卖出价格
+     * @param buyPrice 买入价格（定点）
+     * @param sellPrice 卖出价格（定点）
      * @return 是否严格匹配
      */
-    protected boolean isExactPriceMatch(BigDecimal buyPrice, BigDecimal sellPrice) {
-        return buyPrice.compareTo(sellPrice) == 0;
+    protected boolean isExactPriceMatch(long buyPrice, long sellPrice) {
+        return buyPrice == sellPrice;
     }
 }
\ No newline at end of file
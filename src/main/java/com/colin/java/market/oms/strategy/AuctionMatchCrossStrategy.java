@@ -4,7 +4,6 @@ import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
 import com.colin.java.market.oms.order.Side;
 
-import java.math.BigDecimal;
 import java.util.*;
 
 /**
@@ -13,6 +12,8 @@ import java.util.*;
  * 统一成交价 = 最大成交量价位；可 Exact 也可 Partial；未成交部分若带 IOC 则撤，否则转连续竞价。
  */
 public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
+    // 没有可成交价位
+    private static final long NO_PRICE = Long.MIN_VALUE;
     
     public AuctionMatchCrossStrategy() {
         super("AMC", "集合竞价，一根价格横线全部打光。统一成交价 = 最大成交量价位；可 Exact 也可 Partial；未成交部分若带 IOC 则撤，否则转连续竞价。");
@@ -31,19 +32,19 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
             sellOrders.add(order);
         }
         
-        // 按价格排序买单（降序）和卖单（升序）
-        buyOrders.sort((o1, o2) -> o2.price.compareTo(o1.price));
-        sellOrders.sort((o1, o2) -> o1.price.compareTo(o2.price));
+        // 按价格排序买单（降序）和卖单（升序）；List.sort 是稳定排序，同价仍保持订单簿中的时间顺序
+        buyOrders.sort((o1, o2) -> Long.compare(o2.price, o1.price));
+        sellOrders.sort((o1, o2) -> Long.compare(o1.price, o2.price));
         
         // 找到最大成交量价位
-        BigDecimal clearingPrice = findClearingPrice(buyOrders, sellOrders);
+        long clearingPrice = findClearingPrice(buyOrders, sellOrders);
         
-        if (clearingPrice == null) {
+        if (clearingPrice == NO_PRICE) {
             System.out.println("[AMC策略] 未找到可成交价格");
             return false;
         }
         
-        System.out.println("[AMC策略] 集合竞价成交价: " + clearingPrice);
+        System.out.println("[AMC策略] 集合竞价成交价: " + orderBook.priceScale.toDecimal(clearingPrice));
         
         // 执行成交
         boolean hasMatched = executeAuctionMatching(buyOrders, sellOrders, clearingPrice, orderBook);
@@ -51,9 +52,9 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
         return hasMatched;
     }
     
-    private BigDecimal findClearingPrice(List<Order> buyOrders, List<Order> sellOrders) {
+    private long findClearingPrice(List<Order> buyOrders, List<Order> sellOrders) {
         // 创建价格列表
-        Set<BigDecimal> pricePoints = new TreeSet<>();
+        Set<Long> pricePoints = new TreeSet<>();
         for (Order order : buyOrders) {
             pricePoints.add(order.price);
         }
@@ -61,11 +62,11 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
             pricePoints.add(order.price);
         }
         
-        BigDecimal bestPrice = null;
+        long bestPrice = NO_PRICE;
         long maxVolume = 0;
         
         // 计算每个价格点的可成交量
-        for (BigDecimal price : pricePoints) {
+        for (long price : pricePoints) {
             long buyVolume = calculateCumulativeVolume(buyOrders, price, true);
             long sellVolume = calculateCumulativeVolume(sellOrders, price, false);
             long volume = Math.min(buyVolume, sellVolume);
@@ -79,15 +80,15 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
         return bestPrice;
     }
     
-    private long calculateCumulativeVolume(List<Order> orders, BigDecimal price, boolean isBuy) {
+    private long calculateCumulativeVolume(List<Order> orders, long price, boolean isBuy) {
         long volume = 0;
         for (Order order : orders) {
             if (isBuy) {
-                if (order.price.compareTo(price) >= 0) {
+                if (order.price >= price) {
                     volume += order.quantity;
                 }
             } else {
-                if (order.price.compareTo(price) <= 0) {
+                if (order.price <= price) {
                     volume += order.quantity;
                 }
             }
@@ -96,12 +97,12 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
     }
     
     private boolean executeAuctionMatching(List<Order> buyOrders, List<Order> sellOrders, 
-                                          BigDecimal clearingPrice, OrderBook orderBook) {
+                                          long clearingPrice, OrderBook orderBook) {
         boolean hasMatched = false;
         
-        // 创建临时队列用于成交
-        PriorityQueue<Order> tempBuyQueue = new PriorityQueue<>(buyOrders);
-        PriorityQueue<Order> tempSellQueue = new PriorityQueue<>(sellOrders);
+        // 已按价格、时间排好序，依次出队成交
+        Queue<Order> tempBuyQueue = new ArrayDeque<>(buyOrders);
+        Queue<Order> tempSellQueue = new ArrayDeque<>(sellOrders);
         
         // 执行成交
         Order buyOrder = tempBuyQueue.poll();
@@ -109,10 +110,10 @@ public class AuctionMatchCrossStrategy extends AbstractMatchingStrategy {
         
         while (buyOrder != null && sellOrder != null) {
             // 检查是否在成交价范围内
-            if (buyOrder.price.compareTo(clearingPrice) >= 0 && sellOrder.price.compareTo(clearingPrice) <= 0) {
+            if (buyOrder.price >= clearingPrice && sellOrder.price <= clearingPrice) {
                 long tradeQuantity = Math.min(buyOrder.quantity, sellOrder.quantity);
                 
-                System.out.println("[AMC策略] 拍卖成交: " + buyOrder + " 与 " + sellOrder + ", 成交价格: " + clearingPrice + ", 成交数量: " + tradeQuantity);
+                System.out.println("[AMC策略] 拍卖成交: " + buyOrder + " 与 " + sellOrder + ", 成交价格: " + orderBook.priceScale.toDecimal(clearingPrice) + ", 成交数量: " + tradeQuantity);
                 
                 // 减少订单数量
                 buyOrder.quantity -= tradeQuantity;
@@ -2,10 +2,9 @@ package com.colin.java.market.oms.strategy;
 
 import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.PriceLevelQueue;
 import com.colin.java.market.oms.order.Side;
 
-import java.util.PriorityQueue;
-
 /**
  * Exact-Full-FOK 策略实现
  * "要么全成，要么全废，价格必须打平。"
@@ -19,12 +18,12 @@ public class ExactFullFOKStrategy extends AbstractMatchingStrategy {
     
     @Override
     public boolean match(Order order, OrderBook orderBook) {
-        PriorityQueue<Order> matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
+        PriceLevelQueue matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
         
-        // 检查是否有完全匹配的订单
-        for (Order bookOrder : matchQueue) {
-            // 价格必须严格相等
-            if (isExactPriceMatch(order.price, bookOrder.price)) {
+        // 价格必须严格相等：直接定位到同价档位，档内按时间顺序找数量完全匹配的订单
+        PriceLevelQueue.PriceLevel level = matchQueue.level(order.price);
+        if (level != null) {
+            for (Order bookOrder : level.orders()) {
                 // 数量必须完全匹配
                 if (order.quantity == bookOrder.quantity) {
                     // 执行匹配
@@ -2,11 +2,12 @@ package com.colin.java.market.oms.strategy;
 
 import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.PriceLevelQueue;
 import com.colin.java.market.oms.order.Side;
 
 import java.util.LinkedList;
 import java.util.Queue;
-import java.util.PriorityQueue;
+import java.util.Iterator;
 
 /**
  * Odd-Lot-Overflow 策略实现
@@ -62,14 +63,14 @@ public class OddLotOverflowStrategy extends AbstractMatchingStrategy {
     }
     
     private boolean processOrder(Order order, OrderBook orderBook) {
-        PriorityQueue<Order> matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
+        PriceLevelQueue matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
         boolean hasMatched = false;
         long remainingQuantity = order.quantity;
         
-        // 使用临时副本进行迭代
-        PriorityQueue<Order> tempQueue = new PriorityQueue<>(matchQueue);
-        
-        for (Order bookOrder : tempQueue) {
+        // 按价格优先、时间优先遍历对手盘，完全成交的订单通过迭代器 O(1) 移除
+        Iterator<Order> it = matchQueue.iterator();
+        while (it.hasNext()) {
+            Order bookOrder = it.next();
             // 价格匹配
             if (isPriceMatch(order.side == Side.BUY ? order.price : bookOrder.price,
                            order.side == Side.BUY ? bookOrder.price : order.price)) {
@@ -86,13 +87,16 @@ public class OddLotOverflowStrategy extends AbstractMatchingStrategy {
                 
                 // 移除完全成交的订单
                 if (bookOrder.quantity == 0) {
-                    matchQueue.remove(bookOrder);
+                    it.remove();
                 }
                 
                 // 如果当前订单已经完全成交，结束匹配
                 if (remainingQuantity == 0) {
                     break;
                 }
+            } else {
+                // 对手盘按价格有序，之后的价位都不会再匹配
+                break;
             }
         }
         
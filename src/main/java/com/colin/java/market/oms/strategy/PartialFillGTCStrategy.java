@@ -2,9 +2,10 @@ package com.colin.java.market.oms.strategy;
 
 import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.PriceLevelQueue;
 import com.colin.java.market.oms.order.Side;
 
-import java.util.PriorityQueue;
+import java.util.Iterator;
 
 /**
  * Partial-Fill-GTC 策略实现
@@ -19,15 +20,15 @@ public class PartialFillGTCStrategy extends AbstractMatchingStrategy {
     
     @Override
     public boolean match(Order order, OrderBook orderBook) {
-        PriorityQueue<Order> matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
-        PriorityQueue<Order> restingQueue = order.side == Side.BUY ? orderBook.buyOrders : orderBook.sellOrders;
+        PriceLevelQueue matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
+        PriceLevelQueue restingQueue = order.side == Side.BUY ? orderBook.buyOrders : orderBook.sellOrders;
         boolean hasMatched = false;
         long remainingQuantity = order.quantity;
         
-        // 使用临时副本进行迭代，避免ConcurrentModificationException
-        PriorityQueue<Order> tempQueue = new PriorityQueue<>(matchQueue);
-        
-        for (Order bookOrder : tempQueue) {
+        // 按价格优先、时间优先遍历对手盘，完全成交的订单通过迭代器 O(1) 移除
+        Iterator<Order> it = matchQueue.iterator();
+        while (it.hasNext()) {
+            Order bookOrder = it.next();
             // 价格匹配
             if (isPriceMatch(order.side == Side.BUY ? order.price : bookOrder.price, 
                            order.side == Side.BUY ? bookOrder.price : order.price)) {
@@ -44,7 +45,7 @@ public class PartialFillGTCStrategy extends AbstractMatchingStrategy {
                 
                 // 如果订单簿中的订单完全成交，从队列中移除
                 if (bookOrder.quantity == 0) {
-                    matchQueue.remove(bookOrder);
+                    it.remove();
                 }
                 
                 // 如果当前订单已经完全成交，结束匹配
@@ -59,7 +60,7 @@ public class PartialFillGTCStrategy extends AbstractMatchingStrategy {
         
         // 如果有剩余数量，将剩余部分加入订单簿排队
         if (remainingQuantity > 0) {
-            Order remainingOrder = new Order(order.side, order.price.doubleValue(), remainingQuantity, order.orderType);
+            Order remainingOrder = Order.ofTicks(order.side, order.price, remainingQuantity, order.orderType, order.priceScale);
             remainingOrder.minLot = order.minLot;
             remainingOrder.maxRetries = order.maxRetries;
             restingQueue.add(remainingOrder);
@@ -2,9 +2,9 @@ package com.colin.java.market.oms.strategy;
 
 import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.PriceLevelQueue;
 import com.colin.java.market.oms.order.Side;
 
-import java.math.BigDecimal;
 import java.util.*;
 
 /**
@@ -20,23 +20,25 @@ public class ProRataMinDisplayStrategy extends AbstractMatchingStrategy {
     
     @Override
     public boolean match(Order order, OrderBook orderBook) {
-        PriorityQueue<Order> matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
+        PriceLevelQueue matchQueue = order.side == Side.BUY ? orderBook.sellOrders : orderBook.buyOrders;
         boolean hasMatched = false;
         long remainingQuantity = order.quantity;
         
-        // 按价格分组订单
-        Map<BigDecimal, List<Order>> priceGroups = groupOrdersByPrice(matchQueue, order);
-        
-        for (Map.Entry<BigDecimal, List<Order>> entry : priceGroups.entrySet()) {
-            BigDecimal price = entry.getKey();
-            List<Order> samePriceOrders = entry.getValue();
+        // 从最优档位开始逐档分配，遇到价格不匹配的档位即停止（档位按价格有序）
+        PriceLevelQueue.PriceLevel level = matchQueue.bestLevel();
+        while (level != null && remainingQuantity > 0 && isPriceMatch(
+                order.side == Side.BUY ? order.price : level.price(),
+                order.side == Side.BUY ? level.price() : order.price)) {
+            long levelPrice = level.price();
+            List<Order> samePriceOrders = level.orders();
             
             // 计算同价格档的总展示量
             long totalDisplayQuantity = calculateTotalDisplayQuantity(samePriceOrders);
             
             if (totalDisplayQuantity > 0) {
-                // Pro-Rata分配
-                Map<Order, Long> allocations = allocateProRata(samePriceOrders, remainingQuantity, totalDisplayQuantity, order.minLot);
+                // Pro-Rata分配，本档最多分配其总展示量，多出的部分留给下一档
+                long levelQuantity = Math.min(remainingQuantity, totalDisplayQuantity);
+                Map<Order, Long> allocations = allocateProRata(samePriceOrders, levelQuantity, totalDisplayQuantity, order.minLot);
                 
                 // 执行分配
                 for (Map.Entry<Order, Long> allocEntry : allocations.entrySet()) {
@@ -51,37 +53,19 @@ public class ProRataMinDisplayStrategy extends AbstractMatchingStrategy {
                         remainingQuantity -= allocatedQuantity;
                         hasMatched = true;
                         
-                        // 移除完全成交的订单
+                        // 移除完全成交的订单，O(1)
                         if (bookOrder.quantity == 0) {
                             matchQueue.remove(bookOrder);
                         }
                     }
                 }
-                
-                if (remainingQuantity == 0) {
-                    break;
-                }
             }
-        }
-        
-        return hasMatched;
-    }
-    
-    private Map<BigDecimal, List<Order>> groupOrdersByPrice(PriorityQueue<Order> queue, Order incomingOrder) {
-        Map<BigDecimal, List<Order>> groups = new LinkedHashMap<>();
-        
-        for (Order order : queue) {
-            boolean priceMatch = isPriceMatch(
-                incomingOrder.side == Side.BUY ? incomingOrder.price : order.price,
-                incomingOrder.side == Side.BUY ? order.price : incomingOrder.price
-            );
             
-            if (priceMatch) {
-                groups.computeIfAbsent(order.price, k -> new ArrayList<>()).add(order);
-            }
+            // 本档可能已被清空并删除，按价格找下一档
+            level = matchQueue.levelAfter(levelPrice);
         }
         
-        return groups;
+        return hasMatched;
     }
     
     private long calculateTotalDisplayQuantity(List<Order> orders) {
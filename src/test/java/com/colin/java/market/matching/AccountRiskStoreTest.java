@@ -0,0 +1,165 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AccountRiskStoreTest {
+
+    private static SimpleOrder order(long orderId, long accountId, long price, long quantity, boolean isBuy) {
+        SimpleOrder order = new SimpleOrder(orderId, 1001L, price, quantity, isBuy);
+        order.accountId = accountId;
+        return order;
+    }
+
+    @Test
+    @DisplayName("多个网关线程并发预占同一账户：成功预占的总额恰好等于余额，不会透支")
+    public void testConcurrentReserve() throws Exception {
+        AccountRiskStore store = new AccountRiskStore(4);
+        store.openAccount(1, 100_000, 1_000);
+        store.openAccount(2, 100_000, 1_000);
+        AtomicLong reserved = new AtomicLong();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            long account = 1 + t % 2;
+            threads[t] = new Thread(() -> {
+                while (store.reserve(account, 7)) {
+                    reserved.addAndGet(7);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        // 每个账户都预占到余额不足 7 为止
+        assertEquals(2 * (100_000 / 7 * 7), reserved.get());
+        assertEquals(100_000 % 7, store.available(1));
+        assertEquals(100_000 / 7 * 7, store.reserved(2));
+        assertFalse(store.reserve(3, 1), "未开户");
+        assertFalse(store.reserve(99, 1), "超出范围");
+    }
+
+    @Test
+    @DisplayName("预占 -> 成交结算（价差退回）-> 撤单退回，日内净额按成交更新")
+    public void testOrderLifecycle() {
+        AccountRiskStore store = new AccountRiskStore(8);
+        store.openAccount(1, 10_000, 50);
+        store.openAccount(2, 0, 50);
+        MatchingSystem system = new MatchingSystem(1, 64, store);
+        system.listProduct(1001L, BookType.ARRAY);
+
+        // 买单挂在 100，预占 100 x 30
+        system.handleOrder(order(1, 1, 100, 30, true));
+        assertEquals(7_000, store.available(1));
+        assertEquals(3_000, store.reserved(1));
+
+        // 余额不足：100 x 80 > 7000
+        system.handleOrder(order(2, 1, 100, 80, true));
+        assertEquals(0, system.getShard(1001L).buyBook.orderQuantity(2));
+        assertEquals(7_000, store.available(1));
+
+        // 卖方吃掉 10 手：买方预占转为成交，卖方得到货款
+        system.handleOrder(order(3, 2, 100, 10, false));
+        assertEquals(2_000, store.reserved(1));
+        assertEquals(10, store.dailyNet(1));
+        assertEquals(1_000, store.available(2));
+        assertEquals(-10, store.dailyNet(2));
+
+        // 改小 20 -> 5 退回 1500，撤单退回剩余
+        system.amendOrder(1001L, 1, 5);
+        assertEquals(500, store.reserved(1));
+        system.cancelOrder(1001L, 1);
+        assertEquals(0, store.reserved(1));
+        assertEquals(9_000, store.available(1));
+
+        // 卖方挂 95，买方以限价 100 主动成交，按 95 结算，价差 5 x 5 退回
+        system.handleOrder(order(4, 2, 95, 5, false));
+        system.handleOrder(order(5, 1, 100, 5, true));
+        assertEquals(9_000 - 500 + 25, store.available(1));
+        assertEquals(0, store.reserved(1));
+        assertEquals(15, store.dailyNet(1));
+        assertEquals(1_475, store.available(2));
+
+        // 日内净额：已净买入 15，再买 40 超过限额 50
+        system.handleOrder(order(6, 1, 100, 40, true));
+        assertEquals(0, store.reserved(1));
+        // 未上架产品：风控通过后退回预占
+        SimpleOrder unknown = order(7, 1, 100, 1, true);
+        unknown.productId = 9;
+        system.handleOrder(unknown);
+        assertEquals(0, store.reserved(1));
+        assertEquals(8_525, store.available(1));
+    }
+
+    @Test
+    @DisplayName("价格或数量不为正、金额溢出的买单被拒绝，不改变购买力")
+    public void testRejectInvalidAmounts() {
+        AccountRiskStore store = new AccountRiskStore(2);
+        store.openAccount(1, 10_000, Long.MAX_VALUE);
+        RiskManager risk = new RiskManager(store);
+        assertFalse(risk.validate(order(1, 1, 100, -50, true)), "负数量");
+        assertFalse(risk.validate(order(2, 1, -100, 50, true)), "负价格");
+        assertFalse(risk.validate(order(3, 1, 100, 0, true)), "零数量");
+        assertFalse(risk.validate(order(4, 1, 100, 0, false)), "零数量卖单");
+        assertFalse(risk.validate(order(5, 1, Long.MAX_VALUE / 2, 4, true)), "金额溢出");
+        assertFalse(store.reserve(1, -1));
+        assertEquals(10_000, store.available(1));
+        assertEquals(0, store.reserved(1));
+        assertTrue(risk.validate(order(6, 1, 100, 50, true)));
+        assertEquals(5_000, store.available(1));
+    }
+
+    @Test
+    @DisplayName("匿名订单不预占也不结算：挂单成交后账户没有残留的预占")
+    public void testAnonymousOrdersDoNotLeakReservation() {
+        AccountRiskStore store = new AccountRiskStore(4);
+        store.openAccount(1, 10_000, 1_000);
+        store.openAccount(2, 10_000, 1_000);
+        MatchingSystem system = new MatchingSystem(1, 64, store);
+        system.listProduct(1001L, BookType.ARRAY);
+
+        // 匿名买单挂单，被具名卖单吃掉
+        system.handleOrder(order(0, 1, 100, 10, true));
+        assertEquals(0, store.reserved(1));
+        assertEquals(10_000, store.available(1));
+        system.handleOrder(order(1, 2, 100, 10, false));
+        assertEquals(0, store.reserved(1));
+        assertEquals(10_000, store.available(1));
+        assertEquals(11_000, store.available(2));
+
+        // 匿名卖单挂单，具名买单吃掉：买方照常结算
+        system.handleOrder(order(0, 2, 100, 5, false));
+        system.handleOrder(order(2, 1, 100, 5, true));
+        assertEquals(0, store.reserved(1));
+        assertEquals(9_500, store.available(1));
+        assertEquals(5, store.dailyNet(1));
+        assertEquals(0, system.getShard(1001L).buyBook.orderCount());
+        assertEquals(0, system.getShard(1001L).sellBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("在簿订单账户索引写满后扩容，已有映射保持不变")
+    public void testOrderAccountIndexGrows() {
+        OrderAccountIndex index = new OrderAccountIndex(16);
+        for (long id = 1; id <= 100; id++) {
+            index.put(id, id % 7, 1_000 + id);
+            if (id % 3 == 0) {
+                index.remove(id);
+            }
+        }
+        assertEquals(128, index.capacity());
+        for (long id = 1; id <= 100; id++) {
+            int slot = index.find(id);
+            if (id % 3 == 0) {
+                assertEquals(OrderIdIndex.MISSING, slot);
+            } else {
+                assertEquals(id % 7, index.accountAt(slot));
+                assertEquals(1_000 + id, index.priceAt(slot));
+            }
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ArrayOrderBookTest {
+
+    // 记录成交回报的辅助类（预分配数组，与生产代码一样不在回调里分配对象）
+    private static class RecordingListener implements FillListener {
+        final long[] makerIds = new long[64];
+        final long[] prices = new long[64];
+        final long[] quantities = new long[64];
+        int count;
+
+        @Override
+        public void onFill(long makerOrderId, long price, long quantity, long makerRemaining) {
+            makerIds[count] = makerOrderId;
+            prices[count] = price;
+            quantities[count] = quantity;
+            count++;
+        }
+    }
+
+    private ArrayOrderBook askBook;
+    private RecordingListener fills;
+
+    @BeforeEach
+    public void setup() {
+        askBook = new ArrayOrderBook(16, true);
+        fills = new RecordingListener();
+        askBook.setFillListener(fills);
+    }
+
+    @Test
+    @DisplayName("同价位按时间优先 (FIFO) 成交")
+    public void testTimePriorityWithinLevel() {
+        askBook.add(1L, 100, 10);
+        askBook.add(2L, 100, 5);
+        askBook.add(3L, 100, 7);
+        assertEquals(1, askBook.size(), "同价位应合并到一个档位");
+
+        long traded = askBook.match(100, 12);
+
+        assertEquals(12, traded);
+        assertEquals(2, fills.count);
+        assertEquals(1L, fills.makerIds[0]);
+        assertEquals(10, fills.quantities[0]);
+        assertEquals(2L, fills.makerIds[1]);
+        assertEquals(2, fills.quantities[1]);
+        // 订单1全部成交出队，订单2部分成交仍排在队首
+        assertEquals(2, askBook.orderCount());
+
+        fills.count = 0;
+        askBook.match(100, 4);
+        assertEquals(2L, fills.makerIds[0]);
+        assertEquals(3, fills.quantities[0]);
+        assertEquals(3L, fills.makerIds[1]);
+        assertEquals(1, fills.quantities[1]);
+    }
+
+    @Test
+    @DisplayName("价格优先：先吃最优价，再吃次优价")
+    public void testPricePriorityAcrossLevels() {
+        askBook.add(1L, 102, 5);
+        askBook.add(2L, 100, 5);
+        askBook.add(3L, 101, 5);
+
+        long traded = askBook.match(101, 20);
+
+        assertEquals(10, traded);
+        assertEquals(2, fills.count);
+        assertEquals(2L, fills.makerIds[0]);
+        assertEquals(100, fills.prices[0]);
+        assertEquals(3L, fills.makerIds[1]);
+        assertEquals(101, fills.prices[1]);
+        assertEquals(1, askBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("节点用完后归还复用，持续挂单/成交不会耗尽节点池")
+    public void testNodeReuse() {
+        ArrayOrderBook book = new ArrayOrderBook(4, 8, false);
+        for (int round = 0; round < 1000; round++) {
+            for (int k = 0; k < 8; k++) {
+                book.add(round * 8L + k, 100 + (k % 4), 1);
+            }
+            assertEquals(8, book.match(0, 8));
+            assertEquals(0, book.orderCount());
+        }
+    }
+
+    @Test
+    @DisplayName("撤单：O(1) 摘除，不影响同档位其他订单的排队顺序")
+    public void testCancel() {
+        askBook.add(1L, 100, 10);
+        askBook.add(2L, 100, 5);
+        askBook.add(3L, 100, 7);
+
+        assertTrue(askBook.cancel(2L));
+        assertFalse(askBook.cancel(2L), "重复撤单应返回 false");
+        assertFalse(askBook.cancel(99L));
+
+        askBook.match(100, 20);
+        assertEquals(2, fills.count);
+        assertEquals(1L, fills.makerIds[0]);
+        assertEquals(3L, fills.makerIds[1]);
+        assertEquals(0, askBook.orderCount());
+        assertFalse(askBook.cancel(1L), "已成交的订单不能再撤");
+    }
+
+    @Test
+    @DisplayName("改量：减量保留优先级，增量重新排队")
+    public void testAmend() {
+        askBook.add(1L, 100, 10);
+        askBook.add(2L, 100, 10);
+
+        assertTrue(askBook.amend(1L, 4));
+        assertEquals(4, askBook.orderQuantity(1L));
+        askBook.match(100, 4);
+        assertEquals(1L, fills.makerIds[0], "减量后仍排在队首");
+
+        askBook.add(3L, 100, 10);
+        assertTrue(askBook.amend(2L, 20));
+        fills.count = 0;
+        askBook.match(100, 10);
+        assertEquals(3L, fills.makerIds[0], "增量后失去时间优先");
+
+        assertTrue(askBook.amend(2L, 0));
+        assertEquals(0, askBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("撤单风暴：反复挂撤不会耗尽索引或节点")
+    public void testCancelStorm() {
+        ArrayOrderBook book = new ArrayOrderBook(64, 256, false);
+        long orderId = 1;
+        for (int round = 0; round < 10_000; round++) {
+            for (int k = 0; k < 200; k++) {
+                book.add(orderId + k, 100 + (k % 50), 1);
+            }
+            for (int k = 0; k < 200; k++) {
+                assertTrue(book.cancel(orderId + k));
+            }
+            orderId += 200;
+        }
+        assertEquals(0, book.orderCount());
+        assertEquals(0, book.match(0, 1_000));
+    }
+
+    @Test
+    @DisplayName("吃空的档位立即出队：持续行情下价格单向漂移也不会写满数组")
+    public void testConsumedLevelsReclaimed() {
+        ArrayOrderBook book = new ArrayOrderBook(8, 32, true);
+        for (int round = 0; round < 10_000; round++) {
+            long base = 1_000 + round;
+            book.add(round * 3L + 1, base, 1);
+            book.add(round * 3L + 2, base + 1, 1);
+            book.add(round * 3L + 3, base + 2, 1);
+            assertEquals(2, book.match(base + 1, 2));
+            assertEquals(1, book.size(), "吃空的两档应已出队");
+            assertTrue(book.cancel(round * 3L + 3));
+            assertEquals(0, book.size());
+        }
+    }
+
+    @Test
+    @DisplayName("中间撤空的死档位：压缩后回收，写满时自动压缩")
+    public void testDeadLevelCompaction() {
+        ArrayOrderBook book = new ArrayOrderBook(8, 32, true);
+        book.setFillListener(fills);
+        for (int k = 0; k < 8; k++) {
+            book.add(k + 1, 100 + k, 1);
+        }
+        assertTrue(book.cancel(3));
+        assertTrue(book.cancel(4));
+        assertEquals(2, book.deadLevels());
+        assertEquals(8, book.size());
+
+        // 数组已满，新价格触发压缩
+        book.add(9, 200, 1);
+        assertEquals(0, book.deadLevels());
+        assertEquals(7, book.size());
+
+        // 死档位同价重新挂单即复活
+        assertTrue(book.cancel(6));
+        book.add(10, 105, 1);
+        assertEquals(0, book.deadLevels());
+
+        book.compact();
+        assertEquals(7, book.match(200, 100));
+        long[] expected = {1, 2, 5, 10, 7, 8, 9};
+        for (int k = 0; k < expected.length; k++) {
+            assertEquals(expected[k], fills.makerIds[k]);
+        }
+        assertEquals(0, book.size());
+    }
+
+    @Test
+    @DisplayName("一次撮合扫过中间的死档位：死档位计数同步减少")
+    public void testSweepOverDeadLevel() {
+        ArrayOrderBook book = new ArrayOrderBook(8, 32, true);
+        for (int k = 0; k < 4; k++) {
+            book.add(k + 1, 100 + k, 1);
+        }
+        assertTrue(book.cancel(2));
+        assertTrue(book.cancel(3));
+        assertEquals(2, book.deadLevels());
+
+        // 101、102 两个死档位夹在 100 与 103 之间，被同一次撮合扫过
+        assertEquals(2, book.match(103, 2));
+        assertEquals(0, book.deadLevels());
+        assertEquals(0, book.size());
+
+        // 回收后的档位编号可以重新使用，写满后按容量报错
+        for (int k = 0; k < 8; k++) {
+            book.add(10 + k, 200 + k, 1);
+        }
+        assertThrows(IllegalStateException.class, () -> book.add(99, 300, 1));
+    }
+
+    @Test
+    @DisplayName("节点池满时新价位挂单失败，不留下空档位")
+    public void testPoolFullDoesNotInsertLevel() {
+        ArrayOrderBook book = new ArrayOrderBook(8, 2, true);
+        book.add(1, 100, 1);
+        book.add(2, 101, 1);
+        assertThrows(IllegalStateException.class, () -> book.add(3, 102, 1));
+        assertThrows(IllegalStateException.class, () -> book.add(4, 101, 1));
+        assertEquals(2, book.size());
+        assertEquals(0, book.deadLevels());
+
+        assertEquals(2, book.match(102, 5));
+        assertEquals(0, book.deadLevels());
+        assertEquals(0, book.size());
+    }
+}
@@ -0,0 +1,114 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CompiledRiskPipelineTest {
+
+    // 几十条不同类型（lambda 类各不相同）的规则
+    private static List<RiskRule> manyRules(int n) {
+        List<RiskRule> rules = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            final long limit = 1_000 + i;
+            switch (i % 4) {
+                case 0 -> rules.add(RiskRule.named("qty-" + i, order -> order.quantity < limit));
+                case 1 -> rules.add(RiskRule.named("price-" + i, order -> order.price < limit * 10));
+                case 2 -> rules.add(RiskRule.named("notional-" + i, order -> order.price * order.quantity < limit * 1_000));
+                default -> rules.add(order -> order.orderId != limit);
+            }
+        }
+        return rules;
+    }
+
+    private static SimpleOrder randomOrder(Random random, long id) {
+        return new SimpleOrder(id, 1001L, 1 + random.nextInt(10_100), 1 + random.nextInt(1_010), random.nextBoolean());
+    }
+
+    @Test
+    @DisplayName("编译后结果与逐条遍历相同；按规则统计执行次数与拒单数")
+    public void testSameResultAndStats() {
+        List<RiskRule> rules = manyRules(40);
+        CompiledRiskPipeline pipeline = CompiledRiskPipeline.compile(rules);
+        Random random = new Random(17);
+        long[] expectedRejects = new long[rules.size()];
+        int n = 50_000;
+        for (int k = 0; k < n; k++) {
+            SimpleOrder order = randomOrder(random, k);
+            int failed = -1;
+            for (int i = 0; i < rules.size() && failed < 0; i++) {
+                if (!rules.get(i).check(order)) {
+                    failed = i;
+                }
+            }
+            if (failed >= 0) {
+                expectedRejects[failed]++;
+            }
+            assertEquals(failed < 0, pipeline.check(order));
+        }
+
+        CompiledRiskPipeline.RuleStats[] stats = pipeline.stats();
+        assertEquals("qty-0", stats[0].name);
+        assertEquals("rule-3", stats[3].name);
+        long reaching = n;
+        for (int i = 0; i < stats.length; i++) {
+            assertEquals(expectedRejects[i], stats[i].rejects, stats[i].name);
+            assertEquals(reaching, stats[i].invocations, stats[i].name);
+            reaching -= expectedRejects[i];
+        }
+        assertTrue(stats[0].samples > 0, "抽样计时");
+    }
+
+    @Test
+    @DisplayName("按实测指标重排：便宜且拒单多的规则排到前面")
+    public void testReorderBySelectivityAndCost() {
+        List<RiskRule> rules = new ArrayList<>();
+        rules.add(RiskRule.named("slow", order -> {
+            long x = order.orderId;
+            for (int i = 0; i < 2_000; i++) {
+                x = x * 31 + i;
+            }
+            return x != 42 || order.price > 0;
+        }));
+        rules.add(RiskRule.named("never", order -> order.quantity > 0));
+        rules.add(RiskRule.named("selective", order -> (order.orderId & 1) == 0));
+
+        RiskManager riskManager = new RiskManager();
+        riskManager.reloadRules(rules);
+        assertNull(riskManager.ruleStats());
+        riskManager.compile();
+        for (int k = 0; k < 100_000; k++) {
+            riskManager.validate(new SimpleOrder(k, 1001L, 100, 1, false));
+        }
+        CompiledRiskPipeline reordered = riskManager.compile();
+        assertArrayEquals(new String[]{"selective", "never", "slow"}, reordered.ruleNames());
+        assertEquals(0, riskManager.ruleStats()[0].invocations, "重新编译后指标重新开始统计");
+    }
+
+    @Test
+    @DisplayName("40 条规则编译后的平均风控延迟 (< 10 μs)")
+    public void testCompiledLatency() {
+        RiskManager riskManager = new RiskManager();
+        List<RiskRule> rules = manyRules(40);
+        riskManager.reloadRules(rules);
+        riskManager.compile();
+        // 卖单不占用购买力，只测规则本身
+        SimpleOrder order = new SimpleOrder(1, 1001L, 99, 1, false);
+        for (int i = 0; i < 100_000; i++) {
+            riskManager.validate(order);
+        }
+        int iterations = 10_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            riskManager.validate(order);
+        }
+        long avg = (System.nanoTime() - start) / iterations;
+        System.out.println("Compiled Risk Pipeline Avg Latency (40 rules): " + avg + " ns");
+        assertTrue(avg < 10_000, "Risk check should be < 10 μs");
+    }
+}
@@ -0,0 +1,147 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ExecutionReportRingTest {
+
+    // 测试里把槽位内容拷贝出来，槽位本身会被复用
+    private static long[] copy(ExecutionReport r) {
+        return new long[]{r.type, r.command, r.rejectReason, r.orderId, r.makerOrderId,
+                r.price, r.quantity, r.leavesQty, r.makerLeavesQty};
+    }
+
+    private static List<long[]> pollAll(ExecutionReportRing ring) {
+        List<long[]> out = new ArrayList<>();
+        while (ring.poll((report, sequence, endOfBatch) -> out.add(copy(report)), 4) > 0) {
+            // 小批量多次 poll，覆盖批次边界
+        }
+        return out;
+    }
+
+    @Test
+    @DisplayName("新单受理、逐笔成交、撤单成功与拒绝都产生回报")
+    public void testShardReports() {
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L);
+        ExecutionReportRing ring = shard.enableExecutionReports(64);
+
+        shard.process(new SimpleOrder(1, 1001L, 100, 10, false));
+        shard.process(new SimpleOrder(2, 1001L, 101, 5, false));
+        shard.process(new SimpleOrder(3, 1001L, 101, 12, true));
+        shard.cancel(2);
+        shard.cancel(2);
+
+        List<long[]> reports = pollAll(ring);
+        assertEquals(7, reports.size());
+        // type, command, reason, orderId, makerOrderId, price, quantity, leavesQty, makerLeavesQty
+        assertArrayEquals(new long[]{ExecutionReport.ACK, SimpleOrder.NEW, 0, 1, 0, 100, 10, 10, 0}, reports.get(0));
+        assertArrayEquals(new long[]{ExecutionReport.ACK, SimpleOrder.NEW, 0, 2, 0, 101, 5, 5, 0}, reports.get(1));
+        assertArrayEquals(new long[]{ExecutionReport.ACK, SimpleOrder.NEW, 0, 3, 0, 101, 12, 12, 0}, reports.get(2));
+        assertArrayEquals(new long[]{ExecutionReport.TRADE, SimpleOrder.NEW, 0, 3, 1, 100, 10, 2, 0}, reports.get(3));
+        assertArrayEquals(new long[]{ExecutionReport.TRADE, SimpleOrder.NEW, 0, 3, 2, 101, 2, 0, 3}, reports.get(4));
+        assertArrayEquals(new long[]{ExecutionReport.ACK, SimpleOrder.CANCEL, 0, 2, 0, 0, 0, 0, 0}, reports.get(5));
+        assertArrayEquals(new long[]{ExecutionReport.REJECT, SimpleOrder.CANCEL,
+                ExecutionReport.REASON_UNKNOWN_ORDER, 2, 0, 0, 0, 0, 0}, reports.get(6));
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    @DisplayName("订单号与在簿订单重复：整单拒绝不撮合，旧订单仍可撤销，预占退回")
+    public void testRejectDuplicateOrderId() {
+        AccountRiskStore accounts = new AccountRiskStore(2);
+        accounts.openAccount(1, 10_000, 1_000);
+        MatchingSystem system = new MatchingSystem(1, 64, accounts);
+        MatchingSystem.EngineShard shard = system.listProduct(1001L, BookType.ARRAY);
+        ExecutionReportRing ring = shard.enableExecutionReports(64);
+        SimpleOrder first = new SimpleOrder(1, 1001L, 100, 10, true);
+        first.accountId = 1;
+        system.handleOrder(first);
+        // 同一订单号的卖单本可以与之成交，同方向的重复也不能覆盖
+        SimpleOrder sell = new SimpleOrder(1, 1001L, 100, 4, false);
+        sell.accountId = 1;
+        system.handleOrder(sell);
+        SimpleOrder again = new SimpleOrder(1, 1001L, 99, 5, true);
+        again.accountId = 1;
+        system.handleOrder(again);
+
+        List<long[]> reports = pollAll(ring);
+        assertEquals(3, reports.size());
+        assertArrayEquals(new long[]{ExecutionReport.REJECT, SimpleOrder.NEW,
+                ExecutionReport.REASON_DUPLICATE_ORDER, 1, 0, 100, 4, 0, 0}, reports.get(1));
+        assertEquals(ExecutionReport.REASON_DUPLICATE_ORDER, reports.get(2)[2]);
+        assertEquals(10, shard.buyBook.orderQuantity(1));
+        assertEquals(0, shard.sellBook.orderCount());
+        assertEquals(1_000, accounts.reserved(1));
+
+        system.cancelOrder(1001L, 1);
+        assertEquals(0, shard.buyBook.orderCount());
+        assertEquals(0, accounts.reserved(1));
+        assertEquals(10_000, accounts.available(1));
+    }
+
+    @Test
+    @DisplayName("挂单失败：已成交部分保留，剩余数量拒绝而不是抛异常")
+    public void testRejectWhenBookFull() {
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L);
+        ExecutionReportRing ring = shard.enableExecutionReports(8192);
+        for (int i = 0; i < 1024; i++) {
+            shard.process(new SimpleOrder(i + 1, 1001L, 1_000 + i, 1, false));
+        }
+        pollAll(ring);
+
+        shard.process(new SimpleOrder(5_000, 1001L, 5_000, 3, false));
+
+        List<long[]> reports = pollAll(ring);
+        assertEquals(2, reports.size());
+        assertEquals(ExecutionReport.REJECT, reports.get(1)[0]);
+        assertEquals(ExecutionReport.REASON_BOOK_FULL, reports.get(1)[2]);
+        assertEquals(3, reports.get(1)[6]);
+    }
+
+    @Test
+    @DisplayName("撮合线程与回报消费者并发：环很小也不丢回报、不乱序")
+    public void testConcurrentConsumer() throws Exception {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        MatchingSystem system = new MatchingSystem(1, 1024, accounts);
+        ExecutionReportRing ring = system.listProduct(1001L, BookType.ARRAY).enableExecutionReports(64);
+        system.start(WaitStrategy.YIELD);
+
+        int orders = 5_000;
+        Thread gateway = new Thread(() -> {
+            for (int i = 1; i <= orders; i++) {
+                // 买卖交替，每个卖单都会被下一个买单吃掉
+                system.handleOrder(new SimpleOrder(i, 1001L, 100, 1, i % 2 == 0));
+            }
+        });
+        gateway.start();
+
+        long expected = orders + orders / 2; // 每单一个 ACK，每对一笔成交
+        long[] count = new long[1];
+        long[] lastSeq = {-1};
+        boolean[] gap = new boolean[1];
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (count[0] < expected && System.nanoTime() < deadline) {
+            int n = ring.poll((report, sequence, endOfBatch) -> {
+                if (sequence != lastSeq[0] + 1) {
+                    gap[0] = true;
+                }
+                lastSeq[0] = sequence;
+                count[0]++;
+            }, 8);
+            if (n == 0) {
+                Thread.yield();
+            }
+        }
+        gateway.join();
+        system.close();
+
+        assertEquals(expected, count[0]);
+        assertFalse(gap[0]);
+    }
+}
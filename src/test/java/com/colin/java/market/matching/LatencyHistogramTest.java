@@ -0,0 +1,109 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyHistogramTest {
+
+    private static void assertClose(long expected, long actual) {
+        assertTrue(actual >= expected && actual <= expected + expected / 32 + 1,
+                "expected ~" + expected + " but was " + actual);
+    }
+
+    @Test
+    @DisplayName("分位数误差在子桶精度内；按区间取走后清零")
+    public void testPercentilesAndReset() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            histogram.record(v);
+        }
+        histogram.record(5_000_000_000L); // 一次 5 秒的停顿
+
+        LatencyHistogram.Snapshot snapshot = histogram.snapshot(true);
+        assertEquals(100_001, snapshot.count());
+        assertClose(50_000, snapshot.valueAtPercentile(50));
+        assertClose(99_000, snapshot.valueAtPercentile(99));
+        assertClose(99_990, snapshot.valueAtPercentile(99.99));
+        assertClose(5_000_000_000L, snapshot.max());
+        assertEquals(0, new LatencyHistogram().snapshot(false).valueAtPercentile(50), "无样本");
+
+        assertEquals(0, histogram.snapshot(false).count(), "区间已清零");
+        histogram.record(7);
+        histogram.record(-3);
+        LatencyHistogram.Snapshot reused = histogram.snapshot(snapshot, false);
+        assertSame(snapshot, reused);
+        assertEquals(2, reused.count());
+        assertEquals(7, reused.max());
+    }
+
+    @Test
+    @DisplayName("多线程并发记录不丢计数；单次记录只需几纳秒")
+    public void testConcurrentRecordAndCost() throws Exception {
+        LatencyHistogram histogram = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 250_000; i++) {
+                    histogram.record(i & 1023);
+                }
+            });
+            writers[t].start();
+        }
+        long drained = 0;
+        while (writers[0].isAlive() || writers[1].isAlive() || writers[2].isAlive() || writers[3].isAlive()) {
+            drained += histogram.snapshot(true).count();
+        }
+        for (Thread writer : writers) {
+            writer.join();
+        }
+        drained += histogram.snapshot(true).count();
+        assertEquals(1_000_000, drained);
+
+        LatencyHistogram single = new LatencyHistogram();
+        for (int i = 0; i < 1_000_000; i++) {
+            single.record(i & 4095);
+        }
+        int iterations = 1_000_000;
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            single.record(i & 4095);
+        }
+        long avg = (System.nanoTime() - start) / iterations;
+        System.out.println("LatencyHistogram.record Avg Cost: " + avg + " ns");
+        assertTrue(avg < 100, "record should cost a few ns");
+    }
+
+    @Test
+    @DisplayName("下单链路按阶段记录：网关侧风控/路由，撮合线程排队/撮合")
+    public void testPipelineStages() throws Exception {
+        MatchingSystem system = new MatchingSystem(1, 1024);
+        MatchingSystem.EngineShard shard = system.listProduct(1001L, BookType.ARRAY);
+        PipelineLatency latency = system.enableLatencyTracking();
+        assertSame(latency, system.enableLatencyTracking());
+        system.start(WaitStrategy.YIELD);
+        try {
+            for (int i = 1; i <= 100; i++) {
+                system.handleOrder(new SimpleOrder(i, 1001L, 100, 1, false));
+            }
+            // 未知产品：风控通过后路由失败，只记录网关侧两段
+            system.handleOrder(new SimpleOrder(101, 9999L, 100, 1, false));
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (shard.getProcessedCount() < 100 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(101, latency.snapshot(PipelineLatency.RISK, false).count());
+            assertEquals(101, latency.snapshot(PipelineLatency.ROUTE, false).count());
+            assertEquals(100, latency.snapshot(PipelineLatency.QUEUE, false).count());
+            assertEquals(100, latency.snapshot(PipelineLatency.MATCH, false).count());
+
+            String report = latency.report(true);
+            assertTrue(report.startsWith("risk "), report);
+            assertTrue(report.contains("p99.99="), report);
+            assertEquals(0, latency.snapshot(PipelineLatency.MATCH, false).count());
+        } finally {
+            system.close();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadDriverTest {
+
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    @Test
+    @DisplayName("订单流：比例、产品倾斜、数量取整、可复现")
+    public void testGeneratedMix() {
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.productIds = new long[]{1, 2, 3, 4};
+        config.lotSize = 100;
+        config.cancelWindow = 100_000; // 不触发强制撤单
+        OrderFlowGenerator generator = new OrderFlowGenerator(config);
+        OrderFlowGenerator same = new OrderFlowGenerator(config);
+        SimpleOrder order = new SimpleOrder();
+        SimpleOrder copy = new SimpleOrder();
+        int n = 100_000;
+        int cancels = 0;
+        int[] perProduct = new int[5];
+        for (int i = 0; i < n; i++) {
+            generator.next(order);
+            same.next(copy);
+            assertEquals(order.orderId, copy.orderId);
+            assertEquals(order.price, copy.price);
+            perProduct[(int) order.productId]++;
+            if (order.command == SimpleOrder.CANCEL) {
+                cancels++;
+            } else {
+                assertEquals(0, order.quantity % 100);
+                assertTrue(order.quantity > 0 && order.price > 0);
+            }
+        }
+        // 默认 60% 限价 / 10% 市价 / 30% 撤单
+        assertEquals(0.3, (double) cancels / n, 0.01);
+        assertTrue(perProduct[1] > perProduct[2] && perProduct[2] > perProduct[4], "Zipf 倾斜");
+        assertTrue(perProduct[4] > 0);
+    }
+
+    @Test
+    @DisplayName("按目标速率发送并驱动同步撮合，长时间运行订单簿不会写满")
+    public void testFixedRate() {
+        MatchingSystem system = new MatchingSystem(1, 64, unlimitedAccounts());
+        system.listProduct(1001L, BookType.ARRAY);
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.cancelWindow = 256;
+        LoadDriver driver = new LoadDriver(system, new OrderFlowGenerator(config));
+
+        LoadDriver.Result result = driver.run(50_000, 300);
+        System.out.println(result);
+        assertEquals(15_000, result.sent);
+        assertEquals(15_000, result.corrected.count());
+        assertTrue(result.achievedRate() > 40_000, "achieved " + result.achievedRate());
+        assertTrue(result.corrected.valueAtPercentile(50) >= result.uncorrected.valueAtPercentile(50) / 2);
+        MatchingSystem.EngineShard shard = system.getShard(1001L);
+        assertTrue(shard.buyBook.orderCount() + shard.sellBook.orderCount() <= 256);
+    }
+
+    @Test
+    @DisplayName("协调遗漏修正：一次 50ms 停顿期间应发未发的指令都计入等待时间")
+    public void testCoordinatedOmissionCorrection() {
+        MatchingSystem system = new MatchingSystem(1, 64, unlimitedAccounts());
+        system.listProduct(1001L, BookType.ARRAY);
+        long[] seen = new long[1];
+        List<RiskRule> rules = new ArrayList<>(system.getRiskManager().getRuleSet().rules());
+        rules.add(order -> {
+            if (++seen[0] == 1_000) {
+                try {
+                    Thread.sleep(50);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return true;
+        });
+        system.getRiskManager().reloadRules(rules);
+        seen[0] = -100_000; // 避开重载时的试运行，正式压测中途才停顿
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.cancelRatio = 0;
+        LoadDriver driver = new LoadDriver(system, new OrderFlowGenerator(config));
+        driver.run(10_000, 100); // 预热
+        seen[0] = 0;
+
+        LoadDriver.Result result = driver.run(10_000, 300);
+        System.out.println(result);
+        // 停顿期间约 500 条指令被推迟，修正后至少 p90 以上都能看到停顿；未修正的只有一个样本
+        assertTrue(result.corrected.valueAtPercentile(99) > 10_000_000L, result.toString());
+        assertTrue(result.uncorrected.valueAtPercentile(99) < 10_000_000L, result.toString());
+        assertTrue(result.corrected.max() >= 50_000_000L);
+    }
+
+    @Test
+    @DisplayName("可持续速率搜索：运行中的撮合线程，排队延迟也纳入判断")
+    public void testFindSustainableRate() {
+        MatchingSystem system = new MatchingSystem(1, 1024, unlimitedAccounts());
+        system.listProduct(1001L, BookType.ARRAY);
+        system.enableLatencyTracking();
+        system.start(WaitStrategy.YIELD);
+        try {
+            LoadDriver driver = new LoadDriver(system, new OrderFlowGenerator(new OrderFlowGenerator.Config()));
+            LoadDriver.Result best = driver.findSustainableRate(5_000, 40_000, 100, 1_000_000_000L, 1);
+            System.out.println(best);
+            assertNotNull(best);
+            assertNotNull(best.queue);
+            assertTrue(best.targetRate >= 5_000 && best.targetRate <= 40_000);
+            assertEquals(best.sent, best.queue.count(), "撮合线程处理了全部指令");
+        } finally {
+            system.close();
+        }
+    }
+}
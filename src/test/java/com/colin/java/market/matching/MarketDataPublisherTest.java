@@ -0,0 +1,107 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketDataPublisherTest {
+
+    // 下游模拟：用快照 + 增量重建前 N 档
+    private static class RebuildingListener implements MarketDataListener {
+        final TreeMap<Long, Long> bids = new TreeMap<>();
+        final TreeMap<Long, Long> asks = new TreeMap<>();
+        final List<String> deltas = new ArrayList<>();
+        long lastSequence;
+        int snapshots;
+
+        @Override
+        public void onDelta(long productId, long sequence, boolean isBid, byte action, long price, long quantity) {
+            assertEquals(lastSequence + 1, sequence, "增量序号必须连续");
+            lastSequence = sequence;
+            deltas.add((isBid ? "B" : "A") + action + ":" + price + "x" + quantity);
+            TreeMap<Long, Long> side = isBid ? bids : asks;
+            if (action == MarketDataPublisher.LEVEL_REMOVE) {
+                assertNotNull(side.remove(price));
+            } else {
+                side.put(price, quantity);
+            }
+        }
+
+        @Override
+        public void onSnapshot(DepthSnapshot snapshot) {
+            assertEquals(lastSequence, snapshot.sequence);
+            snapshots++;
+        }
+    }
+
+    @Test
+    @DisplayName("增量：新增、数量变化、删除，按批次合并")
+    public void testDeltas() {
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L);
+        RebuildingListener md = new RebuildingListener();
+        shard.enableMarketData(2, 1_000, md);
+
+        shard.process(new SimpleOrder(1, 1001L, 100, 5, false));
+        shard.process(new SimpleOrder(2, 1001L, 101, 5, false));
+        shard.endBatch();
+        assertEquals(List.of("A0:100x5", "A0:101x5"), md.deltas);
+
+        md.deltas.clear();
+        shard.process(new SimpleOrder(3, 1001L, 99, 7, false)); // 新的最优价，101 被挤出前 2 档
+        shard.process(new SimpleOrder(4, 1001L, 100, 2, true)); // 吃掉 99 的 2 手
+        shard.endBatch();
+        assertEquals(List.of("A0:99x5", "A2:101x0"), md.deltas);
+
+        md.deltas.clear();
+        shard.endBatch();
+        assertTrue(md.deltas.isEmpty(), "深度没有变化时不发增量");
+    }
+
+    @Test
+    @DisplayName("快照按间隔输出，快照序号与增量衔接；随机流量下重建的深度与订单簿一致")
+    public void testSnapshotAndRebuild() {
+        int depth = 5;
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L, BookType.TICK_LADDER);
+        RebuildingListener md = new RebuildingListener();
+        shard.enableMarketData(depth, 10, md);
+
+        Random random = new Random(7);
+        long[] prices = new long[depth];
+        long[] quantities = new long[depth];
+        for (int i = 1; i <= 5_000; i++) {
+            boolean isBuy = random.nextBoolean();
+            long price = 1_000 + (isBuy ? -random.nextInt(20) : random.nextInt(20)) + random.nextInt(5) - 2;
+            shard.process(new SimpleOrder(i, 1001L, price, 1 + random.nextInt(10), isBuy));
+            if (i % 3 == 0) {
+                shard.cancel(1 + random.nextInt(i));
+            }
+            if (i % 4 == 0) {
+                shard.endBatch();
+
+                int n = shard.buyBook.depth(prices, quantities, depth);
+                assertEquals(n, md.bids.size());
+                int k = 0;
+                for (var e : md.bids.descendingMap().entrySet()) {
+                    assertEquals(prices[k], e.getKey());
+                    assertEquals(quantities[k], e.getValue());
+                    k++;
+                }
+                n = shard.sellBook.depth(prices, quantities, depth);
+                assertEquals(n, md.asks.size());
+                k = 0;
+                for (var e : md.asks.entrySet()) {
+                    assertEquals(prices[k], e.getKey());
+                    assertEquals(quantities[k], e.getValue());
+                    k++;
+                }
+            }
+        }
+        assertEquals(125, md.snapshots);
+    }
+}
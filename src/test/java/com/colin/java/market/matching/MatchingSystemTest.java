@@ -0,0 +1,243 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatchingSystemTest {
+
+    private static void awaitProcessed(MatchingSystem.EngineShard shard, long expected) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (shard.getProcessedCount() < expected && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(expected, shard.getProcessedCount(), "product " + shard.productId);
+    }
+
+    // 额度足够大的默认账户，测试路由/撮合时不受购买力消耗影响
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    @Test
+    @DisplayName("运行期上架/下架：上千个产品分布到全部撮合线程，路由到各自分片，下架后不再接收指令")
+    public void testListAndDelist() throws Exception {
+        MatchingSystem system = new MatchingSystem(4, 64);
+        for (long p = 1; p <= 1_000; p++) {
+            system.listProduct(p, p % 2 == 0 ? BookType.ARRAY : BookType.TICK_LADDER);
+        }
+        assertEquals(1_000, system.productCount());
+        system.start(WaitStrategy.YIELD);
+        try {
+            // 运行中上架的产品同样被分配到撮合线程
+            MatchingSystem.EngineShard late = system.listProduct(5_000, BookType.ARRAY);
+            assertSame(late, system.listProduct(5_000, BookType.TICK_LADDER), "重复上架返回现有分片");
+
+            for (long p = 1; p <= 1_000; p++) {
+                system.handleOrder(new SimpleOrder(p, p, 100, 5, false));
+                system.handleOrder(new SimpleOrder(p + 10_000, p, 100, 2, true));
+            }
+            system.handleOrder(new SimpleOrder(1, 5_000, 100, 5, true));
+
+            Set<Integer> threadIds = new HashSet<>();
+            for (long p = 1; p <= 1_000; p++) {
+                MatchingSystem.EngineShard shard = system.getShard(p);
+                awaitProcessed(shard, 2);
+                assertEquals(3, shard.sellBook.orderQuantity(p));
+                threadIds.add(shard.getThreadId());
+            }
+            assertEquals(Set.of(0, 1, 2, 3), threadIds);
+            awaitProcessed(late, 1);
+
+            MatchingSystem.EngineShard delisted = system.delistProduct(7);
+            assertNull(system.getShard(7));
+            assertEquals(1_000, system.productCount());
+            system.handleOrder(new SimpleOrder(99, 7, 100, 5, true));
+            system.cancelOrder(7, 7);
+            assertEquals(2, delisted.getProcessedCount());
+
+            // 下架空出的下标被新产品复用，不影响其他产品的路由
+            system.listProduct(6_000, BookType.ARRAY);
+            system.handleOrder(new SimpleOrder(1, 6_000, 100, 1, true));
+            awaitProcessed(system.getShard(6_000), 1);
+            assertEquals(3, system.getShard(8).sellBook.orderQuantity(8));
+        } finally {
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("下架后入口队列关闭：持有旧分片的生产者立即失败，不会在满队列上自旋")
+    public void testDelistClosesRing() throws Exception {
+        MatchingSystem system = new MatchingSystem(1, 4, unlimitedAccounts());
+        MatchingSystem.EngineShard shard = system.listProduct(7, BookType.ARRAY);
+        system.start(WaitStrategy.YIELD);
+        try {
+            system.handleOrder(new SimpleOrder(1, 7, 100, 5, true));
+            awaitProcessed(shard, 1);
+
+            system.delistProduct(7);
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!shard.getRingBuffer().isClosed() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertTrue(shard.getRingBuffer().isClosed());
+            // 远超队列容量也不会阻塞
+            for (int i = 0; i < 16; i++) {
+                assertFalse(shard.publish(new SimpleOrder(100 + i, 7, 100, 1, true)));
+            }
+            assertTrue(shard.getRingBuffer().isEmpty());
+            assertEquals(1, shard.getProcessedCount());
+        } finally {
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("关闭撮合系统后新指令一律拒绝并退回预占，不会退回到同步调用路径")
+    public void testCloseRejectsNewOrders() throws Exception {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, 1_000_000, Long.MAX_VALUE / 4);
+        MatchingSystem system = new MatchingSystem(1, 64, accounts);
+        MatchingSystem.EngineShard shard = system.listProduct(7, BookType.ARRAY);
+        system.start(WaitStrategy.YIELD);
+        system.handleOrder(new SimpleOrder(1, 7, 100, 5, true));
+        system.close();
+        assertEquals(1, shard.getProcessedCount(), "关闭前已入队的订单处理完");
+        assertTrue(shard.getRingBuffer().isClosed());
+        long available = accounts.available(0);
+
+        system.handleOrder(new SimpleOrder(2, 7, 100, 5, true));
+        system.cancelOrder(7, 1);
+        SimpleOrder[] batch = {new SimpleOrder(3, 7, 100, 1, true)};
+        BatchResult result = system.submitBatch(batch, 1, new BatchResult(1));
+        assertEquals(BatchResult.REJECTED_CLOSED, result.outcomes[0]);
+        assertEquals(0, result.accepted);
+
+        assertEquals(1, shard.getProcessedCount());
+        assertEquals(5, shard.buyBook.orderQuantity(1));
+        assertEquals(0, shard.buyBook.orderQuantity(2));
+        assertEquals(available, accounts.available(0));
+    }
+
+    @Test
+    @DisplayName("再平衡：按实测负载把最忙线程上的产品迁到空闲线程，迁移前后指令顺序不变")
+    public void testRebalanceMovesHotProduct() throws Exception {
+        MatchingSystem system = new MatchingSystem(2, 1024, unlimitedAccounts());
+        for (long p = 1; p <= 4; p++) {
+            system.listProduct(p, BookType.ARRAY);
+        }
+        system.start(WaitStrategy.YIELD);
+        // 不经过撮合线程的参照分片
+        MatchingSystem.EngineShard reference = new MatchingSystem.EngineShard(1L);
+        try {
+            MatchingSystem.EngineShard hot = system.getShard(1);
+            MatchingSystem.EngineShard warm = system.getShard(3);
+            int hotThread = hot.getThreadId();
+            assertEquals(hotThread, warm.getThreadId(), "轮转分配：1 和 3 在同一线程");
+            assertEquals(0, system.rebalance(), "没有负载时不迁移");
+
+            Random random = new Random(11);
+            long id = 1;
+            for (; id <= 2_000; id++) {
+                SimpleOrder order = randomOrder(random, id, 1L);
+                system.handleOrder(order);
+                reference.apply(order);
+                if (id % 2 == 0) {
+                    system.handleOrder(randomOrder(random, id, 3L));
+                }
+            }
+            awaitProcessed(hot, 2_000);
+            awaitProcessed(warm, 1_000);
+
+            assertEquals(1L, system.rebalance(), "迁移负载最大且小于负载差的产品");
+            // 迁移期间继续下单
+            for (; id <= 4_000; id++) {
+                SimpleOrder order = randomOrder(random, id, 1L);
+                system.handleOrder(order);
+                reference.apply(order);
+            }
+            awaitProcessed(hot, 4_000);
+            assertNotEquals(hotThread, hot.getThreadId());
+            assertEquals(hotThread, warm.getThreadId());
+
+            for (long orderId = 1; orderId < id; orderId++) {
+                assertEquals(reference.buyBook.orderQuantity(orderId), hot.buyBook.orderQuantity(orderId));
+                assertEquals(reference.sellBook.orderQuantity(orderId), hot.sellBook.orderQuantity(orderId));
+            }
+        } finally {
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("批量下单：逐单给出受理结果，按分片分组后撮合结果与逐单 handleOrder 相同")
+    public void testSubmitBatch() throws Exception {
+        MatchingSystem batched = new MatchingSystem(2, 256, unlimitedAccounts());
+        MatchingSystem single = new MatchingSystem(1, 256, unlimitedAccounts());
+        for (long p = 1; p <= 3; p++) {
+            batched.listProduct(p, BookType.ARRAY);
+            single.listProduct(p, BookType.ARRAY);
+        }
+        BatchResult result = new BatchResult(4);
+        Random random = new Random(13);
+        long id = 1;
+        for (int round = 0; round < 2; round++) {
+            if (round == 1) {
+                batched.start(WaitStrategy.YIELD);
+            }
+            for (int b = 0; b < 20; b++) {
+                // 批次大小变化，结果缓冲区按需扩容后复用
+                int count = 1 + random.nextInt(600);
+                SimpleOrder[] orders = new SimpleOrder[count];
+                for (int i = 0; i < count; i++) {
+                    orders[i] = randomOrder(random, id++, 1 + random.nextInt(3));
+                }
+                orders[0].productId = 9; // 未上架
+                if (count > 1) {
+                    orders[1].productId = 0; // 品种检查不通过
+                }
+                assertSame(result, batched.submitBatch(orders, count, result));
+                assertEquals(count, result.size);
+                assertEquals(BatchResult.UNKNOWN_PRODUCT, result.outcome(0));
+                if (count > 1) {
+                    assertEquals(BatchResult.REJECTED_RISK, result.outcome(1));
+                }
+                int accepted = 0;
+                for (int i = 0; i < count; i++) {
+                    single.handleOrder(orders[i]);
+                    if (result.outcome(i) == BatchResult.ACCEPTED) {
+                        accepted++;
+                    }
+                }
+                assertEquals(Math.max(0, count - 2), accepted);
+                assertEquals(accepted, result.accepted);
+            }
+        }
+        for (long p = 1; p <= 3; p++) {
+            awaitProcessed(batched.getShard(p), single.getShard(p).getProcessedCount());
+        }
+        batched.close();
+        for (long p = 1; p <= 3; p++) {
+            MatchingSystem.EngineShard expected = single.getShard(p);
+            MatchingSystem.EngineShard actual = batched.getShard(p);
+            for (long orderId = 1; orderId < id; orderId++) {
+                assertEquals(expected.buyBook.orderQuantity(orderId), actual.buyBook.orderQuantity(orderId));
+                assertEquals(expected.sellBook.orderQuantity(orderId), actual.sellBook.orderQuantity(orderId));
+            }
+        }
+    }
+
+    private static SimpleOrder randomOrder(Random random, long id, long productId) {
+        boolean isBuy = random.nextBoolean();
+        long price = 1_000 + (isBuy ? -random.nextInt(20) : random.nextInt(20)) + random.nextInt(5) - 2;
+        return new SimpleOrder(id, productId, price, 1 + random.nextInt(10), isBuy);
+    }
+}
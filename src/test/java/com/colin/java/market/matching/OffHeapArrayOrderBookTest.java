@@ -0,0 +1,226 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OffHeapArrayOrderBookTest {
+    private static final int LEVELS = 64;
+
+    // 把成交回报拼成校验和，比较两个订单簿的成交序列
+    private static class ChecksumListener implements FillListener {
+        long checksum;
+        int count;
+
+        @Override
+        public void onFill(long makerOrderId, long price, long quantity, long makerRemaining) {
+            checksum = checksum * 31 + makerOrderId;
+            checksum = checksum * 31 + price;
+            checksum = checksum * 31 + quantity;
+            checksum = checksum * 31 + makerRemaining;
+            count++;
+        }
+    }
+
+    private static void assertSameBook(MatchingBook expected, MatchingBook actual) {
+        long[] expectedPrices = new long[LEVELS], expectedQuantities = new long[LEVELS];
+        long[] actualPrices = new long[LEVELS], actualQuantities = new long[LEVELS];
+        int n = expected.depth(expectedPrices, expectedQuantities, LEVELS);
+        assertEquals(n, actual.depth(actualPrices, actualQuantities, LEVELS));
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedPrices[i], actualPrices[i]);
+            assertEquals(expectedQuantities[i], actualQuantities[i]);
+        }
+        assertEquals(expected.orderCount(), actual.orderCount());
+    }
+
+    // 同一随机操作序列（挂单/吃单/撤单/改量/压缩）作用到两个订单簿
+    private static void randomOps(Random random, int ops, long firstId, MatchingBook... books) {
+        for (int k = 0; k < ops; k++) {
+            long id = firstId + k;
+            int op = random.nextInt(10);
+            long price = 1_000 + random.nextInt(40);
+            long qty = 1 + random.nextInt(20);
+            long victim = firstId + random.nextInt(k + 1);
+            for (MatchingBook book : books) {
+                if (op < 5) {
+                    if (book.orderCount() < 3_000) {
+                        book.add(id, price, qty);
+                    }
+                } else if (op < 7) {
+                    book.match(price, qty * 3);
+                } else if (op < 8) {
+                    book.amend(victim, qty);
+                } else if (op < 9) {
+                    book.cancel(victim);
+                } else {
+                    book.compact();
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("与堆上 ArrayOrderBook 执行同一操作序列：成交序列与深度完全一致")
+    public void testSameBehaviourAsHeapBook() {
+        for (boolean isAsk : new boolean[]{true, false}) {
+            ArrayOrderBook heap = new ArrayOrderBook(64, 4096, isAsk);
+            try (OffHeapArrayOrderBook offHeap = new OffHeapArrayOrderBook(64, 4096, isAsk)) {
+                ChecksumListener heapFills = new ChecksumListener();
+                ChecksumListener offHeapFills = new ChecksumListener();
+                heap.setFillListener(heapFills);
+                offHeap.setFillListener(offHeapFills);
+
+                randomOps(new Random(7), 200_000, 1, heap, offHeap);
+
+                assertTrue(heapFills.count > 0);
+                assertEquals(heapFills.count, offHeapFills.count);
+                assertEquals(heapFills.checksum, offHeapFills.checksum);
+                assertSameBook(heap, offHeap);
+                assertEquals(heap.size(), offHeap.size());
+                assertEquals(heap.deadLevels(), offHeap.deadLevels());
+                for (long id = 1; id <= 200_000; id += 97) {
+                    assertEquals(heap.orderQuantity(id), offHeap.orderQuantity(id));
+                }
+
+                offHeap.clear();
+                assertEquals(0, offHeap.orderCount());
+                offHeap.add(1L, 100, 5);
+                assertEquals(5, offHeap.match(100, 10));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("一次撮合扫过中间的死档位：死档位计数同步减少")
+    public void testSweepOverDeadLevel() {
+        try (OffHeapArrayOrderBook book = new OffHeapArrayOrderBook(8, 32, true)) {
+            for (int k = 0; k < 4; k++) {
+                book.add(k + 1, 100 + k, 1);
+            }
+            assertTrue(book.cancel(2));
+            assertTrue(book.cancel(3));
+            assertEquals(2, book.deadLevels());
+
+            assertEquals(2, book.match(103, 2));
+            assertEquals(0, book.deadLevels());
+            assertEquals(0, book.size());
+        }
+    }
+
+    @Test
+    @DisplayName("节点池满时新价位挂单失败，不留下空档位")
+    public void testPoolFullDoesNotInsertLevel() {
+        try (OffHeapArrayOrderBook book = new OffHeapArrayOrderBook(8, 2, true)) {
+            book.add(1, 100, 1);
+            book.add(2, 101, 1);
+            assertThrows(IllegalStateException.class, () -> book.add(3, 102, 1));
+            assertEquals(2, book.size());
+
+            assertEquals(2, book.match(102, 5));
+            assertEquals(0, book.deadLevels());
+            assertEquals(0, book.size());
+        }
+    }
+
+    @Test
+    @DisplayName("映射到文件：正常关闭后热启动得到同一订单簿，可继续撮合；未正常关闭的文件拒绝加载")
+    public void testWarmStartFromFile(@TempDir Path dir) {
+        Path file = dir.resolve("1001-ask.book");
+        ArrayOrderBook heap = new ArrayOrderBook(64, 4096, true);
+        OffHeapArrayOrderBook mapped = OffHeapArrayOrderBook.map(file, 64, 4096, true);
+        assertTrue(mapped.isMapped());
+        Random random = new Random(3);
+        randomOps(random, 20_000, 1, heap, mapped);
+        assertTrue(mapped.orderCount() > 0);
+        mapped.close();
+        assertTrue(mapped.isClosed());
+        assertThrows(NullPointerException.class, () -> mapped.orderQuantity(1));
+
+        OffHeapArrayOrderBook restored = OffHeapArrayOrderBook.map(file, 64, 4096, true);
+        try {
+            assertSameBook(heap, restored);
+            ChecksumListener heapFills = new ChecksumListener();
+            ChecksumListener restoredFills = new ChecksumListener();
+            heap.setFillListener(heapFills);
+            restored.setFillListener(restoredFills);
+            randomOps(random, 20_000, 1_000_000, heap, restored);
+            assertEquals(heapFills.checksum, restoredFills.checksum);
+            assertSameBook(heap, restored);
+
+            // 使用中的文件是脏的，另一次映射（相当于崩溃后重启）会被拒绝
+            assertThrows(IllegalStateException.class, () -> OffHeapArrayOrderBook.map(file, 64, 4096, true));
+        } finally {
+            restored.close();
+        }
+        assertThrows(IllegalStateException.class, () -> OffHeapArrayOrderBook.map(file, 128, 4096, true));
+        assertThrows(IllegalStateException.class, () -> OffHeapArrayOrderBook.map(file, 64, 4096, false));
+        assertTrue(Files.exists(file));
+    }
+
+    @Test
+    @DisplayName("按产品选择堆上或堆外订单簿，撮合结果相同")
+    public void testPerProductSelection(@TempDir Path dir) {
+        MatchingSystem system = new MatchingSystem(1, 1024);
+        system.listProduct(1001L, BookType.ARRAY);
+        system.listProduct(1002L, BookType.OFF_HEAP_ARRAY);
+        OffHeapArrayOrderBook bids = OffHeapArrayOrderBook.map(dir.resolve("1003-bid.book"), 1024, 4096, false);
+        OffHeapArrayOrderBook asks = OffHeapArrayOrderBook.map(dir.resolve("1003-ask.book"), 1024, 4096, true);
+        try {
+            system.listProduct(1003L, bids, asks);
+            assertThrows(IllegalArgumentException.class,
+                    () -> system.listProduct(1004L, asks, bids), "买卖盘方向不符");
+            for (long productId = 1001L; productId <= 1003L; productId++) {
+                system.handleOrder(new SimpleOrder(1, productId, 100, 10, false));
+                system.handleOrder(new SimpleOrder(2, productId, 101, 10, false));
+                system.handleOrder(new SimpleOrder(3, productId, 101, 15, true));
+            }
+            assertInstanceOf(OffHeapArrayOrderBook.class, system.getShard(1002L).sellBook);
+            for (long productId = 1002L; productId <= 1003L; productId++) {
+                assertSameBook(system.getShard(1001L).sellBook, system.getShard(productId).sellBook);
+                assertEquals(5, system.getShard(productId).sellBook.orderQuantity(2));
+            }
+        } finally {
+            system.close();
+            bids.close();
+            asks.close();
+        }
+    }
+
+    @Test
+    @DisplayName("系统按类型创建的堆外订单簿在下架或关闭时释放，调用方提供的订单簿不动")
+    public void testSystemClosesOwnedBooks() throws Exception {
+        MatchingSystem system = new MatchingSystem(1, 1024);
+        MatchingSystem.EngineShard delisted = system.listProduct(1001L, BookType.OFF_HEAP_ARRAY);
+        MatchingSystem.EngineShard listed = system.listProduct(1002L, BookType.OFF_HEAP_ARRAY);
+        try (OffHeapArrayOrderBook bids = new OffHeapArrayOrderBook(64, 256, false);
+             OffHeapArrayOrderBook asks = new OffHeapArrayOrderBook(64, 256, true)) {
+            system.listProduct(1003L, bids, asks);
+            system.start(WaitStrategy.YIELD);
+            try {
+                system.handleOrder(new SimpleOrder(1, 1001L, 100, 5, false));
+                system.delistProduct(1001L);
+                OffHeapArrayOrderBook delistedBook = (OffHeapArrayOrderBook) delisted.sellBook;
+                long deadline = System.nanoTime() + 5_000_000_000L;
+                while (!delistedBook.isClosed() && System.nanoTime() < deadline) {
+                    Thread.sleep(1);
+                }
+                assertTrue(delistedBook.isClosed());
+                assertTrue(((OffHeapArrayOrderBook) delisted.buyBook).isClosed());
+                assertFalse(((OffHeapArrayOrderBook) listed.sellBook).isClosed());
+            } finally {
+                system.close();
+            }
+            assertTrue(((OffHeapArrayOrderBook) listed.buyBook).isClosed());
+            assertTrue(((OffHeapArrayOrderBook) listed.sellBook).isClosed());
+            assertFalse(bids.isClosed());
+            assertFalse(asks.isClosed());
+        }
+    }
+}
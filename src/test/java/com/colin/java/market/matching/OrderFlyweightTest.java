@@ -0,0 +1,141 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderFlyweightTest {
+
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    // 每三条一组：卖 5，买 3，买 2，全部成交，订单簿保持为空
+    private static ByteBuffer encode(int count, long firstId) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(count * OrderFlyweight.LENGTH);
+        OrderFlyweight order = new OrderFlyweight();
+        for (int i = 0; i < count; i++) {
+            boolean sell = i % 3 == 0;
+            order.wrap(buffer, i * OrderFlyweight.LENGTH)
+                    .set(firstId + i, 0, 1001L, 100, sell ? 5 : 3 - i % 3 + 1, !sell, 0);
+        }
+        return buffer;
+    }
+
+    @Test
+    @DisplayName("按固定布局读写，与缓冲区字节序设置无关")
+    public void testLayout() {
+        ByteBuffer buffer = ByteBuffer.allocate(2 * OrderFlyweight.LENGTH).order(ByteOrder.BIG_ENDIAN);
+        OrderFlyweight order = new OrderFlyweight().wrap(buffer, OrderFlyweight.LENGTH)
+                .set(7, 3, 1001L, 12_345, 9, true, 42);
+        assertEquals(7, buffer.order(ByteOrder.LITTLE_ENDIAN).getLong(OrderFlyweight.LENGTH));
+
+        SimpleOrder decoded = new SimpleOrder();
+        order.copyTo(decoded);
+        assertEquals(7, decoded.orderId);
+        assertEquals(3, decoded.accountId);
+        assertEquals(1001L, decoded.productId);
+        assertEquals(12_345, decoded.price);
+        assertEquals(9, decoded.quantity);
+        assertTrue(decoded.isBuy);
+        assertEquals(42, decoded.timestamp);
+        assertEquals(SimpleOrder.NEW, decoded.command);
+        assertThrows(IndexOutOfBoundsException.class, () -> order.wrap(buffer, OrderFlyweight.LENGTH + 1));
+    }
+
+    @Test
+    @DisplayName("稳态下从解码、风控、撮合到成交结算零分配")
+    public void testZeroAllocation() {
+        MatchingSystem system = new MatchingSystem(1, 64, unlimitedAccounts());
+        system.listProduct(1001L, BookType.ARRAY);
+        system.getRiskManager().compile();
+        int count = 30_000;
+        ByteBuffer warmup = encode(count, 1);
+        ByteBuffer measured = encode(count, 1 + count);
+        OrderFlyweight order = new OrderFlyweight();
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < count; i++) {
+                system.handleOrder(order.wrap(warmup, i * OrderFlyweight.LENGTH));
+            }
+        }
+
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long before = threads.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < count; i++) {
+            assertTrue(system.handleOrder(order.wrap(measured, i * OrderFlyweight.LENGTH)));
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - before;
+        System.out.println("Flyweight path allocated " + allocated + " bytes for " + count + " orders");
+        assertTrue(allocated < 1_024, "allocated " + allocated + " bytes");
+        assertEquals(0, system.getShard(1001L).sellBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("撮合线程运行时解码进槽位，风控拒绝的槽位被跳过")
+    public void testRejectedSlotSkipped() throws Exception {
+        MatchingSystem system = new MatchingSystem(1, 64);
+        MatchingSystem.EngineShard shard = system.listProduct(1001L, BookType.ARRAY);
+        system.start(WaitStrategy.YIELD);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(4 * OrderFlyweight.LENGTH);
+            OrderFlyweight order = new OrderFlyweight();
+            assertTrue(system.handleOrder(order.wrap(buffer, 0).set(1, 0, 1001L, 100, 5, false, 0)));
+            // 超出默认账户购买力
+            assertFalse(system.handleOrder(order.wrap(buffer, 64).set(2, 0, 1001L, 100, 1_000_000, true, 0)));
+            assertFalse(system.handleOrder(order.wrap(buffer, 128).set(3, 0, 9999L, 100, 1, true, 0)), "未知产品");
+            assertTrue(system.handleOrder(order.wrap(buffer, 192).set(1, 0, 1001L, 0, 2, false, 0)
+                    .command(SimpleOrder.AMEND)));
+
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (shard.getProcessedCount() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2, shard.getProcessedCount());
+            assertEquals(2, shard.sellBook.orderQuantity(1));
+            assertEquals(0, shard.buyBook.orderCount());
+        } finally {
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("规则抛异常时已抢占的槽位仍然发布为 REJECTED，分片不会卡住")
+    public void testThrowingRuleDoesNotStallShard() throws Exception {
+        MatchingSystem system = new MatchingSystem(1, 64);
+        MatchingSystem.EngineShard shard = system.listProduct(1001L, BookType.ARRAY);
+        // 探测订单能通过，只有 orderId = 2 时抛异常
+        system.getRiskManager().reloadRules(List.of(RiskRule.named("flaky", o -> {
+            if (o.orderId == 2) {
+                throw new IllegalStateException("rule failure");
+            }
+            return true;
+        })));
+        system.start(WaitStrategy.YIELD);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(3 * OrderFlyweight.LENGTH);
+            OrderFlyweight order = new OrderFlyweight();
+            assertTrue(system.handleOrder(order.wrap(buffer, 0).set(1, 0, 1001L, 100, 5, false, 0)));
+            assertThrows(IllegalStateException.class,
+                    () -> system.handleOrder(order.wrap(buffer, 64).set(2, 0, 1001L, 100, 1, true, 0)));
+            assertTrue(system.handleOrder(order.wrap(buffer, 128).set(3, 0, 1001L, 100, 2, true, 0)));
+
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (shard.getProcessedCount() < 2 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals(2, shard.getProcessedCount());
+            assertEquals(3, shard.sellBook.orderQuantity(1));
+            assertEquals(0, system.getRiskManager().getAccounts().reserved(0));
+        } finally {
+            system.close();
+        }
+    }
+}
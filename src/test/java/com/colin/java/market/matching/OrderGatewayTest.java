@@ -0,0 +1,305 @@
+package com.colin.java.market.matching;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.FixedLengthFrameDecoder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderGatewayTest {
+    private static final long PRODUCT_A = 1001L;
+    private static final long PRODUCT_B = 1002L;
+
+    private MatchingSystem system;
+    private OrderGateway gateway;
+    private EventLoopGroup clientGroup;
+    private int port;
+
+    // 解码后的下行报文（测试端可以分配对象）
+    static final class Reply {
+        byte type, command, reason;
+        boolean isBuy;
+        long sequence, orderId, productId, price, quantity, leavesQty;
+    }
+
+    // 回环上的测试客户端：按 64 字节切分下行报文，上行报文用 OrderFlyweight 编码
+    final class Client {
+        final BlockingQueue<Reply> replies = new LinkedBlockingQueue<>();
+        final Channel channel;
+        long seq;
+
+        Client() throws InterruptedException {
+            Bootstrap b = new Bootstrap();
+            b.group(clientGroup)
+                    .channel(NioSocketChannel.class)
+                    .option(ChannelOption.TCP_NODELAY, true)
+                    .handler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) {
+                            ch.pipeline()
+                                    .addLast(new FixedLengthFrameDecoder(OrderGateway.FRAME_LENGTH))
+                                    .addLast(new SimpleChannelInboundHandler<ByteBuf>() {
+                                        @Override
+                                        protected void channelRead0(ChannelHandlerContext ctx, ByteBuf buf) {
+                                            Reply r = new Reply();
+                                            int i = buf.readerIndex();
+                                            r.type = buf.getByte(i + OrderGateway.OUT_TYPE);
+                                            r.command = buf.getByte(i + OrderGateway.OUT_COMMAND);
+                                            r.reason = buf.getByte(i + OrderGateway.OUT_REASON);
+                                            r.isBuy = buf.getByte(i + OrderGateway.OUT_IS_BUY) != 0;
+                                            r.sequence = buf.getLongLE(i + OrderGateway.OUT_SEQUENCE);
+                                            r.orderId = buf.getLongLE(i + OrderGateway.OUT_ORDER_ID);
+                                            r.productId = buf.getLongLE(i + OrderGateway.OUT_PRODUCT_ID);
+                                            r.price = buf.getLongLE(i + OrderGateway.OUT_PRICE);
+                                            r.quantity = buf.getLongLE(i + OrderGateway.OUT_QUANTITY);
+                                            r.leavesQty = buf.getLongLE(i + OrderGateway.OUT_LEAVES_QTY);
+                                            replies.add(r);
+                                        }
+                                    });
+                        }
+                    });
+            channel = b.connect("127.0.0.1", port).sync().channel();
+        }
+
+        Reply logon(int sessionId, long accountId) throws InterruptedException {
+            ByteBuffer frame = ByteBuffer.allocate(OrderGateway.FRAME_LENGTH);
+            new OrderFlyweight().wrap(frame, 0).set(sessionId, accountId, 0, 0, 0, false, 0)
+                    .command(OrderGateway.LOGON);
+            channel.writeAndFlush(Unpooled.wrappedBuffer(frame));
+            Reply ack = take();
+            seq = ack.quantity - 1;
+            return ack;
+        }
+
+        // 多条报文拼在一个缓冲区里一次写出，服务端会收到任意切分的半包
+        void send(ByteBuffer frames) {
+            channel.writeAndFlush(Unpooled.wrappedBuffer(frames.flip()));
+        }
+
+        ByteBuffer frames(int n) {
+            return ByteBuffer.allocate(n * OrderGateway.FRAME_LENGTH);
+        }
+
+        void put(ByteBuffer frames, long orderId, long productId, long price, long qty, boolean isBuy, byte command) {
+            int off = frames.position();
+            new OrderFlyweight().wrap(frames, off).set(orderId, 0, productId, price, qty, isBuy, 0)
+                    .command(command).sequence(++seq);
+            frames.position(off + OrderGateway.FRAME_LENGTH);
+        }
+
+        void order(long orderId, long productId, long price, long qty, boolean isBuy, byte command) {
+            ByteBuffer frames = frames(1);
+            put(frames, orderId, productId, price, qty, isBuy, command);
+            send(frames);
+        }
+
+        Reply take() throws InterruptedException {
+            Reply r = replies.poll(5, TimeUnit.SECONDS);
+            assertNotNull(r, "等待回报超时");
+            return r;
+        }
+    }
+
+    @BeforeEach
+    public void setUp() throws InterruptedException {
+        AccountRiskStore accounts = new AccountRiskStore(16);
+        for (int i = 0; i < 16; i++) {
+            accounts.openAccount(i, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        }
+        system = new MatchingSystem(2, 1024, accounts);
+        system.listProduct(PRODUCT_A, BookType.ARRAY);
+        system.listProduct(PRODUCT_B, BookType.ARRAY);
+        gateway = new OrderGateway(system, new long[]{PRODUCT_A, PRODUCT_B}, 1024);
+        system.start(WaitStrategy.YIELD);
+        port = gateway.start(0);
+        clientGroup = new NioEventLoopGroup(2);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        clientGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).syncUninterruptibly();
+        gateway.close();
+        system.close();
+    }
+
+    @Test
+    @DisplayName("两个会话经回环下单成交：双方各收到受理与成交回报，订单号还原为客户端订单号")
+    public void testOrderEntryAndFills() throws Exception {
+        Client seller = new Client();
+        Client buyer = new Client();
+        Reply logon = seller.logon(1, 1);
+        assertEquals(OrderGateway.LOGON_ACK, logon.type);
+        assertEquals(1, logon.sequence);
+        assertEquals(1, logon.quantity, "下一个期望的上行序号");
+        buyer.logon(2, 2);
+
+        seller.order(7, PRODUCT_A, 100, 10, false, SimpleOrder.NEW);
+        Reply ack = seller.take();
+        assertEquals(ExecutionReport.ACK, ack.type);
+        assertEquals(7, ack.orderId);
+        assertEquals(2, ack.sequence);
+
+        // 两个会话用同一个客户端订单号互不冲突
+        buyer.order(7, PRODUCT_A, 100, 4, true, SimpleOrder.NEW);
+        Reply buyerAck = buyer.take();
+        Reply buyerFill = buyer.take();
+        assertEquals(ExecutionReport.ACK, buyerAck.type);
+        assertEquals(ExecutionReport.TRADE, buyerFill.type);
+        assertEquals(7, buyerFill.orderId);
+        assertEquals(4, buyerFill.quantity);
+        assertEquals(0, buyerFill.leavesQty);
+        assertTrue(buyerFill.isBuy);
+        assertEquals(buyerAck.sequence + 1, buyerFill.sequence);
+
+        Reply makerFill = seller.take();
+        assertEquals(ExecutionReport.TRADE, makerFill.type);
+        assertEquals(7, makerFill.orderId);
+        assertEquals(100, makerFill.price);
+        assertEquals(6, makerFill.leavesQty);
+        assertFalse(makerFill.isBuy);
+        assertEquals(3, makerFill.sequence);
+
+        seller.order(7, PRODUCT_A, 0, 0, false, SimpleOrder.CANCEL);
+        Reply cancelled = seller.take();
+        assertEquals(ExecutionReport.ACK, cancelled.type);
+        assertEquals(SimpleOrder.CANCEL, cancelled.command);
+
+        seller.order(7, PRODUCT_A, 0, 0, false, SimpleOrder.CANCEL);
+        Reply unknown = seller.take();
+        assertEquals(ExecutionReport.REJECT, unknown.type);
+        assertEquals(ExecutionReport.REASON_UNKNOWN_ORDER, unknown.reason);
+
+        seller.order(8, 9999L, 100, 1, false, SimpleOrder.NEW);
+        assertEquals(OrderGateway.REASON_UNKNOWN_PRODUCT, seller.take().reason);
+        seller.order(0, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        Reply invalid = seller.take();
+        assertEquals(OrderGateway.REASON_INVALID, invalid.reason);
+        assertEquals(7, invalid.sequence);
+    }
+
+    @Test
+    @DisplayName("会话序号：重发丢弃，缺口拒绝并断开，重连后从期望序号继续")
+    public void testSessionSequencing() throws Exception {
+        Client anonymous = new Client();
+        anonymous.order(1, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        assertEquals(OrderGateway.REASON_NOT_LOGGED_IN, anonymous.take().reason);
+        assertTrue(anonymous.channel.closeFuture().await(5, TimeUnit.SECONDS));
+
+        Client client = new Client();
+        client.logon(3, 3);
+        ByteBuffer frames = client.frames(3);
+        client.put(frames, 1, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        client.seq = 0; // 重发第 1 条
+        client.put(frames, 1, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        client.put(frames, 2, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        client.send(frames);
+        assertEquals(1, client.take().orderId);
+        assertEquals(2, client.take().orderId);
+
+        Client duplicate = new Client();
+        duplicate.order(3, 3, 0, 0, false, OrderGateway.LOGON);
+        assertEquals(OrderGateway.REASON_INVALID, duplicate.take().reason, "会话已在线");
+
+        client.seq = 5; // 跳过 3、4、5
+        client.order(3, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        Reply gap = client.take();
+        assertEquals(OrderGateway.REASON_SEQUENCE_GAP, gap.reason);
+        assertEquals(3, gap.quantity);
+        assertTrue(client.channel.closeFuture().await(5, TimeUnit.SECONDS));
+
+        Client resumed = new Client();
+        Reply logon = resumed.logon(3, 3);
+        assertEquals(3, logon.quantity);
+        assertEquals(gap.sequence + 1, logon.sequence, "下行序号跨连接连续");
+        resumed.order(3, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        Reply ack = resumed.take();
+        assertEquals(ExecutionReport.ACK, ack.type);
+        assertEquals(3, ack.orderId);
+    }
+
+    @Test
+    @DisplayName("会话断开期间的回报被丢弃但占用下行序号：重新登录后从缺口得知丢失的条数")
+    public void testDroppedReportsLeaveSequenceGap() throws Exception {
+        Client maker = new Client();
+        maker.logon(4, 4);
+        maker.order(1, PRODUCT_A, 100, 10, false, SimpleOrder.NEW);
+        assertEquals(ExecutionReport.ACK, maker.take().type);
+        maker.seq++; // 制造上行缺口，网关拒绝并断开
+        maker.order(2, PRODUCT_A, 100, 1, false, SimpleOrder.NEW);
+        Reply gap = maker.take();
+        assertEquals(OrderGateway.REASON_SEQUENCE_GAP, gap.reason);
+        assertTrue(maker.channel.closeFuture().await(5, TimeUnit.SECONDS));
+
+        // 断开期间挂单被吃两次，Maker 的两条成交回报发不出去
+        Client taker = new Client();
+        taker.logon(5, 5);
+        for (long orderId = 1; orderId <= 2; orderId++) {
+            taker.order(orderId, PRODUCT_A, 100, 3, true, SimpleOrder.NEW);
+            assertEquals(ExecutionReport.ACK, taker.take().type);
+            assertEquals(ExecutionReport.TRADE, taker.take().type);
+        }
+
+        Client resumed = new Client();
+        Reply logon = resumed.logon(4, 4);
+        assertEquals(gap.sequence + 1, logon.sequence);
+        resumed.order(1, PRODUCT_A, 0, 0, false, SimpleOrder.CANCEL);
+        Reply cancelled = resumed.take();
+        assertEquals(ExecutionReport.ACK, cancelled.type);
+        assertEquals(logon.sequence + 3, cancelled.sequence, "丢弃的两条成交占用序号");
+    }
+
+    @Test
+    @DisplayName("多个会话并发下单/撤单，回报不丢且每个会话的下行序号连续")
+    public void testConcurrentSessions() throws Exception {
+        int sessions = 8;
+        int orders = 2_000;
+        Client[] clients = new Client[sessions];
+        for (int s = 0; s < sessions; s++) {
+            clients[s] = new Client();
+            clients[s].logon(s + 1, s);
+        }
+        Thread[] senders = new Thread[sessions];
+        for (int s = 0; s < sessions; s++) {
+            Client client = clients[s];
+            long product = s % 2 == 0 ? PRODUCT_A : PRODUCT_B;
+            boolean isBuy = s < sessions / 2;
+            senders[s] = new Thread(() -> {
+                for (int i = 1; i <= orders; i += 100) {
+                    ByteBuffer frames = client.frames(200);
+                    for (int id = i; id < i + 100; id++) {
+                        // 买卖价格不交叉，只挂单再撤单
+                        client.put(frames, id, product, isBuy ? 100 : 200, 1, isBuy, SimpleOrder.NEW);
+                        client.put(frames, id, product, 0, 0, isBuy, SimpleOrder.CANCEL);
+                    }
+                    client.send(frames);
+                }
+            });
+            senders[s].start();
+        }
+        for (Thread sender : senders) {
+            sender.join();
+        }
+        for (Client client : clients) {
+            long expectedSeq = 2;
+            for (int i = 0; i < orders * 2; i++) {
+                Reply r = client.take();
+                assertEquals(ExecutionReport.ACK, r.type);
+                assertEquals(expectedSeq++, r.sequence);
+            }
+        }
+    }
+}
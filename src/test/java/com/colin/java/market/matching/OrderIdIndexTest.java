@@ -0,0 +1,37 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class OrderIdIndexTest {
+
+    @Test
+    @DisplayName("随机增删查与 HashMap 结果一致（覆盖向后移位删除）")
+    public void testAgainstHashMap() {
+        OrderIdIndex index = new OrderIdIndex(1024);
+        Map<Long, Integer> expected = new HashMap<>();
+        Random random = new Random(42);
+
+        for (int i = 0; i < 200_000; i++) {
+            long key = 1 + random.nextInt(2048);
+            int op = random.nextInt(3);
+            if (op == 0 && expected.size() < 1024) {
+                index.put(key, i);
+                expected.put(key, i);
+            } else if (op == 1) {
+                Integer removed = expected.remove(key);
+                assertEquals(removed == null ? OrderIdIndex.MISSING : removed, index.remove(key));
+            } else {
+                Integer value = expected.get(key);
+                assertEquals(value == null ? OrderIdIndex.MISSING : value, index.get(key));
+            }
+        }
+        assertEquals(expected.size(), index.size());
+    }
+}
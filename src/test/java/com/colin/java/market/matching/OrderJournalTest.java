@@ -0,0 +1,100 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderJournalTest {
+
+    @TempDir
+    Path dir;
+
+    private static void randomFlow(MatchingSystem.EngineShard shard, Random random, long firstId, int count) {
+        for (long id = firstId; id < firstId + count; id++) {
+            int op = random.nextInt(10);
+            SimpleOrder order;
+            if (op < 7) {
+                boolean isBuy = random.nextBoolean();
+                long price = 1_000 + (isBuy ? -random.nextInt(30) : random.nextInt(30)) + random.nextInt(7) - 3;
+                order = new SimpleOrder(id, 1001L, price, 1 + random.nextInt(10), isBuy);
+            } else {
+                order = new SimpleOrder(firstId + random.nextInt((int) (id - firstId + 1)), 1001L, 0, random.nextInt(5), false);
+                order.command = op < 9 ? SimpleOrder.CANCEL : SimpleOrder.AMEND;
+            }
+            shard.apply(order);
+        }
+        shard.endBatch();
+    }
+
+    private static void assertSameBooks(MatchingSystem.EngineShard expected, MatchingSystem.EngineShard actual, long maxId) {
+        for (long id = 1; id <= maxId; id++) {
+            assertEquals(expected.buyBook.orderQuantity(id), actual.buyBook.orderQuantity(id), "buy " + id);
+            assertEquals(expected.sellBook.orderQuantity(id), actual.sellBook.orderQuantity(id), "sell " + id);
+        }
+        assertEquals(expected.buyBook.orderCount(), actual.buyBook.orderCount());
+        assertEquals(expected.sellBook.orderCount(), actual.sellBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("崩溃恢复：重放日志（跨多个段）得到与原分片完全相同的订单簿，序号继续递增")
+    public void testReplayRebuildsBooks() {
+        // 不写日志的参照分片，与被恢复的分片处理同样的输入
+        MatchingSystem.EngineShard reference = new MatchingSystem.EngineShard(1001L);
+        randomFlow(reference, new Random(1), 1, 1_000);
+
+        MatchingSystem.EngineShard original = new MatchingSystem.EngineShard(1001L);
+        try (OrderJournal journal = OrderJournal.open(dir, 1001L, 100, 16)) {
+            assertEquals(0, original.enableJournal(journal));
+            randomFlow(original, new Random(1), 1, 1_000);
+            assertEquals(1_000, journal.getSequence());
+        }
+        assertSameBooks(reference, original, 1_000);
+
+        MatchingSystem.EngineShard recovered = new MatchingSystem.EngineShard(1001L);
+        try (OrderJournal journal = OrderJournal.open(dir, 1001L, 100, 16)) {
+            assertEquals(1_000, journal.getSequence());
+            assertEquals(1_000, recovered.enableJournal(journal));
+            assertSameBooks(reference, recovered, 1_000);
+
+            // 恢复后继续处理，序号接着递增
+            randomFlow(reference, new Random(2), 1_001, 500);
+            randomFlow(recovered, new Random(2), 1_001, 500);
+            assertEquals(1_500, journal.getSequence());
+        }
+        assertSameBooks(reference, recovered, 1_500);
+
+        MatchingSystem.EngineShard tail = new MatchingSystem.EngineShard(1001L);
+        try (OrderJournal journal = OrderJournal.open(dir, 1001L, 100, 16)) {
+            assertEquals(500, journal.replay(1_000, (order, sequence, endOfBatch) -> assertTrue(sequence > 1_000)));
+            assertEquals(1_500, tail.enableJournal(journal));
+        }
+        assertSameBooks(reference, tail, 1_500);
+    }
+
+    @Test
+    @DisplayName("追加开销：每条记录只是几次内存写入")
+    public void testAppendLatency() {
+        try (OrderJournal journal = OrderJournal.open(dir, 2002L, 1 << 19, 0)) {
+            SimpleOrder order = new SimpleOrder(1, 2002L, 100, 1, true);
+            int warmup = 200_000;
+            int iterations = 200_000;
+            for (int i = 0; i < warmup; i++) {
+                order.orderId = i;
+                journal.append(order);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; i++) {
+                order.orderId = i;
+                journal.append(order);
+            }
+            long avg = (System.nanoTime() - start) / iterations;
+            System.out.println("Journal Append Avg Latency: " + avg + " ns");
+            assertTrue(avg < 1_000, "journal append should stay in the low hundreds of ns");
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderPipelineTest {
+    private static final long[] PRODUCTS = {1001L, 1002L, 1003L, 1004L, 1005L};
+    private static final int LEVELS = 256;
+
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(8);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    private static MatchingSystem newSystem() {
+        MatchingSystem system = new MatchingSystem(2, 1 << 12, unlimitedAccounts());
+        for (long productId : PRODUCTS) {
+            system.listProduct(productId, BookType.ARRAY);
+        }
+        return system;
+    }
+
+    private static void drain(OrderPipeline pipeline, MatchingSystem system) throws InterruptedException {
+        while (!pipeline.isDrained()) {
+            Thread.sleep(1);
+        }
+        for (long productId : PRODUCTS) {
+            OrderRingBuffer ring = system.getShard(productId).getRingBuffer();
+            while (!ring.isEmpty()) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void assertSameBook(MatchingBook expected, MatchingBook actual) {
+        long[] expectedPrices = new long[LEVELS], expectedQuantities = new long[LEVELS];
+        long[] actualPrices = new long[LEVELS], actualQuantities = new long[LEVELS];
+        int n = expected.depth(expectedPrices, expectedQuantities, LEVELS);
+        assertEquals(n, actual.depth(actualPrices, actualQuantities, LEVELS));
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedPrices[i], actualPrices[i]);
+            assertEquals(expectedQuantities[i], actualQuantities[i]);
+        }
+        assertEquals(expected.orderCount(), actual.orderCount());
+    }
+
+    @Test
+    @DisplayName("多个风控线程并行：每个产品的指令顺序不变，订单簿与同步逐单撮合的结果一致")
+    public void testPerProductOrderingPreserved() throws Exception {
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.productIds = PRODUCTS;
+        config.productSkew = 0;
+        int orders = 100_000;
+
+        MatchingSystem reference = newSystem();
+        OrderFlowGenerator generator = new OrderFlowGenerator(config);
+        SimpleOrder order = new SimpleOrder();
+        for (int i = 0; i < orders; i++) {
+            generator.next(order);
+            if (order.command == SimpleOrder.CANCEL) {
+                reference.cancelOrder(order.productId, order.orderId);
+            } else {
+                reference.handleOrder(order);
+            }
+        }
+
+        MatchingSystem system = newSystem();
+        OrderPipeline pipeline = new OrderPipeline(system, 3, 1 << 10);
+        try {
+            system.start(WaitStrategy.YIELD);
+            pipeline.start(WaitStrategy.YIELD);
+            generator = new OrderFlowGenerator(config);
+            int cancels = 0;
+            for (int i = 0; i < orders; i++) {
+                generator.next(order);
+                if (order.command == SimpleOrder.CANCEL) {
+                    cancels++;
+                }
+                assertTrue(pipeline.submit(order));
+            }
+            drain(pipeline, system);
+            pipeline.close();
+            system.close();
+
+            assertEquals(orders, pipeline.getAccepted());
+            assertEquals(0, pipeline.getRejected());
+            assertTrue(cancels > 0);
+            for (long productId : PRODUCTS) {
+                assertSameBook(reference.getShard(productId).buyBook, system.getShard(productId).buyBook);
+                assertSameBook(reference.getShard(productId).sellBook, system.getShard(productId).sellBook);
+            }
+        } finally {
+            pipeline.close();
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("风控线程拒单不进入撮合，零分配接入与未上架产品")
+    public void testRejectsAndFlyweightIngress() throws Exception {
+        MatchingSystem system = newSystem();
+        OrderPipeline pipeline = new OrderPipeline(system, 2, 64);
+        try {
+            system.start(WaitStrategy.YIELD);
+            pipeline.start(WaitStrategy.YIELD);
+            // 账户 7 未开户：买单预占失败
+            SimpleOrder rejected = new SimpleOrder(1, 1001L, 100, 5, true);
+            rejected.accountId = 7;
+            assertTrue(pipeline.submit(rejected));
+            assertTrue(pipeline.submit(new SimpleOrder(2, 1001L, 100, 5, true)));
+
+            OrderFlyweight flyweight = new OrderFlyweight().wrap(ByteBuffer.allocateDirect(OrderFlyweight.LENGTH), 0);
+            assertTrue(pipeline.submit(flyweight.set(3, 0, 1002L, 101, 4, false, 0)));
+            flyweight.set(4, 0, 9999L, 101, 4, false, 0);
+            assertFalse(pipeline.submit(flyweight));
+
+            drain(pipeline, system);
+            assertEquals(2, pipeline.getAccepted());
+            assertEquals(1, pipeline.getRejected());
+            assertEquals(1, system.getShard(1001L).buyBook.orderCount());
+            assertEquals(1, system.getShard(1002L).sellBook.orderCount());
+        } finally {
+            pipeline.close();
+            system.close();
+        }
+    }
+
+    @Test
+    @DisplayName("规则抛异常时按拒单计数、退回预占，风控线程继续处理后面的指令")
+    public void testThrowingRuleDoesNotKillWorker() throws Exception {
+        MatchingSystem system = newSystem();
+        system.getRiskManager().reloadRules(List.of(RiskRule.named("flaky", o -> {
+            if (o.orderId == 2) {
+                throw new IllegalStateException("rule failure");
+            }
+            return true;
+        })));
+        OrderPipeline pipeline = new OrderPipeline(system, 1, 64);
+        try {
+            system.start(WaitStrategy.YIELD);
+            pipeline.start(WaitStrategy.YIELD);
+            assertTrue(pipeline.submit(new SimpleOrder(1, 1001L, 100, 5, true)));
+            assertTrue(pipeline.submit(new SimpleOrder(2, 1001L, 100, 5, true)));
+            assertTrue(pipeline.submit(new SimpleOrder(3, 1001L, 100, 5, true)));
+
+            drain(pipeline, system);
+            assertEquals(2, pipeline.getAccepted());
+            assertEquals(1, pipeline.getRejected());
+            assertEquals(2, system.getShard(1001L).buyBook.orderCount());
+            assertEquals(2 * 100 * 5, system.getRiskManager().getAccounts().reserved(0));
+        } finally {
+            pipeline.close();
+            system.close();
+        }
+    }
+}
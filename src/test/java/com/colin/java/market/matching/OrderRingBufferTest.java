@@ -0,0 +1,99 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderRingBufferTest {
+
+    @Test
+    @DisplayName("多生产者并发写入：不丢单，且每个生产者内部保持顺序")
+    public void testMultiProducerOrdering() throws Exception {
+        int producers = 4;
+        int perProducer = 50_000;
+        OrderRingBuffer ring = new OrderRingBuffer(1024); // 远小于总量，覆盖环绕与背压
+
+        CountDownLatch startLatch = new CountDownLatch(1);
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            final int producerId = p;
+            threads[p] = new Thread(() -> {
+                SimpleOrder order = new SimpleOrder(0, producerId, 0, 1, true);
+                try {
+                    startLatch.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 1; i <= perProducer; i++) {
+                    order.orderId = i;
+                    ring.publish(order);
+                }
+            });
+            threads[p].start();
+        }
+
+        long[] lastSeen = new long[producers];
+        long[] total = new long[1];
+        boolean[] outOfOrder = new boolean[1];
+        OrderHandler handler = (order, sequence, endOfBatch) -> {
+            int producerId = (int) order.productId;
+            if (order.orderId != lastSeen[producerId] + 1) {
+                outOfOrder[0] = true;
+            }
+            lastSeen[producerId] = order.orderId;
+            total[0]++;
+        };
+
+        startLatch.countDown();
+        long expected = (long) producers * perProducer;
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (total[0] < expected && System.nanoTime() < deadline) {
+            if (ring.drain(handler, 64) == 0) {
+                Thread.yield();
+            }
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+
+        assertEquals(expected, total[0]);
+        assertFalse(outOfOrder[0], "同一生产者的订单必须按发布顺序被消费");
+        assertTrue(ring.isEmpty());
+    }
+
+    @Test
+    @DisplayName("分片消费者线程：多个网关线程并发下单，全部由单线程撮合")
+    public void testShardConsumerThread() throws Exception {
+        MatchingSystem system = new MatchingSystem();
+        system.start(WaitStrategy.YIELD);
+        try {
+            int gateways = 4;
+            int perGateway = 200;
+            Thread[] threads = new Thread[gateways];
+            for (int g = 0; g < gateways; g++) {
+                final boolean isBuy = g % 2 == 0;
+                threads[g] = new Thread(() -> {
+                    for (int i = 0; i < perGateway; i++) {
+                        system.handleOrder(new SimpleOrder(i, 1001L, 100, 1, isBuy));
+                    }
+                });
+                threads[g].start();
+            }
+            for (Thread t : threads) {
+                t.join();
+            }
+
+            MatchingSystem.EngineShard shard = system.getShard(1001L);
+            long deadline = System.nanoTime() + 5_000_000_000L;
+            while (!shard.getRingBuffer().isEmpty() && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertEquals((long) gateways * perGateway, shard.getProcessedCount());
+        } finally {
+            system.close();
+        }
+    }
+}
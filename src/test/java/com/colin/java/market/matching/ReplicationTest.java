@@ -0,0 +1,230 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.InputStreamReader;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReplicationTest {
+    private static final long[] PRODUCTS = {1001L, 1002L};
+    private static final int LEVELS = 256;
+
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    private static MatchingSystem newSystem() {
+        MatchingSystem system = new MatchingSystem(2, 1 << 14, unlimitedAccounts());
+        for (long productId : PRODUCTS) {
+            system.listProduct(productId, BookType.ARRAY);
+        }
+        return system;
+    }
+
+    private static OrderFlowGenerator.Config config() {
+        OrderFlowGenerator.Config config = new OrderFlowGenerator.Config();
+        config.productIds = PRODUCTS;
+        return config;
+    }
+
+    private static void send(MatchingSystem system, OrderFlowGenerator generator, int orders) {
+        SimpleOrder order = new SimpleOrder();
+        for (int i = 0; i < orders; i++) {
+            generator.next(order);
+            if (order.command == SimpleOrder.CANCEL) {
+                system.cancelOrder(order.productId, order.orderId);
+            } else {
+                system.handleOrder(order);
+            }
+        }
+    }
+
+    private static void drain(MatchingSystem system) throws InterruptedException {
+        for (long productId : PRODUCTS) {
+            OrderRingBuffer ring = system.getShard(productId).getRingBuffer();
+            while (!ring.isEmpty()) {
+                Thread.sleep(1);
+            }
+        }
+    }
+
+    private static void awaitTakeover(StandbyReplica standby) throws InterruptedException {
+        long deadline = System.nanoTime() + 10_000_000_000L;
+        while (!standby.isActive() && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue(standby.isActive(), "主机失联后自动接管");
+    }
+
+    private static void assertSameBook(MatchingBook expected, MatchingBook actual) {
+        long[] expectedPrices = new long[LEVELS], expectedQuantities = new long[LEVELS];
+        long[] actualPrices = new long[LEVELS], actualQuantities = new long[LEVELS];
+        int n = expected.depth(expectedPrices, expectedQuantities, LEVELS);
+        assertEquals(n, actual.depth(actualPrices, actualQuantities, LEVELS));
+        for (int i = 0; i < n; i++) {
+            assertEquals(expectedPrices[i], actualPrices[i]);
+            assertEquals(expectedQuantities[i], actualQuantities[i]);
+        }
+        assertEquals(expected.orderCount(), actual.orderCount());
+    }
+
+    private static void assertSameBooks(MatchingSystem expected, MatchingSystem actual) {
+        for (long productId : PRODUCTS) {
+            assertSameBook(expected.getShard(productId).buyBook, actual.getShard(productId).buyBook);
+            assertSameBook(expected.getShard(productId).sellBook, actual.getShard(productId).sellBook);
+        }
+    }
+
+    @Test
+    @DisplayName("回环主备复制：备机订单簿与主机一致，主机下线后备机自动接管并继续接单")
+    public void testReplicationAndTakeover() throws Exception {
+        MatchingSystem primary = newSystem();
+        MatchingSystem backup = newSystem();
+        ShardReplicator replicator = new ShardReplicator(primary, PRODUCTS, 1 << 12, 10);
+        StandbyReplica standby = new StandbyReplica(backup, PRODUCTS);
+        try {
+            int port = replicator.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            primary.start(WaitStrategy.YIELD);
+            standby.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 200, WaitStrategy.YIELD);
+            assertTrue(replicator.awaitStandby(5_000));
+
+            // 复制环远小于订单数：备机确认推进后槽位才复用
+            send(primary, new OrderFlowGenerator(config()), 50_000);
+            drain(primary);
+            primary.close(); // 撮合线程退出后复制环不再增长
+            assertTrue(replicator.awaitReplicated(10_000));
+            for (long productId : PRODUCTS) {
+                assertEquals(replicator.getStream(productId).getPublished(), standby.getApplied(productId));
+                assertFalse(replicator.getStream(productId).isLost());
+            }
+            assertTrue(standby.getApplied(1001L) > 1 << 12);
+            assertSameBooks(primary, backup);
+            assertFalse(standby.isActive());
+
+            replicator.close();
+            awaitTakeover(standby);
+            assertTrue(standby.isPrimaryLost());
+
+            // 备机补上了继承挂单的预占，账户状态与主机一致；接管后撤单照常退回预占
+            AccountRiskStore primaryAccounts = primary.getRiskManager().getAccounts();
+            AccountRiskStore accounts = backup.getRiskManager().getAccounts();
+            assertEquals(primaryAccounts.available(0), accounts.available(0));
+            assertEquals(primaryAccounts.reserved(0), accounts.reserved(0));
+            assertEquals(primaryAccounts.dailyNet(0), accounts.dailyNet(0));
+            assertTrue(accounts.reserved(0) > 0);
+            long total = accounts.available(0) + accounts.reserved(0);
+            for (long productId : PRODUCTS) {
+                assertTrue(backup.getShard(productId).buyBook.orderCount() > 0);
+                for (long orderId = 1; orderId <= 50_000; orderId++) {
+                    backup.cancelOrder(productId, orderId);
+                }
+            }
+            drain(backup);
+            for (long productId : PRODUCTS) {
+                assertEquals(0, backup.getShard(productId).buyBook.orderCount());
+            }
+            assertEquals(0, accounts.reserved(0));
+            assertEquals(total, accounts.available(0));
+            int before = backup.getShard(1001L).sellBook.orderCount();
+            backup.handleOrder(new SimpleOrder(Long.MAX_VALUE / 2, 1001L, 1_000_000, 1, false));
+            drain(backup);
+            assertEquals(before + 1, backup.getShard(1001L).sellBook.orderCount());
+        } finally {
+            standby.close();
+            replicator.close();
+            primary.close();
+            backup.close();
+        }
+    }
+
+    @Test
+    @DisplayName("备机卡死不回确认：超时后主机断开连接，撮合线程放弃复制而不是一直自旋")
+    public void testAckTimeoutDropsStandby() throws Exception {
+        MatchingSystem primary = newSystem();
+        ShardReplicator replicator = new ShardReplicator(primary, PRODUCTS, 1 << 6, 10, 200);
+        try {
+            int port = replicator.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            primary.start(WaitStrategy.YIELD);
+            // 只完成握手，之后既不读数据也不回确认
+            try (Socket standby = new Socket(InetAddress.getLoopbackAddress(), port)) {
+                ByteBuffer handshake = ByteBuffer.allocate(ShardReplicator.ACK_LENGTH * PRODUCTS.length)
+                        .order(ByteOrder.LITTLE_ENDIAN);
+                for (long productId : PRODUCTS) {
+                    handshake.putLong(productId).putLong(0);
+                }
+                standby.getOutputStream().write(handshake.array());
+                assertTrue(replicator.awaitStandby(5_000));
+
+                // 复制环只有 64 条，撮合线程很快在环满处等待
+                send(primary, new OrderFlowGenerator(config()), 5_000);
+                drain(primary);
+                assertFalse(replicator.isStreaming());
+                assertTrue(replicator.getStream(1001L).isLost());
+            }
+        } finally {
+            replicator.close();
+            primary.close();
+        }
+    }
+
+    @Test
+    @DisplayName("两个 JVM：主机进程被杀后备机接管，订单簿与同一订单流的参照结果一致")
+    public void testTwoProcessFailover() throws Exception {
+        int orders = 20_000;
+        String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+        Process process = new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                ShardReplicator.class.getName(), "0", String.valueOf(orders))
+                .redirectErrorStream(true).start();
+        MatchingSystem backup = newSystem();
+        StandbyReplica standby = new StandbyReplica(backup, PRODUCTS);
+        MatchingSystem reference = newSystem();
+        try {
+            BufferedReader out = new BufferedReader(
+                    new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8));
+            int port = -1;
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith("LISTENING ")) {
+                    port = Integer.parseInt(line.substring("LISTENING ".length()).trim());
+                    break;
+                }
+            }
+            assertTrue(port > 0, "主机进程启动");
+            standby.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 300, WaitStrategy.YIELD);
+            while ((line = out.readLine()) != null && !line.startsWith("REPLICATED")) {
+                assertFalse(line.startsWith("TIMEOUT") || line.startsWith("NO STANDBY"), line);
+            }
+            assertEquals("REPLICATED " + orders, line);
+
+            process.destroyForcibly();
+            assertTrue(process.waitFor(10, TimeUnit.SECONDS));
+            awaitTakeover(standby);
+
+            // 参照：同一种子的订单流直接在本地撮合
+            reference.start(WaitStrategy.YIELD);
+            send(reference, new OrderFlowGenerator(config()), orders);
+            drain(reference);
+            reference.close();
+            backup.close();
+            assertSameBooks(reference, backup);
+        } finally {
+            process.destroyForcibly();
+            standby.close();
+            backup.close();
+            reference.close();
+        }
+    }
+}
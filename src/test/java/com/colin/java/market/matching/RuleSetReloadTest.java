@@ -0,0 +1,140 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RuleSetReloadTest {
+
+    private static List<RiskRule> qtyLimit(long limit) {
+        return List.of(RiskRule.named("qty<" + limit, order -> order.quantity < limit));
+    }
+
+    // 卖单不占用购买力，只测规则
+    private static SimpleOrder sell(long qty) {
+        return new SimpleOrder(1, 1001L, 100, qty, false);
+    }
+
+    @Test
+    @DisplayName("进行中的校验使用开始时的版本")
+    public void testInFlightValidationKeepsVersion() throws Exception {
+        RiskManager riskManager = new RiskManager();
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch reloaded = new CountDownLatch(1);
+        AtomicBoolean oldSecondRuleRan = new AtomicBoolean();
+        AtomicBoolean blocking = new AtomicBoolean();
+        riskManager.reloadRules(List.of(
+                order -> {
+                    if (blocking.get()) {
+                        entered.countDown();
+                        try {
+                            reloaded.await(5, TimeUnit.SECONDS);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                    return true;
+                },
+                order -> {
+                    oldSecondRuleRan.set(true);
+                    return true;
+                }));
+        // 重载时的试运行已经执行过规则，之后再开始计
+        oldSecondRuleRan.set(false);
+        blocking.set(true);
+        AtomicBoolean result = new AtomicBoolean();
+        Thread gateway = new Thread(() -> result.set(riskManager.validate(sell(10))));
+        gateway.start();
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+        // 校验卡在旧版第一条规则时发布会拒绝全部订单的新版本
+        riskManager.reloadRules(List.of(order -> false), List.of());
+        reloaded.countDown();
+        gateway.join();
+
+        assertTrue(result.get(), "旧版本整体执行完");
+        assertTrue(oldSecondRuleRan.get());
+        blocking.set(false);
+        assertFalse(riskManager.validate(sell(10)), "之后的校验看到新版本");
+    }
+
+    @Test
+    @DisplayName("校验不通过的规则集不会生效；回滚到上一版本")
+    public void testRejectInvalidAndRollback() {
+        RiskManager riskManager = new RiskManager();
+        long v1 = riskManager.getRulesVersion();
+        long v2 = riskManager.reloadRules(qtyLimit(100));
+        assertTrue(v2 > v1);
+        assertFalse(riskManager.validate(sell(500)));
+
+        assertThrows(IllegalArgumentException.class, () -> riskManager.reloadRules(List.of()));
+        assertThrows(IllegalArgumentException.class, () -> riskManager.reloadRules(List.of(order -> {
+            throw new IllegalStateException("limit table missing");
+        })));
+        // 额度配错：已知正常的订单被拒
+        assertThrows(IllegalArgumentException.class,
+                () -> riskManager.reloadRules(qtyLimit(10), List.of(sell(50))));
+        assertEquals(v2, riskManager.getRulesVersion(), "失败的重载不影响当前版本");
+
+        long v3 = riskManager.reloadRules(qtyLimit(1_000), List.of(sell(50)));
+        assertTrue(riskManager.validate(sell(500)));
+        assertEquals(v2, riskManager.rollback());
+        assertFalse(riskManager.validate(sell(500)));
+        assertEquals(v1, riskManager.rollback());
+        assertThrows(IllegalStateException.class, riskManager::rollback);
+        assertNotEquals(v3, riskManager.reloadRules(qtyLimit(1_000)), "版本号不复用");
+    }
+
+    @Test
+    @DisplayName("满负荷下反复重载：每次校验的结果都对应某一个完整版本")
+    public void testReloadUnderLoad() throws Exception {
+        RiskManager riskManager = new RiskManager();
+        // 两版规则同时约束数量上下界，混合执行会出现两版都不可能给出的结果
+        List<RiskRule> low = List.of(order -> order.quantity >= 1, order -> order.quantity < 100);
+        List<RiskRule> high = List.of(order -> order.quantity >= 100, order -> order.quantity < 1_000);
+        riskManager.reloadRules(low);
+        riskManager.compile();
+
+        AtomicBoolean stop = new AtomicBoolean();
+        AtomicLong validations = new AtomicLong();
+        AtomicLong inconsistent = new AtomicLong();
+        Thread[] gateways = new Thread[2];
+        for (int t = 0; t < gateways.length; t++) {
+            gateways[t] = new Thread(() -> {
+                SimpleOrder small = sell(50);
+                SimpleOrder large = sell(500);
+                while (!stop.get()) {
+                    // 同一版本下两单恰好一个通过
+                    RuleSet set = riskManager.getRuleSet();
+                    boolean a = riskManager.validate(small);
+                    boolean b = riskManager.validate(large);
+                    if (a == b && set == riskManager.getRuleSet()) {
+                        inconsistent.incrementAndGet();
+                    }
+                    validations.addAndGet(2);
+                }
+            });
+            gateways[t].start();
+        }
+        for (int i = 0; i < 2_000; i++) {
+            riskManager.reloadRules(i % 2 == 0 ? high : low);
+            if (i % 100 == 0) {
+                riskManager.compile();
+            }
+        }
+        stop.set(true);
+        for (Thread gateway : gateways) {
+            gateway.join();
+        }
+        assertTrue(validations.get() > 0);
+        assertEquals(0, inconsistent.get());
+        assertTrue(riskManager.getRuleSet().isCompiled(), "重载保持编译模式");
+        assertTrue(riskManager.getRuleSet().getPrevious().depth() < RuleSet.HISTORY, "历史版本有上限");
+    }
+}
@@ -0,0 +1,167 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotStoreTest {
+
+    @TempDir
+    Path dir;
+
+    // 随机新单/撤单/改量，每 10 条一个批次
+    private static void randomFlow(MatchingSystem.EngineShard shard, Random random, long firstId, int count) {
+        for (long id = firstId; id < firstId + count; id++) {
+            int op = random.nextInt(10);
+            SimpleOrder order;
+            if (op < 7) {
+                boolean isBuy = random.nextBoolean();
+                long price = 1_000 + (isBuy ? -random.nextInt(30) : random.nextInt(30)) + random.nextInt(7) - 3;
+                order = new SimpleOrder(id, 1001L, price, 1 + random.nextInt(10), isBuy);
+            } else {
+                order = new SimpleOrder(firstId + random.nextInt((int) (id - firstId + 1)), 1001L, 0, random.nextInt(5), false);
+                order.command = op < 9 ? SimpleOrder.CANCEL : SimpleOrder.AMEND;
+            }
+            shard.apply(order);
+            if (id % 10 == 0) {
+                shard.endBatch();
+            }
+        }
+        shard.endBatch();
+    }
+
+    private static BookSnapshot capture(MatchingSystem.EngineShard shard) {
+        BookSnapshot snapshot = new BookSnapshot(16);
+        snapshot.capture(shard.productId, 0, shard.buyBook, shard.sellBook);
+        return snapshot;
+    }
+
+    // 用两笔大单扫穿两边，记录 Maker 成交顺序，验证同价位的时间优先也被恢复
+    private static List<Long> sweep(MatchingSystem.EngineShard shard) {
+        List<Long> makers = new ArrayList<>();
+        FillListener listener = (makerOrderId, price, quantity, makerRemaining) -> makers.add(makerOrderId);
+        shard.buyBook.setFillListener(listener);
+        shard.sellBook.setFillListener(listener);
+        shard.process(new SimpleOrder(1_000_000, 1001L, 2_000, 1_000_000, true));
+        shard.process(new SimpleOrder(1_000_001, 1001L, 0, 1_000_000, false));
+        return makers;
+    }
+
+    @Test
+    @DisplayName("快照 + 日志尾部重放：只重放快照之后的指令，恢复出的订单簿（含队列顺序）与原分片一致")
+    public void testRecoverFromSnapshotAndTail() {
+        MatchingSystem.EngineShard reference = new MatchingSystem.EngineShard(1001L);
+        randomFlow(reference, new Random(3), 1, 2_000);
+
+        long lastSnapshot;
+        try (OrderJournal journal = OrderJournal.open(dir.resolve("journal"), 1001L, 256, 64);
+             SnapshotStore store = new SnapshotStore(dir.resolve("snapshot"), 1001L, 2)) {
+            MatchingSystem.EngineShard original = new MatchingSystem.EngineShard(1001L);
+            assertEquals(0, original.enableJournal(journal, store, 300));
+            randomFlow(original, new Random(3), 1, 2_000);
+            store.close();
+            lastSnapshot = store.getLastSequence();
+        }
+        assertTrue(lastSnapshot > 0, "至少写出一份快照");
+
+        MatchingSystem.EngineShard recovered = new MatchingSystem.EngineShard(1001L, BookType.TICK_LADDER);
+        try (OrderJournal journal = OrderJournal.open(dir.resolve("journal"), 1001L, 256, 64);
+             SnapshotStore store = new SnapshotStore(dir.resolve("snapshot"), 1001L, 2)) {
+            assertEquals(lastSnapshot, store.loadLatest().sequence);
+            assertEquals(2_000 - lastSnapshot, recovered.enableJournal(journal, store, 300));
+        }
+        assertTrue(capture(reference).sameOrders(capture(recovered)));
+        assertEquals(sweep(reference), sweep(recovered));
+    }
+
+    @Test
+    @DisplayName("最新快照损坏时退回上一份，过期快照按保留份数删除")
+    public void testCorruptSnapshotFallsBack() throws Exception {
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L);
+        randomFlow(shard, new Random(5), 1, 500);
+
+        Path snapshotDir = dir.resolve("snapshot");
+        try (SnapshotStore store = new SnapshotStore(snapshotDir, 1001L, 2)) {
+            for (long seq = 100; seq <= 300; seq += 100) {
+                assertTrue(store.takeSnapshot(seq, shard.buyBook, shard.sellBook));
+                while (store.isWriting()) {
+                    Thread.onSpinWait();
+                }
+            }
+        }
+        List<Path> files;
+        try (var list = Files.list(snapshotDir)) {
+            files = list.sorted().toList();
+        }
+        assertEquals(2, files.size(), "只保留最近 2 份");
+
+        byte[] bytes = Files.readAllBytes(files.get(1));
+        bytes[40] ^= 1;
+        Files.write(files.get(1), bytes);
+
+        try (SnapshotStore store = new SnapshotStore(snapshotDir, 1001L, 2)) {
+            BookSnapshot latest = store.loadLatest();
+            assertEquals(200, latest.sequence);
+            assertTrue(capture(shard).sameOrders(latest));
+        }
+    }
+
+    @Test
+    @DisplayName("快照保存挂单账户：只从快照恢复的买单撤单、成交时照常退回预占和结算")
+    public void testSnapshotRestoresAccountIndex() {
+        AccountRiskStore accounts = new AccountRiskStore(4);
+        accounts.openAccount(1, 10_000, 1_000);
+        accounts.openAccount(2, 10_000, 1_000);
+        RiskManager risk = new RiskManager(accounts);
+        SimpleOrder[] flow = {
+                new SimpleOrder(1, 1001L, 100, 10, true),
+                new SimpleOrder(2, 1001L, 99, 10, true),
+                new SimpleOrder(3, 1001L, 105, 5, false),
+        };
+        flow[0].accountId = 1;
+        flow[1].accountId = 1;
+        flow[2].accountId = 2;
+        try (OrderJournal journal = OrderJournal.open(dir.resolve("journal"), 1001L, 256, 64);
+             SnapshotStore store = new SnapshotStore(dir.resolve("snapshot"), 1001L, 2)) {
+            MatchingSystem.EngineShard original = new MatchingSystem.EngineShard(1001L);
+            original.enableRisk(accounts, 16);
+            original.enableJournal(journal, store, 2);
+            for (SimpleOrder order : flow) {
+                assertTrue(risk.validate(order));
+                original.apply(order);
+                original.endBatch();
+            }
+        }
+        assertEquals(1_990, accounts.reserved(1));
+
+        // 账户状态本身不在快照/日志中，这里沿用同一个 AccountRiskStore
+        MatchingSystem.EngineShard recovered = new MatchingSystem.EngineShard(1001L);
+        recovered.enableRisk(accounts, 16);
+        try (OrderJournal journal = OrderJournal.open(dir.resolve("journal"), 1001L, 256, 64);
+             SnapshotStore store = new SnapshotStore(dir.resolve("snapshot"), 1001L, 2)) {
+            assertEquals(2, store.loadLatest().sequence);
+            assertEquals(1, recovered.enableJournal(journal, store, 2), "订单 1、2 来自快照");
+        }
+        assertTrue(recovered.cancel(1));
+        assertEquals(990, accounts.reserved(1));
+
+        SimpleOrder sell = new SimpleOrder(4, 1001L, 99, 10, false);
+        sell.accountId = 2;
+        assertTrue(risk.validate(sell));
+        recovered.process(sell);
+        assertEquals(0, accounts.reserved(1));
+        assertEquals(10_000 - 990, accounts.available(1));
+        assertEquals(10_000 + 990, accounts.available(2));
+        assertEquals(10, accounts.dailyNet(1));
+        // 订单 3 由日志尾部重放挂回，同样能撤
+        assertTrue(recovered.cancel(3));
+    }
+}
@@ -0,0 +1,225 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class TickLadderOrderBookTest {
+
+    // 记录成交回报，数组按需扩容（测试代码不在意分配）
+    private static class RecordingListener implements FillListener {
+        long[] makerIds = new long[64];
+        long[] prices = new long[64];
+        long[] quantities = new long[64];
+        int count;
+
+        @Override
+        public void onFill(long makerOrderId, long price, long quantity, long makerRemaining) {
+            if (count == makerIds.length) {
+                makerIds = java.util.Arrays.copyOf(makerIds, count * 2);
+                prices = java.util.Arrays.copyOf(prices, count * 2);
+                quantities = java.util.Arrays.copyOf(quantities, count * 2);
+            }
+            makerIds[count] = makerOrderId;
+            prices[count] = price;
+            quantities[count] = quantity;
+            count++;
+        }
+    }
+
+    private TickLadderOrderBook askBook;
+    private RecordingListener fills;
+
+    @BeforeEach
+    public void setup() {
+        askBook = new TickLadderOrderBook(64, 64, true);
+        fills = new RecordingListener();
+        askBook.setFillListener(fills);
+    }
+
+    @Test
+    @DisplayName("价格优先 + 同价位时间优先")
+    public void testPriceTimePriority() {
+        askBook.add(1L, 102, 5);
+        askBook.add(2L, 100, 5);
+        askBook.add(3L, 101, 5);
+        askBook.add(4L, 100, 5);
+        assertEquals(3, askBook.levelCount());
+        assertEquals(100, askBook.bestPrice());
+
+        long traded = askBook.match(101, 12);
+
+        assertEquals(12, traded);
+        assertEquals(3, fills.count);
+        assertEquals(2L, fills.makerIds[0]);
+        assertEquals(4L, fills.makerIds[1]);
+        assertEquals(3L, fills.makerIds[2]);
+        assertEquals(101, fills.prices[2]);
+        assertEquals(2, fills.quantities[2]);
+        assertEquals(101, askBook.bestPrice());
+    }
+
+    @Test
+    @DisplayName("买盘：高价优先，吃空最优档后定位下一档")
+    public void testBidBook() {
+        TickLadderOrderBook bidBook = new TickLadderOrderBook(64, 64, false);
+        bidBook.setFillListener(fills);
+        bidBook.add(1L, 98, 5);
+        bidBook.add(2L, 100, 5);
+        bidBook.add(3L, 40, 5);
+
+        assertEquals(10, bidBook.match(90, 20));
+        assertEquals(2L, fills.makerIds[0]);
+        assertEquals(1L, fills.makerIds[1]);
+        assertEquals(40, bidBook.bestPrice());
+        assertEquals(1, bidBook.levelCount());
+    }
+
+    @Test
+    @DisplayName("行情漂移：价格持续移动远超阶梯长度，环形复用槽位而不扩容")
+    public void testPriceDrift() {
+        long price = 1_000_000;
+        for (int i = 0; i < 100_000; i++) {
+            askBook.add(i + 1, price + i, 1);
+            assertEquals(1, askBook.match(price + i, 1));
+        }
+        assertEquals(64, askBook.ladderSize());
+        assertEquals(0, askBook.orderCount());
+    }
+
+    @Test
+    @DisplayName("跨度超过阶梯长度时扩容，已有档位和排队顺序不变")
+    public void testGrow() {
+        askBook.add(1L, 1_000, 1);
+        askBook.add(2L, 1_000, 2);
+        askBook.add(3L, 1_040, 3);
+        askBook.add(4L, 1_500, 4);
+        askBook.add(5L, 900, 5);
+        assertTrue(askBook.ladderSize() > 600);
+        assertEquals(900, askBook.bestPrice());
+
+        assertTrue(askBook.cancel(3L));
+        assertEquals(12, askBook.match(2_000, 100));
+        assertEquals(4, fills.count);
+        assertEquals(5L, fills.makerIds[0]);
+        assertEquals(1L, fills.makerIds[1]);
+        assertEquals(2L, fills.makerIds[2]);
+        assertEquals(4L, fills.makerIds[3]);
+        assertEquals(1_500, fills.prices[3]);
+        assertEquals(0, askBook.levelCount());
+    }
+
+    @Test
+    @DisplayName("跨度超过阶梯上限的挂单被拒绝，阶梯不扩容，订单簿保持原状")
+    public void testMaxTicks() {
+        TickLadderOrderBook book = new TickLadderOrderBook(64, 1024, 64, true);
+        book.add(1L, 1_000, 5);
+        book.add(2L, 1_900, 5);
+        assertEquals(1024, book.ladderSize());
+
+        assertThrows(IllegalStateException.class, () -> book.add(3L, 1_000 + 1024, 1));
+        assertThrows(IllegalStateException.class, () -> book.add(4L, 1_000 + (1L << 29) + 5, 1));
+        assertThrows(IllegalStateException.class, () -> book.add(5L, 1_000 - (1L << 40), 1));
+        assertEquals(1024, book.ladderSize());
+        assertEquals(2, book.orderCount());
+        assertEquals(2, book.levelCount());
+        assertEquals(1_000, book.bestPrice());
+        assertEquals(0, book.orderQuantity(3L));
+
+        long[] prices = new long[4], quantities = new long[4];
+        assertEquals(2, book.depth(prices, quantities, 4));
+        assertEquals(1_900, prices[1]);
+        assertEquals(10, book.match(2_000, 100));
+        assertThrows(IllegalArgumentException.class, () -> new TickLadderOrderBook(64, 1000, 64, true));
+    }
+
+    @Test
+    @DisplayName("节点池满时挂单失败，最优价和深度不出现空档位")
+    public void testPoolFullLeavesBookIntact() {
+        TickLadderOrderBook bidBook = new TickLadderOrderBook(64, 2, false);
+        bidBook.add(1L, 97, 5);
+        bidBook.add(2L, 98, 5);
+        assertThrows(IllegalStateException.class, () -> bidBook.add(3L, 99, 5));
+        assertEquals(98, bidBook.bestPrice());
+        assertEquals(2, bidBook.levelCount());
+        long[] prices = new long[4], quantities = new long[4];
+        assertEquals(2, bidBook.depth(prices, quantities, 4));
+        assertEquals(98, prices[0]);
+        assertEquals(5, quantities[0]);
+
+        assertEquals(10, bidBook.match(90, 100));
+        assertEquals(0, bidBook.levelCount());
+        bidBook.add(3L, 99, 5);
+        assertEquals(99, bidBook.bestPrice());
+    }
+
+    @Test
+    @DisplayName("撤掉最优档后最优价前移，改量规则与数组实现一致")
+    public void testCancelAndAmend() {
+        askBook.add(1L, 100, 10);
+        askBook.add(2L, 100, 10);
+        askBook.add(3L, 105, 10);
+
+        assertTrue(askBook.cancel(1L));
+        assertTrue(askBook.cancel(2L));
+        assertFalse(askBook.cancel(2L));
+        assertEquals(105, askBook.bestPrice());
+
+        askBook.add(4L, 105, 10);
+        assertTrue(askBook.amend(3L, 20));
+        askBook.match(105, 10);
+        assertEquals(4L, fills.makerIds[0], "增量后失去时间优先");
+        assertEquals(20, askBook.orderQuantity(3L));
+    }
+
+    @Test
+    @DisplayName("随机操作与 ArrayOrderBook 逐笔对比成交回报")
+    public void testAgainstArrayOrderBook() {
+        Random random = new Random(42);
+        for (boolean isAsk : new boolean[]{true, false}) {
+            TickLadderOrderBook ladder = new TickLadderOrderBook(64, 4096, isAsk);
+            ArrayOrderBook array = new ArrayOrderBook(1024, 4096, isAsk);
+            RecordingListener ladderFills = new RecordingListener();
+            RecordingListener arrayFills = new RecordingListener();
+            ladder.setFillListener(ladderFills);
+            array.setFillListener(arrayFills);
+
+            long mid = 10_000;
+            long nextId = 1;
+            for (int step = 0; step < 50_000; step++) {
+                mid += random.nextInt(3) - 1;
+                int op = random.nextInt(10);
+                if (op < 5) {
+                    long price = mid + (isAsk ? 1 : -1) * random.nextInt(200);
+                    long qty = 1 + random.nextInt(20);
+                    ladder.add(nextId, price, qty);
+                    array.add(nextId, price, qty);
+                    nextId++;
+                } else if (op < 8) {
+                    long price = mid + (isAsk ? 1 : -1) * random.nextInt(150);
+                    long qty = 1 + random.nextInt(150);
+                    assertEquals(array.match(price, qty), ladder.match(price, qty));
+                } else if (op < 9) {
+                    long id = 1 + random.nextInt((int) nextId);
+                    assertEquals(array.cancel(id), ladder.cancel(id));
+                } else {
+                    long id = 1 + random.nextInt((int) nextId);
+                    long qty = random.nextInt(30);
+                    assertEquals(array.amend(id, qty), ladder.amend(id, qty));
+                }
+                assertEquals(array.orderCount(), ladder.orderCount());
+            }
+
+            assertEquals(arrayFills.count, ladderFills.count);
+            for (int i = 0; i < arrayFills.count; i++) {
+                assertEquals(arrayFills.makerIds[i], ladderFills.makerIds[i]);
+                assertEquals(arrayFills.prices[i], ladderFills.prices[i]);
+                assertEquals(arrayFills.quantities[i], ladderFills.quantities[i]);
+            }
+        }
+    }
+}
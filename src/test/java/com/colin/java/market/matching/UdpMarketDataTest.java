@@ -0,0 +1,246 @@
+package com.colin.java.market.matching;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class UdpMarketDataTest {
+    private static final int DEPTH = 5;
+
+    private static InetSocketAddress loopback() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    private static AccountRiskStore unlimitedAccounts() {
+        AccountRiskStore accounts = new AccountRiskStore(1);
+        accounts.openAccount(0, Long.MAX_VALUE / 4, Long.MAX_VALUE / 4);
+        return accounts;
+    }
+
+    // 丢包代理：订阅端把它当作发布端，控制报文原样转给发布端，行情包转回订阅端时每 dropEvery 个增量包丢一个
+    private static final class LossyProxy implements AutoCloseable {
+        private final InetSocketAddress publisher;
+        private final int dropEvery;
+        private final DatagramChannel downstream; // 面向订阅端
+        private final DatagramChannel upstream; // 面向发布端
+        private final Thread thread;
+        private volatile boolean running = true;
+        private SocketAddress subscriber;
+        private long incremental;
+
+        LossyProxy(InetSocketAddress publisher, int dropEvery) throws IOException {
+            this.publisher = publisher;
+            this.dropEvery = dropEvery;
+            this.downstream = DatagramChannel.open().bind(loopback());
+            this.upstream = DatagramChannel.open().bind(loopback());
+            downstream.configureBlocking(false);
+            upstream.configureBlocking(false);
+            this.thread = new Thread(this::run, "md-lossy-proxy");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        InetSocketAddress getLocalAddress() throws IOException {
+            return (InetSocketAddress) downstream.getLocalAddress();
+        }
+
+        private void run() {
+            ByteBuffer buf = ByteBuffer.allocate(64 * 1024);
+            try {
+                while (running) {
+                    boolean idle = true;
+                    buf.clear();
+                    SocketAddress from = downstream.receive(buf);
+                    if (from != null) {
+                        subscriber = from;
+                        upstream.send(buf.flip(), publisher);
+                        idle = false;
+                    }
+                    buf.clear();
+                    if (upstream.receive(buf) != null && subscriber != null) {
+                        buf.flip();
+                        boolean drop = buf.limit() > UdpMarketDataPublisher.OFF_FLAGS
+                                && buf.get(UdpMarketDataPublisher.OFF_FLAGS) == UdpMarketDataPublisher.INCREMENTAL
+                                && ++incremental % dropEvery == 0;
+                        if (!drop) {
+                            downstream.send(buf, subscriber);
+                        }
+                        idle = false;
+                    }
+                    if (idle) {
+                        LockSupport.parkNanos(50_000);
+                    }
+                }
+            } catch (IOException e) {
+                if (running) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        }
+
+        @Override
+        public void close() throws Exception {
+            running = false;
+            thread.join(1_000);
+            downstream.close();
+            upstream.close();
+        }
+    }
+
+    private static void awaitSubscribers(UdpMarketDataPublisher publisher, int n) throws InterruptedException {
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (publisher.getSubscriberCount() < n && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(n, publisher.getSubscriberCount());
+    }
+
+    // 等订阅端重建的深度与订单簿当前前 N 档一致
+    private static void assertRebuilt(UdpMarketDataSubscriber subscriber, MatchingSystem.EngineShard shard)
+            throws InterruptedException {
+        DepthSnapshot expected = new DepthSnapshot(DEPTH);
+        expected.bidCount = shard.buyBook.depth(expected.bidPrices, expected.bidQuantities, DEPTH);
+        expected.askCount = shard.sellBook.depth(expected.askPrices, expected.askQuantities, DEPTH);
+        DepthSnapshot actual = new DepthSnapshot(DEPTH);
+        long target = shard.getMarketData().getSequence();
+        long deadline = System.nanoTime() + 5_000_000_000L;
+        while (subscriber.getSequence(shard.productId) != target && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(target, subscriber.getSequence(shard.productId), "增量序号追平");
+        assertTrue(subscriber.depth(shard.productId, actual));
+        assertEquals(expected.bidCount, actual.bidCount);
+        assertEquals(expected.askCount, actual.askCount);
+        for (int i = 0; i < expected.bidCount; i++) {
+            assertEquals(expected.bidPrices[i], actual.bidPrices[i]);
+            assertEquals(expected.bidQuantities[i], actual.bidQuantities[i]);
+        }
+        for (int i = 0; i < expected.askCount; i++) {
+            assertEquals(expected.askPrices[i], actual.askPrices[i]);
+            assertEquals(expected.askQuantities[i], actual.askQuantities[i]);
+        }
+    }
+
+    private static class TradeCounter implements MarketDataListener {
+        final AtomicLong trades = new AtomicLong();
+
+        @Override
+        public void onDelta(long productId, long sequence, boolean isBid, byte action, long price, long quantity) {
+        }
+
+        @Override
+        public void onSnapshot(DepthSnapshot snapshot) {
+        }
+
+        @Override
+        public void onTrade(long productId, long price, long quantity, boolean isBuy) {
+            trades.incrementAndGet();
+        }
+    }
+
+    @Test
+    @DisplayName("回环多订阅者扇出：人为丢包的订阅者经快照恢复，所有订阅者重建的深度与订单簿一致")
+    public void testFanOutWithGapRecovery() throws Exception {
+        long[] productIds = {1001L, 1002L};
+        MatchingSystem system = new MatchingSystem(2, 1024, unlimitedAccounts());
+        UdpMarketDataPublisher publisher = new UdpMarketDataPublisher(loopback(),
+                UdpMarketDataPublisher.DEFAULT_PACKET_SIZE, 1024, 20);
+        UdpMarketDataSubscriber[] subscribers = new UdpMarketDataSubscriber[8];
+        TradeCounter counter = new TradeCounter();
+        LossyProxy proxy = new LossyProxy(publisher.getLocalAddress(), 5);
+        try {
+            for (long productId : productIds) {
+                publisher.attach(system.listProduct(productId, BookType.TICK_LADDER), DEPTH, 50);
+            }
+            publisher.start();
+            for (int i = 0; i < subscribers.length; i++) {
+                // 最后一个订阅者经丢包代理接入
+                InetSocketAddress address = i == subscribers.length - 1 ? proxy.getLocalAddress()
+                        : publisher.getLocalAddress();
+                subscribers[i] = new UdpMarketDataSubscriber(address, DEPTH, i == 0 ? counter : null);
+                subscribers[i].start();
+            }
+            awaitSubscribers(publisher, subscribers.length);
+            system.start(WaitStrategy.YIELD);
+
+            Random random = new Random(11);
+            for (int i = 1; i <= 20_000; i++) {
+                boolean isBuy = random.nextBoolean();
+                long price = 1_000 + (isBuy ? -random.nextInt(15) : random.nextInt(15)) + random.nextInt(5) - 2;
+                system.handleOrder(new SimpleOrder(i, productIds[i & 1], price, 1 + random.nextInt(10), isBuy));
+                if (i % 3 == 0) {
+                    int victim = 1 + random.nextInt(i);
+                    system.cancelOrder(productIds[victim & 1], victim);
+                }
+            }
+            for (long productId : productIds) {
+                OrderRingBuffer ring = system.getShard(productId).getRingBuffer();
+                while (!ring.isEmpty()) {
+                    Thread.sleep(1);
+                }
+            }
+            for (UdpMarketDataSubscriber subscriber : subscribers) {
+                for (long productId : productIds) {
+                    assertRebuilt(subscriber, system.getShard(productId));
+                }
+            }
+            UdpMarketDataSubscriber lossy = subscribers[subscribers.length - 1];
+            assertTrue(lossy.getGaps() > 0);
+            assertTrue(lossy.getRecoveries() > productIds.length, "除首次同步外还经过快照恢复");
+            assertTrue(counter.trades.get() > 0, "逐笔成交随增量一起发布");
+            // 增量按 MTU 攒批：每个包平均远不止一条消息
+            long deltas = system.getShard(1001L).getMarketData().getSequence()
+                    + system.getShard(1002L).getMarketData().getSequence();
+            assertTrue(publisher.getPacketsSent() < deltas * subscribers.length,
+                    "packets " + publisher.getPacketsSent() + " deltas " + deltas);
+        } finally {
+            for (UdpMarketDataSubscriber subscriber : subscribers) {
+                if (subscriber != null) {
+                    subscriber.close();
+                }
+            }
+            proxy.close();
+            system.close();
+            publisher.close();
+        }
+    }
+
+    @Test
+    @DisplayName("包环写满时撮合线程丢包不阻塞，之后补发快照让订阅者恢复")
+    public void testPublisherOverflow() throws Exception {
+        MatchingSystem.EngineShard shard = new MatchingSystem.EngineShard(1001L, BookType.TICK_LADDER);
+        UdpMarketDataPublisher publisher = new UdpMarketDataPublisher(loopback(), 256, 4, 20);
+        UdpMarketDataSubscriber subscriber = new UdpMarketDataSubscriber(publisher.getLocalAddress(), DEPTH, null);
+        try {
+            UdpMarketDataPublisher.Stream stream = publisher.attach(shard, DEPTH, 1_000);
+            publisher.addSubscriber(subscriber.getLocalAddress());
+            subscriber.start();
+            // 发送线程未启动，本线程充当撮合线程
+            for (int i = 1; i <= 200; i++) {
+                shard.process(new SimpleOrder(i, 1001L, 1_000 + (i % 2 == 0 ? -(i % 7) : i % 7), 1, i % 2 == 0));
+                shard.endBatch();
+            }
+            assertTrue(stream.getDropped() > 0);
+
+            publisher.start();
+            Thread.sleep(100); // 发送线程取走积压的包，订阅者发现缺口后请求恢复
+            shard.endBatch(); // 下一批结束时补发快照
+            assertRebuilt(subscriber, shard);
+            assertTrue(subscriber.getGaps() > 0);
+        } finally {
+            subscriber.close();
+            publisher.close();
+        }
+    }
+}
@@ -2,13 +2,20 @@ package com.colin.java.market.oms;
 
 import com.colin.java.market.oms.order.Order;
 import com.colin.java.market.oms.order.OrderBook;
+import com.colin.java.market.oms.order.OrderType;
+import com.colin.java.market.oms.order.PriceLevelQueue;
+import com.colin.java.market.oms.order.PriceScale;
 import com.colin.java.market.oms.order.Side;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Field;
+import java.io.OutputStream;
+import java.io.PrintStream;
 import java.math.BigDecimal;
-import java.util.PriorityQueue;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -21,11 +28,10 @@ class OrderBookTest {
     }
 
     // 获取私有队列的辅助方法
-    @SuppressWarnings("unchecked")
-    private <T> PriorityQueue<T> getQueue(String fieldName) throws Exception {
+    private PriceLevelQueue getQueue(String fieldName) throws Exception {
         Field field = OrderBook.class.getDeclaredField(fieldName);
         field.setAccessible(true);
-        return (PriorityQueue<T>) field.get(orderBook);
+        return (PriceLevelQueue) field.get(orderBook);
     }
 
     @Test
@@ -33,9 +39,9 @@ class OrderBookTest {
         // 测试基本的卖单添加
         orderBook.processOrder(new Order(Side.SELL, 100.00, 10));
         
-        PriorityQueue<Order> sellOrders = getQueue("sellOrders");
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
         assertEquals(1, sellOrders.size());
-        assertEquals(0, sellOrders.peek().price.compareTo(BigDecimal.valueOf(100.00)));
+        assertEquals(0, sellOrders.peek().getPrice().compareTo(BigDecimal.valueOf(100.00)));
         assertEquals(10, sellOrders.peek().quantity);
     }
 
@@ -44,9 +50,9 @@ class OrderBookTest {
         // 测试基本的买单添加
         orderBook.processOrder(new Order(Side.BUY, 101.00, 5));
         
-        PriorityQueue<Order> buyOrders = getQueue("buyOrders");
+        PriceLevelQueue buyOrders = getQueue("buyOrders");
         assertEquals(1, buyOrders.size());
-        assertEquals(0, buyOrders.peek().price.compareTo(BigDecimal.valueOf(101.00)));
+        assertEquals(0, buyOrders.peek().getPrice().compareTo(BigDecimal.valueOf(101.00)));
         assertEquals(5, buyOrders.peek().quantity);
     }
 
@@ -68,7 +74,7 @@ class OrderBookTest {
         orderBook.processOrder(new Order(Side.BUY, 101.00, 5));
         
         // 卖单应该剩余5股
-        PriorityQueue<Order> sellOrders = getQueue("sellOrders");
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
         assertEquals(1, sellOrders.size());
         assertEquals(5, sellOrders.peek().quantity);
         
@@ -83,7 +89,7 @@ class OrderBookTest {
         orderBook.processOrder(new Order(Side.SELL, 99.00, 5));
         
         // 买单应该剩余5股
-        PriorityQueue<Order> buyOrders = getQueue("buyOrders");
+        PriceLevelQueue buyOrders = getQueue("buyOrders");
         assertEquals(1, buyOrders.size());
         assertEquals(5, buyOrders.peek().quantity);
         
@@ -102,10 +108,10 @@ class OrderBookTest {
         assertEquals(0, getQueue("sellOrders").size());
         
         // 买单队列应该有5股剩余（20 - 10 - 5 = 5）
-        PriorityQueue<Order> buyOrders = getQueue("buyOrders");
+        PriceLevelQueue buyOrders = getQueue("buyOrders");
         assertEquals(1, buyOrders.size());
         assertEquals(5, buyOrders.peek().quantity);
-        assertEquals(0, buyOrders.peek().price.compareTo(BigDecimal.valueOf(103.00)));
+        assertEquals(0, buyOrders.peek().getPrice().compareTo(BigDecimal.valueOf(103.00)));
     }
 
     @Test
@@ -116,17 +122,17 @@ class OrderBookTest {
         orderBook.processOrder(new Order(Side.BUY, 101.00, 8)); // 买单价格只够匹配低价卖单
         
         // 低价卖单应该被部分成交，剩余2股
-        PriorityQueue<Order> sellOrders = getQueue("sellOrders");
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
         assertEquals(2, sellOrders.size()); // 还有两个卖单：剩余的低价卖单和高价卖单
         
         // 第一个应该是剩余的低价卖单
         Order firstSell = sellOrders.poll();
-        assertEquals(0, firstSell.price.compareTo(BigDecimal.valueOf(100.00)));
+        assertEquals(0, firstSell.getPrice().compareTo(BigDecimal.valueOf(100.00)));
         assertEquals(2, firstSell.quantity);
         
         // 第二个应该是高价卖单，未成交
         Order secondSell = sellOrders.poll();
-        assertEquals(0, secondSell.price.compareTo(BigDecimal.valueOf(102.00)));
+        assertEquals(0, secondSell.getPrice().compareTo(BigDecimal.valueOf(102.00)));
         assertEquals(5, secondSell.quantity);
     }
 
@@ -141,7 +147,7 @@ class OrderBookTest {
         orderBook.processOrder(new Order(Side.SELL, 100.00, 5)); // 同价格后挂卖单
         orderBook.processOrder(new Order(Side.BUY, 100.00, 12)); // 买单数量超过第一个卖单
         
-        PriorityQueue<Order> sellOrders = getQueue("sellOrders");
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
         assertEquals(1, sellOrders.size());
         
         // 剩余的应该是第二个卖单，数量为3（5 - (12 - 10) = 3）
@@ -180,15 +186,15 @@ class OrderBookTest {
         // 103.00的4股全部成交
         // 101.00的5股成交3股，剩余2股
         
-        PriorityQueue<Order> buyOrders = getQueue("buyOrders");
+        PriceLevelQueue buyOrders = getQueue("buyOrders");
         // 修复断言：根据实际交易情况，买单可能已全部成交
         assertEquals(0, buyOrders.size());
         
         // 检查卖单队列状态
-        PriorityQueue<Order> sellOrders = getQueue("sellOrders");
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
         assertEquals(2, sellOrders.size());
         Order remainingSell = sellOrders.peek();
-        assertEquals(0, remainingSell.price.compareTo(BigDecimal.valueOf(99.00)));
+        assertEquals(0, remainingSell.getPrice().compareTo(BigDecimal.valueOf(99.00)));
         assertEquals(3, remainingSell.quantity);
     }
     
@@ -203,4 +209,121 @@ class OrderBookTest {
         assertEquals(0, getQueue("buyOrders").size());
         assertEquals(0, getQueue("sellOrders").size());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testFixedPointPriceConversion() {
+        // 十进制价格精确转换为定点价格，不受 double 二进制误差影响
+        Order order = new Order(Side.BUY, 100.10, 1);
+        assertEquals(10010, order.price);
+        assertEquals(new BigDecimal("100.10"), order.getPrice());
+        assertEquals(10_000_001, new PriceScale(4).toTicks(new BigDecimal("1000.0001")));
+        // 不在最小变动单位上的价格拒绝，不做舍入
+        assertThrows(ArithmeticException.class, () -> new Order(Side.BUY, 100.005, 1));
+        assertThrows(ArithmeticException.class, () -> PriceScale.CENTS.toTicks(new BigDecimal("0.001")));
+    }
+
+    @Test
+    void testInstrumentPriceScale() throws Exception {
+        // 四位小数的品种：相差一个最小变动单位的价格不能撮合
+        PriceScale scale = new PriceScale(4);
+        orderBook = new OrderBook(scale);
+        orderBook.processOrder(new Order(Side.SELL, new BigDecimal("1.2346"), 10, OrderType.PFG, scale));
+        orderBook.processOrder(new Order(Side.BUY, new BigDecimal("1.2345"), 10, OrderType.PFG, scale));
+        assertEquals(1, getQueue("sellOrders").size());
+        assertEquals(1, getQueue("buyOrders").size());
+
+        orderBook.processOrder(new Order(Side.BUY, new BigDecimal("1.2346"), 4, OrderType.PFG, scale));
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
+        assertEquals(6, sellOrders.peek().quantity);
+        assertEquals(new BigDecimal("1.2346"), sellOrders.peek().getPrice());
+
+        // 精度不同的订单不能进入该订单簿
+        assertThrows(IllegalArgumentException.class, () -> orderBook.processOrder(new Order(Side.BUY, 1.23, 1)));
+    }
+
+    @Test
+    void testPriceLevelFifo() {
+        // 同价档按到达顺序排队，档位之间按价格优先；任意位置的订单都能直接移除
+        PriceLevelQueue bids = new PriceLevelQueue(Side.BUY);
+        Order a = new Order(Side.BUY, 100.00, 1);
+        Order b = new Order(Side.BUY, 101.00, 2);
+        Order c = new Order(Side.BUY, 100.00, 3);
+        Order d = new Order(Side.BUY, 100.00, 4);
+        bids.add(a);
+        bids.add(b);
+        bids.add(c);
+        bids.add(d);
+        assertEquals(4, bids.size());
+        assertEquals(2, bids.levelCount());
+        assertEquals(List.of(b, a, c, d), new ArrayList<>(bids));
+        assertThrows(IllegalStateException.class, () -> bids.add(a));
+
+        assertTrue(bids.remove(c));
+        assertFalse(bids.remove(c));
+        assertFalse(new PriceLevelQueue(Side.BUY).remove(a));
+        assertEquals(List.of(a, d), bids.level(10_000).orders());
+        assertEquals(5, bids.level(10_000).quantity());
+
+        assertSame(b, bids.poll());
+        assertNull(bids.level(10_100));
+        assertSame(bids.level(10_000), bids.bestLevel());
+        assertNull(bids.levelAfter(10_000));
+        assertSame(a, bids.poll());
+        assertSame(d, bids.poll());
+        assertNull(bids.poll());
+        assertEquals(0, bids.levelCount());
+
+        // 移除后可以重新挂入，排到队尾
+        bids.add(c);
+        assertSame(c, bids.peek());
+    }
+
+    @Test
+    void testDeepBookSweepAndCancel() {
+        // 10 万笔卖单分布在 1000 个价位：撤掉一半，再用一笔买单扫掉剩下的全部
+        PriceLevelQueue sellOrders = orderBook.sellOrders;
+        List<Order> orders = new ArrayList<>();
+        for (int i = 0; i < 100_000; i++) {
+            Order order = Order.ofTicks(Side.SELL, 10_000 + i % 1_000, 10, OrderType.PFG, PriceScale.CENTS);
+            orders.add(order);
+            sellOrders.add(order);
+        }
+        assertEquals(1_000, sellOrders.levelCount());
+
+        PrintStream stdout = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            assertTimeout(Duration.ofSeconds(10), () -> {
+                // 每隔一轮撤单，每个价位撤掉一半，撤的订单散布在档内各处
+                for (int i = 0; i < orders.size(); i++) {
+                    if ((i / 1_000) % 2 == 0) {
+                        assertTrue(sellOrders.remove(orders.get(i)));
+                    }
+                }
+                assertEquals(50_000, sellOrders.size());
+                assertEquals(1_000, sellOrders.levelCount());
+
+                orderBook.processOrder(Order.ofTicks(Side.BUY, 11_000, 600_000, OrderType.PFG, PriceScale.CENTS));
+            });
+        } finally {
+            System.setOut(stdout);
+        }
+        assertEquals(0, sellOrders.size());
+        assertEquals(0, sellOrders.levelCount());
+        assertEquals(1, orderBook.buyOrders.size());
+        assertEquals(100_000, orderBook.buyOrders.peek().quantity);
+    }
+
+    @Test
+    void testAuctionMatchWithMultipleOrders() throws Exception {
+        // 对手盘有多笔订单时集合竞价按价格顺序成交，完全成交的订单从订单簿移除
+        orderBook.processOrder(new Order(Side.SELL, 100.00, 5));
+        orderBook.processOrder(new Order(Side.SELL, 101.00, 5));
+        orderBook.processOrder(new Order(Side.SELL, 103.00, 5));
+        orderBook.processOrder(new Order(Side.BUY, 102.00, 10, OrderType.AMC));
+
+        PriceLevelQueue sellOrders = getQueue("sellOrders");
+        assertEquals(1, sellOrders.size());
+        assertEquals(0, sellOrders.peek().getPrice().compareTo(BigDecimal.valueOf(103.00)));
+    }
+}